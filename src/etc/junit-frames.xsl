@@ -33,66 +33,73 @@
 -->
 <xsl:param name="output.dir" select="'.'"/>
 <xsl:param name="TITLE">Unit Test Results.</xsl:param>
+<!-- set by incremental reports: 'overview' only creates the pages at the
+     root, 'packages' only the pages of the packages -->
+<xsl:param name="report.part" select="'all'"/>
 
 
 <xsl:template match="testsuites">
-    <!-- create the index.html -->
-    <redirect:write file="{$output.dir}/index.html">
-        <xsl:call-template name="index.html"/>
-    </redirect:write>
+    <xsl:if test="$report.part != 'packages'">
+      <!-- create the index.html -->
+      <redirect:write file="{$output.dir}/index.html">
+          <xsl:call-template name="index.html"/>
+      </redirect:write>
 
-    <!-- create the stylesheet.css -->
-    <redirect:write file="{$output.dir}/stylesheet.css">
-        <xsl:call-template name="stylesheet.css"/>
-    </redirect:write>
+      <!-- create the stylesheet.css -->
+      <redirect:write file="{$output.dir}/stylesheet.css">
+          <xsl:call-template name="stylesheet.css"/>
+      </redirect:write>
 
-    <!-- create the overview-packages.html at the root -->
-    <redirect:write file="{$output.dir}/overview-summary.html">
-        <xsl:apply-templates select="." mode="overview.packages"/>
-    </redirect:write>
+      <!-- create the overview-packages.html at the root -->
+      <redirect:write file="{$output.dir}/overview-summary.html">
+          <xsl:apply-templates select="." mode="overview.packages"/>
+      </redirect:write>
 
-    <!-- create the all-packages.html at the root -->
-    <redirect:write file="{$output.dir}/overview-frame.html">
-        <xsl:apply-templates select="." mode="all.packages"/>
-    </redirect:write>
+      <!-- create the all-packages.html at the root -->
+      <redirect:write file="{$output.dir}/overview-frame.html">
+          <xsl:apply-templates select="." mode="all.packages"/>
+      </redirect:write>
 
-    <!-- create the all-classes.html at the root -->
-    <redirect:write file="{$output.dir}/allclasses-frame.html">
-        <xsl:apply-templates select="." mode="all.classes"/>
-    </redirect:write>
+      <!-- create the all-classes.html at the root -->
+      <redirect:write file="{$output.dir}/allclasses-frame.html">
+          <xsl:apply-templates select="." mode="all.classes"/>
+      </redirect:write>
 
-    <!-- create the all-tests.html at the root -->
-    <redirect:write file="{$output.dir}/all-tests.html">
-        <xsl:apply-templates select="." mode="all.tests"/>
-    </redirect:write>
+      <!-- create the all-tests.html at the root -->
+      <redirect:write file="{$output.dir}/all-tests.html">
+          <xsl:apply-templates select="." mode="all.tests"/>
+      </redirect:write>
 
-    <!-- create the alltests-fails.html at the root -->
-    <redirect:write file="{$output.dir}/alltests-fails.html">
-      <xsl:apply-templates select="." mode="all.tests">
-        <xsl:with-param name="type" select="'fails'"/>
-      </xsl:apply-templates>
-    </redirect:write>
+      <!-- create the alltests-fails.html at the root -->
+      <redirect:write file="{$output.dir}/alltests-fails.html">
+        <xsl:apply-templates select="." mode="all.tests">
+          <xsl:with-param name="type" select="'fails'"/>
+        </xsl:apply-templates>
+      </redirect:write>
 
-  <!-- create the alltests-errors.html at the root -->
-    <redirect:write file="{$output.dir}/alltests-errors.html">
-      <xsl:apply-templates select="." mode="all.tests">
-        <xsl:with-param name="type" select="'errors'"/>
-      </xsl:apply-templates>
-    </redirect:write>
+    <!-- create the alltests-errors.html at the root -->
+      <redirect:write file="{$output.dir}/alltests-errors.html">
+        <xsl:apply-templates select="." mode="all.tests">
+          <xsl:with-param name="type" select="'errors'"/>
+        </xsl:apply-templates>
+      </redirect:write>
     
-    <!-- create the alltests-skipped.html at the root -->
-    <redirect:write file="{$output.dir}/alltests-skipped.html">
-      <xsl:apply-templates select="." mode="all.tests">
-        <xsl:with-param name="type" select="'skipped'"/>
-      </xsl:apply-templates>
-    </redirect:write>
+      <!-- create the alltests-skipped.html at the root -->
+      <redirect:write file="{$output.dir}/alltests-skipped.html">
+        <xsl:apply-templates select="." mode="all.tests">
+          <xsl:with-param name="type" select="'skipped'"/>
+        </xsl:apply-templates>
+      </redirect:write>
+    </xsl:if>
 
   <!-- process all packages -->
-    <xsl:for-each select="./testsuite[not(./@package = preceding-sibling::testsuite/@package)]">
-        <xsl:call-template name="package">
-            <xsl:with-param name="name" select="@package"/>
-        </xsl:call-template>
-    </xsl:for-each>
+    <xsl:if test="$report.part != 'overview'">
+      <xsl:for-each select="./testsuite[not(./@package = preceding-sibling::testsuite/@package)]">
+          <xsl:call-template name="package">
+              <xsl:with-param name="name" select="@package"/>
+          </xsl:call-template>
+      </xsl:for-each>
+    </xsl:if>
 </xsl:template>
 
 
@@ -122,6 +122,24 @@ public class AntTypeDefinition {
         this.adaptToClass = adaptToClass;
     }
 
+    /**
+     * The adapter class of this definition.
+     * @return the adapter class, may be null.
+     * @since Ant 1.9.1
+     */
+    Class<?> getAdapterClass() {
+        return adapterClass;
+    }
+
+    /**
+     * The assignable class of this definition.
+     * @return the assignable class, may be null.
+     * @since Ant 1.9.1
+     */
+    Class<?> getAdaptToClass() {
+        return adaptToClass;
+    }
+
     /**
      * Set the classloader to use to create an instance
      * of the definition.
@@ -0,0 +1,287 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Delivers build events to listeners on a dedicated thread.
+ *
+ * <p>Events are queued in a bounded buffer and delivered in the
+ * order they have been queued, a thread queueing an event while the
+ * buffer is full waits until the dispatcher catches up.  A project
+ * and all its sub-projects share a single dispatcher so listeners
+ * never see events of the same build on two threads at once.</p>
+ *
+ * <p>Listeners implementing {@link SynchronousBuildListener} are
+ * left to the thread firing the event.</p>
+ *
+ * @since Ant 1.9.1
+ */
+final class AsyncEventDispatcher {
+
+    /** number of events that may be waiting for delivery */
+    static final int QUEUE_SIZE = 4096;
+
+    static final int BUILD_STARTED = 0;
+    static final int BUILD_FINISHED = 1;
+    static final int SUB_BUILD_STARTED = 2;
+    static final int SUB_BUILD_FINISHED = 3;
+    static final int TARGET_STARTED = 4;
+    static final int TARGET_FINISHED = 5;
+    static final int TASK_STARTED = 6;
+    static final int TASK_FINISHED = 7;
+    static final int MESSAGE_LOGGED = 8;
+    /** ends the dispatcher thread */
+    private static final int STOP = -1;
+
+    private static final BuildListener[] NO_LISTENERS = new BuildListener[0];
+
+    private final BlockingQueue<Dispatch> queue =
+        new ArrayBlockingQueue<Dispatch>(QUEUE_SIZE);
+    private final Thread thread;
+    private volatile boolean closed;
+    /** first exception thrown by a listener */
+    private Throwable failure;
+    /** the listeners last passed to dispatch, split by kind */
+    private volatile Listeners lastListeners = new Listeners(NO_LISTENERS);
+
+    /**
+     * Creates the dispatcher and starts its thread.
+     */
+    AsyncEventDispatcher() {
+        thread = new Thread(new Runnable() {
+                public void run() {
+                    dispatchLoop();
+                }
+            }, "Ant event dispatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues an event, waits if the queue is full.
+     * @param type one of the event type constants of this class.
+     * @param event the event.
+     * @param listeners the listeners to notify.
+     * @return the listeners the caller needs to notify itself - all
+     * of them if the dispatcher has been closed.
+     */
+    BuildListener[] dispatch(int type, BuildEvent event,
+                             BuildListener[] listeners) {
+        if (closed) {
+            return listeners;
+        }
+        Listeners l = lastListeners;
+        if (l.all != listeners) {
+            l = new Listeners(listeners);
+            lastListeners = l;
+        }
+        if (l.async.length > 0) {
+            put(new Dispatch(type, event, l.async));
+            if (closed && !thread.isAlive()) {
+                // raced with close(), it may have missed our event
+                deliverRemaining();
+            }
+        }
+        return l.sync;
+    }
+
+    /**
+     * Whether the current thread is the one delivering events.
+     * @return true if called by a listener.
+     */
+    boolean isDispatchThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Delivers all queued events and stops the dispatcher thread.
+     *
+     * <p>Rethrows the first RuntimeException or Error any listener
+     * has thrown.</p>
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        put(new Dispatch(STOP, null, NO_LISTENERS));
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        deliverRemaining();
+        Throwable t;
+        synchronized (this) {
+            t = failure;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+    }
+
+    private void put(Dispatch d) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(d);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatchLoop() {
+        List<Dispatch> batch = new ArrayList<Dispatch>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch);
+            boolean stop = false;
+            for (Dispatch d : batch) {
+                if (d.type == STOP) {
+                    stop = true;
+                } else {
+                    deliver(d);
+                }
+            }
+            if (stop) {
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    private synchronized void deliverRemaining() {
+        Dispatch d;
+        while ((d = queue.poll()) != null) {
+            if (d.type != STOP) {
+                deliver(d);
+            }
+        }
+    }
+
+    private void deliver(Dispatch d) {
+        for (int i = 0; i < d.listeners.length; i++) {
+            try {
+                deliver(d.type, d.event, d.listeners[i]);
+            } catch (Throwable t) {
+                synchronized (this) {
+                    if (failure == null) {
+                        failure = t;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void deliver(int type, BuildEvent event,
+                                BuildListener listener) {
+        switch (type) {
+        case BUILD_STARTED:
+            listener.buildStarted(event);
+            break;
+        case BUILD_FINISHED:
+            listener.buildFinished(event);
+            break;
+        case SUB_BUILD_STARTED:
+            if (listener instanceof SubBuildListener) {
+                ((SubBuildListener) listener).subBuildStarted(event);
+            }
+            break;
+        case SUB_BUILD_FINISHED:
+            if (listener instanceof SubBuildListener) {
+                ((SubBuildListener) listener).subBuildFinished(event);
+            }
+            break;
+        case TARGET_STARTED:
+            listener.targetStarted(event);
+            break;
+        case TARGET_FINISHED:
+            listener.targetFinished(event);
+            break;
+        case TASK_STARTED:
+            listener.taskStarted(event);
+            break;
+        case TASK_FINISHED:
+            listener.taskFinished(event);
+            break;
+        case MESSAGE_LOGGED:
+            listener.messageLogged(event);
+            break;
+        default:
+            throw new IllegalArgumentException("unknown event type " + type);
+        }
+    }
+
+    /**
+     * Listeners of a project split into those notified by the
+     * dispatcher and the synchronous ones.
+     */
+    private static final class Listeners {
+        private final BuildListener[] all;
+        private final BuildListener[] async;
+        private final BuildListener[] sync;
+
+        private Listeners(BuildListener[] all) {
+            this.all = all;
+            List<BuildListener> a = new ArrayList<BuildListener>();
+            List<BuildListener> s = new ArrayList<BuildListener>();
+            for (int i = 0; i < all.length; i++) {
+                (all[i] instanceof SynchronousBuildListener ? s : a)
+                    .add(all[i]);
+            }
+            async = a.toArray(new BuildListener[a.size()]);
+            sync = s.toArray(new BuildListener[s.size()]);
+        }
+    }
+
+    private static final class Dispatch {
+        private final int type;
+        private final BuildEvent event;
+        private final BuildListener[] listeners;
+
+        private Dispatch(int type, BuildEvent event,
+                         BuildListener[] listeners) {
+            this.type = type;
+            this.event = event;
+            this.listeners = listeners;
+        }
+    }
+}
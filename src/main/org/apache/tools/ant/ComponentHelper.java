@@ -35,6 +35,8 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.Stack;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.tools.ant.launch.Launcher;
 import org.apache.tools.ant.taskdefs.Definer;
@@ -61,8 +63,20 @@ public class ComponentHelper  {
     /** Map of component name to lists of restricted definitions */
     private Map<String, List<AntTypeDefinition>>          restrictedDefinitions = new HashMap<String, List<AntTypeDefinition>>();
 
-    /** Map from component name to anttypedefinition */
-    private final Hashtable<String, AntTypeDefinition> antTypeTable = new Hashtable<String, AntTypeDefinition>();
+    /**
+     * Map from component name to anttypedefinition, shared with the
+     * parent project until either of them defines a component.
+     */
+    private volatile Hashtable<String, AntTypeDefinition> antTypeTable = new Hashtable<String, AntTypeDefinition>();
+
+    /**
+     * whether antTypeTable may be seen by another project and needs
+     * to be copied before it is modified
+     */
+    private boolean antTypeTableShared;
+
+    /** guards antTypeTable and the state derived from it */
+    private final Object antTypeTableLock = new Object();
 
     /** Map of tasks generated from antTypeTable */
     private final Hashtable<String, Class<?>> taskClassDefinitions = new Hashtable<String, Class<?>>();
@@ -76,6 +90,15 @@ public class ComponentHelper  {
     /** flag to rebuild typeClassDefinitions */
     private boolean rebuildTypeClassDefinitions = true;
 
+    /**
+     * Definitions of defaults.properties created on first use, shared
+     * with sub-projects.
+     */
+    private DefaultDefinitions lazyDefaults;
+
+    /** whether all of lazyDefaults have been added to antTypeTable */
+    private boolean defaultsMaterialized;
+
     /** Set of namespaces that have been checked for antlibs */
     private final HashSet<String> checkedNamespaces = new HashSet<String>();
 
@@ -128,6 +151,15 @@ public class ComponentHelper  {
     // {tasks, types}
     private static Properties[] defaultDefinitions = new Properties[2];
 
+    /**
+     * Definitions of antlibs that consist of plain taskdefs and
+     * typedefs only, by the classloader that loads Project and the
+     * antlib URI.  Each definition is stored as name, classname,
+     * adapter and adaptto classname.
+     */
+    private static final Map<ClassLoader, Map<String, List<String[]>>> ANTLIB_INDEX =
+        new WeakHashMap<ClassLoader, Map<String, List<String[]>>>();
+
      /**
      * Get the project.
      * @return the project owner of this helper.
@@ -227,12 +259,21 @@ public class ComponentHelper  {
      * @param helper the component helper of the parent project.
      */
     public void initSubProject(ComponentHelper helper) {
-        // add the types of the parent project
-        @SuppressWarnings("unchecked")
-        final Hashtable<String, AntTypeDefinition> typeTable = (Hashtable<String, AntTypeDefinition>) helper.antTypeTable.clone();
-        synchronized (antTypeTable) {
-            for (AntTypeDefinition def : typeTable.values()) {
-                antTypeTable.put(def.getName(), def);
+        // add the types of the parent project, this doesn't copy
+        // anything unless this project has definitions of its own
+        Hashtable<String, AntTypeDefinition> parentTable;
+        synchronized (helper.antTypeTableLock) {
+            parentTable = helper.antTypeTable;
+            helper.antTypeTableShared = true;
+            lazyDefaults = helper.lazyDefaults;
+            defaultsMaterialized = helper.defaultsMaterialized;
+        }
+        synchronized (antTypeTableLock) {
+            if (antTypeTable.isEmpty()) {
+                antTypeTable = parentTable;
+                antTypeTableShared = true;
+            } else {
+                writableAntTypeTable().putAll(parentTable);
             }
         }
         // add the parsed namespaces of the parent project
@@ -305,17 +346,50 @@ public class ComponentHelper  {
      */
     public AntTypeDefinition getDefinition(String componentName) {
         checkNamespace(componentName);
-        return antTypeTable.get(componentName);
+        AntTypeDefinition def = antTypeTable.get(componentName);
+        if (def == null) {
+            DefaultDefinitions defaults = lazyDefaults;
+            if (defaults != null) {
+                def = defaults.get(componentName);
+            }
+        }
+        return def;
     }
 
     /**
      * This method is initialization code implementing the original ant component
      * loading from /org/apache/tools/ant/taskdefs/default.properties
      * and /org/apache/tools/ant/types/default.properties.
+     *
+     * <p>Since Ant 1.9.1 the definitions are only created when they
+     * are looked up for the first time.</p>
      */
     public void initDefaultDefinitions() {
-        initTasks();
-        initTypes();
+        DefaultDefinitions defaults = new DefaultDefinitions(getClassLoader(null));
+        synchronized (antTypeTableLock) {
+            lazyDefaults = defaults;
+            defaultsMaterialized = false;
+            rebuildTaskClassDefinitions = true;
+            rebuildTypeClassDefinitions = true;
+        }
+    }
+
+    /**
+     * Adds the default definitions that haven't been used so far to
+     * antTypeTable, for methods that need to see all definitions.
+     */
+    private void materializeDefaults() {
+        synchronized (antTypeTableLock) {
+            if (lazyDefaults == null || defaultsMaterialized) {
+                return;
+            }
+            for (String name : lazyDefaults.getNames()) {
+                if (!antTypeTable.containsKey(name)) {
+                    writableAntTypeTable().put(name, lazyDefaults.get(name));
+                }
+            }
+            defaultsMaterialized = true;
+        }
     }
 
     /**
@@ -394,8 +468,9 @@ public class ComponentHelper  {
      *         (String to Class).
      */
     public Hashtable<String, Class<?>> getTaskDefinitions() {
+        materializeDefaults();
         synchronized (taskClassDefinitions) {
-            synchronized (antTypeTable) {
+            synchronized (antTypeTableLock) {
                 if (rebuildTaskClassDefinitions) {
                     taskClassDefinitions.clear();
                     for (Map.Entry<String, AntTypeDefinition> e : antTypeTable.entrySet()) {
@@ -422,8 +497,9 @@ public class ComponentHelper  {
      *         (String to Class).
      */
     public Hashtable<String, Class<?>> getDataTypeDefinitions() {
+        materializeDefaults();
         synchronized (typeClassDefinitions) {
-            synchronized (antTypeTable) {
+            synchronized (antTypeTableLock) {
                 if (rebuildTypeClassDefinitions) {
                     typeClassDefinitions.clear();
                     for (Map.Entry<String, AntTypeDefinition> e : antTypeTable.entrySet()) {
@@ -500,6 +576,22 @@ public class ComponentHelper  {
      *         (String to {@link AntTypeDefinition}).
      */
     public Hashtable<String, AntTypeDefinition> getAntTypeTable() {
+        materializeDefaults();
+        synchronized (antTypeTableLock) {
+            // don't hand out a table another project may see
+            return writableAntTypeTable();
+        }
+    }
+
+    /**
+     * antTypeTable, copied first if it is shared with another
+     * project.  Must be called while holding antTypeTableLock.
+     */
+    private Hashtable<String, AntTypeDefinition> writableAntTypeTable() {
+        if (antTypeTableShared) {
+            antTypeTable = new Hashtable<String, AntTypeDefinition>(antTypeTable);
+            antTypeTableShared = false;
+        }
         return antTypeTable;
     }
 
@@ -613,7 +705,8 @@ public class ComponentHelper  {
         //      but this is for logging only...
         Class<?> elementClass = o.getClass();
         String elementClassname = elementClass.getName();
-        synchronized (antTypeTable) {
+        DefaultDefinitions defaults;
+        synchronized (antTypeTableLock) {
             for (AntTypeDefinition def : antTypeTable.values()) {
                 if (elementClassname.equals(def.getClassName())
                         && (elementClass == def.getExposedClass(project))) {
@@ -621,6 +714,17 @@ public class ComponentHelper  {
                     return brief ? name : "The <" + name + "> type";
                 }
             }
+            defaults = defaultsMaterialized ? null : lazyDefaults;
+        }
+        if (defaults != null) {
+            for (String name : defaults.getNames(elementClassname)) {
+                if (antTypeTable.containsKey(name)) {
+                    continue;
+                }
+                if (elementClass == defaults.get(name).getExposedClass(project)) {
+                    return brief ? name : "The <" + name + "> type";
+                }
+            }
         }
         return getUnmappedElementName(o.getClass(), brief);
     }
@@ -709,10 +813,13 @@ public class ComponentHelper  {
      */
     private void updateDataTypeDefinition(AntTypeDefinition def) {
         String name = def.getName();
-        synchronized (antTypeTable) {
+        synchronized (antTypeTableLock) {
             rebuildTaskClassDefinitions = true;
             rebuildTypeClassDefinitions = true;
-            final AntTypeDefinition old = antTypeTable.get(name);
+            AntTypeDefinition old = antTypeTable.get(name);
+            if (old == null && lazyDefaults != null) {
+                old = lazyDefaults.get(name);
+            }
             if (old != null) {
                 if (sameDefinition(def, old)) {
                     return;
@@ -724,7 +831,7 @@ public class ComponentHelper  {
                         project)) ? Project.MSG_VERBOSE : Project.MSG_WARN);
             }
             project.log(" +Datatype " + name + " " + def.getClassName(), Project.MSG_DEBUG);
-            antTypeTable.put(name, def);
+            writableAntTypeTable().put(name, def);
         }
     }
 
@@ -752,26 +859,6 @@ public class ComponentHelper  {
         antLibCurrentUri = (antLibStack.size() == 0) ? null : (String) antLibStack.peek();
     }
 
-    /**
-     * Load ant's tasks.
-     */
-    private void initTasks() {
-        ClassLoader classLoader = getClassLoader(null);
-        Properties props = getDefaultDefinitions(false);
-        Enumeration<?> e = props.propertyNames();
-        while (e.hasMoreElements()) {
-            String name = (String) e.nextElement();
-            String className = props.getProperty(name);
-            AntTypeDefinition def = new AntTypeDefinition();
-            def.setName(name);
-            def.setClassName(className);
-            def.setClassLoader(classLoader);
-            def.setAdaptToClass(Task.class);
-            def.setAdapterClass(TaskAdapter.class);
-            antTypeTable.put(name, def);
-        }
-    }
-
     private ClassLoader getClassLoader(ClassLoader classLoader) {
         String buildSysclasspath = project.getProperty(MagicNames.BUILD_SYSCLASSPATH);
         if (project.getCoreLoader() != null
@@ -815,24 +902,6 @@ public class ComponentHelper  {
         return defaultDefinitions[idx];
     }
 
-    /**
-     * Load ant's datatypes.
-     */
-    private void initTypes() {
-        ClassLoader classLoader = getClassLoader(null);
-        Properties props = getDefaultDefinitions(true);
-        Enumeration<?> e = props.propertyNames();
-        while (e.hasMoreElements()) {
-            String name = (String) e.nextElement();
-            String className = props.getProperty(name);
-            AntTypeDefinition def = new AntTypeDefinition();
-            def.setName(name);
-            def.setClassName(className);
-            def.setClassLoader(classLoader);
-            antTypeTable.put(name, def);
-        }
-    }
-
     /**
      * Called for each component name, check if the
      * associated URI has been examined for antlibs.
@@ -852,7 +921,7 @@ public class ComponentHelper  {
         }
         checkedNamespaces.add(uri);
 
-        if (antTypeTable.size() == 0) {
+        if (lazyDefaults == null && antTypeTable.isEmpty()) {
             // Project instance doesn't know the tasks and types
             // defined in defaults.properties, likely created by the
             // user - without those definitions it cannot parse antlib
@@ -870,7 +939,139 @@ public class ComponentHelper  {
         definer.setResource(Definer.makeResourceFromURI(uri));
         // a fishing expedition :- ignore errors if antlib not present
         definer.setOnError(new Typedef.OnError(Typedef.OnError.POLICY_IGNORE));
+        // with a shared loader or a core loader the classes of an
+        // antlib may differ between projects, Ant's own antlib
+        // defines components outside of its namespace
+        boolean useIndex = !ProjectHelper.ANT_CORE_URI.equals(uri)
+            && project.getCoreLoader() == null
+            && project.getProperty(MagicNames.REFID_CLASSPATH_REUSE_LOADER) == null;
+        if (useIndex && defineFromAntlibIndex(uri)) {
+            return;
+        }
+        Set<String> existing = getNamesInNamespace(uri);
         definer.execute();
+        if (useIndex && existing.isEmpty()) {
+            addToAntlibIndex(uri);
+        }
+    }
+
+    /**
+     * The names of all definitions in a namespace.
+     */
+    private Set<String> getNamesInNamespace(String uri) {
+        String prefix = uri + ":";
+        Set<String> names = new HashSet<String>();
+        synchronized (antTypeTableLock) {
+            for (String name : antTypeTable.keySet()) {
+                if (name.startsWith(prefix)) {
+                    names.add(name);
+                }
+            }
+        }
+        synchronized (restrictedDefinitions) {
+            for (String name : restrictedDefinitions.keySet()) {
+                if (name.startsWith(prefix)) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Defines the components of an antlib that has been loaded by
+     * another project before without loading the antlib again.
+     * @return false if the antlib is not in the index.
+     */
+    private boolean defineFromAntlibIndex(String uri) {
+        List<String[]> entries;
+        synchronized (ANTLIB_INDEX) {
+            Map<String, List<String[]>> m = ANTLIB_INDEX.get(project.getClass().getClassLoader());
+            entries = m == null ? null : m.get(uri);
+        }
+        if (entries == null) {
+            return false;
+        }
+        AntClassLoader loader = null;
+        for (String[] entry : entries) {
+            if (loader == null) {
+                // the same loader <typedef> would create
+                loader = project.createClassLoader(null);
+                loader.addSystemPackageRoot("org.apache.tools.ant");
+            }
+            AntTypeDefinition def = new AntTypeDefinition();
+            def.setName(entry[0]);
+            def.setClassName(entry[1]);
+            def.setClassLoader(loader);
+            try {
+                if (entry[2] != null) {
+                    def.setAdapterClass(Class.forName(entry[2], true, loader));
+                }
+                if (entry[3] != null) {
+                    def.setAdaptToClass(Class.forName(entry[3], true, loader));
+                }
+            } catch (ClassNotFoundException ex) {
+                throw new BuildException(ex);
+            }
+            updateDataTypeDefinition(def);
+        }
+        project.log("Defined " + entries.size() + " components of " + uri
+                    + " from the antlib index", Project.MSG_DEBUG);
+        return true;
+    }
+
+    /**
+     * Remembers the definitions of an antlib that has just been
+     * loaded if it only contained plain taskdefs and typedefs using
+     * the default classloader.
+     */
+    private void addToAntlibIndex(String uri) {
+        String prefix = uri + ":";
+        List<String[]> entries = new ArrayList<String[]>();
+        ClassLoader loader = null;
+        synchronized (restrictedDefinitions) {
+            for (String name : restrictedDefinitions.keySet()) {
+                if (name.startsWith(prefix)) {
+                    return;
+                }
+            }
+        }
+        synchronized (antTypeTableLock) {
+            for (AntTypeDefinition def : antTypeTable.values()) {
+                if (!def.getName().startsWith(prefix)) {
+                    continue;
+                }
+                // macrodefs, presetdefs, scriptdefs and definitions
+                // using a classpath of their own depend on the
+                // project
+                ClassLoader l = def.getClassLoader();
+                if (def.getClass() != AntTypeDefinition.class
+                    || !(l instanceof AntClassLoader)
+                    || ((AntClassLoader) l).getClasspath().length() > 0
+                    || (loader != null && l != loader)) {
+                    return;
+                }
+                loader = l;
+                entries.add(new String[] {
+                        def.getName(), def.getClassName(),
+                        getClassName(def.getAdapterClass()),
+                        getClassName(def.getAdaptToClass())
+                    });
+            }
+        }
+        synchronized (ANTLIB_INDEX) {
+            ClassLoader key = project.getClass().getClassLoader();
+            Map<String, List<String[]>> m = ANTLIB_INDEX.get(key);
+            if (m == null) {
+                m = new HashMap<String, List<String[]>>();
+                ANTLIB_INDEX.put(key, m);
+            }
+            m.put(uri, entries);
+        }
+    }
+
+    private static String getClassName(Class<?> c) {
+        return c == null ? null : c.getName();
     }
 
     /**
@@ -1087,8 +1288,9 @@ public class ComponentHelper  {
      * @return the (possibly empty) list of definitions
      */
     private List<AntTypeDefinition> findTypeMatches(String prefix) {
+        materializeDefaults();
         final List<AntTypeDefinition> result = new ArrayList<AntTypeDefinition>();
-        synchronized (antTypeTable) {
+        synchronized (antTypeTableLock) {
             for (AntTypeDefinition def : antTypeTable.values()) {
                 if (def.getName().startsWith(prefix)) {
                     result.add(def);
@@ -1097,4 +1299,82 @@ public class ComponentHelper  {
         }
         return result;
     }
+
+    /**
+     * The definitions of defaults.properties, each of them is only
+     * created when it is looked up for the first time.
+     */
+    private static final class DefaultDefinitions {
+        private final ClassLoader classLoader;
+        private final Properties tasks = getDefaultDefinitions(false);
+        private final Properties types = getDefaultDefinitions(true);
+        private final Map<String, AntTypeDefinition> created =
+            new ConcurrentHashMap<String, AntTypeDefinition>();
+
+        private DefaultDefinitions(ClassLoader classLoader) {
+            this.classLoader = classLoader;
+        }
+
+        /**
+         * The definition of the given name.
+         * @return the definition or null if there is no default of
+         * this name.
+         */
+        private AntTypeDefinition get(String name) {
+            AntTypeDefinition def = created.get(name);
+            if (def != null) {
+                return def;
+            }
+            // types used to be registered last and thus win
+            String className = types.getProperty(name);
+            boolean task = false;
+            if (className == null) {
+                className = tasks.getProperty(name);
+                if (className == null) {
+                    return null;
+                }
+                task = true;
+            }
+            def = new AntTypeDefinition();
+            def.setName(name);
+            def.setClassName(className);
+            def.setClassLoader(classLoader);
+            if (task) {
+                def.setAdaptToClass(Task.class);
+                def.setAdapterClass(TaskAdapter.class);
+            }
+            synchronized (created) {
+                AntTypeDefinition other = created.get(name);
+                if (other != null) {
+                    return other;
+                }
+                created.put(name, def);
+            }
+            return def;
+        }
+
+        /**
+         * The names of all definitions.
+         */
+        private Set<String> getNames() {
+            return getNames(null);
+        }
+
+        /**
+         * The names of all definitions of the given class.
+         * @param className the class name, null for any class.
+         */
+        private Set<String> getNames(String className) {
+            Set<String> names = new HashSet<String>();
+            for (Properties p : new Properties[] {tasks, types}) {
+                for (Enumeration<?> e = p.propertyNames(); e.hasMoreElements();) {
+                    String name = (String) e.nextElement();
+                    if (className == null || className.equals(p.getProperty(name))) {
+                        names.add(name);
+                    }
+                }
+            }
+            return names;
+        }
+    }
 }
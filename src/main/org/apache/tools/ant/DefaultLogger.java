@@ -35,7 +35,7 @@ import org.apache.tools.ant.util.FileUtils;
  * any messages that get logged.
  *
  */
-public class DefaultLogger implements BuildLogger {
+public class DefaultLogger implements BuildLogger, FilteringBuildListener {
     /**
      * Size of left-hand column for right-justified task name.
      * @see #messageLogged(BuildEvent)
@@ -55,6 +55,9 @@ public class DefaultLogger implements BuildLogger {
     /** Time of the start of the build */
     private long startTime = System.currentTimeMillis();
 
+    /** class declaring the messageLogged method of this instance */
+    private Class<?> messageLoggedDeclarer;
+
     // CheckStyle:ConstantNameCheck OFF - bc
     /** Line separator */
     protected static final String lSep = StringUtils.LINE_SEP;
@@ -91,6 +94,42 @@ public class DefaultLogger implements BuildLogger {
         this.msgOutputLevel = level;
     }
 
+    /**
+     * The highest level of message this logger responds to.
+     *
+     * <p>Subclasses that override {@link #messageLogged
+     * messageLogged} may want to see messages they don't print, so
+     * for them this is <code>MSG_DEBUG</code>.</p>
+     *
+     * @return the logging level for the logger.
+     * @since Ant 1.9.1
+     */
+    public int getMessageOutputLevel() {
+        return isMessageLoggedDeclaredBy(DefaultLogger.class)
+            ? msgOutputLevel : Project.MSG_DEBUG;
+    }
+
+    /**
+     * Whether the messageLogged method of this instance is declared
+     * by the given class.
+     * @param c the class.
+     * @return true if c declares the method.
+     * @since Ant 1.9.1
+     */
+    protected final boolean isMessageLoggedDeclaredBy(Class<?> c) {
+        if (messageLoggedDeclarer == null) {
+            try {
+                messageLoggedDeclarer = getClass()
+                    .getMethod("messageLogged", new Class[] {BuildEvent.class})
+                    .getDeclaringClass();
+            } catch (NoSuchMethodException e) {
+                // BuildListener declares it
+                messageLoggedDeclarer = DefaultLogger.class;
+            }
+        }
+        return messageLoggedDeclarer == c;
+    }
+
     /**
      * Sets the output stream to which this logger is to send its output.
      *
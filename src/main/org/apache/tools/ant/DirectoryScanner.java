@@ -25,10 +25,18 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.tools.ant.taskdefs.condition.Os;
 import org.apache.tools.ant.types.Resource;
@@ -39,7 +47,9 @@ import org.apache.tools.ant.types.selectors.SelectorScanner;
 import org.apache.tools.ant.types.selectors.SelectorUtils;
 import org.apache.tools.ant.types.selectors.TokenizedPath;
 import org.apache.tools.ant.types.selectors.TokenizedPattern;
+import org.apache.tools.ant.util.AttributeCachingFile;
 import org.apache.tools.ant.util.CollectionUtils;
+import org.apache.tools.ant.util.DirectoryIndex;
 import org.apache.tools.ant.util.FileUtils;
 import org.apache.tools.ant.util.SymbolicLinkUtils;
 import org.apache.tools.ant.util.VectorSet;
@@ -424,6 +434,37 @@ public class DirectoryScanner
      */
     private Set<String> notFollowedSymlinks = new HashSet<String>();
 
+    /**
+     * Index of directory listings used instead of listing directories
+     * again, may be null.
+     *
+     * @since Ant 1.9.1
+     */
+    private DirectoryIndex index;
+
+    /**
+     * Directories the results of the last scan depend upon, only
+     * recorded if not null.
+     *
+     * @since Ant 1.9.1
+     */
+    private Set<File> dependencyDirs;
+
+    /**
+     * Number of threads used to list directories.
+     *
+     * @since Ant 1.9.1
+     */
+    private int threads = 1;
+
+    /**
+     * Lists directories ahead of the scan, only set while a scan
+     * with more than one thread is running.
+     *
+     * @since Ant 1.9.1
+     */
+    private ParallelLister lister;
+
     /**
      * Sole constructor.
      */
@@ -706,6 +747,104 @@ public class DirectoryScanner
         maxLevelsOfSymlinks = max;
     }
 
+    /**
+     * Set the index of directory listings to use.  Directories whose
+     * listing in the index is still valid are not listed again.
+     *
+     * @param index the index, may be null.
+     * @since Ant 1.9.1
+     */
+    public synchronized void setIndex(DirectoryIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Set the number of threads used to list directories.
+     *
+     * <p>With more than one thread the subdirectories the scan is
+     * going to descend into are listed in the background while the
+     * current directory is processed.  Matching and the order of the
+     * results are the same as with a single thread.</p>
+     *
+     * @param threads the number of threads, values below 2 disable
+     * parallel listing.
+     * @since Ant 1.9.1
+     */
+    public synchronized void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Set whether the scanner records the directories the result of
+     * a scan depends upon.
+     *
+     * @param record whether to record the directories.
+     * @see #getDependencyDirectories
+     * @since Ant 1.9.1
+     */
+    public synchronized void setRecordDependencyDirectories(boolean record) {
+        dependencyDirs = record ? new LinkedHashSet<File>() : null;
+    }
+
+    /**
+     * Returns the directories whose contents have been consulted
+     * during the last scan - the result cannot change unless an entry
+     * is added to, removed from or renamed inside one of them.
+     *
+     * @return the directories or null if they have not been recorded.
+     * @since Ant 1.9.1
+     */
+    public synchronized File[] getDependencyDirectories() {
+        return dependencyDirs == null ? null
+            : dependencyDirs.toArray(new File[dependencyDirs.size()]);
+    }
+
+    /**
+     * Takes over the results of another scanner's last scan instead
+     * of scanning again.
+     *
+     * <p>The other scanner must have been configured like this one
+     * and must have completed a scan.  Both scanners can be used
+     * and scanned again independently afterwards.</p>
+     *
+     * @param other the scanner to copy the results from.
+     * @since Ant 1.9.1
+     */
+    public void copyResultsFrom(DirectoryScanner other) {
+        DirectoryScanner copy = new DirectoryScanner();
+        synchronized (other) {
+            if (other.filesIncluded == null) {
+                throw new IllegalStateException("Must call scan() first");
+            }
+            copy.filesIncluded = new VectorSet<String>(other.filesIncluded);
+            copy.filesNotIncluded = new VectorSet<String>(other.filesNotIncluded);
+            copy.filesExcluded = new VectorSet<String>(other.filesExcluded);
+            copy.filesDeselected = new VectorSet<String>(other.filesDeselected);
+            copy.dirsIncluded = new VectorSet<String>(other.dirsIncluded);
+            copy.dirsNotIncluded = new VectorSet<String>(other.dirsNotIncluded);
+            copy.dirsExcluded = new VectorSet<String>(other.dirsExcluded);
+            copy.dirsDeselected = new VectorSet<String>(other.dirsDeselected);
+            copy.haveSlowResults = other.haveSlowResults;
+            copy.everythingIncluded = other.everythingIncluded;
+            copy.scannedDirs.addAll(other.scannedDirs);
+            copy.notFollowedSymlinks.addAll(other.notFollowedSymlinks);
+        }
+        synchronized (this) {
+            filesIncluded = copy.filesIncluded;
+            filesNotIncluded = copy.filesNotIncluded;
+            filesExcluded = copy.filesExcluded;
+            filesDeselected = copy.filesDeselected;
+            dirsIncluded = copy.dirsIncluded;
+            dirsNotIncluded = copy.dirsNotIncluded;
+            dirsExcluded = copy.dirsExcluded;
+            dirsDeselected = copy.dirsDeselected;
+            haveSlowResults = copy.haveSlowResults;
+            everythingIncluded = copy.everythingIncluded;
+            scannedDirs = copy.scannedDirs;
+            notFollowedSymlinks = copy.notFollowedSymlinks;
+        }
+    }
+
     /**
      * Set the list of include patterns to use. All '/' and '\' characters
      * are replaced by <code>File.separatorChar</code>, so the separator used
@@ -862,6 +1001,13 @@ public class DirectoryScanner
                 boolean nullExcludes = (excludes == null);
                 excludes = nullExcludes ? new String[0] : excludes;
 
+                if (dependencyDirs != null && basedir != null
+                    && !basedir.isDirectory()) {
+                    // the directory might get created
+                    dependencyDirs.add(basedir.getAbsoluteFile()
+                                       .getParentFile());
+                }
+
                 if (basedir != null && !followSymlinks
                     && SYMLINK_UTILS.isSymbolicLink(basedir)) {
                     notFollowedSymlinks.add(basedir.getAbsolutePath());
@@ -906,6 +1052,9 @@ public class DirectoryScanner
                 } else {
                     dirsNotIncluded.addElement("");
                 }
+                if (threads > 1) {
+                    lister = new ParallelLister(threads, index);
+                }
                 checkIncludePatterns();
                 clearCaches();
                 includes = nullIncludes ? null : includes;
@@ -915,6 +1064,10 @@ public class DirectoryScanner
             throw new BuildException(ex);
         } finally {
             basedir = savedBase;
+            if (lister != null) {
+                lister.shutdown();
+                lister = null;
+            }
             synchronized (scanLock) {
                 scanning = false;
                 scanLock.notifyAll();
@@ -970,6 +1123,18 @@ public class DirectoryScanner
                     continue;
                 }
                 File myfile = new File(basedir, currentelement);
+                if (dependencyDirs != null) {
+                    // existence of myfile is decided by its parent,
+                    // the parent's existence by the grandparent...
+                    for (File f = myfile.getParentFile();
+                         f != null && !f.equals(basedir);
+                         f = f.getParentFile()) {
+                        dependencyDirs.add(f);
+                    }
+                    if (basedir != null) {
+                        dependencyDirs.add(basedir);
+                    }
+                }
 
                 if (myfile.exists()) {
                     // may be on a case insensitive file system.  We want
@@ -1075,6 +1240,9 @@ public class DirectoryScanner
         everythingIncluded = (basedir != null);
         scannedDirs.clear();
         notFollowedSymlinks.clear();
+        if (dependencyDirs != null) {
+            dependencyDirs.clear();
+        }
     }
 
     /**
@@ -1192,7 +1360,7 @@ public class DirectoryScanner
         if (dir == null) {
             throw new BuildException("dir must not be null.");
         }
-        String[] newfiles = dir.list();
+        String[] newfiles = list(dir);
         if (newfiles == null) {
             if (!dir.exists()) {
                 throw new BuildException(dir + DOES_NOT_EXIST_POSTFIX);
@@ -1217,8 +1385,11 @@ public class DirectoryScanner
         if (fast && hasBeenScanned(vpath)) {
             return;
         }
+        // whether the entries are directories if the index knows it
+        boolean[] knownDirs = getKnownDirs(dir, newfiles);
         if (!followSymlinks) {
             ArrayList<String> noLinks = new ArrayList<String>();
+            int kept = 0;
             for (int i = 0; i < newfiles.length; i++) {
                 try {
                     if (SYMLINK_UTILS.isSymbolicLink(dir, newfiles[i])) {
@@ -1229,28 +1400,47 @@ public class DirectoryScanner
                         if (!isExcluded(name)) {
                             notFollowedSymlinks.add(file.getAbsolutePath());
                         }
-                    } else {
-                        noLinks.add(newfiles[i]);
+                        continue;
                     }
                 } catch (IOException ioe) {
                     String msg = "IOException caught while checking "
                         + "for links, couldn't get canonical path!";
                     // will be caught and redirected to Ant's logging system
                     System.err.println(msg);
-                    noLinks.add(newfiles[i]);
                 }
+                noLinks.add(newfiles[i]);
+                if (knownDirs != null) {
+                    knownDirs[kept] = knownDirs[i];
+                }
+                kept++;
             }
             newfiles = (String[]) (noLinks.toArray(new String[noLinks.size()]));
         } else {
             directoryNamesFollowed.addFirst(dir.getName());
         }
 
+        if (lister != null && knownDirs != null) {
+            // start listing the directories we are going to descend into
+            for (int i = 0; i < newfiles.length; i++) {
+                if (knownDirs[i]) {
+                    TokenizedPath newPath = new TokenizedPath(path, newfiles[i]);
+                    if (!fast || (couldHoldIncluded(newPath)
+                                  && !contentsExcluded(newPath))) {
+                        lister.prefetch(new File(dir, newfiles[i]));
+                    }
+                }
+            }
+        }
+
         for (int i = 0; i < newfiles.length; i++) {
             String name = vpath + newfiles[i];
             TokenizedPath newPath = new TokenizedPath(path, newfiles[i]);
             File file = new File(dir, newfiles[i]);
-            String[] children = file.list();
-            if (children == null || (children.length == 0 && file.isFile())) {
+            boolean knownDir = knownDirs != null && knownDirs[i];
+            String[] children = knownDirs != null && !knownDir
+                ? null : list(file);
+            if (children == null
+                || (children.length == 0 && !knownDir && file.isFile())) {
                 if (isIncluded(newPath)) {
                     accountForIncludedFile(newPath, file);
                 } else {
@@ -1294,6 +1484,51 @@ public class DirectoryScanner
         }
     }
 
+    /**
+     * Lists the given directory, using the index if there is one.
+     * @return the names of the directory's children or null if it
+     * could not be listed.
+     */
+    private String[] list(File dir) {
+        String[] names;
+        if (lister != null) {
+            DirectoryIndex.Listing l = lister.list(dir);
+            names = l == null ? null : l.getNames();
+        } else if (index == null) {
+            names = dir.list();
+        } else {
+            DirectoryIndex.Listing l = index.list(dir);
+            names = l == null ? null : l.getNames();
+        }
+        if (names != null && dependencyDirs != null) {
+            dependencyDirs.add(dir);
+        }
+        return names;
+    }
+
+    /**
+     * Which of the given children of a directory are directories
+     * themselves, as far as the index knows.
+     * @return null unless the index holds the listing the names
+     * have been taken from.
+     */
+    private boolean[] getKnownDirs(File dir, String[] names) {
+        DirectoryIndex.Listing l = null;
+        if (lister != null) {
+            l = lister.getKnownListing(dir);
+        } else if (index != null) {
+            l = index.getKnownListing(dir);
+        }
+        if (l == null || l.getNames() != names) {
+            return null;
+        }
+        boolean[] dirs = new boolean[names.length];
+        for (int i = 0; i < names.length; i++) {
+            dirs[i] = l.isDirectory(i);
+        }
+        return dirs;
+    }
+
     /**
      * Process included file.
      * @param name  path of the file relative to the directory of the FileSet.
@@ -1538,6 +1773,11 @@ public class DirectoryScanner
      */
     protected boolean isSelected(String name, File file) {
         if (selectors != null) {
+            if (selectors.length > 0 && AttributeCachingFile.isSupported()
+                && !(file instanceof AttributeCachingFile)) {
+                // selectors are likely to ask for several attributes
+                file = new AttributeCachingFile(file);
+            }
             for (int i = 0; i < selectors.length; i++) {
                 if (!selectors[i].isSelected(basedir, name, file)) {
                     return false;
@@ -1882,4 +2122,94 @@ public class DirectoryScanner
         }
     }
 
+    /**
+     * Lists directories on a pool of worker threads.
+     *
+     * <p>Only used by the scanning thread, the workers just create
+     * the listings.</p>
+     *
+     * @since Ant 1.9.1
+     */
+    private static class ParallelLister {
+        private final ExecutorService pool;
+        private final DirectoryIndex index;
+        private final Map<File, Future<DirectoryIndex.Listing>> listings =
+            new HashMap<File, Future<DirectoryIndex.Listing>>();
+
+        ParallelLister(int threads, DirectoryIndex index) {
+            this.index = index;
+            pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "DirectoryScanner lister");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+
+        /**
+         * Starts listing the given directory in the background.
+         */
+        void prefetch(File dir) {
+            if (!listings.containsKey(dir)) {
+                listings.put(dir, pool.submit(new ListTask(dir)));
+            }
+        }
+
+        /**
+         * Lists the given directory, waiting for a background task
+         * if there is one.
+         */
+        DirectoryIndex.Listing list(File dir) {
+            Future<DirectoryIndex.Listing> f = listings.get(dir);
+            if (f == null) {
+                FutureTask<DirectoryIndex.Listing> t =
+                    new FutureTask<DirectoryIndex.Listing>(new ListTask(dir));
+                t.run();
+                listings.put(dir, t);
+                f = t;
+            }
+            return get(f);
+        }
+
+        /**
+         * The listing of the given directory if it has already been
+         * created.
+         */
+        DirectoryIndex.Listing getKnownListing(File dir) {
+            Future<DirectoryIndex.Listing> f = listings.get(dir);
+            return f != null && f.isDone() ? get(f) : null;
+        }
+
+        void shutdown() {
+            pool.shutdownNow();
+        }
+
+        private static DirectoryIndex.Listing get(Future<DirectoryIndex.Listing> f) {
+            try {
+                return f.get();
+            } catch (InterruptedException ex) {
+                throw new BuildException("Interrupted while scanning", ex);
+            } catch (ExecutionException ex) {
+                Throwable t = ex.getCause();
+                if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                }
+                throw new BuildException(t);
+            }
+        }
+
+        private class ListTask implements Callable<DirectoryIndex.Listing> {
+            private final File dir;
+
+            ListTask(File dir) {
+                this.dir = dir;
+            }
+
+            public DirectoryIndex.Listing call() {
+                return index == null ? DirectoryIndex.read(dir)
+                    : index.list(dir);
+            }
+        }
+    }
 }
@@ -0,0 +1,45 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant;
+
+/**
+ * Instances of classes that implement this interface ignore
+ * messages below a certain priority.
+ *
+ * <p>If none of the listeners of a project is interested in
+ * messages of a given priority, the project doesn't dispatch them
+ * and tasks may avoid creating them in the first place.  Listeners
+ * that don't implement this interface receive all messages.</p>
+ *
+ * @see Project#isLoggable(int)
+ *
+ * @since Ant 1.9.1
+ */
+public interface FilteringBuildListener extends BuildListener {
+
+    /**
+     * The least important priority of messages this listener
+     * processes, messages with a priority value bigger than that are
+     * ignored.
+     *
+     * <p>The value may change while the listener is registered.</p>
+     *
+     * @return one of the MSG_* constants of {@link Project}.
+     */
+    int getMessageOutputLevel();
+}
@@ -87,29 +87,36 @@ public final class IntrospectionHelper {
     private static final int MAX_REPORT_NESTED_TEXT = 20;
     private static final String ELLIPSIS = "...";
 
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /*
+     * The maps below are only modified by the constructor, instances
+     * are read by many threads at once and don't need to lock.
+     */
+
     /**
      * Map from attribute names to attribute types
      * (String to Class).
      */
-    private final Hashtable<String, Class<?>> attributeTypes = new Hashtable<String, Class<?>>();
+    private final Map<String, Class<?>> attributeTypes = new HashMap<String, Class<?>>();
 
     /**
      * Map from attribute names to attribute setter methods
      * (String to AttributeSetter).
      */
-    private final Hashtable<String, AttributeSetter> attributeSetters = new Hashtable<String, AttributeSetter>();
+    private final Map<String, AttributeSetter> attributeSetters = new HashMap<String, AttributeSetter>();
 
     /**
      * Map from attribute names to nested types
      * (String to Class).
      */
-    private final Hashtable<String, Class<?>> nestedTypes = new Hashtable<String, Class<?>>();
+    private final Map<String, Class<?>> nestedTypes = new HashMap<String, Class<?>>();
 
     /**
      * Map from attribute names to methods to create nested types
      * (String to NestedCreator).
      */
-    private final Hashtable<String, NestedCreator> nestedCreators = new Hashtable<String, NestedCreator>();
+    private final Map<String, NestedCreator> nestedCreators = new HashMap<String, NestedCreator>();
 
     /**
      * Vector of methods matching add[Configured](Class) pattern.
@@ -940,7 +947,7 @@ public final class IntrospectionHelper {
      * @see #getAttributeMap
      */
     public Enumeration<String> getAttributes() {
-        return attributeSetters.keys();
+        return Collections.enumeration(attributeSetters.keySet());
     }
 
     /**
@@ -964,7 +971,7 @@ public final class IntrospectionHelper {
      * @see #getNestedElementMap
      */
     public Enumeration<String> getNestedElements() {
-        return nestedTypes.keys();
+        return Collections.enumeration(nestedTypes.keySet());
     }
 
     /**
@@ -1137,6 +1144,10 @@ public final class IntrospectionHelper {
         if (setter != null) {
             return setter;
         }
+        setter = getNumberSetter(reflectedArg, m, arg, attrName);
+        if (setter != null) {
+            return setter;
+        }
 
         if (java.lang.Long.class.equals(reflectedArg)) {
             return new AttributeSetter(m, arg) {
@@ -1181,6 +1192,9 @@ public final class IntrospectionHelper {
         }
         final boolean finalIncludeProject = includeProject;
         final Constructor<?> finalConstructor = c;
+        // saves Project.setProjectReference from looking for a
+        // setProject method each time
+        final boolean setProject = hasSetProjectMethod(reflectedArg);
 
         return new AttributeSetter(m, arg) {
             public void set(Project p, Object parent, String value)
@@ -1190,19 +1204,14 @@ public final class IntrospectionHelper {
                             ? new Object[] {p, value} : new Object[] {value};
 
                     Object attribute = finalConstructor.newInstance(args);
-                    if (p != null) {
+                    if (p != null && setProject) {
                         p.setProjectReference(attribute);
                     }
                     m.invoke(parent, new Object[] {attribute});
                 } catch (InvocationTargetException e) {
                     Throwable cause = e.getCause();
                     if (cause instanceof IllegalArgumentException) {
-                        throw new BuildException("Can't assign value '" + value
-                                                 + "' to attribute " + attrName
-                                                 + ", reason: "
-                                                 + cause.getClass()
-                                                 + " with message '"
-                                                 + cause.getMessage() + "'");
+                        throw cannotAssign(value, attrName, cause);
                     }
                     throw e;
                 } catch (InstantiationException ie) {
@@ -1238,6 +1247,87 @@ public final class IntrospectionHelper {
         return null;
     }
 
+    /**
+     * Creates a setter for the wrappers of byte, short, int, float
+     * and double that parses the value directly rather than invoking
+     * the wrapper's String constructor reflectively.
+     */
+    private AttributeSetter getNumberSetter(
+        final Class<?> reflectedArg, final Method m, Class<?> arg,
+        final String attrName) {
+        if (!Byte.class.equals(reflectedArg)
+            && !Short.class.equals(reflectedArg)
+            && !Integer.class.equals(reflectedArg)
+            && !Float.class.equals(reflectedArg)
+            && !Double.class.equals(reflectedArg)) {
+            return null;
+        }
+        return new AttributeSetter(m, arg) {
+            public void set(Project p, Object parent, String value)
+                throws InvocationTargetException, IllegalAccessException,
+                BuildException {
+                Number n;
+                try {
+                    if (Integer.class.equals(reflectedArg)) {
+                        n = Integer.valueOf(value);
+                    } else if (Double.class.equals(reflectedArg)) {
+                        n = Double.valueOf(value);
+                    } else if (Float.class.equals(reflectedArg)) {
+                        n = Float.valueOf(value);
+                    } else if (Short.class.equals(reflectedArg)) {
+                        n = Short.valueOf(value);
+                    } else {
+                        n = Byte.valueOf(value);
+                    }
+                } catch (NumberFormatException e) {
+                    // same message as for other types with a String
+                    // constructor
+                    throw cannotAssign(value, attrName, e);
+                }
+                try {
+                    m.invoke(parent, new Object[] {n});
+                } catch (InvocationTargetException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IllegalArgumentException) {
+                        throw cannotAssign(value, attrName, cause);
+                    }
+                    throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * The exception thrown if a String constructor or setter rejects
+     * the value of an attribute with an IllegalArgumentException.
+     */
+    private static BuildException cannotAssign(String value, String attrName,
+                                               Throwable cause) {
+        return new BuildException("Can't assign value '" + value
+                                  + "' to attribute " + attrName
+                                  + ", reason: " + cause.getClass()
+                                  + " with message '"
+                                  + cause.getMessage() + "'");
+    }
+
+    /**
+     * Whether instances of the given class need to be passed to
+     * Project.setProjectReference.
+     */
+    private static boolean hasSetProjectMethod(Class<?> c) {
+        if (ProjectComponent.class.isAssignableFrom(c)) {
+            return true;
+        }
+        try {
+            c.getMethod("setProject", new Class[] {Project.class});
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        } catch (SecurityException e) {
+            return true;
+        }
+    }
+
     /**
      * Returns a description of the type of the given element in
      * relation to a given project. This is used for logging purposes
@@ -1409,7 +1499,7 @@ public final class IntrospectionHelper {
 
         Object create(Project project, Object parent, Object ignore)
                 throws InvocationTargetException, IllegalAccessException {
-            return getMethod().invoke(parent, new Object[] {});
+            return getMethod().invoke(parent, NO_ARGS);
         }
     }
 
@@ -1420,11 +1510,13 @@ public final class IntrospectionHelper {
         static final int ADD_CONFIGURED = 2;
 
         private Constructor<?> constructor;
+        private boolean constructorTakesProject;
         private int behavior; // ADD or ADD_CONFIGURED
 
         AddNestedCreator(Method m, Constructor<?> c, int behavior) {
             super(m);
             this.constructor = c;
+            constructorTakesProject = c.getParameterTypes().length > 0;
             this.behavior = behavior;
         }
 
@@ -1435,9 +1527,8 @@ public final class IntrospectionHelper {
         Object create(Project project, Object parent, Object child)
                 throws InvocationTargetException, IllegalAccessException, InstantiationException {
             if (child == null) {
-                child = constructor.newInstance(
-                        constructor.getParameterTypes().length == 0
-                                ? new Object[] {} : new Object[] {project});
+                child = constructor.newInstance(constructorTakesProject
+                                                ? new Object[] {project} : NO_ARGS);
             }
             if (child instanceof PreSetDef.PreSetDefinition) {
                 child = ((PreSetDef.PreSetDefinition) child).createObject(project);
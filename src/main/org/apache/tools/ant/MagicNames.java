@@ -101,6 +101,61 @@ public final class MagicNames {
      */
     public static final String ANT_EXECUTOR_CLASSNAME = "ant.executor.class";
 
+    /**
+     * Property defining the number of worker threads used by the
+     * parallel executor.
+     * Value: {@value}
+     * @since Ant 1.9.1
+     */
+    public static final String ANT_EXECUTOR_THREADS = "ant.executor.threads";
+
+    /**
+     * Property and reference name of the directory index shared by
+     * all directory scanners of a build.
+     * Value: {@value}
+     * @since Ant 1.9.1
+     */
+    public static final String SCANNER_INDEX = "ant.scanner.index";
+
+    /**
+     * Property and reference name of the cache of directory scanners
+     * shared by all filesets of a build.
+     * Value: {@value}
+     * @since Ant 1.9.1
+     */
+    public static final String SCANNER_CACHE = "ant.scanner.cache";
+
+    /**
+     * Property holding the default number of threads used by
+     * directory scanners of filesets.
+     * Value: {@value}
+     * @since Ant 1.9.1
+     */
+    public static final String SCANNER_THREADS = "ant.scanner.threads";
+
+    /**
+     * Property enabling the VM wide cache of parsed build files.
+     * Value: {@value}
+     * @since Ant 1.9.1
+     */
+    public static final String PARSER_CACHE = "ant.parser.cache";
+
+    /**
+     * Property holding the directory parsed build files are cached
+     * in across VMs.
+     * Value: {@value}
+     * @since Ant 1.9.1
+     */
+    public static final String PARSER_CACHE_DIR = "ant.parser.cache.dir";
+
+    /**
+     * Property enabling the delivery of build events to listeners on
+     * a separate thread.
+     * Value: {@value}
+     * @since Ant 1.9.1
+     */
+    public static final String ASYNC_LISTENERS = "ant.listeners.async";
+
     /**
      * property name for basedir of the project.
      * Value: {@value}
@@ -39,6 +39,7 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.Vector;
 
+import org.apache.tools.ant.helper.ParallelExecutor;
 import org.apache.tools.ant.input.DefaultInputHandler;
 import org.apache.tools.ant.input.InputHandler;
 import org.apache.tools.ant.launch.AntMain;
@@ -393,6 +394,8 @@ public class Main implements AntMain {
                 keepGoingMode = true;
             } else if (arg.equals("-nice")) {
                 i = handleArgNice(args, i);
+            } else if (arg.equals("-parallel")) {
+                i = handleArgParallel(args, i);
             } else if (LAUNCH_COMMANDS.contains(arg)) {
                 //catch script/ant mismatch with a meaningful message
                 //we could ignore it, but there are likely to be other
@@ -643,6 +646,32 @@ public class Main implements AntMain {
         return pos;
     }
 
+    /**
+     * Handle the -parallel argument: select the parallel executor and
+     * set the number of worker threads it uses.
+     */
+    private int handleArgParallel(String[] args, int pos) {
+        String threads;
+        try {
+            threads = args[++pos];
+            if (Integer.parseInt(threads) < 1) {
+                throw new BuildException(
+                    "Number of threads must be a positive number");
+            }
+        } catch (ArrayIndexOutOfBoundsException aioobe) {
+            throw new BuildException(
+                "You must supply a number of threads after the -parallel"
+                + " option");
+        } catch (NumberFormatException e) {
+            throw new BuildException("Unrecognized number of threads: "
+                                     + args[pos]);
+        }
+        definedProps.put(MagicNames.ANT_EXECUTOR_CLASSNAME,
+                         ParallelExecutor.class.getName());
+        definedProps.put(MagicNames.ANT_EXECUTOR_THREADS, threads);
+        return pos;
+    }
+
     // --------------------------------------------------------
     //    other methods
     // --------------------------------------------------------
@@ -1036,6 +1065,8 @@ public class Main implements AntMain {
         System.out.println("    -s  <file>           the filesystem and use it");
         System.out.println("  -nice  number          A niceness value for the main thread:"
                 + "                         1 (lowest) to 10 (highest); 5 is the default");
+        System.out.println("  -parallel number       execute independent targets concurrently");
+        System.out.println("                         using the given number of threads");
         System.out.println("  -nouserlib             Run ant without using the jar files from"
                 + "                         ${user.home}/.ant/lib");
         System.out.println("  -noclasspath           Run ant without using CLASSPATH");
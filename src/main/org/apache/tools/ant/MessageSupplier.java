@@ -0,0 +1,38 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant;
+
+/**
+ * Creates a log message on demand.
+ *
+ * <p>Used to avoid the cost of building messages nobody is going to
+ * see, for example verbose messages logged for each file a task
+ * processes.</p>
+ *
+ * @see ProjectComponent#log(MessageSupplier, int)
+ *
+ * @since Ant 1.9.1
+ */
+public interface MessageSupplier {
+
+    /**
+     * Creates the message.
+     * @return the message, should not be <code>null</code>.
+     */
+    String getMessage();
+}
@@ -97,4 +97,14 @@ public class NoBannerLogger extends DefaultLogger {
 
         super.messageLogged(event);
     }
+
+    /**
+     * The highest level of message this logger responds to.
+     * @return the logging level for the logger.
+     * @since Ant 1.9.1
+     */
+    public int getMessageOutputLevel() {
+        return isMessageLoggedDeclaredBy(NoBannerLogger.class)
+            ? msgOutputLevel : super.getMessageOutputLevel();
+    }
 }
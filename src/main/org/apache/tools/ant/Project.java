@@ -169,6 +169,22 @@ public class Project implements ResourceFactory {
     /** List of listeners to notify of build events. */
     private volatile BuildListener[] listeners = new BuildListener[0];
 
+    /**
+     * Delivers events asynchronously if enabled, shared with all
+     * sub-projects.
+     */
+    private volatile AsyncEventDispatcher eventDispatcher;
+
+    /** whether this project has created eventDispatcher */
+    private boolean ownsEventDispatcher;
+
+    /**
+     * whether ant.listeners.async needs to be checked again when the
+     * first target starts, properties set on the command line are
+     * only known by then
+     */
+    private volatile boolean checkAsyncListeners;
+
     /** for each thread, record whether it is currently executing
         messageLogged */
     private final ThreadLocal<Boolean> isLoggingMessage = new ThreadLocal<Boolean>() {
@@ -283,6 +299,11 @@ public class Project implements ResourceFactory {
         subProject.setDefaultInputStream(getDefaultInputStream());
         subProject.setKeepGoingMode(this.isKeepGoingMode());
         subProject.setExecutor(getExecutor().getSubProjectExecutor());
+        subProject.eventDispatcher = eventDispatcher;
+        Object scannerCache = getReference(MagicNames.SCANNER_CACHE);
+        if (scannerCache != null) {
+            subProject.addReference(MagicNames.SCANNER_CACHE, scannerCache);
+        }
     }
 
     /**
@@ -422,6 +443,44 @@ public class Project implements ResourceFactory {
         }
     }
 
+    /**
+     * The least important priority of messages at least one of the
+     * build listeners is interested in.
+     *
+     * <p>Listeners that don't implement {@link FilteringBuildListener}
+     * are interested in all messages.</p>
+     *
+     * @return one of the MSG_* constants.
+     * @since Ant 1.9.1
+     */
+    public int getMessageOutputLevel() {
+        BuildListener[] currListeners = listeners;
+        int level = MSG_ERR;
+        for (int i = 0; i < currListeners.length; i++) {
+            if (!(currListeners[i] instanceof FilteringBuildListener)) {
+                return MSG_DEBUG;
+            }
+            level = Math.max(level, ((FilteringBuildListener) currListeners[i])
+                             .getMessageOutputLevel());
+        }
+        return level;
+    }
+
+    /**
+     * Whether any of the build listeners is interested in messages
+     * of the given priority.
+     *
+     * <p>Messages nobody is interested in are not dispatched, callers
+     * may use this method to avoid creating them at all.</p>
+     *
+     * @param msgLevel the message priority.
+     * @return true if messages of the given priority are logged.
+     * @since Ant 1.9.1
+     */
+    public boolean isLoggable(int msgLevel) {
+        return msgLevel <= getMessageOutputLevel();
+    }
+
     /**
      * Return a copy of the list of build listeners for the project.
      *
@@ -2060,13 +2119,36 @@ public class Project implements ResourceFactory {
         return ComponentHelper.getComponentHelper(this).getElementName(element);
     }
 
+    /**
+     * Creates the dispatcher for asynchronous events if
+     * ant.listeners.async is true.
+     * @return whether the dispatcher has been created.
+     */
+    private synchronized boolean startAsyncEventDispatcher() {
+        if (eventDispatcher != null
+            || !toBoolean(getProperty(MagicNames.ASYNC_LISTENERS))) {
+            return false;
+        }
+        eventDispatcher = new AsyncEventDispatcher();
+        ownsEventDispatcher = true;
+        return true;
+    }
+
     /**
      * Send a &quot;build started&quot; event
      * to the build listeners for this project.
      */
     public void fireBuildStarted() {
+        if (eventDispatcher == null) {
+            // without a PropertyHelper no property can be set yet and
+            // creating it now would log before the build has started
+            checkAsyncListeners =
+                getReference(MagicNames.REFID_PROPERTY_HELPER) == null
+                || !startAsyncEventDispatcher();
+        }
         BuildEvent event = new BuildEvent(this);
-        BuildListener[] currListeners = listeners;
+        BuildListener[] currListeners =
+            dispatchAsync(AsyncEventDispatcher.BUILD_STARTED, event);
         for (int i = 0; i < currListeners.length; i++) {
             currListeners[i].buildStarted(event);
         }
@@ -2082,12 +2164,34 @@ public class Project implements ResourceFactory {
     public void fireBuildFinished(Throwable exception) {
         BuildEvent event = new BuildEvent(this);
         event.setException(exception);
-        BuildListener[] currListeners = listeners;
+        BuildListener[] currListeners =
+            dispatchAsync(AsyncEventDispatcher.BUILD_FINISHED, event);
         for (int i = 0; i < currListeners.length; i++) {
             currListeners[i].buildFinished(event);
         }
-        // Inform IH to clear the cache
-        IntrospectionHelper.clearCache();
+        try {
+            if (ownsEventDispatcher) {
+                // deliver everything that is still queued
+                ownsEventDispatcher = false;
+                AsyncEventDispatcher d = eventDispatcher;
+                eventDispatcher = null;
+                d.close();
+            }
+        } finally {
+            // Inform IH to clear the cache
+            IntrospectionHelper.clearCache();
+        }
+    }
+
+    /**
+     * Hands an event to the asynchronous dispatcher if there is one.
+     * @return the listeners the caller has to notify itself.
+     */
+    private BuildListener[] dispatchAsync(int type, BuildEvent event) {
+        BuildListener[] currListeners = listeners;
+        AsyncEventDispatcher d = eventDispatcher;
+        return d == null ? currListeners
+            : d.dispatch(type, event, currListeners);
     }
 
     /**
@@ -2098,7 +2202,8 @@ public class Project implements ResourceFactory {
      */
     public void fireSubBuildStarted() {
         BuildEvent event = new BuildEvent(this);
-        BuildListener[] currListeners = listeners;
+        BuildListener[] currListeners =
+            dispatchAsync(AsyncEventDispatcher.SUB_BUILD_STARTED, event);
         for (int i = 0; i < currListeners.length; i++) {
             if (currListeners[i] instanceof SubBuildListener) {
                 ((SubBuildListener) currListeners[i]).subBuildStarted(event);
@@ -2118,7 +2223,8 @@ public class Project implements ResourceFactory {
     public void fireSubBuildFinished(Throwable exception) {
         BuildEvent event = new BuildEvent(this);
         event.setException(exception);
-        BuildListener[] currListeners = listeners;
+        BuildListener[] currListeners =
+            dispatchAsync(AsyncEventDispatcher.SUB_BUILD_FINISHED, event);
         for (int i = 0; i < currListeners.length; i++) {
             if (currListeners[i] instanceof SubBuildListener) {
                 ((SubBuildListener) currListeners[i]).subBuildFinished(event);
@@ -2134,8 +2240,13 @@ public class Project implements ResourceFactory {
      *               Must not be <code>null</code>.
      */
     protected void fireTargetStarted(Target target) {
+        if (checkAsyncListeners) {
+            checkAsyncListeners = false;
+            startAsyncEventDispatcher();
+        }
         BuildEvent event = new BuildEvent(target);
-        BuildListener[] currListeners = listeners;
+        BuildListener[] currListeners =
+            dispatchAsync(AsyncEventDispatcher.TARGET_STARTED, event);
         for (int i = 0; i < currListeners.length; i++) {
             currListeners[i].targetStarted(event);
         }
@@ -2155,7 +2266,8 @@ public class Project implements ResourceFactory {
     protected void fireTargetFinished(Target target, Throwable exception) {
         BuildEvent event = new BuildEvent(target);
         event.setException(exception);
-        BuildListener[] currListeners = listeners;
+        BuildListener[] currListeners =
+            dispatchAsync(AsyncEventDispatcher.TARGET_FINISHED, event);
         for (int i = 0; i < currListeners.length; i++) {
             currListeners[i].targetFinished(event);
         }
@@ -2173,7 +2285,8 @@ public class Project implements ResourceFactory {
         // register this as the current task on the current thread.
         registerThreadTask(Thread.currentThread(), task);
         BuildEvent event = new BuildEvent(task);
-        BuildListener[] currListeners = listeners;
+        BuildListener[] currListeners =
+            dispatchAsync(AsyncEventDispatcher.TASK_STARTED, event);
         for (int i = 0; i < currListeners.length; i++) {
             currListeners[i].taskStarted(event);
         }
@@ -2195,7 +2308,8 @@ public class Project implements ResourceFactory {
         System.err.flush();
         BuildEvent event = new BuildEvent(task);
         event.setException(exception);
-        BuildListener[] currListeners = listeners;
+        BuildListener[] currListeners =
+            dispatchAsync(AsyncEventDispatcher.TASK_FINISHED, event);
         for (int i = 0; i < currListeners.length; i++) {
             currListeners[i].taskFinished(event);
         }
@@ -2225,6 +2339,16 @@ public class Project implements ResourceFactory {
         } else {
             event.setMessage(message, priority);
         }
+        AsyncEventDispatcher d = eventDispatcher;
+        if (d != null && d.isDispatchThread()) {
+            // a listener is logging, see below
+            return;
+        }
+        BuildListener[] currListeners =
+            dispatchAsync(AsyncEventDispatcher.MESSAGE_LOGGED, event);
+        if (currListeners.length == 0) {
+            return;
+        }
         if (isLoggingMessage.get() != Boolean.FALSE) {
             /*
              * One of the Listeners has attempted to access
@@ -2243,7 +2367,6 @@ public class Project implements ResourceFactory {
         }
         try {
             isLoggingMessage.set(Boolean.TRUE);
-            BuildListener[] currListeners = listeners;
             for (int i = 0; i < currListeners.length; i++) {
                 currListeners[i].messageLogged(event);
             }
@@ -2279,6 +2402,9 @@ public class Project implements ResourceFactory {
      */
     protected void fireMessageLogged(Project project, String message,
             Throwable throwable, int priority) {
+        if (!isLoggable(priority)) {
+            return;
+        }
         BuildEvent event = new BuildEvent(project);
         event.setException(throwable);
         fireMessageLoggedEvent(event, message, priority);
@@ -2311,6 +2437,9 @@ public class Project implements ResourceFactory {
      */
     protected void fireMessageLogged(Target target, String message,
             Throwable throwable, int priority) {
+        if (!isLoggable(priority)) {
+            return;
+        }
         BuildEvent event = new BuildEvent(target);
         event.setException(throwable);
         fireMessageLoggedEvent(event, message, priority);
@@ -2342,6 +2471,9 @@ public class Project implements ResourceFactory {
      */
     protected void fireMessageLogged(Task task, String message,
             Throwable throwable, int priority) {
+        if (!isLoggable(priority)) {
+            return;
+        }
         BuildEvent event = new BuildEvent(task);
         event.setException(throwable);
         fireMessageLoggedEvent(event, message, priority);
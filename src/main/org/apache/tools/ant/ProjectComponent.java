@@ -154,6 +154,35 @@ public abstract class ProjectComponent implements Cloneable {
         }
     }
 
+    /**
+     * Logs a message with the given priority if anybody is going to
+     * see it, the message is only created in that case.
+     *
+     * @param msg Creates the message to be logged.
+     * @param msgLevel the message priority at which this message is
+     *                 to be logged.
+     * @since Ant 1.9.1
+     */
+    public void log(MessageSupplier msg, int msgLevel) {
+        if (isLoggable(msgLevel)) {
+            log(msg.getMessage(), msgLevel);
+        }
+    }
+
+    /**
+     * Whether messages of the given priority are going to be seen
+     * by anybody.
+     *
+     * @param msgLevel the message priority.
+     * @return true if messages of that priority are logged.
+     * @see Project#isLoggable(int)
+     * @since Ant 1.9.1
+     */
+    public boolean isLoggable(int msgLevel) {
+        return getProject() != null
+            ? getProject().isLoggable(msgLevel) : msgLevel <= Project.MSG_INFO;
+    }
+
     /**
      * @since Ant 1.7
      * @return a shallow copy of this projectcomponent.
@@ -21,13 +21,17 @@ import java.text.ParsePosition;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.apache.tools.ant.property.ExpansionTemplate;
 import org.apache.tools.ant.property.GetProperty;
 import org.apache.tools.ant.property.NullReturn;
 import org.apache.tools.ant.property.ParseNextProperty;
@@ -246,26 +250,52 @@ public class PropertyHelper implements GetProperty {
         }
     };
 
+    /** Maximum number of pre-parsed Strings kept. */
+    private static final int MAX_TEMPLATES = 10000;
+
+    /**
+     * Pre-parsed Strings, shared by all projects, the least recently
+     * used one is dropped once MAX_TEMPLATES are kept.
+     */
+    private static final Map<String, ExpansionTemplate> TEMPLATES =
+        new LinkedHashMap<String, ExpansionTemplate>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            protected boolean removeEldestEntry(Map.Entry<String,
+                                                ExpansionTemplate> eldest) {
+                return size() > MAX_TEMPLATES;
+            }
+        };
+
     private Project project;
     private PropertyHelper next;
     private final Hashtable<Class<? extends Delegate>, List<Delegate>> delegates = new Hashtable<Class<? extends Delegate>, List<Delegate>>();
 
+    /**
+     * Evaluators that may return a value for property names without
+     * a colon - the predefined evaluators only handle prefixed names.
+     */
+    private volatile List<PropertyEvaluator> plainNameEvaluators =
+        Collections.emptyList();
+
     /** Project properties map (usually String to String). */
-    private Hashtable<String, Object> properties = new Hashtable<String, Object>();
+    private final ConcurrentMap<String, Object> properties =
+        new ConcurrentHashMap<String, Object>();
 
     /**
      * Map of "user" properties (as created in the Ant task, for example).
      * Note that these key/value pairs are also always put into the
      * project properties, so only the project properties need to be queried.
      */
-    private Hashtable<String, Object> userProperties = new Hashtable<String, Object>();
+    private final ConcurrentMap<String, Object> userProperties =
+        new ConcurrentHashMap<String, Object>();
 
     /**
      * Map of inherited "user" properties - that are those "user"
      * properties that have been created by tasks and not been set
      * from the command line or a GUI tool.
      */
-    private Hashtable<String, Object> inheritedProperties = new Hashtable<String, Object>();
+    private final ConcurrentMap<String, Object> inheritedProperties =
+        new ConcurrentHashMap<String, Object>();
 
     /**
      * Default constructor.
@@ -585,6 +615,13 @@ public class PropertyHelper implements GetProperty {
      *         <code>null</code> if the original string is <code>null</code>.
      */
     public Object parseProperties(String value) throws BuildException {
+        if (value == null) {
+            return null;
+        }
+        if (usesPredefinedExpanders()) {
+            return value.indexOf('$') < 0 ? value
+                : getTemplate(value).expand(getProject(), this);
+        }
         return new ParseProperties(getProject(), getExpanders(), this)
             .parseProperties(value);
     }
@@ -595,10 +632,49 @@ public class PropertyHelper implements GetProperty {
      * @return <code>true</code> if <code>value</code> contains property notation.
      */
     public boolean containsProperties(String value) {
+        if (value != null && usesPredefinedExpanders()) {
+            return value.indexOf('$') >= 0 && getTemplate(value).hasReferences();
+        }
         return new ParseProperties(getProject(), getExpanders(), this)
             .containsProperties(value);
     }
 
+    /**
+     * Whether only the predefined expanders are in use.
+     *
+     * <p>They find references by looking at the String alone, so the
+     * split into text and references can be shared by all projects
+     * of the VM and only Strings containing a <code>$</code> need to
+     * be looked at.  Expanders added later may recurse into property
+     * values or depend on state, Strings are parsed each time
+     * then.</p>
+     */
+    private boolean usesPredefinedExpanders() {
+        Collection<PropertyExpander> expanders = getExpanders();
+        return expanders.size() == 2 && expanders.contains(DEFAULT_EXPANDER)
+            && expanders.contains(SKIP_DOUBLE_DOLLAR);
+    }
+
+    /**
+     * Returns the pre-parsed form of a String, only valid if {@link
+     * #usesPredefinedExpanders the predefined expanders} are used.
+     */
+    private ExpansionTemplate getTemplate(String value) {
+        ExpansionTemplate template;
+        synchronized (TEMPLATES) {
+            template = TEMPLATES.get(value);
+        }
+        if (template == null) {
+            // compile outside of the lock, a String compiled twice by
+            // concurrent threads just yields equal templates
+            template = ExpansionTemplate.compile(value, getExpanders());
+            synchronized (TEMPLATES) {
+                TEMPLATES.put(value, template);
+            }
+        }
+        return template;
+    }
+
     // -------------------- Default implementation  --------------------
     // Methods used to support the default behavior and provide backward
     // compatibility. Some will be deprecated, you should avoid calling them.
@@ -635,27 +711,42 @@ public class PropertyHelper implements GetProperty {
                 return true;
             }
         }
-        synchronized (this) {
-            // user (CLI) properties take precedence
-            if (userProperties.containsKey(name)) {
-                if (project != null && verbose) {
-                    project.log("Override ignored for user property \""
-                                + name + "\"", Project.MSG_VERBOSE);
-                }
-                return false;
-            }
+        // user (CLI) properties take precedence
+        if (userProperties.containsKey(name)) {
             if (project != null && verbose) {
-                if (properties.containsKey(name)) {
-                    project.log("Overriding previous definition of property \""
-                                + name + "\"", Project.MSG_VERBOSE);
-                }
-                project.log("Setting project property: " + name + " -> "
-                            + value, Project.MSG_DEBUG);
+                project.log("Override ignored for user property \""
+                            + name + "\"", Project.MSG_VERBOSE);
             }
-            if (name != null && value != null) {
-                properties.put(name, value);
+            return false;
+        }
+        if (project != null && verbose) {
+            if (properties.containsKey(name)) {
+                project.log("Overriding previous definition of property \""
+                            + name + "\"", Project.MSG_VERBOSE);
             }
-            return true;
+            project.log("Setting project property: " + name + " -> "
+                        + value, Project.MSG_DEBUG);
+        }
+        if (name != null && value != null) {
+            properties.put(name, value);
+            restoreUserProperty(name);
+        }
+        return true;
+    }
+
+    /**
+     * Reinstates the value of a user property another thread has
+     * set while this thread was overwriting the project property of
+     * the same name.
+     *
+     * <p>setUserProperty writes the user property before the project
+     * property, so a user property that has not been visible when
+     * checking before the write is visible now.</p>
+     */
+    private void restoreUserProperty(String name) {
+        Object user = userProperties.get(name);
+        if (user != null) {
+            properties.put(name, user);
         }
     }
 
@@ -696,19 +787,20 @@ public class PropertyHelper implements GetProperty {
                 return;
             }
         }
-        synchronized (this) {
-            if (project != null && properties.containsKey(name)) {
+        if (name == null || value == null) {
+            return;
+        }
+        // first set wins, even if two threads race
+        if (properties.putIfAbsent(name, value) != null) {
+            if (project != null) {
                 project.log("Override ignored for property \"" + name
                             + "\"", Project.MSG_VERBOSE);
-                return;
-            }
-            if (project != null) {
-                project.log("Setting project property: " + name
-                            + " -> " + value, Project.MSG_DEBUG);
-            }
-            if (name != null && value != null) {
-                properties.put(name, value);
             }
+            return;
+        }
+        if (project != null) {
+            project.log("Setting project property: " + name
+                        + " -> " + value, Project.MSG_DEBUG);
         }
     }
 
@@ -746,10 +838,8 @@ public class PropertyHelper implements GetProperty {
             project.log("Setting ro project property: "
                         + name + " -> " + value, Project.MSG_DEBUG);
         }
-        synchronized (this) {
-            userProperties.put(name, value);
-            properties.put(name, value);
-        }
+        userProperties.put(name, value);
+        properties.put(name, value);
     }
 
     /**
@@ -791,11 +881,9 @@ public class PropertyHelper implements GetProperty {
                         + value, Project.MSG_DEBUG);
         }
 
-        synchronized (this) {
-            inheritedProperties.put(name, value);
-            userProperties.put(name, value);
-            properties.put(name, value);
-        }
+        inheritedProperties.put(name, value);
+        userProperties.put(name, value);
+        properties.put(name, value);
     }
 
     // -------------------- Getting properties  --------------------
@@ -839,7 +927,12 @@ public class PropertyHelper implements GetProperty {
         if (name == null) {
             return null;
         }
-        for (PropertyEvaluator evaluator : getDelegates(PropertyEvaluator.class)) {
+        List<PropertyEvaluator> evaluators = name.indexOf(':') < 0
+            ? plainNameEvaluators : getDelegates(PropertyEvaluator.class);
+        if (evaluators.isEmpty()) {
+            return properties.get(name);
+        }
+        for (PropertyEvaluator evaluator : evaluators) {
             final Object o = evaluator.evaluate(name, this);
             if (o == null) {
                 continue;
@@ -898,10 +991,7 @@ public class PropertyHelper implements GetProperty {
      * @return a hashtable containing all properties (including user properties).
      */
     public Hashtable<String, Object> getProperties() {
-        //avoid concurrent modification:
-        synchronized (properties) {
-            return new Hashtable<String, Object>(properties);
-        }
+        return new Hashtable<String, Object>(properties);
         // There is a better way to save the context. This shouldn't
         // delegate to next, it's for backward compatibility only.
     }
@@ -915,10 +1005,7 @@ public class PropertyHelper implements GetProperty {
      * @return a hashtable containing just the user properties
      */
     public Hashtable<String, Object> getUserProperties() {
-        //avoid concurrent modification:
-        synchronized (userProperties) {
-            return new Hashtable<String, Object>(userProperties);
-        }
+        return new Hashtable<String, Object>(userProperties);
     }
 
     /**
@@ -930,36 +1017,51 @@ public class PropertyHelper implements GetProperty {
      * @return a hashtable containing just the inherited properties
      */
     public Hashtable<String, Object> getInheritedProperties() {
-        //avoid concurrent modification:
-        synchronized (inheritedProperties) {
-            return new Hashtable<String, Object>(inheritedProperties);
-        }
+        return new Hashtable<String, Object>(inheritedProperties);
     }
 
     /**
      * special back door for subclasses, internal access to the hashtables
-     * @return the live hashtable of all properties
+     *
+     * <p>Since Ant 1.9.1 the properties are no longer stored in a
+     * Hashtable, the result is a copy and changing it has no effect.</p>
+     *
+     * @return a copy of the hashtable of all properties
+     * @deprecated since 1.9.1, use {@link #getProperties} to read and
+     * {@link #setProperty(String, Object, boolean) setProperty} to
+     * modify the properties.
      */
     protected Hashtable<String, Object> getInternalProperties() {
-        return properties;
+        return getProperties();
     }
 
     /**
      * special back door for subclasses, internal access to the hashtables
      *
-     * @return the live hashtable of user properties
+     * <p>Since Ant 1.9.1 the properties are no longer stored in a
+     * Hashtable, the result is a copy and changing it has no effect.</p>
+     *
+     * @return a copy of the hashtable of user properties
+     * @deprecated since 1.9.1, use {@link #getUserProperties} to read
+     * and {@link #setUserProperty} to modify the user properties.
      */
     protected Hashtable<String, Object> getInternalUserProperties() {
-        return userProperties;
+        return getUserProperties();
     }
 
     /**
      * special back door for subclasses, internal access to the hashtables
      *
-     * @return the live hashtable inherited properties
+     * <p>Since Ant 1.9.1 the properties are no longer stored in a
+     * Hashtable, the result is a copy and changing it has no effect.</p>
+     *
+     * @return a copy of the hashtable inherited properties
+     * @deprecated since 1.9.1, use {@link #getInheritedProperties} to
+     * read and {@link #setInheritedProperty} to modify the inherited
+     * properties.
      */
     protected Hashtable<String, Object> getInternalInheritedProperties() {
-        return inheritedProperties;
+        return getInheritedProperties();
     }
 
     /**
@@ -978,17 +1080,12 @@ public class PropertyHelper implements GetProperty {
      * @since Ant 1.6
      */
     public void copyInheritedProperties(Project other) {
-        //avoid concurrent modification:
-        synchronized (inheritedProperties) {
-            Enumeration<String> e = inheritedProperties.keys();
-            while (e.hasMoreElements()) {
-                String arg = e.nextElement().toString();
-                if (other.getUserProperty(arg) != null) {
-                    continue;
-                }
-                Object value = inheritedProperties.get(arg);
-                other.setInheritedProperty(arg, value.toString());
+        for (Map.Entry<String, Object> e : inheritedProperties.entrySet()) {
+            String arg = e.getKey();
+            if (other.getUserProperty(arg) != null) {
+                continue;
             }
+            other.setInheritedProperty(arg, e.getValue().toString());
         }
     }
 
@@ -1008,18 +1105,63 @@ public class PropertyHelper implements GetProperty {
      * @since Ant 1.6
      */
     public void copyUserProperties(Project other) {
-        //avoid concurrent modification:
-        synchronized (userProperties) {
-            Enumeration<String> e = userProperties.keys();
-            while (e.hasMoreElements()) {
-                Object arg = e.nextElement();
-                if (inheritedProperties.containsKey(arg)) {
-                    continue;
+        for (Map.Entry<String, Object> e : userProperties.entrySet()) {
+            String arg = e.getKey();
+            if (inheritedProperties.containsKey(arg)) {
+                continue;
+            }
+            other.setUserProperty(arg, e.getValue().toString());
+        }
+    }
+
+    /**
+     * Copies all properties of this instance that are not set in the
+     * Project instance given as the argument to that project as
+     * project properties.
+     *
+     * <p>Values are copied as Strings.  Unless either project uses a
+     * subclass of PropertyHelper or the other project has
+     * PropertySetter delegates, the properties are stored directly
+     * and a single debug message is logged rather than one per
+     * property.</p>
+     *
+     * <p>Does not copy properties held by implementations of
+     * delegates (like local properties).</p>
+     *
+     * @param other the project to copy the properties to.  Must not be null.
+     * @param excluded names of properties that must not be copied.
+     *
+     * @since Ant 1.9.1
+     */
+    public void copyNewProperties(Project other, Collection<String> excluded) {
+        PropertyHelper target = getPropertyHelper(other);
+        if (getClass() != PropertyHelper.class
+            || target.getClass() != PropertyHelper.class
+            || !target.getDelegates(PropertySetter.class).isEmpty()) {
+            for (Map.Entry<String, Object> e : getProperties().entrySet()) {
+                String name = e.getKey();
+                if (!excluded.contains(name) && other.getProperty(name) == null) {
+                    other.setNewProperty(name, e.getValue().toString());
                 }
-                Object value = userProperties.get(arg);
-                other.setUserProperty(arg.toString(), value.toString());
             }
+            return;
         }
+        int copied = 0;
+        for (Map.Entry<String, Object> e : properties.entrySet()) {
+            String name = e.getKey();
+            if (excluded.contains(name)
+                // evaluators may know names containing a colon
+                || (name.indexOf(':') > -1 && target.getProperty(name) != null)) {
+                continue;
+            }
+            if (target.properties.putIfAbsent(name, e.getValue().toString())
+                == null) {
+                copied++;
+            }
+        }
+        other.log("Setting " + copied + " project properties copied from "
+                  + (project == null ? "another project" : "project "
+                     + project.getName()), Project.MSG_DEBUG);
     }
 
     // -------------------- Property parsing  --------------------
@@ -1105,6 +1247,14 @@ public class PropertyHelper implements GetProperty {
                 list.add(0, delegate);
                 delegates.put(key, Collections.unmodifiableList(list));
             }
+            List<PropertyEvaluator> plain = new ArrayList<PropertyEvaluator>();
+            for (PropertyEvaluator evaluator
+                     : getDelegates(PropertyEvaluator.class)) {
+                if (evaluator != FROM_REF && evaluator != TO_STRING) {
+                    plain.add(evaluator);
+                }
+            }
+            plainNameEvaluators = Collections.unmodifiableList(plain);
         }
     }
 
@@ -0,0 +1,352 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.tools.ant.util.DOMElementWriter;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * An XML element whose content is written as soon as it is added,
+ * used by the streaming mode of {@link XmlLogger XmlLogger}.
+ *
+ * <p>Content is serialized with StAX into a small in-memory buffer
+ * that is moved to a temporary {@link Spool spool} file whenever it
+ * grows beyond {@link #BUFFER_SIZE} characters.  Unlike a DOM the
+ * memory needed doesn't depend on the amount of content but on the
+ * number of elements that are open at the same time.  Attributes may
+ * be set until the element is added to its parent, so the start tag
+ * is only created then.</p>
+ *
+ * <p>All methods synchronize on the instance.</p>
+ *
+ * @since Ant 1.9.1
+ */
+final class StreamingXmlElement {
+
+    /** number of characters kept in memory per element */
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final String UTF8 = "UTF-8";
+
+    private static final XMLOutputFactory FACTORY =
+        XMLOutputFactory.newInstance();
+
+    private static final DOMElementWriter WRITER = new DOMElementWriter();
+
+    private final Spool spool;
+    private final String tagName;
+    private final Map<String, String> attributes =
+        new LinkedHashMap<String, String>();
+    /** content moved to the spool, Regions and child elements */
+    private final List<Object> parts = new ArrayList<Object>();
+    /** content not yet moved to the spool */
+    private final StringWriter pending = new StringWriter();
+    private XMLStreamWriter xml;
+    /** set once the element has been added to its parent */
+    private String startTag;
+
+    /**
+     * Creates an empty element.
+     * @param spool where content exceeding the buffer goes.
+     * @param tagName the name of the element.
+     */
+    StreamingXmlElement(Spool spool, String tagName) {
+        this.spool = spool;
+        this.tagName = tagName;
+    }
+
+    /**
+     * Sets an attribute.
+     * @param name the name of the attribute.
+     * @param value its value.
+     */
+    synchronized void setAttribute(String name, String value) {
+        attributes.put(name, value);
+    }
+
+    /**
+     * The value of an attribute.
+     * @param name the name of the attribute.
+     * @return the value or null if the attribute isn't set.
+     */
+    synchronized String getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    /**
+     * The name of the element.
+     * @return the tag name.
+     */
+    String getTagName() {
+        return tagName;
+    }
+
+    /**
+     * Adds a child element holding a CDATA section.
+     * @param childName the name of the child element.
+     * @param attrName the name of its only attribute, may be null.
+     * @param attrValue the value of the attribute.
+     * @param text the text of the CDATA section.
+     */
+    synchronized void addTextElement(String childName, String attrName,
+                                     String attrValue, String text) {
+        try {
+            if (xml == null) {
+                xml = FACTORY.createXMLStreamWriter(pending);
+            }
+            xml.writeStartElement(childName);
+            if (attrName != null) {
+                xml.writeAttribute(attrName, legalText(attrValue));
+            }
+            writeCData(xml, legalText(text));
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.flush();
+        } catch (XMLStreamException ex) {
+            throw new BuildException("Unable to write log file", ex);
+        }
+        spillIfFull();
+    }
+
+    /**
+     * Adds serialized XML as is.
+     * @param text well-formed XML.
+     */
+    synchronized void addRaw(String text) {
+        pending.write(text);
+        spillIfFull();
+    }
+
+    /**
+     * Adds an element as child, its attributes must not be changed
+     * anymore.
+     * @param child the child element.
+     */
+    synchronized void addChild(StreamingXmlElement child) {
+        synchronized (child) {
+            child.createStartTag();
+            if (child.parts.isEmpty()) {
+                // small enough to be copied right away
+                pending.write(child.startTag);
+                pending.write(child.pending.toString());
+                pending.write(child.getEndTag());
+                spillIfFull();
+            } else {
+                child.spill();
+                spill();
+                parts.add(child);
+            }
+        }
+    }
+
+    /**
+     * Writes the complete element as UTF-8.
+     * @param out the stream to write to.
+     * @throws IOException on error.
+     */
+    synchronized void writeTo(OutputStream out) throws IOException {
+        createStartTag();
+        out.write(startTag.getBytes(UTF8));
+        for (Iterator<Object> i = parts.iterator(); i.hasNext();) {
+            Object part = i.next();
+            if (part instanceof Region) {
+                spool.copy((Region) part, out);
+            } else {
+                ((StreamingXmlElement) part).writeTo(out);
+            }
+        }
+        out.write(pending.toString().getBytes(UTF8));
+        out.write(getEndTag().getBytes(UTF8));
+    }
+
+    private void createStartTag() {
+        if (startTag != null) {
+            return;
+        }
+        StringWriter w = new StringWriter();
+        try {
+            XMLStreamWriter x = FACTORY.createXMLStreamWriter(w);
+            x.writeStartElement(tagName);
+            for (Map.Entry<String, String> e : attributes.entrySet()) {
+                x.writeAttribute(e.getKey(), legalText(e.getValue()));
+            }
+            // closes the start tag
+            x.writeCharacters("\n");
+            x.flush();
+        } catch (XMLStreamException ex) {
+            throw new BuildException("Unable to write log file", ex);
+        }
+        startTag = w.toString();
+    }
+
+    private String getEndTag() {
+        return "</" + tagName + ">\n";
+    }
+
+    private void spillIfFull() {
+        if (pending.getBuffer().length() >= BUFFER_SIZE) {
+            spill();
+        }
+    }
+
+    /**
+     * Moves the buffered content to the spool.
+     */
+    private void spill() {
+        StringBuffer sb = pending.getBuffer();
+        if (sb.length() > 0) {
+            parts.add(spool.write(sb.toString()));
+            sb.setLength(0);
+        }
+    }
+
+    /**
+     * Writes a CDATA section, splitting it if the text contains the
+     * end marker.
+     */
+    private static void writeCData(XMLStreamWriter x, String text)
+        throws XMLStreamException {
+        int start = 0;
+        int end;
+        while ((end = text.indexOf("]]>", start)) >= 0) {
+            x.writeCData(text.substring(start, end + 2));
+            start = end + 2;
+        }
+        x.writeCData(text.substring(start));
+    }
+
+    /**
+     * Removes characters that are not allowed in XML documents.
+     */
+    private static String legalText(String text) {
+        final int len = text.length();
+        for (int i = 0; i < len; i++) {
+            if (!WRITER.isLegalCharacter(text.charAt(i))) {
+                StringBuffer sb = new StringBuffer(len);
+                sb.append(text, 0, i);
+                for (int j = i + 1; j < len; j++) {
+                    char c = text.charAt(j);
+                    if (WRITER.isLegalCharacter(c)) {
+                        sb.append(c);
+                    }
+                }
+                return sb.toString();
+            }
+        }
+        return text;
+    }
+
+    /**
+     * A temporary file holding the content of all elements of a log
+     * that didn't fit into their buffers.
+     */
+    static final class Spool {
+        private final File file;
+        private final RandomAccessFile raf;
+        private long length;
+
+        /**
+         * Creates the temporary file.
+         * @throws IOException on error.
+         */
+        Spool() throws IOException {
+            file = FileUtils.getFileUtils().createTempFile("xmllog", ".tmp",
+                                                           null, true, true);
+            raf = new RandomAccessFile(file, "rw");
+        }
+
+        /**
+         * Appends text as UTF-8.
+         * @param text the text.
+         * @return the position of the text in the spool.
+         */
+        synchronized Region write(String text) {
+            try {
+                byte[] bytes = text.getBytes(UTF8);
+                raf.seek(length);
+                raf.write(bytes);
+                Region r = new Region(length, bytes.length);
+                length += bytes.length;
+                return r;
+            } catch (IOException ex) {
+                throw new BuildException("Unable to write log file", ex);
+            }
+        }
+
+        /**
+         * Copies a part of the spool.
+         * @param r the part to copy.
+         * @param out the stream to copy to.
+         * @throws IOException on error.
+         */
+        synchronized void copy(Region r, OutputStream out)
+            throws IOException {
+            byte[] buffer = new byte[(int) Math.min(r.length, BUFFER_SIZE)];
+            raf.seek(r.offset);
+            long remaining = r.length;
+            while (remaining > 0) {
+                int read = raf.read(buffer, 0,
+                                    (int) Math.min(remaining, buffer.length));
+                if (read < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+
+        /**
+         * Closes and deletes the temporary file.
+         */
+        synchronized void close() {
+            try {
+                raf.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+            FileUtils.delete(file);
+        }
+    }
+
+    /**
+     * A part of the spool.
+     */
+    private static final class Region {
+        private final long offset;
+        private final int length;
+
+        private Region(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
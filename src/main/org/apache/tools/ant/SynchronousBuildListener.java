@@ -0,0 +1,37 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant;
+
+/**
+ * Marks listeners that must be notified on the thread that caused
+ * the event.
+ *
+ * <p>If the <code>ant.listeners.async</code> property is true, build
+ * events are delivered to listeners on a separate thread.  Listeners
+ * implementing this interface are excluded from that and are still
+ * notified synchronously, this is required for listeners that look at
+ * the current thread - like the XmlLogger that tracks the nesting of
+ * tasks per thread - or need to see all events before they are
+ * removed from the project.</p>
+ *
+ * @see MagicNames#ASYNC_LISTENERS
+ *
+ * @since Ant 1.9.1
+ */
+public interface SynchronousBuildListener extends BuildListener {
+}
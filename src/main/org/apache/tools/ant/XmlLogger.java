@@ -17,11 +17,13 @@
  */
 package org.apache.tools.ant;
 
+import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Hashtable;
 import java.util.Stack;
@@ -49,9 +51,15 @@ import org.w3c.dom.Text;
  * indeed all but the simplest of tasks could run into problems
  * if executed in parallel.
  *
+ * <p>If the property <code>ant.XmlLogger.streaming</code> is true, the
+ * log isn't kept in a DOM but written incrementally using StAX, see
+ * {@link StreamingXmlElement StreamingXmlElement}.  The result is the
+ * same document except for whitespace.</p>
+ *
  * @see Project#addBuildListener(BuildListener)
  */
-public class XmlLogger implements BuildLogger {
+public class XmlLogger
+    implements BuildLogger, FilteringBuildListener, SynchronousBuildListener {
 
     private int msgOutputLevel = Project.MSG_DEBUG;
     private PrintStream outStream;
@@ -103,6 +111,9 @@ public class XmlLogger implements BuildLogger {
     /** XML element name for a stack trace. */
     private static final String STACKTRACE_TAG = "stacktrace";
 
+    /** Property enabling the streaming mode. */
+    private static final String STREAMING_PROPERTY = "ant.XmlLogger.streaming";
+
     /** The complete log document for this build. */
     private Document doc = builder.newDocument();
 
@@ -123,6 +134,16 @@ public class XmlLogger implements BuildLogger {
      */
     private TimedElement buildElement = null;
 
+    /** Holds the content of large elements in streaming mode. */
+    private StreamingXmlElement.Spool spool;
+
+    /**
+     * Whether the streaming property needs to be checked when the
+     * next target or task starts, properties set on the command line
+     * are not known when the build starts.
+     */
+    private volatile boolean checkStreaming;
+
     /** Utility class representing the time an element started. */
     private static class TimedElement {
         /**
@@ -132,7 +153,12 @@ public class XmlLogger implements BuildLogger {
         private long startTime;
         /** Element created at the start time. */
         private Element element;
+        /** Element created at the start time in streaming mode. */
+        private StreamingXmlElement streamed;
         public String toString() {
+            if (streamed != null) {
+                return streamed.getTagName() + ":" + streamed.getAttribute("name");
+            }
             return element.getTagName() + ":" + element.getAttribute("name");
         }
     }
@@ -153,6 +179,97 @@ public class XmlLogger implements BuildLogger {
         buildElement = new TimedElement();
         buildElement.startTime = System.currentTimeMillis();
         buildElement.element = doc.createElement(BUILD_TAG);
+        checkStreaming = !startStreaming(event.getProject());
+    }
+
+    /**
+     * Switches to streaming mode if the streaming property is true,
+     * moving everything logged so far out of the DOM.
+     * @return whether the logger is in streaming mode now.
+     */
+    private synchronized boolean startStreaming(Project project) {
+        if (spool != null) {
+            return true;
+        }
+        if (buildElement == null
+            || !Project.toBoolean(project.getProperty(STREAMING_PROPERTY))) {
+            return false;
+        }
+        try {
+            spool = new StreamingXmlElement.Spool();
+        } catch (IOException exc) {
+            throw new BuildException("Unable to write log file", exc);
+        }
+        StreamingXmlElement streamed = new StreamingXmlElement(spool, BUILD_TAG);
+        StringWriter sw = new StringWriter();
+        DOMElementWriter writer = new DOMElementWriter();
+        for (Node n = buildElement.element.getFirstChild(); n != null;
+             n = n.getNextSibling()) {
+            try {
+                writer.write((Element) n, sw, 0, "\t");
+            } catch (IOException exc) {
+                // can't happen for a StringWriter
+                throw new BuildException(exc);
+            }
+        }
+        streamed.addRaw(sw.toString());
+        buildElement.element = null;
+        buildElement.streamed = streamed;
+        return true;
+    }
+
+    /**
+     * Creates an element for the start of a target or task.
+     */
+    private TimedElement createTimedElement(String tagName, String name) {
+        TimedElement timed = new TimedElement();
+        timed.startTime = System.currentTimeMillis();
+        if (spool != null) {
+            timed.streamed = new StreamingXmlElement(spool, tagName);
+            timed.streamed.setAttribute(NAME_ATTR, name);
+        } else {
+            timed.element = doc.createElement(tagName);
+            timed.element.setAttribute(NAME_ATTR, name);
+        }
+        return timed;
+    }
+
+    private static void setAttribute(TimedElement timed, String name, String value) {
+        if (timed.streamed != null) {
+            timed.streamed.setAttribute(name, value);
+        } else {
+            timed.element.setAttribute(name, value);
+        }
+    }
+
+    /**
+     * Adds a finished element to its parent.
+     */
+    private void append(TimedElement parent, TimedElement child) {
+        if (parent.streamed != null) {
+            parent.streamed.addChild(child.streamed);
+        } else {
+            synchronizedAppend(parent.element, child.element);
+        }
+    }
+
+    /**
+     * Adds a message or stacktrace element.
+     */
+    private void appendText(TimedElement parent, String tagName, String priority,
+                            String text) {
+        if (parent.streamed != null) {
+            parent.streamed.addTextElement(tagName, priority == null ? null : PRIORITY_ATTR,
+                                           priority, text);
+            return;
+        }
+        Element e = doc.createElement(tagName);
+        if (priority != null) {
+            e.setAttribute(PRIORITY_ATTR, priority);
+        }
+        Text t = doc.createCDATASection(text);
+        e.appendChild(t);
+        synchronizedAppend(parent.element, e);
     }
 
     /**
@@ -164,17 +281,14 @@ public class XmlLogger implements BuildLogger {
      */
     public void buildFinished(BuildEvent event) {
         long totalTime = System.currentTimeMillis() - buildElement.startTime;
-        buildElement.element.setAttribute(TIME_ATTR, DefaultLogger.formatTime(totalTime));
+        setAttribute(buildElement, TIME_ATTR, DefaultLogger.formatTime(totalTime));
 
         if (event.getException() != null) {
-            buildElement.element.setAttribute(ERROR_ATTR, event.getException().toString());
+            setAttribute(buildElement, ERROR_ATTR, event.getException().toString());
             // print the stacktrace in the build file it is always useful...
             // better have too much info than not enough.
             Throwable t = event.getException();
-            Text errText = doc.createCDATASection(StringUtils.getStackTrace(t));
-            Element stacktrace = doc.createElement(STACKTRACE_TAG);
-            stacktrace.appendChild(errText);
-            synchronizedAppend(buildElement.element, stacktrace);
+            appendText(buildElement, STACKTRACE_TAG, null, StringUtils.getStackTrace(t));
         }
         String outFilename = event.getProject().getProperty("XmlLogger.file");
         if (outFilename == null) {
@@ -192,17 +306,29 @@ public class XmlLogger implements BuildLogger {
             if (stream == null) {
                 stream = new FileOutputStream(outFilename);
             }
+            if (buildElement.streamed != null) {
+                stream = new BufferedOutputStream(stream);
+            }
             out = new OutputStreamWriter(stream, "UTF8");
             out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
             if (xslUri.length() > 0) {
                 out.write("<?xml-stylesheet type=\"text/xsl\" href=\"" + xslUri + "\"?>\n\n");
             }
-            new DOMElementWriter().write(buildElement.element, out, 0, "\t");
+            if (buildElement.streamed != null) {
+                out.flush();
+                buildElement.streamed.writeTo(stream);
+            } else {
+                new DOMElementWriter().write(buildElement.element, out, 0, "\t");
+            }
             out.flush();
         } catch (IOException exc) {
             throw new BuildException("Unable to write log file", exc);
         } finally {
             FileUtils.close(out);
+            if (spool != null) {
+                spool.close();
+                spool = null;
+            }
         }
         buildElement = null;
     }
@@ -233,11 +359,12 @@ public class XmlLogger implements BuildLogger {
      *              Will not be <code>null</code>.
      */
     public void targetStarted(BuildEvent event) {
+        if (checkStreaming) {
+            checkStreaming = false;
+            startStreaming(event.getProject());
+        }
         Target target = event.getTarget();
-        TimedElement targetElement = new TimedElement();
-        targetElement.startTime = System.currentTimeMillis();
-        targetElement.element = doc.createElement(TARGET_TAG);
-        targetElement.element.setAttribute(NAME_ATTR, target.getName());
+        TimedElement targetElement = createTimedElement(TARGET_TAG, target.getName());
         targets.put(target, targetElement);
         getStack().push(targetElement);
     }
@@ -254,7 +381,7 @@ public class XmlLogger implements BuildLogger {
         TimedElement targetElement = (TimedElement) targets.get(target);
         if (targetElement != null) {
             long totalTime = System.currentTimeMillis() - targetElement.startTime;
-            targetElement.element.setAttribute(TIME_ATTR, DefaultLogger.formatTime(totalTime));
+            setAttribute(targetElement, TIME_ATTR, DefaultLogger.formatTime(totalTime));
 
             TimedElement parentElement = null;
             Stack<TimedElement> threadStack = getStack();
@@ -269,10 +396,9 @@ public class XmlLogger implements BuildLogger {
                 }
             }
             if (parentElement == null) {
-                synchronizedAppend(buildElement.element, targetElement.element);
+                append(buildElement, targetElement);
             } else {
-                synchronizedAppend(parentElement.element,
-                                   targetElement.element);
+                append(parentElement, targetElement);
             }
         }
         targets.remove(target);
@@ -287,17 +413,17 @@ public class XmlLogger implements BuildLogger {
      *              Will not be <code>null</code>.
      */
     public void taskStarted(BuildEvent event) {
-        TimedElement taskElement = new TimedElement();
-        taskElement.startTime = System.currentTimeMillis();
-        taskElement.element = doc.createElement(TASK_TAG);
-
+        if (checkStreaming) {
+            checkStreaming = false;
+            startStreaming(event.getProject());
+        }
         Task task = event.getTask();
         String name = event.getTask().getTaskName();
         if (name == null) {
             name = "";
         }
-        taskElement.element.setAttribute(NAME_ATTR, name);
-        taskElement.element.setAttribute(LOCATION_ATTR, event.getTask().getLocation().toString());
+        TimedElement taskElement = createTimedElement(TASK_TAG, name);
+        setAttribute(taskElement, LOCATION_ATTR, event.getTask().getLocation().toString());
         tasks.put(task, taskElement);
         getStack().push(taskElement);
     }
@@ -316,16 +442,16 @@ public class XmlLogger implements BuildLogger {
             throw new RuntimeException("Unknown task " + task + " not in " + tasks);
         }
         long totalTime = System.currentTimeMillis() - taskElement.startTime;
-        taskElement.element.setAttribute(TIME_ATTR, DefaultLogger.formatTime(totalTime));
+        setAttribute(taskElement, TIME_ATTR, DefaultLogger.formatTime(totalTime));
         Target target = task.getOwningTarget();
         TimedElement targetElement = null;
         if (target != null) {
             targetElement = (TimedElement) targets.get(target);
         }
         if (targetElement == null) {
-            synchronizedAppend(buildElement.element, taskElement.element);
+            append(buildElement, taskElement);
         } else {
-            synchronizedAppend(targetElement.element, taskElement.element);
+            append(targetElement, taskElement);
         }
         Stack<TimedElement> threadStack = getStack();
         if (!threadStack.empty()) {
@@ -373,8 +499,6 @@ public class XmlLogger implements BuildLogger {
         if (priority > msgOutputLevel) {
             return;
         }
-        Element messageElement = doc.createElement(MESSAGE_TAG);
-
         String name = "debug";
         switch (priority) {
             case Project.MSG_ERR:
@@ -390,17 +514,11 @@ public class XmlLogger implements BuildLogger {
                 name = "debug";
                 break;
         }
-        messageElement.setAttribute(PRIORITY_ATTR, name);
 
         Throwable ex = event.getException();
         if (Project.MSG_DEBUG <= msgOutputLevel && ex != null) {
-            Text errText = doc.createCDATASection(StringUtils.getStackTrace(ex));
-            Element stacktrace = doc.createElement(STACKTRACE_TAG);
-            stacktrace.appendChild(errText);
-            synchronizedAppend(buildElement.element, stacktrace);
+            appendText(buildElement, STACKTRACE_TAG, null, StringUtils.getStackTrace(ex));
         }
-        Text messageText = doc.createCDATASection(event.getMessage());
-        messageElement.appendChild(messageText);
 
         TimedElement parentElement = null;
 
@@ -413,11 +531,10 @@ public class XmlLogger implements BuildLogger {
         if (parentElement == null && target != null) {
             parentElement = (TimedElement) targets.get(target);
         }
-        if (parentElement != null) {
-            synchronizedAppend(parentElement.element, messageElement);
-        } else {
-            synchronizedAppend(buildElement.element, messageElement);
+        if (parentElement == null) {
+            parentElement = buildElement;
         }
+        appendText(parentElement, MESSAGE_TAG, name, event.getMessage());
     }
 
     // -------------------------------------------------- BuildLogger interface
@@ -433,6 +550,16 @@ public class XmlLogger implements BuildLogger {
         msgOutputLevel = level;
     }
 
+    /**
+     * The logging level when using this as a Logger
+     *
+     * @return the logging level
+     * @since Ant 1.9.1
+     */
+    public int getMessageOutputLevel() {
+        return msgOutputLevel;
+    }
+
     /**
      * Set the output stream to which logging output is sent when operating
      * as a logger.
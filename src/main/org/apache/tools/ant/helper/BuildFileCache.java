@@ -0,0 +1,505 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.helper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.tools.ant.MagicNames;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.util.FileUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.LocatorImpl;
+
+/**
+ * Remembers the SAX events of parsed build files so an unchanged
+ * file can be processed again without running the XML parser.
+ *
+ * <p>The events are recorded while {@link ProjectHelper2} parses a
+ * file and replayed to the same handlers - together with the line
+ * and column numbers the parser reported - the next time the file is
+ * parsed.  A recording is only used if the file's content has the
+ * same length and CRC as when it was recorded, files that pull in
+ * external entities are never cached as their content isn't
+ * covered by the checksum.</p>
+ *
+ * <p>Recordings are kept in memory for the lifetime of the VM if the
+ * <code>ant.parser.cache</code> property is true, so
+ * <code>&lt;ant&gt;</code>, <code>&lt;subant&gt;</code> and
+ * <code>&lt;import&gt;</code> of the same file only parse it once.
+ * If the <code>ant.parser.cache.dir</code> property is set,
+ * recordings are also written to and read from that directory.</p>
+ *
+ * @since Ant 1.9.1
+ */
+final class BuildFileCache {
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    /** Identifies the persisted format. */
+    private static final int MAGIC = 0x416e7450;
+    private static final int FORMAT_VERSION = 1;
+
+    /** Number of recordings kept in memory. */
+    private static final int MAX_RECORDINGS = 1000;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final byte START_ELEMENT = 1;
+    private static final byte END_ELEMENT = 2;
+    private static final byte CHARACTERS = 3;
+    private static final byte START_PREFIX_MAPPING = 4;
+    private static final byte END_PREFIX_MAPPING = 5;
+
+    /** Recordings by system id, shared by all projects in this VM. */
+    private static final Map<String, Recording> RECORDINGS =
+        new LinkedHashMap<String, Recording>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            protected boolean removeEldestEntry(Map.Entry<String, Recording> e) {
+                return size() > MAX_RECORDINGS;
+            }
+        };
+
+    private BuildFileCache() {
+    }
+
+    /**
+     * Whether the project has enabled the cache.
+     * @param project the project.
+     * @return true if either property has been set.
+     */
+    static boolean isEnabled(Project project) {
+        return Project.toBoolean(project.getProperty(MagicNames.PARSER_CACHE))
+            || project.getProperty(MagicNames.PARSER_CACHE_DIR) != null;
+    }
+
+    /**
+     * Reads the whole content of a build file.
+     * @param in the stream to read.
+     * @return the content.
+     * @throws IOException on error.
+     */
+    static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = in.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Looks up the recording of a build file with the given content.
+     * @param project the project parsing the file.
+     * @param systemId the file's system id.
+     * @param content the file's current content.
+     * @return the recording or null if none exists or the file has
+     * changed.
+     */
+    static Recording lookup(Project project, String systemId, byte[] content) {
+        long crc = crc(content);
+        Recording r;
+        synchronized (RECORDINGS) {
+            r = RECORDINGS.get(systemId);
+        }
+        if (r == null) {
+            File f = getCacheFile(project, systemId);
+            if (f != null) {
+                r = load(f, systemId);
+                if (r != null) {
+                    synchronized (RECORDINGS) {
+                        RECORDINGS.put(systemId, r);
+                    }
+                }
+            }
+        }
+        if (r != null && r.length == content.length && r.crc == crc) {
+            return r;
+        }
+        return null;
+    }
+
+    /**
+     * Creates a handler that passes all events on to the given
+     * handler and records them.
+     * @param handler the handler to pass events to.
+     * @param systemId the parsed file's system id.
+     * @param content the parsed file's content.
+     * @return the recording handler.
+     */
+    static Recorder record(DefaultHandler handler, String systemId,
+                           byte[] content) {
+        return new Recorder(handler, new Recording(systemId, content.length,
+                                                   crc(content)));
+    }
+
+    private static long crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        return crc.getValue();
+    }
+
+    private static File getCacheFile(Project project, String systemId) {
+        String dir = project.getProperty(MagicNames.PARSER_CACHE_DIR);
+        if (dir == null) {
+            return null;
+        }
+        return new File(project.resolveFile(dir),
+                        Integer.toHexString(systemId.hashCode()) + ".events");
+    }
+
+    /**
+     * Keeps a completed recording and persists it if a cache
+     * directory has been configured.
+     */
+    private static void store(Project project, Recording r) {
+        synchronized (RECORDINGS) {
+            RECORDINGS.put(r.systemId, r);
+        }
+        File f = getCacheFile(project, r.systemId);
+        if (f != null) {
+            try {
+                save(f, r);
+            } catch (IOException ex) {
+                project.log("Failed to write parser cache " + f + ": "
+                            + ex.getMessage(), Project.MSG_VERBOSE);
+            }
+        }
+    }
+
+    /**
+     * Reads a persisted recording, returns null if the file doesn't
+     * exist, is corrupt or belongs to a different build file.
+     */
+    private static Recording load(File f, String systemId) {
+        if (!f.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(f)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                || !systemId.equals(readString(in))) {
+                return null;
+            }
+            Recording r = new Recording(systemId, in.readInt(), in.readLong());
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte type = in.readByte();
+                int line = in.readInt();
+                int column = in.readInt();
+                int n = in.readInt();
+                String[] data = new String[n];
+                for (int j = 0; j < n; j++) {
+                    data[j] = readString(in);
+                }
+                r.events.add(new Event(type, line, column, data));
+            }
+            return r;
+        } catch (IOException ex) {
+            return null;
+        } finally {
+            FileUtils.close(in);
+        }
+    }
+
+    private static void save(File f, Recording r) throws IOException {
+        File parent = f.getParentFile();
+        parent.mkdirs();
+        File tmp = FILE_UTILS.createTempFile("events", ".tmp", parent,
+                                             false, true);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, r.systemId);
+            out.writeInt(r.length);
+            out.writeLong(r.crc);
+            out.writeInt(r.events.size());
+            for (Event e : r.events) {
+                out.writeByte(e.type);
+                out.writeInt(e.line);
+                out.writeInt(e.column);
+                out.writeInt(e.data.length);
+                for (int j = 0; j < e.data.length; j++) {
+                    writeString(out, e.data[j]);
+                }
+            }
+            out.close();
+            out = null;
+            FILE_UTILS.rename(tmp, f);
+        } finally {
+            FileUtils.close(out);
+            tmp.delete();
+        }
+    }
+
+    // writeUTF is limited to 64k, which a script's body may exceed
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(s.length());
+            out.writeChars(s);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        char[] c = new char[length];
+        for (int i = 0; i < length; i++) {
+            c[i] = in.readChar();
+        }
+        return new String(c);
+    }
+
+    /**
+     * A single SAX event.
+     */
+    private static final class Event {
+        private final byte type;
+        private final int line;
+        private final int column;
+        /**
+         * The event's arguments, for start element events the
+         * namespace URI, local name and qualified name followed by
+         * five strings for each attribute.
+         */
+        private final String[] data;
+
+        private Event(byte type, int line, int column, String[] data) {
+            this.type = type;
+            this.line = line;
+            this.column = column;
+            this.data = data;
+        }
+    }
+
+    /**
+     * The events of one build file.
+     */
+    static final class Recording {
+        private final String systemId;
+        private final int length;
+        private final long crc;
+        private final List<Event> events = new ArrayList<Event>();
+
+        private Recording(String systemId, int length, long crc) {
+            this.systemId = systemId;
+            this.length = length;
+            this.crc = crc;
+        }
+
+        /**
+         * Sends the recorded events to a handler.
+         * @param handler the handler.
+         * @throws SAXException if the handler throws it.
+         */
+        void replay(DefaultHandler handler) throws SAXException {
+            LocatorImpl locator = new LocatorImpl();
+            locator.setSystemId(systemId);
+            handler.setDocumentLocator(locator);
+            handler.startDocument();
+            for (Event e : events) {
+                locator.setLineNumber(e.line);
+                locator.setColumnNumber(e.column);
+                String[] d = e.data;
+                switch (e.type) {
+                case START_ELEMENT:
+                    AttributesImpl attrs = new AttributesImpl();
+                    for (int i = 3; i < d.length; i += 5) {
+                        attrs.addAttribute(d[i], d[i + 1], d[i + 2],
+                                           d[i + 3], d[i + 4]);
+                    }
+                    handler.startElement(d[0], d[1], d[2], attrs);
+                    break;
+                case END_ELEMENT:
+                    handler.endElement(d[0], d[1], d[2]);
+                    break;
+                case CHARACTERS:
+                    char[] c = d[0].toCharArray();
+                    handler.characters(c, 0, c.length);
+                    break;
+                case START_PREFIX_MAPPING:
+                    handler.startPrefixMapping(d[0], d[1]);
+                    break;
+                case END_PREFIX_MAPPING:
+                    handler.endPrefixMapping(d[0]);
+                    break;
+                default:
+                    throw new SAXException("unknown event " + e.type);
+                }
+            }
+            handler.endDocument();
+        }
+    }
+
+    /**
+     * Passes SAX events on to another handler while recording them.
+     */
+    static final class Recorder extends DefaultHandler {
+        private final DefaultHandler handler;
+        private final Recording recording;
+        private Locator locator;
+        private boolean cacheable = true;
+
+        private Recorder(DefaultHandler handler, Recording recording) {
+            this.handler = handler;
+            this.recording = recording;
+        }
+
+        /**
+         * Keeps the recording once the file has been parsed
+         * successfully.
+         * @param project the project that parsed the file.
+         */
+        void store(Project project) {
+            if (cacheable) {
+                BuildFileCache.store(project, recording);
+            }
+        }
+
+        private void add(byte type, String[] data) {
+            if (!cacheable) {
+                return;
+            }
+            if (locator == null
+                || !recording.systemId.equals(locator.getSystemId())) {
+                // can't restore the location
+                cacheable = false;
+                return;
+            }
+            recording.events.add(new Event(type, locator.getLineNumber(),
+                                           locator.getColumnNumber(), data));
+        }
+
+        public void setDocumentLocator(Locator locator) {
+            this.locator = locator;
+            handler.setDocumentLocator(locator);
+        }
+
+        public InputSource resolveEntity(String publicId, String systemId)
+            throws IOException, SAXException {
+            // the entity's content isn't covered by the checksum
+            cacheable = false;
+            return handler.resolveEntity(publicId, systemId);
+        }
+
+        public void startDocument() throws SAXException {
+            handler.startDocument();
+        }
+
+        public void endDocument() throws SAXException {
+            handler.endDocument();
+        }
+
+        public void startElement(String uri, String localName, String qName,
+                                 Attributes attrs) throws SAXException {
+            int n = attrs.getLength();
+            String[] data = new String[3 + 5 * n];
+            data[0] = uri;
+            data[1] = localName;
+            data[2] = qName;
+            for (int i = 0; i < n; i++) {
+                data[3 + 5 * i] = attrs.getURI(i);
+                data[4 + 5 * i] = attrs.getLocalName(i);
+                data[5 + 5 * i] = attrs.getQName(i);
+                data[6 + 5 * i] = attrs.getType(i);
+                data[7 + 5 * i] = attrs.getValue(i);
+            }
+            add(START_ELEMENT, data);
+            handler.startElement(uri, localName, qName, attrs);
+        }
+
+        public void endElement(String uri, String localName, String qName)
+            throws SAXException {
+            add(END_ELEMENT, new String[] {uri, localName, qName});
+            handler.endElement(uri, localName, qName);
+        }
+
+        public void characters(char[] ch, int start, int length)
+            throws SAXException {
+            add(CHARACTERS, new String[] {new String(ch, start, length)});
+            handler.characters(ch, start, length);
+        }
+
+        public void startPrefixMapping(String prefix, String uri)
+            throws SAXException {
+            add(START_PREFIX_MAPPING, new String[] {prefix, uri});
+            handler.startPrefixMapping(prefix, uri);
+        }
+
+        public void endPrefixMapping(String prefix) throws SAXException {
+            add(END_PREFIX_MAPPING, new String[] {prefix});
+            handler.endPrefixMapping(prefix);
+        }
+
+        public void notationDecl(String name, String publicId,
+                                 String systemId) throws SAXException {
+            handler.notationDecl(name, publicId, systemId);
+        }
+
+        public void unparsedEntityDecl(String name, String publicId,
+                                       String systemId, String notationName)
+            throws SAXException {
+            handler.unparsedEntityDecl(name, publicId, systemId,
+                                       notationName);
+        }
+
+        public void warning(SAXParseException e) throws SAXException {
+            handler.warning(e);
+        }
+
+        public void error(SAXParseException e) throws SAXException {
+            cacheable = false;
+            handler.error(e);
+        }
+
+        public void fatalError(SAXParseException e) throws SAXException {
+            cacheable = false;
+            handler.fatalError(e);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.helper;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Executor;
+import org.apache.tools.ant.MagicNames;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Target;
+
+/**
+ * Target executor implementation that runs independent targets
+ * concurrently.
+ *
+ * <p>Like {@link SingleCheckExecutor} the targets given on the
+ * command line and all their dependencies are merged into a single
+ * graph and each target is executed at most once.  A target is
+ * started as soon as all the targets it depends on (including the
+ * targets extending an extension-point) have finished successfully,
+ * so the order of unrelated targets, and the order of the
+ * <code>depends</code> list itself, is no longer guaranteed.  Targets
+ * that rely on side effects of a sibling target (e.g. a property it
+ * sets) must declare that dependency explicitly.</p>
+ *
+ * <p>The number of worker threads is read from the
+ * <code>ant.executor.threads</code> property and defaults to the
+ * number of available processors.</p>
+ *
+ * <p>If a target fails, no further targets are started and the
+ * executor waits for the running ones to finish.  In keep-going mode
+ * all targets that don't depend on a failed target are executed.  In
+ * both cases the exception of the failed target that comes first in
+ * the topologically sorted order is thrown, so the reported failure
+ * does not depend on thread scheduling.</p>
+ *
+ * @since Ant 1.9.1
+ */
+public class ParallelExecutor implements Executor {
+
+    private static final SingleCheckExecutor SUB_EXECUTOR = new SingleCheckExecutor();
+
+    /** Target is waiting for its dependencies. */
+    private static final int WAITING = 0;
+    /** Target has been handed to the worker pool. */
+    private static final int RUNNING = 1;
+    /** Target has finished successfully. */
+    private static final int SUCCEEDED = 2;
+    /** Target has failed. */
+    private static final int FAILED = 3;
+    /** Target will not run since a dependency failed or didn't run. */
+    private static final int NOT_EXECUTED = 4;
+
+    /** {@inheritDoc}. */
+    public void executeTargets(Project project, String[] targetNames)
+        throws BuildException {
+        Vector<Target> sortedTargets =
+            project.topoSort(targetNames, project.getTargets(), false);
+        int threads = Math.min(getThreadCount(project), sortedTargets.size());
+        if (threads <= 1) {
+            project.executeSortedTargets(sortedTargets);
+            return;
+        }
+        project.log("Executing " + sortedTargets.size() + " targets using "
+                    + threads + " threads", Project.MSG_VERBOSE);
+
+        ExecutorService pool =
+            Executors.newFixedThreadPool(threads, new WorkerThreadFactory());
+        try {
+            run(project, sortedTargets, pool);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** {@inheritDoc}. */
+    public Executor getSubProjectExecutor() {
+        return SUB_EXECUTOR;
+    }
+
+    /**
+     * Schedules the sorted targets on the pool and waits until no
+     * more targets can be run.
+     */
+    private void run(Project project, Vector<Target> sortedTargets,
+                     ExecutorService pool) {
+        Map<String, Integer> states = new HashMap<String, Integer>();
+        Map<Target, Throwable> failures = new IdentityHashMap<Target, Throwable>();
+        Map<Future<Target>, Target> running = new HashMap<Future<Target>, Target>();
+        CompletionService<Target> completion =
+            new ExecutorCompletionService<Target>(pool);
+        boolean stop = false;
+
+        while (true) {
+            if (!stop) {
+                // sortedTargets is in topological order, so a single
+                // pass propagates NOT_EXECUTED down the whole graph
+                for (Target t : sortedTargets) {
+                    if (state(states, t.getName()) != WAITING) {
+                        continue;
+                    }
+                    int depState = dependencyState(states, t);
+                    if (depState == SUCCEEDED) {
+                        states.put(t.getName(), RUNNING);
+                        running.put(completion.submit(new TargetRunner(t)), t);
+                    } else if (depState == NOT_EXECUTED) {
+                        states.put(t.getName(), NOT_EXECUTED);
+                    }
+                }
+            }
+            if (running.isEmpty()) {
+                break;
+            }
+
+            Future<Target> done;
+            try {
+                done = completion.take();
+            } catch (InterruptedException ex) {
+                throw new BuildException("Interrupted while executing targets",
+                                         ex);
+            }
+            Target t = running.remove(done);
+            try {
+                done.get();
+                states.put(t.getName(), SUCCEEDED);
+            } catch (InterruptedException ex) {
+                throw new BuildException("Interrupted while executing targets",
+                                         ex);
+            } catch (ExecutionException ex) {
+                states.put(t.getName(), FAILED);
+                failures.put(t, ex.getCause());
+                if (project.isKeepGoingMode()) {
+                    logFailure(project, t, ex.getCause());
+                } else {
+                    stop = true;
+                }
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            throw firstFailure(sortedTargets, failures);
+        }
+    }
+
+    /**
+     * Finds out whether a target can be run.
+     * @return SUCCEEDED if all dependencies have succeeded,
+     * NOT_EXECUTED if any of them has failed or will not be executed
+     * and WAITING otherwise.
+     */
+    private static int dependencyState(Map<String, Integer> states,
+                                       Target target) {
+        int result = SUCCEEDED;
+        for (Enumeration<String> deps = target.getDependencies();
+             deps.hasMoreElements();) {
+            String dependencyName = deps.nextElement();
+            int s = state(states, dependencyName);
+            if (s == FAILED || s == NOT_EXECUTED) {
+                target.getProject().log(target,
+                    "Cannot execute '" + target.getName() + "' - '"
+                    + dependencyName + "' failed or was not executed.",
+                    Project.MSG_ERR);
+                return NOT_EXECUTED;
+            }
+            if (s != SUCCEEDED) {
+                result = WAITING;
+            }
+        }
+        return result;
+    }
+
+    private static int state(Map<String, Integer> states, String name) {
+        Integer s = states.get(name);
+        return s == null ? WAITING : s.intValue();
+    }
+
+    private static void logFailure(Project project, Target target,
+                                   Throwable thrown) {
+        project.log(target, "Target '" + target.getName()
+                    + "' failed with message '" + thrown.getMessage() + "'.",
+                    Project.MSG_ERR);
+        if (!(thrown instanceof BuildException)) {
+            thrown.printStackTrace(System.err);
+        }
+    }
+
+    /**
+     * Picks the failure of the earliest target in sorted order.
+     */
+    private static RuntimeException firstFailure(Vector<Target> sortedTargets,
+                                                 Map<Target, Throwable> failures) {
+        for (Target t : sortedTargets) {
+            Throwable thrown = failures.get(t);
+            if (thrown instanceof RuntimeException) {
+                return (RuntimeException) thrown;
+            } else if (thrown != null) {
+                return new BuildException(thrown);
+            }
+        }
+        // not reached, failures only contains sorted targets
+        throw new IllegalStateException("no failed target found");
+    }
+
+    /**
+     * Reads the number of worker threads from the project.
+     */
+    private static int getThreadCount(Project project) {
+        String value = project.getProperty(MagicNames.ANT_EXECUTOR_THREADS);
+        if (value == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            int threads = Integer.parseInt(value.trim());
+            if (threads < 1) {
+                throw new BuildException(MagicNames.ANT_EXECUTOR_THREADS
+                                         + " must be a positive number");
+            }
+            return threads;
+        } catch (NumberFormatException ex) {
+            throw new BuildException("Invalid value for "
+                                     + MagicNames.ANT_EXECUTOR_THREADS
+                                     + ": " + value);
+        }
+    }
+
+    /**
+     * Runs a single target on a worker thread.
+     */
+    private static class TargetRunner implements Callable<Target> {
+        private final Target target;
+
+        TargetRunner(Target target) {
+            this.target = target;
+        }
+
+        public Target call() {
+            target.performTasks();
+            return target;
+        }
+    }
+
+    /**
+     * Creates named worker threads.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private int count = 0;
+
+        public synchronized Thread newThread(Runnable r) {
+            return new Thread(r, "ant-target-" + (++count));
+        }
+    }
+}
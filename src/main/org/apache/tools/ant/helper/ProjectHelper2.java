@@ -41,6 +41,7 @@ import org.xml.sax.SAXParseException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -238,11 +239,6 @@ public class ProjectHelper2 extends ProjectHelper {
         ZipFile zf = null;
 
         try {
-            /**
-             * SAX 2 style parser used to parse the given file.
-             */
-            XMLReader parser = JAXPUtils.getNamespaceXMLReader();
-
             String uri = null;
             if (buildFile != null) {
                 uri = FILE_UTILS.toURI(buildFile.getAbsolutePath());
@@ -261,6 +257,22 @@ public class ProjectHelper2 extends ProjectHelper {
                 }
             }
 
+            BuildFileCache.Recorder recorder = null;
+            if (BuildFileCache.isEnabled(project)) {
+                byte[] content = BuildFileCache.readFully(inputStream);
+                BuildFileCache.Recording recording =
+                    BuildFileCache.lookup(project, uri, content);
+                if (recording != null) {
+                    project.log("replaying cached buildfile " + buildFileName
+                                + " with URI = " + uri, Project.MSG_VERBOSE);
+                    recording.replay(handler);
+                    return;
+                }
+                inputStream.close();
+                inputStream = new ByteArrayInputStream(content);
+                recorder = BuildFileCache.record(handler, uri, content);
+            }
+
             inputSource = new InputSource(inputStream);
             if (uri != null) {
                 inputSource.setSystemId(uri);
@@ -269,13 +281,21 @@ public class ProjectHelper2 extends ProjectHelper {
                         + uri + (zf != null ? " from a zip file" : ""),
                         Project.MSG_VERBOSE);
 
-            DefaultHandler hb = handler;
+            /**
+             * SAX 2 style parser used to parse the given file.
+             */
+            XMLReader parser = JAXPUtils.getNamespaceXMLReader();
+
+            DefaultHandler hb = recorder != null ? recorder : handler;
 
             parser.setContentHandler(hb);
             parser.setEntityResolver(hb);
             parser.setErrorHandler(hb);
             parser.setDTDHandler(hb);
             parser.parse(inputSource);
+            if (recorder != null) {
+                recorder.store(project);
+            }
         } catch (SAXParseException exc) {
             Location location = new Location(exc.getSystemId(), exc.getLineNumber(), exc
                                              .getColumnNumber());
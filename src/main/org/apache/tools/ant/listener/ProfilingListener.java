@@ -0,0 +1,563 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.listener;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.FilteringBuildListener;
+import org.apache.tools.ant.Location;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.SynchronousBuildListener;
+import org.apache.tools.ant.Target;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Collects wall clock time, CPU time, allocated memory and the
+ * number of invocations per target, per task type and per task
+ * location and writes a report when the build has finished.
+ *
+ * <p>The report is written to the file named by the property
+ * <code>ant.ProfilingListener.report</code>, <code>profile.txt</code>
+ * by default, relative file names are resolved against the project's
+ * basedir.  The property <code>ant.ProfilingListener.sort</code>
+ * selects the column the report is sorted by, one of
+ * <code>wall</code> (the default), <code>self</code>,
+ * <code>cpu</code>, <code>alloc</code> or <code>count</code>.  If the
+ * property <code>ant.ProfilingListener.trace</code> is set, every
+ * target and task invocation is also written to the named file in
+ * the trace event format understood by Chrome's
+ * <code>about:tracing</code>.</p>
+ *
+ * <p>Self time is the wall clock time not spent in nested tasks
+ * running on the same thread.  CPU time and allocated memory are
+ * measured for the thread running a task and only if the JVM
+ * supports it.</p>
+ *
+ * @since Ant 1.9.1
+ */
+public class ProfilingListener
+    implements FilteringBuildListener, SynchronousBuildListener {
+
+    /** Name of the property holding the report file name. */
+    public static final String REPORT_PROPERTY = "ant.ProfilingListener.report";
+    /** Name of the property holding the trace file name. */
+    public static final String TRACE_PROPERTY = "ant.ProfilingListener.trace";
+    /** Name of the property holding the column to sort by. */
+    public static final String SORT_PROPERTY = "ant.ProfilingListener.sort";
+
+    private static final String DEFAULT_REPORT = "profile.txt";
+    private static final String[] SORT_KEYS = {
+        "wall", "self", "cpu", "alloc", "count"
+    };
+    private static final String TARGET = "target";
+    private static final String TASK = "task";
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long NANOS_PER_MICRO = 1000L;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTime;
+    private final Method allocatedBytes;
+
+    /** running targets and tasks */
+    private final Map<Object, Frame> running = new ConcurrentHashMap<Object, Frame>();
+    private final ThreadLocal<LinkedList<Frame>> stacks =
+        new ThreadLocal<LinkedList<Frame>>() {
+            protected LinkedList<Frame> initialValue() {
+                return new LinkedList<Frame>();
+            }
+        };
+
+    private final Map<String, Stats> targets = new HashMap<String, Stats>();
+    private final Map<String, Stats> taskTypes = new HashMap<String, Stats>();
+    private final Map<String, Stats> locations = new HashMap<String, Stats>();
+    /** finished frames, only if a trace has been requested */
+    private List<Frame> trace;
+    private volatile boolean checkTrace;
+    private long buildStart;
+
+    /**
+     * Creates the listener.
+     */
+    public ProfilingListener() {
+        boolean cpu = false;
+        try {
+            cpu = threads.isCurrentThreadCpuTimeSupported();
+            if (cpu && !threads.isThreadCpuTimeEnabled()) {
+                threads.setThreadCpuTimeEnabled(true);
+            }
+        } catch (UnsupportedOperationException ex) {
+            cpu = false;
+        } catch (SecurityException ex) {
+            cpu = false;
+        }
+        cpuTime = cpu;
+        allocatedBytes = getAllocatedBytesMethod(threads);
+    }
+
+    /**
+     * Finds HotSpot's way to query the memory allocated by a thread.
+     */
+    private static Method getAllocatedBytesMethod(ThreadMXBean bean) {
+        try {
+            Class<?> c = Class.forName("com.sun.management.ThreadMXBean");
+            if (!c.isInstance(bean)) {
+                return null;
+            }
+            Method supported = c.getMethod("isThreadAllocatedMemorySupported");
+            if (!Boolean.TRUE.equals(supported.invoke(bean))) {
+                return null;
+            }
+            return c.getMethod("getThreadAllocatedBytes", new Class[] {Long.TYPE});
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Resets the collected data.
+     * @param event ignored.
+     */
+    public synchronized void buildStarted(BuildEvent event) {
+        targets.clear();
+        taskTypes.clear();
+        locations.clear();
+        running.clear();
+        trace = null;
+        checkTrace = true;
+        buildStart = System.nanoTime();
+    }
+
+    /**
+     * Writes the report and the trace.
+     * @param event provides the properties.
+     */
+    public void buildFinished(BuildEvent event) {
+        long wall = System.nanoTime() - buildStart;
+        Project project = event.getProject();
+        String sort = project.getProperty(SORT_PROPERTY);
+        int sortKey = 0;
+        if (sort != null) {
+            sortKey = -1;
+            for (int i = 0; i < SORT_KEYS.length; i++) {
+                if (SORT_KEYS[i].equalsIgnoreCase(sort)) {
+                    sortKey = i;
+                }
+            }
+            if (sortKey < 0) {
+                throw new BuildException("Unknown value " + sort + " for "
+                                         + SORT_PROPERTY);
+            }
+        }
+        String report = project.getProperty(REPORT_PROPERTY);
+        if (report == null) {
+            report = DEFAULT_REPORT;
+        }
+        String traceFile = project.getProperty(TRACE_PROPERTY);
+        synchronized (this) {
+            write(project.resolveFile(report), new Report(wall, sortKey));
+            if (traceFile != null && trace != null) {
+                write(project.resolveFile(traceFile), new Trace());
+            }
+            trace = null;
+        }
+    }
+
+    /**
+     * Starts timing a target.
+     * @param event provides the target.
+     */
+    public void targetStarted(BuildEvent event) {
+        if (checkTrace) {
+            checkTrace(event.getProject());
+        }
+        Target target = event.getTarget();
+        start(target, new Frame(TARGET, getTargetName(target), ""));
+    }
+
+    /**
+     * Records the time used by a target.
+     * @param event provides the target.
+     */
+    public void targetFinished(BuildEvent event) {
+        Frame f = finish(event.getTarget());
+        if (f != null) {
+            synchronized (this) {
+                add(targets, f.name, f);
+            }
+        }
+    }
+
+    /**
+     * Starts timing a task.
+     * @param event provides the task.
+     */
+    public void taskStarted(BuildEvent event) {
+        if (checkTrace) {
+            checkTrace(event.getProject());
+        }
+        Task task = event.getTask();
+        String name = task.getTaskName();
+        if (name == null) {
+            name = task.getClass().getName();
+        }
+        start(task, new Frame(TASK, name, getLocation(task)));
+    }
+
+    /**
+     * Records the time used by a task.
+     * @param event provides the task.
+     */
+    public void taskFinished(BuildEvent event) {
+        Frame f = finish(event.getTask());
+        if (f != null) {
+            synchronized (this) {
+                add(taskTypes, f.name, f);
+                if (f.location.length() > 0) {
+                    add(locations, f.location + " (" + f.name + ")", f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ignored.
+     * @param event ignored.
+     */
+    public void messageLogged(BuildEvent event) {
+    }
+
+    /**
+     * This listener isn't interested in messages.
+     * @return {@link Project#MSG_ERR MSG_ERR}
+     */
+    public int getMessageOutputLevel() {
+        return Project.MSG_ERR;
+    }
+
+    /**
+     * Starts recording the trace if requested, properties set on the
+     * command line are not known when the build starts.
+     */
+    private synchronized void checkTrace(Project project) {
+        if (checkTrace) {
+            checkTrace = false;
+            if (project.getProperty(TRACE_PROPERTY) != null) {
+                trace = new ArrayList<Frame>();
+            }
+        }
+    }
+
+    private void start(Object key, Frame f) {
+        LinkedList<Frame> stack = stacks.get();
+        f.parent = stack.isEmpty() ? null : stack.getLast();
+        stack.addLast(f);
+        f.startCpu = getCpuTime();
+        f.startAlloc = getAllocatedBytes();
+        f.start = System.nanoTime();
+        running.put(key, f);
+    }
+
+    private Frame finish(Object key) {
+        long end = System.nanoTime();
+        Frame f = running.remove(key);
+        if (f == null) {
+            return null;
+        }
+        f.wall = end - f.start;
+        if (f.thread == Thread.currentThread()) {
+            f.cpu = cpuTime ? getCpuTime() - f.startCpu : -1;
+            f.alloc = allocatedBytes != null ? getAllocatedBytes() - f.startAlloc : -1;
+        } else {
+            f.cpu = -1;
+            f.alloc = -1;
+        }
+        LinkedList<Frame> stack = stacks.get();
+        if (!stack.isEmpty() && stack.getLast() == f) {
+            stack.removeLast();
+        } else {
+            stack.remove(f);
+        }
+        if (f.parent != null) {
+            f.parent.addChildTime(f.wall);
+        }
+        return f;
+    }
+
+    private long getCpuTime() {
+        return cpuTime ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    private long getAllocatedBytes() {
+        if (allocatedBytes == null) {
+            return 0;
+        }
+        try {
+            Object l = allocatedBytes.invoke(threads,
+                new Object[] {Long.valueOf(Thread.currentThread().getId())});
+            return ((Long) l).longValue();
+        } catch (Exception ex) {
+            return 0;
+        }
+    }
+
+    private void add(Map<String, Stats> map, String key, Frame f) {
+        Stats s = map.get(key);
+        if (s == null) {
+            s = new Stats(key);
+            map.put(key, s);
+        }
+        s.add(f);
+        if (trace != null && map != locations) {
+            trace.add(f);
+        }
+    }
+
+    private static String getTargetName(Target target) {
+        Project p = target.getProject();
+        String projectName = p == null ? null : p.getName();
+        return projectName == null || projectName.length() == 0
+            ? target.getName() : projectName + "." + target.getName();
+    }
+
+    private static String getLocation(Task task) {
+        Location l = task.getLocation();
+        if (l == null || l.getFileName() == null) {
+            return "";
+        }
+        return l.getFileName() + ":" + l.getLineNumber();
+    }
+
+    private static void write(File file, Output output) {
+        PrintWriter out = null;
+        try {
+            Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            out = new PrintWriter(new BufferedWriter(w));
+            output.write(out);
+            out.flush();
+            if (out.checkError()) {
+                throw new IOException("Error writing " + file);
+            }
+        } catch (IOException ex) {
+            throw new BuildException("Unable to write " + file, ex);
+        } finally {
+            FileUtils.close(out);
+        }
+    }
+
+    private interface Output {
+        void write(PrintWriter out);
+    }
+
+    /**
+     * The report with one table each for targets, task types and
+     * locations.
+     */
+    private final class Report implements Output {
+        private final long wall;
+        private final int sortKey;
+
+        private Report(long wall, int sortKey) {
+            this.wall = wall;
+            this.sortKey = sortKey;
+        }
+
+        public void write(PrintWriter out) {
+            int invocations = 0;
+            for (Stats s : taskTypes.values()) {
+                invocations += s.count;
+            }
+            out.println("Total time " + (wall / NANOS_PER_MILLI) + " ms, "
+                        + invocations + " task invocations, sorted by "
+                        + SORT_KEYS[sortKey]);
+            table(out, "Targets", targets);
+            table(out, "Tasks", taskTypes);
+            table(out, "Locations", locations);
+        }
+
+        private void table(PrintWriter out, String title, Map<String, Stats> map) {
+            List<Stats> rows = new ArrayList<Stats>(map.values());
+            Collections.sort(rows, new Comparator<Stats>() {
+                    public int compare(Stats s1, Stats s2) {
+                        long v1 = s1.get(sortKey);
+                        long v2 = s2.get(sortKey);
+                        if (v1 != v2) {
+                            return v1 > v2 ? -1 : 1;
+                        }
+                        return s1.name.compareTo(s2.name);
+                    }
+                });
+            out.println();
+            out.println(title + ":");
+            out.println(String.format("%10s %10s %10s %10s %12s  %s", "count",
+                                      "wall ms", "self ms", "cpu ms",
+                                      "alloc KB", "name"));
+            for (Stats s : rows) {
+                out.println(String.format("%10d %10d %10d %10s %12s  %s",
+                                          Long.valueOf(s.count),
+                                          Long.valueOf(s.wall / NANOS_PER_MILLI),
+                                          Long.valueOf(s.self / NANOS_PER_MILLI),
+                                          s.cpu < 0 ? "-"
+                                          : String.valueOf(s.cpu / NANOS_PER_MILLI),
+                                          s.alloc < 0 ? "-"
+                                          : String.valueOf(s.alloc / 1024),
+                                          s.name));
+            }
+        }
+    }
+
+    /**
+     * All invocations in Chrome's trace event format.
+     */
+    private final class Trace implements Output {
+        public void write(PrintWriter out) {
+            out.println("{\"traceEvents\":[");
+            Map<Thread, Boolean> seen = new HashMap<Thread, Boolean>();
+            boolean first = true;
+            for (Frame f : trace) {
+                if (!first) {
+                    out.println(",");
+                }
+                first = false;
+                if (seen.put(f.thread, Boolean.TRUE) == null) {
+                    out.print("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,"
+                              + "\"tid\":" + f.thread.getId()
+                              + ",\"args\":{\"name\":" + quote(f.thread.getName())
+                              + "}},\n");
+                }
+                out.print("{\"name\":" + quote(f.name)
+                          + ",\"cat\":\"" + f.category
+                          + "\",\"ph\":\"X\",\"pid\":1,\"tid\":" + f.thread.getId()
+                          + ",\"ts\":" + ((f.start - buildStart) / NANOS_PER_MICRO)
+                          + ",\"dur\":" + (f.wall / NANOS_PER_MICRO));
+                if (f.location.length() > 0) {
+                    out.print(",\"args\":{\"location\":" + quote(f.location) + "}");
+                }
+                out.print("}");
+            }
+            out.println();
+            out.println("],\"displayTimeUnit\":\"ms\"}");
+        }
+
+        private String quote(String s) {
+            StringBuffer sb = new StringBuffer(s.length() + 2).append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') {
+                    sb.append('\\').append(c);
+                } else if (c < ' ') {
+                    sb.append(String.format("\\u%04x", Integer.valueOf(c)));
+                } else {
+                    sb.append(c);
+                }
+            }
+            return sb.append('"').toString();
+        }
+    }
+
+    /**
+     * A running or finished invocation of a target or task.
+     */
+    private static final class Frame {
+        private final String category;
+        private final String name;
+        private final String location;
+        private final Thread thread = Thread.currentThread();
+        private Frame parent;
+        private long start;
+        private long startCpu;
+        private long startAlloc;
+        private long wall;
+        private long cpu;
+        private long alloc;
+        private long childTime;
+
+        private Frame(String category, String name, String location) {
+            this.category = category;
+            this.name = name;
+            this.location = location;
+        }
+
+        private synchronized void addChildTime(long time) {
+            childTime += time;
+        }
+
+        private synchronized long getSelfTime() {
+            return Math.max(0, wall - childTime);
+        }
+    }
+
+    /**
+     * Aggregated numbers of all invocations sharing a key.
+     */
+    private static final class Stats {
+        private final String name;
+        private long count;
+        private long wall;
+        private long self;
+        /** -1 if unknown for any invocation */
+        private long cpu;
+        private long alloc;
+
+        private Stats(String name) {
+            this.name = name;
+        }
+
+        private void add(Frame f) {
+            count++;
+            wall += f.wall;
+            self += f.getSelfTime();
+            cpu = cpu < 0 || f.cpu < 0 ? -1 : cpu + f.cpu;
+            alloc = alloc < 0 || f.alloc < 0 ? -1 : alloc + f.alloc;
+        }
+
+        private long get(int key) {
+            switch (key) {
+            case 1:
+                return self;
+            case 2:
+                return cpu;
+            case 3:
+                return alloc;
+            case 4:
+                return count;
+            default:
+                return wall;
+            }
+        }
+    }
+}
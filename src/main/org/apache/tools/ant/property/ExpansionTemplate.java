@@ -0,0 +1,163 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.property;
+
+import java.text.ParsePosition;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.tools.ant.Project;
+
+/**
+ * A String split into literal text and property references, so it
+ * can be expanded repeatedly without being parsed again.
+ *
+ * <p>Expanding a template yields the same result as {@link
+ * ParseProperties#parseProperties ParseProperties.parseProperties}
+ * on the original String, provided the expanders used to compile it
+ * find property names by looking at the String alone.  Expanders
+ * that use the {@link ParseNextProperty ParseNextProperty} they are
+ * passed - for example to support nested references - must not be
+ * used to compile templates.</p>
+ *
+ * <p>Instances are immutable and may be shared by threads.</p>
+ *
+ * @since Ant 1.9.1
+ */
+public final class ExpansionTemplate {
+
+    private final String value;
+    /**
+     * Literal text and references in order, a reference occupies two
+     * slots: its property name and its original text.
+     */
+    private final String[] parts;
+    private final boolean[] isReference;
+    private final boolean hasReferences;
+
+    private ExpansionTemplate(String value, List<String> parts,
+                              List<Boolean> isReference) {
+        this.value = value;
+        this.parts = parts.toArray(new String[parts.size()]);
+        this.isReference = new boolean[this.parts.length];
+        boolean refs = false;
+        for (int i = 0; i < this.parts.length; i++) {
+            this.isReference[i] = isReference.get(i).booleanValue();
+            refs |= this.isReference[i];
+        }
+        hasReferences = refs;
+    }
+
+    /**
+     * Splits a String into literal text and property references.
+     *
+     * @param value the String, must not be null.
+     * @param expanders the expanders finding property references,
+     * they are passed null as ParseNextProperty.
+     * @return the template.
+     */
+    public static ExpansionTemplate compile(String value,
+                                            Collection<PropertyExpander> expanders) {
+        List<String> parts = new ArrayList<String>();
+        List<Boolean> isReference = new ArrayList<Boolean>();
+        StringBuffer literal = new StringBuffer();
+        final int len = value.length();
+        ParsePosition pos = new ParsePosition(0);
+        while (pos.getIndex() < len) {
+            int start = pos.getIndex();
+            String name = null;
+            for (PropertyExpander expander : expanders) {
+                name = expander.parsePropertyName(value, pos, null);
+                if (name != null) {
+                    break;
+                }
+            }
+            if (name == null) {
+                literal.append(value.charAt(pos.getIndex()));
+                pos.setIndex(pos.getIndex() + 1);
+                continue;
+            }
+            if (literal.length() > 0) {
+                parts.add(literal.toString());
+                isReference.add(Boolean.FALSE);
+                literal.setLength(0);
+            }
+            parts.add(name);
+            isReference.add(Boolean.TRUE);
+            parts.add(value.substring(start, pos.getIndex()));
+            isReference.add(Boolean.TRUE);
+        }
+        if (literal.length() > 0) {
+            parts.add(literal.toString());
+            isReference.add(Boolean.FALSE);
+        }
+        return new ExpansionTemplate(value, parts, isReference);
+    }
+
+    /**
+     * Whether the template contains any property reference.
+     * @return true if there is at least one reference.
+     */
+    public boolean hasReferences() {
+        return hasReferences;
+    }
+
+    /**
+     * Replaces the property references with their values.
+     *
+     * <p>If the template consists of a single reference, its value
+     * is returned as is, otherwise a String is returned.  References
+     * to properties that are not set remain unchanged.</p>
+     *
+     * @param project used for logging, may be null.
+     * @param getProperty looks up property values.
+     * @return the expanded value.
+     */
+    public Object expand(Project project, GetProperty getProperty) {
+        if (!hasReferences) {
+            // "$$" has been collapsed
+            return parts.length == 0 ? value : parts[0];
+        }
+        if (parts.length == 2) {
+            return lookup(project, getProperty, 0);
+        }
+        StringBuffer sb = new StringBuffer(value.length() * 2);
+        for (int i = 0; i < parts.length; i++) {
+            if (isReference[i]) {
+                sb.append(lookup(project, getProperty, i));
+                i++;
+            } else {
+                sb.append(parts[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    private Object lookup(Project project, GetProperty getProperty, int i) {
+        Object result = getProperty.getProperty(parts[i]);
+        if (result != null) {
+            return result;
+        }
+        if (project != null) {
+            project.log("Property \"" + parts[i] + "\" has not been set",
+                        Project.MSG_VERBOSE);
+        }
+        return parts[i + 1];
+    }
+}
@@ -23,6 +23,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Iterator;
@@ -35,6 +37,7 @@ import org.apache.tools.ant.DefaultLogger;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.ProjectComponent;
 import org.apache.tools.ant.ProjectHelper;
+import org.apache.tools.ant.PropertyHelper;
 import org.apache.tools.ant.Target;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.MagicNames;
@@ -68,6 +71,11 @@ public class Ant extends Task {
 
     private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
 
+    /** properties that are never copied to the new project */
+    private static final Set<String> SPECIAL_PROPERTIES =
+        Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            new String[] {MagicNames.PROJECT_BASEDIR, MagicNames.ANT_FILE})));
+
     /** the basedir where is executed the build file */
     private File dir = null;
 
@@ -228,8 +236,10 @@ public class Ant extends Task {
            newProject.initProperties();
 
         } else {
-            // set all properties from calling project
-            addAlmostAll(getProject().getProperties(), PropertyType.PLAIN);
+            // set all properties from calling project, basedir and
+            // ant.file get special treatment in execute()
+            PropertyHelper.getPropertyHelper(getProject())
+                .copyNewProperties(newProject, SPECIAL_PROPERTIES);
         }
 
         for (PropertySet ps : propertySets) {
@@ -624,8 +634,7 @@ public class Ant extends Task {
         Enumeration<?> e = props.keys();
         while (e.hasMoreElements()) {
             String key = e.nextElement().toString();
-            if (MagicNames.PROJECT_BASEDIR.equals(key)
-                || MagicNames.ANT_FILE.equals(key)) {
+            if (SPECIAL_PROPERTIES.contains(key)) {
                 // basedir and ant.file get special treatment in execute()
                 continue;
             }
@@ -27,10 +27,17 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.MessageSupplier;
 import org.apache.tools.ant.types.Mapper;
 import org.apache.tools.ant.types.FileSet;
 import org.apache.tools.ant.types.FilterSet;
@@ -42,6 +49,8 @@ import org.apache.tools.ant.types.ResourceFactory;
 import org.apache.tools.ant.types.resources.FileProvider;
 import org.apache.tools.ant.types.resources.FileResource;
 import org.apache.tools.ant.util.FileUtils;
+import org.apache.tools.ant.util.CopyStatistics;
+import org.apache.tools.ant.util.DirectoryScannerCache;
 import org.apache.tools.ant.util.FileNameMapper;
 import org.apache.tools.ant.util.IdentityMapper;
 import org.apache.tools.ant.util.LinkedHashtable;
@@ -101,6 +110,7 @@ public class Copy extends Task {
     private long granularity = 0;
     private boolean force = false;
     private boolean quiet = false;
+    private int threads = 1;
 
     // used to store the single non-file resource to copy when the
     // tofile attribute has been used
@@ -327,6 +337,29 @@ public class Copy extends Task {
         this.failonerror = failonerror;
     }
 
+    /**
+     * Set the number of threads used to copy files.
+     *
+     * <p>With more than one thread files are copied concurrently,
+     * parent directories are still created in order by the task's
+     * own thread.  Files are copied one at a time if filtering is
+     * enabled or filtersets have been specified.  Default is 1.</p>
+     * @param threads the number of threads.
+     * @since Ant 1.9.1
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Get the number of threads used to copy files.
+     * @return the number of threads.
+     * @since Ant 1.9.1
+     */
+    public int getThreads() {
+        return threads;
+    }
+
     /**
      * Add a set of files to copy.
      * @param set a set of files to copy.
@@ -593,6 +626,8 @@ public class Copy extends Task {
                 }
             }
         } finally {
+            DirectoryScannerCache.invalidate(getProject(), destDir);
+            DirectoryScannerCache.invalidate(getProject(), destFile);
             // clean up again, so this instance can be used a second
             // time
             singleResource = null;
@@ -624,7 +659,7 @@ public class Copy extends Task {
                         > destFile.lastModified())) {
                     fileCopyMap.put(file.getAbsolutePath(),
                                     new String[] {destFile.getAbsolutePath()});
-                } else {
+                } else if (isLoggable(Project.MSG_VERBOSE)) {
                     log(file + " omitted as " + destFile
                         + " is up to date.", Project.MSG_VERBOSE);
                 }
@@ -864,50 +899,28 @@ public class Copy extends Task {
                 + " file" + (fileCopyMap.size() == 1 ? "" : "s")
                 + " to " + destDir.getAbsolutePath());
 
+            final CopyStatistics stats = new CopyStatistics();
+            List<Runnable> jobs = new ArrayList<Runnable>();
             for (Map.Entry<String, String[]> e : fileCopyMap.entrySet()) {
-                String fromFile = e.getKey();
+                final String fromFile = e.getKey();
                 String[] toFiles = e.getValue();
 
                 for (int i = 0; i < toFiles.length; i++) {
-                    String toFile = toFiles[i];
+                    final String toFile = toFiles[i];
 
                     if (fromFile.equals(toFile)) {
                         log("Skipping self-copy of " + fromFile, verbosity);
                         continue;
                     }
-                    try {
-                        log("Copying " + fromFile + " to " + toFile, verbosity);
-
-                        FilterSetCollection executionFilters =
-                            new FilterSetCollection();
-                        if (filtering) {
-                            executionFilters
-                                .addFilterSet(getProject().getGlobalFilterSet());
-                        }
-                        for (FilterSet filterSet : filterSets) {
-                            executionFilters.addFilterSet(filterSet);
-                        }
-                        fileUtils.copyFile(new File(fromFile), new File(toFile),
-                                           executionFilters,
-                                           filterChains, forceOverwrite,
-                                           preserveLastModified,
-                                           /* append: */ false, inputEncoding,
-                                           outputEncoding, getProject(),
-                                           getForce());
-                    } catch (IOException ioe) {
-                        String msg = "Failed to copy " + fromFile + " to " + toFile
-                            + " due to " + getDueTo(ioe);
-                        File targetFile = new File(toFile);
-                        if (targetFile.exists() && !targetFile.delete()) {
-                            msg += " and I couldn't delete the corrupt " + toFile;
-                        }
-                        if (failonerror) {
-                            throw new BuildException(msg, ioe, getLocation());
-                        }
-                        log(msg, Project.MSG_ERR);
-                    }
+                    jobs.add(new Runnable() {
+                            public void run() {
+                                copyOneFile(fromFile, toFile, stats);
+                            }
+                        });
                 }
             }
+            runJobs(jobs, fileCopyMap.values());
+            log("Copied " + stats, Project.MSG_VERBOSE);
         }
         if (includeEmpty) {
             int createCount = 0;
@@ -936,6 +949,39 @@ public class Copy extends Task {
         }
     }
 
+    /**
+     * Copies a single file of the fileCopyMap.
+     */
+    private void copyOneFile(final String fromFile, final String toFile,
+                             CopyStatistics stats) {
+        try {
+            log(new MessageSupplier() {
+                    public String getMessage() {
+                        return "Copying " + fromFile + " to " + toFile;
+                    }
+                }, verbosity);
+
+            fileUtils.copyFile(new File(fromFile), new File(toFile),
+                               getExecutionFilters(),
+                               filterChains, forceOverwrite,
+                               preserveLastModified,
+                               /* append: */ false, inputEncoding,
+                               outputEncoding, getProject(),
+                               getForce(), stats);
+        } catch (IOException ioe) {
+            String msg = "Failed to copy " + fromFile + " to " + toFile
+                + " due to " + getDueTo(ioe);
+            File targetFile = new File(toFile);
+            if (targetFile.exists() && !targetFile.delete()) {
+                msg += " and I couldn't delete the corrupt " + toFile;
+            }
+            if (failonerror) {
+                throw new BuildException(msg, ioe, getLocation());
+            }
+            log(msg, Project.MSG_ERR);
+        }
+    }
+
     /**
      * Actually does the resource copies.
      * This is a good method for subclasses to override.
@@ -948,49 +994,191 @@ public class Copy extends Task {
                 + " resource" + (map.size() == 1 ? "" : "s")
                 + " to " + destDir.getAbsolutePath());
 
+            final CopyStatistics stats = new CopyStatistics();
+            List<Runnable> jobs = new ArrayList<Runnable>();
+            List<String[]> targets = new ArrayList<String[]>();
             for (Map.Entry<Resource, String[]> e : map.entrySet()) {
-                Resource fromResource = e.getKey();
-                for (String toFile : e.getValue()) {
-                    try {
-                        log("Copying " + fromResource + " to " + toFile,
-                            verbosity);
+                final Resource fromResource = e.getKey();
+                String[] toFiles = e.getValue();
+                String[] resolved = new String[toFiles.length];
+                for (int i = 0; i < toFiles.length; i++) {
+                    // the names are relative to destDir
+                    resolved[i] = fileUtils.resolveFile(destDir, toFiles[i])
+                        .getAbsolutePath();
+                }
+                targets.add(resolved);
+                for (final String toFile : toFiles) {
+                    jobs.add(new Runnable() {
+                            public void run() {
+                                copyOneResource(fromResource, toFile,
+                                                stats);
+                            }
+                        });
+                }
+            }
+            runJobs(jobs, targets);
+            log("Copied " + stats, Project.MSG_VERBOSE);
+        }
+    }
 
-                        FilterSetCollection executionFilters = new FilterSetCollection();
-                        if (filtering) {
-                            executionFilters
-                                .addFilterSet(getProject().getGlobalFilterSet());
-                        }
-                        for (FilterSet filterSet : filterSets) {
-                            executionFilters.addFilterSet(filterSet);
-                        }
-                        ResourceUtils.copyResource(fromResource,
-                                                   new FileResource(destDir,
-                                                                    toFile),
-                                                   executionFilters,
-                                                   filterChains,
-                                                   forceOverwrite,
-                                                   preserveLastModified,
-                                                   /* append: */ false,
-                                                   inputEncoding,
-                                                   outputEncoding,
-                                                   getProject(),
-                                                   getForce());
-                    } catch (IOException ioe) {
-                        String msg = "Failed to copy " + fromResource
-                            + " to " + toFile
-                            + " due to " + getDueTo(ioe);
-                        File targetFile = new File(toFile);
-                        if (targetFile.exists() && !targetFile.delete()) {
-                            msg += " and I couldn't delete the corrupt " + toFile;
-                        }
-                        if (failonerror) {
-                            throw new BuildException(msg, ioe, getLocation());
-                        }
-                        log(msg, Project.MSG_ERR);
+    /**
+     * Copies a single resource to a file relative to destDir.
+     */
+    private void copyOneResource(final Resource fromResource,
+                                 final String toFile,
+                                 CopyStatistics stats) {
+        try {
+            log(new MessageSupplier() {
+                    public String getMessage() {
+                        return "Copying " + fromResource + " to " + toFile;
+                    }
+                }, verbosity);
+
+            ResourceUtils.copyResource(fromResource,
+                                       new FileResource(destDir,
+                                                        toFile),
+                                       getExecutionFilters(),
+                                       filterChains,
+                                       forceOverwrite,
+                                       preserveLastModified,
+                                       /* append: */ false,
+                                       inputEncoding,
+                                       outputEncoding,
+                                       getProject(),
+                                       getForce(), stats);
+        } catch (IOException ioe) {
+            String msg = "Failed to copy " + fromResource
+                + " to " + toFile
+                + " due to " + getDueTo(ioe);
+            File targetFile = new File(toFile);
+            if (targetFile.exists() && !targetFile.delete()) {
+                msg += " and I couldn't delete the corrupt " + toFile;
+            }
+            if (failonerror) {
+                throw new BuildException(msg, ioe, getLocation());
+            }
+            log(msg, Project.MSG_ERR);
+        }
+    }
+
+    /**
+     * The filter sets to apply to a single copy.
+     */
+    private FilterSetCollection getExecutionFilters() {
+        FilterSetCollection executionFilters = new FilterSetCollection();
+        if (filtering) {
+            executionFilters.addFilterSet(getProject().getGlobalFilterSet());
+        }
+        for (FilterSet filterSet : filterSets) {
+            executionFilters.addFilterSet(filterSet);
+        }
+        return executionFilters;
+    }
+
+    /**
+     * Runs the given jobs, concurrently if more than one {@link
+     * #setThreads thread} has been configured.
+     *
+     * <p>Jobs are run one after the other if filtering is enabled
+     * or filtersets have been specified as the token replacement of
+     * {@link FilterSet FilterSet} is not thread-safe.</p>
+     *
+     * <p>Before any job is started the parent directories of the
+     * given target files are created on the current thread, in
+     * order.  Jobs are started in list order, once a job has failed
+     * the jobs not yet started are skipped and the failure of the
+     * first failed job (in list order) is rethrown after all running
+     * jobs have finished.</p>
+     *
+     * @param jobs the jobs to run.
+     * @param targets names of the files the jobs are going to
+     * create, may be null.
+     * @since Ant 1.9.1
+     */
+    protected void runJobs(List<Runnable> jobs,
+                           Iterable<String[]> targets) {
+        if (threads < 2 || jobs.size() < 2 || filtering
+            || !filterSets.isEmpty()) {
+            for (Runnable job : jobs) {
+                job.run();
+            }
+            return;
+        }
+        if (targets != null) {
+            HashSet<File> parents = new HashSet<File>();
+            for (String[] names : targets) {
+                for (int i = 0; i < names.length; i++) {
+                    File parent = new File(names[i]).getParentFile();
+                    if (parent != null && parents.add(parent)
+                        && !parent.isDirectory()) {
+                        // failures are reported by the copy itself
+                        parent.mkdirs();
                     }
                 }
             }
         }
+
+        ExecutorService pool =
+            Executors.newFixedThreadPool(Math.min(threads, jobs.size()),
+                                         new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, getTaskName() + " worker");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        List<Future<?>> results = new ArrayList<Future<?>>(jobs.size());
+        RuntimeException failure = null;
+        try {
+            for (final Runnable job : jobs) {
+                results.add(pool.submit(new Runnable() {
+                        public void run() {
+                            Thread me = Thread.currentThread();
+                            getProject().registerThreadTask(me, Copy.this);
+                            try {
+                                job.run();
+                            } finally {
+                                getProject().registerThreadTask(me, null);
+                            }
+                        }
+                    }));
+            }
+            for (Future<?> f : results) {
+                if (failure != null) {
+                    f.cancel(false);
+                    continue;
+                }
+                try {
+                    f.get();
+                } catch (InterruptedException ex) {
+                    failure = new BuildException("Interrupted while waiting"
+                                                 + " for copies", ex,
+                                                 getLocation());
+                } catch (ExecutionException ex) {
+                    Throwable t = ex.getCause();
+                    failure = t instanceof RuntimeException
+                        ? (RuntimeException) t
+                        : new BuildException(t, getLocation());
+                }
+            }
+        } finally {
+            pool.shutdown();
+            try {
+                // don't return while a copy is still writing
+                while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // keep waiting
+                }
+            } catch (InterruptedException ex) {
+                if (failure == null) {
+                    failure = new BuildException("Interrupted while waiting"
+                                                 + " for copies", ex,
+                                                 getLocation());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
     }
 
     /**
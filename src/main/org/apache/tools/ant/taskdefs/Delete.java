@@ -60,6 +60,7 @@ import org.apache.tools.ant.types.selectors.MajoritySelector;
 import org.apache.tools.ant.types.selectors.ContainsRegexpSelector;
 import org.apache.tools.ant.types.selectors.modifiedselector.ModifiedSelector;
 import org.apache.tools.ant.util.FileUtils;
+import org.apache.tools.ant.util.DirectoryScannerCache;
 import org.apache.tools.ant.util.SymbolicLinkUtils;
 
 /**
@@ -733,6 +734,7 @@ public class Delete extends MatchingTask {
      * wait a little and try again.
      */
     private boolean delete(File f) {
+        DirectoryScannerCache.invalidate(getProject(), f);
         if (!FILE_UTILS.tryHardToDelete(f, performGc)) {
             if (deleteOnExit) {
                 int level = quiet ? Project.MSG_VERBOSE : Project.MSG_INFO;
@@ -507,12 +507,29 @@ public class Jar extends Zip {
         throws IOException, BuildException {
 
         if (!skipWriting) {
-            Manifest jarManifest = createManifest();
-            writeManifest(zOut, jarManifest);
+            if (zOut.isAppending()) {
+                // canUpdateIncrementally made sure the manifest
+                // hasn't changed
+                super.initZipOutputStream(zOut);
+            } else {
+                Manifest jarManifest = createManifest();
+                writeManifest(zOut, jarManifest);
+            }
             writeServices(zOut);
         }
     }
 
+    /**
+     * Appending is only possible if neither the manifest nor the
+     * index need to be rewritten.
+     * @return whether the archive may be updated by appending to it.
+     * @since Ant 1.9.1
+     */
+    protected boolean canUpdateIncrementally() {
+        return !index && !doubleFilePass && originalManifest != null
+            && createManifest().equals(originalManifest);
+    }
+
     private Manifest createManifest()
         throws BuildException {
         try {
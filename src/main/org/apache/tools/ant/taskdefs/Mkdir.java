@@ -22,6 +22,7 @@ import java.io.File;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.Project;
+import org.apache.tools.ant.util.DirectoryScannerCache;
 
 /**
  * Creates a given directory.
@@ -69,6 +70,7 @@ public class Mkdir extends Task {
                     + " creation was not successful for an unknown reason";
                 throw new BuildException(msg, getLocation());
             }
+            DirectoryScannerCache.invalidate(getProject(), dir);
             log("Created dir: " + dir.getAbsolutePath());
         } else {
             log("Skipping " + dir.getAbsolutePath()
@@ -19,7 +19,9 @@ package org.apache.tools.ant.taskdefs;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.BuildException;
@@ -28,6 +30,8 @@ import org.apache.tools.ant.taskdefs.condition.Os;
 import org.apache.tools.ant.types.FileSet;
 import org.apache.tools.ant.types.FilterSet;
 import org.apache.tools.ant.types.FilterSetCollection;
+import org.apache.tools.ant.types.ResourceCollection;
+import org.apache.tools.ant.util.DirectoryScannerCache;
 
 /**
  * Moves a file or directory to a new file or directory.
@@ -134,34 +138,17 @@ public class Move extends Copy {
             log("Moving " + moveCount + " file" + ((moveCount == 1) ? "" : "s")
                     + " to " + destDir.getAbsolutePath());
 
+            List<Runnable> jobs = new ArrayList<Runnable>();
             for (Iterator fromFiles = fileCopyMap.keySet().iterator(); fromFiles.hasNext();) {
-                String fromFile = (String) fromFiles.next();
-                File f = new File(fromFile);
-                boolean selfMove = false;
-                if (f.exists()) { //Is this file still available to be moved?
-                    String[] toFiles = (String[]) fileCopyMap.get(fromFile);
-                    for (int i = 0; i < toFiles.length; i++) {
-                        String toFile = (String) toFiles[i];
-
-                        if (fromFile.equals(toFile)) {
-                            log("Skipping self-move of " + fromFile, verbosity);
-                            selfMove = true;
-
-                            // if this is the last time through the loop then
-                            // move will not occur, but that's what we want
-                            continue;
-                        }
-                        File d = new File(toFile);
-                        if ((i + 1) == toFiles.length && !selfMove) {
-                            // Only try to move if this is the last mapped file
-                            // and one of the mappings isn't to itself
-                            moveFile(f, d, filtering, forceOverwrite);
-                        } else {
-                            copyFile(f, d, filtering, forceOverwrite);
+                final String fromFile = (String) fromFiles.next();
+                final String[] toFiles = (String[]) fileCopyMap.get(fromFile);
+                jobs.add(new Runnable() {
+                        public void run() {
+                            moveOneFile(fromFile, toFiles);
                         }
-                    }
-                }
+                    });
             }
+            runJobs(jobs, fileCopyMap.values());
         }
 
         if (includeEmpty) {
@@ -201,6 +188,43 @@ public class Move extends Copy {
                         + destDir.getAbsolutePath());
             }
         }
+        // the sources are gone now
+        for (ResourceCollection rc : rcs) {
+            if (rc instanceof FileSet) {
+                DirectoryScannerCache.invalidate(getProject(),
+                    ((FileSet) rc).getDir(getProject()));
+            }
+        }
+    }
+
+    /**
+     * Moves a single file of the fileCopyMap to all its targets.
+     */
+    private void moveOneFile(String fromFile, String[] toFiles) {
+        File f = new File(fromFile);
+        boolean selfMove = false;
+        if (f.exists()) { //Is this file still available to be moved?
+            for (int i = 0; i < toFiles.length; i++) {
+                String toFile = (String) toFiles[i];
+
+                if (fromFile.equals(toFile)) {
+                    log("Skipping self-move of " + fromFile, verbosity);
+                    selfMove = true;
+
+                    // if this is the last time through the loop then
+                    // move will not occur, but that's what we want
+                    continue;
+                }
+                File d = new File(toFile);
+                if ((i + 1) == toFiles.length && !selfMove) {
+                    // Only try to move if this is the last mapped file
+                    // and one of the mappings isn't to itself
+                    moveFile(f, d, filtering, forceOverwrite);
+                } else {
+                    copyFile(f, d, filtering, forceOverwrite);
+                }
+            }
+        }
     }
 
     /**
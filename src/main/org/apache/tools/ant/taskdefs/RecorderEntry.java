@@ -24,8 +24,10 @@ import org.apache.tools.ant.BuildEvent;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.BuildLogger;
 import org.apache.tools.ant.DefaultLogger;
+import org.apache.tools.ant.FilteringBuildListener;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.SubBuildListener;
+import org.apache.tools.ant.SynchronousBuildListener;
 import org.apache.tools.ant.util.StringUtils;
 
 /**
@@ -34,7 +36,9 @@ import org.apache.tools.ant.util.StringUtils;
  *
  * @since Ant 1.4
  */
-public class RecorderEntry implements BuildLogger, SubBuildListener {
+public class RecorderEntry
+    implements BuildLogger, SubBuildListener, FilteringBuildListener,
+               SynchronousBuildListener {
 
     //////////////////////////////////////////////////////////////////////
     // ATTRIBUTES
@@ -238,6 +242,14 @@ public class RecorderEntry implements BuildLogger, SubBuildListener {
         }
     }
 
+    /**
+     * @see FilteringBuildListener#getMessageOutputLevel()
+     * @since Ant 1.9.1
+     */
+    public int getMessageOutputLevel() {
+        return loglevel;
+    }
+
     /**
      * @see BuildLogger#setOutputPrintStream(PrintStream)
      */
@@ -40,6 +40,7 @@ import org.apache.tools.ant.types.resources.FileResource;
 import org.apache.tools.ant.types.resources.Touchable;
 import org.apache.tools.ant.types.resources.Union;
 import org.apache.tools.ant.util.FileUtils;
+import org.apache.tools.ant.util.DirectoryScannerCache;
 import org.apache.tools.ant.util.FileNameMapper;
 
 /**
@@ -366,6 +367,7 @@ public class Touch extends Task {
                 ((verbose) ? Project.MSG_INFO : Project.MSG_VERBOSE));
             try {
                 FILE_UTILS.createNewFile(file, mkdirs);
+                DirectoryScannerCache.invalidate(getProject(), file);
             } catch (IOException ioe) {
                 throw new BuildException("Could not create " + file, ioe,
                                          getLocation());
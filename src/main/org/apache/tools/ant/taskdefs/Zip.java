@@ -35,7 +35,16 @@ import java.util.Hashtable;
 import java.util.Map;
 import java.util.Stack;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
@@ -79,6 +88,7 @@ import org.apache.tools.zip.ZipOutputStream.UnicodeExtraFieldPolicy;
 public class Zip extends MatchingTask {
     private static final int BUFFER_SIZE = 8 * 1024;
     private static final int ROUNDUP_MILLIS = 1999; // 2 seconds - 1
+    private static final int DEFAULT_COMPACT_THRESHOLD = 25;
     // CheckStyle:VisibilityModifier OFF - bc
 
     protected File zipFile;
@@ -177,6 +187,69 @@ public class Zip extends MatchingTask {
      */
     private boolean keepCompression = false;
 
+    /**
+     * Set the number of threads used to compress entries.
+     *
+     * <p>With more than one thread files added from the file system
+     * are compressed on a pool of threads ahead of being written.
+     * Entries are still written in the same order and the archive
+     * is identical to the one created by a single thread.</p>
+     * @param threads the number of threads.
+     * @since Ant 1.9.1
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Whether an update should append new entries to the existing
+     * archive rather than rewriting it.
+     *
+     * <p>Only applies if {@link #setUpdate update} is true.  Entries
+     * of the existing archive that are not replaced are neither read
+     * nor copied, replaced entries stay in the archive as unused
+     * space until the share of unused space exceeds the {@link
+     * #setCompactThreshold compaction threshold}.</p>
+     * @param b boolean
+     * @since Ant 1.9.1
+     */
+    public void setIncrementalUpdate(boolean b) {
+        incrementalUpdate = b;
+    }
+
+    /**
+     * Whether an update appends to the existing archive.
+     * @return boolean
+     * @since Ant 1.9.1
+     */
+    public boolean isIncrementalUpdate() {
+        return incrementalUpdate;
+    }
+
+    /**
+     * Percentage of the archive that may be occupied by replaced
+     * entries before an incremental update rewrites the archive
+     * instead, defaults to 25.
+     * @param percent the threshold
+     * @since Ant 1.9.1
+     */
+    public void setCompactThreshold(int percent) {
+        if (percent < 0 || percent > 100) {
+            throw new BuildException("compactthreshold must be between 0"
+                                     + " and 100");
+        }
+        compactThreshold = percent;
+    }
+
+    /**
+     * Get the number of threads used to compress entries.
+     * @return the number of threads.
+     * @since Ant 1.9.1
+     */
+    public int getThreads() {
+        return threads;
+    }
+
     /**
      * Whether the file modification times will be rounded up to the
      * next even number of seconds.
@@ -229,6 +302,36 @@ public class Zip extends MatchingTask {
      */
     private Zip64ModeAttribute zip64Mode = Zip64ModeAttribute.AS_NEEDED;
 
+    /**
+     * Number of threads used to compress entries.
+     *
+     * @since Ant 1.9.1
+     */
+    private int threads = 1;
+
+    /**
+     * Whether updates append to the existing archive.
+     *
+     * @since Ant 1.9.1
+     */
+    private boolean incrementalUpdate = false;
+
+    /**
+     * Percentage of wasted space that triggers a full rewrite on an
+     * incremental update.
+     *
+     * @since Ant 1.9.1
+     */
+    private int compactThreshold = DEFAULT_COMPACT_THRESHOLD;
+
+    /**
+     * Compresses files ahead of them being added, only set while an
+     * archive is written with more than one thread.
+     *
+     * @since Ant 1.9.1
+     */
+    private Precompressor precompressor;
+
     /**
      * This is the name/location of where to
      * create the .zip file.
@@ -657,7 +760,12 @@ public class Zip extends MatchingTask {
             }
             Resource[][] addThem = state.getResourcesToAdd();
 
-            if (doUpdate) {
+            ZipOutputStream zOut = null;
+            if (doUpdate && !skipWriting && incrementalUpdate
+                && canUpdateIncrementally()) {
+                zOut = openForAppend();
+            }
+            if (doUpdate && zOut == null) {
                 renamedFile = renameFile();
             }
 
@@ -667,10 +775,11 @@ public class Zip extends MatchingTask {
                 log(action + archiveType + ": " + zipFile.getAbsolutePath());
             }
 
-            ZipOutputStream zOut = null;
             try {
                 if (!skipWriting) {
-                    zOut = new ZipOutputStream(zipFile);
+                    if (zOut == null) {
+                        zOut = new ZipOutputStream(zipFile);
+                    }
 
                     zOut.setEncoding(encoding);
                     zOut.setUseLanguageEncodingFlag(useLanguageEncodingFlag);
@@ -681,6 +790,16 @@ public class Zip extends MatchingTask {
                         ? ZipOutputStream.DEFLATED : ZipOutputStream.STORED);
                     zOut.setLevel(level);
                     zOut.setUseZip64(zip64Mode.getMode());
+                    if (threads > 1) {
+                        precompressor = new Precompressor(threads, level);
+                    }
+                    if (zOut.isAppending()) {
+                        for (String name : zOut.getRetainedEntryNames()) {
+                            if (name.endsWith("/")) {
+                                addedDirs.put(name, name);
+                            }
+                        }
+                    }
                 }
                 initZipOutputStream(zOut);
 
@@ -691,7 +810,7 @@ public class Zip extends MatchingTask {
                     }
                 }
 
-                if (doUpdate) {
+                if (doUpdate && renamedFile != null) {
                     addingNewFiles = false;
                     ZipFileSet oldFiles = new ZipFileSet();
                     oldFiles.setProject(getProject());
@@ -733,7 +852,7 @@ public class Zip extends MatchingTask {
 
                 // If we've been successful on an update, delete the
                 // temporary file
-                if (doUpdate) {
+                if (doUpdate && renamedFile != null) {
                     if (!renamedFile.delete()) {
                         log ("Warning: unable to delete temporary file "
                             + renamedFile.getName(), Project.MSG_WARN);
@@ -741,6 +860,10 @@ public class Zip extends MatchingTask {
                 }
                 success = true;
             } finally {
+                if (precompressor != null) {
+                    precompressor.shutdown();
+                    precompressor = null;
+                }
                 // Close the output stream.
                 closeZout(zOut, success);
             }
@@ -769,6 +892,42 @@ public class Zip extends MatchingTask {
         }
     }
 
+    /**
+     * Whether the archive may be updated by appending to it.
+     *
+     * <p>Subclasses that need to rewrite parts of the archive which
+     * aren't tracked as resources - like a changed manifest - return
+     * false.</p>
+     * @return true
+     * @since Ant 1.9.1
+     */
+    protected boolean canUpdateIncrementally() {
+        return true;
+    }
+
+    /**
+     * Opens the existing archive for appending.
+     * @return null if the archive should be rewritten instead.
+     */
+    private ZipOutputStream openForAppend() throws IOException {
+        ZipOutputStream zOut;
+        try {
+            zOut = new ZipOutputStream(zipFile, true);
+        } catch (ZipException ex) {
+            log("Can't update " + zipFile + " incrementally: "
+                + ex.getMessage(), Project.MSG_VERBOSE);
+            return null;
+        }
+        long length = zipFile.length();
+        if (zOut.getWastedBytes() * 100 > length * compactThreshold) {
+            log(zipFile + " contains " + zOut.getWastedBytes()
+                + " unused bytes, rewriting it", Project.MSG_VERBOSE);
+            zOut.discard();
+            return null;
+        }
+        return zOut;
+    }
+
     /** rename the zip file. */
     private File renameFile() {
         File renamedFile = FILE_UTILS.createTempFile(
@@ -795,6 +954,11 @@ public class Zip extends MatchingTask {
         if (zOut == null) {
             return;
         }
+        if (!success && zOut.isAppending()) {
+            // leave the original archive untouched
+            zOut.discard();
+            return;
+        }
         try {
             zOut.close();
         } catch (IOException ex) {
@@ -939,7 +1103,12 @@ public class Zip extends MatchingTask {
                 zf = new ZipFile(zfs.getSrc(getProject()), encoding);
             }
 
+            boolean precompress = dealingWithFiles && doCompress
+                && precompressor != null;
             for (int i = 0; i < resources.length; i++) {
+                if (precompress) {
+                    precompressor.prefetch(base, resources, i);
+                }
                 String name = null;
                 if (fullpath.length() > 0) {
                     name = fullpath;
@@ -1052,7 +1221,12 @@ public class Zip extends MatchingTask {
                 }
                 InputStream is = null;
                 try {
-                    is = zf.getInputStream(ze);
+                    // deflated data can be copied as is unless a
+                    // specific compression level has been requested
+                    is = ze.getMethod() == ZipEntry.DEFLATED
+                        && level == ZipOutputStream.DEFAULT_COMPRESSION
+                        ? new ArchiveEntryInputStream(zf, ze)
+                        : zf.getInputStream(ze);
                     zipFile(is, zOut, prefix + name, ze.getTime(),
                             fromArchive, mode, ze.getExtraFields(true));
                 } finally {
@@ -1841,16 +2015,43 @@ public class Zip extends MatchingTask {
                 ze.setExtraFields(extra);
             }
 
-            zOut.putNextEntry(ze);
-
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int count = 0;
-            do {
-                if (count != 0) {
-                    zOut.write(buffer, 0, count);
+            Precompressed data = null;
+            InputStream rawEntry = null;
+            if (in instanceof PrecompressedInputStream
+                && ze.getMethod() == ZipEntry.DEFLATED) {
+                data = ((PrecompressedInputStream) in).getData();
+            } else if (in instanceof ArchiveEntryInputStream
+                       && ze.getMethod() == ZipEntry.DEFLATED) {
+                rawEntry = ((ArchiveEntryInputStream) in).getRawStream();
+            }
+            if (data != null) {
+                InputStream raw = data.getRawStream();
+                try {
+                    zOut.putRawEntry(ze, raw, data.size, data.crc);
+                } finally {
+                    FileUtils.close(raw);
+                    data.delete();
                 }
-                count = in.read(buffer, 0, buffer.length);
-            } while (count != -1);
+            } else if (rawEntry != null) {
+                ZipEntry source = ((ArchiveEntryInputStream) in).getEntry();
+                try {
+                    zOut.putRawEntry(ze, rawEntry, source.getSize(),
+                                     source.getCrc());
+                } finally {
+                    FileUtils.close(rawEntry);
+                }
+            } else {
+                zOut.putNextEntry(ze);
+
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int count = 0;
+                do {
+                    if (count != 0) {
+                        zOut.write(buffer, 0, count);
+                    }
+                    count = in.read(buffer, 0, buffer.length);
+                } while (count != -1);
+            }
         }
         addedFiles.addElement(vPath);
     }
@@ -1905,7 +2106,10 @@ public class Zip extends MatchingTask {
                                      getLocation());
         }
 
-        FileInputStream fIn = new FileInputStream(file);
+        Future<Precompressed> f =
+            precompressor == null ? null : precompressor.take(file);
+        InputStream fIn = f == null ? (InputStream) new FileInputStream(file)
+            : new PrecompressedInputStream(file, f);
         try {
             // ZIPs store time with a granularity of 2 seconds, round up
             zipFile(fIn, zOut, vPath,
@@ -2262,4 +2466,305 @@ public class Zip extends MatchingTask {
         }
 
     }
- }
+ 
+    /**
+     * Compresses files on a pool of threads ahead of the task
+     * writing them.
+     *
+     * <p>Only used by the task's own thread, the workers just
+     * deflate.  At most a few entries per thread are compressed
+     * ahead, big files are spooled to temporary files rather than
+     * kept in memory.</p>
+     *
+     * @since Ant 1.9.1
+     */
+    private static class Precompressor {
+        /** Number of files compressed ahead per thread. */
+        private static final int FILES_AHEAD = 4;
+
+        private final ExecutorService pool;
+        private final int level;
+        private final int window;
+        private final Map<File, Future<Precompressed>> pending =
+            new HashMap<File, Future<Precompressed>>();
+        private Resource[] current;
+        private int next;
+
+        Precompressor(int threads, int level) {
+            this.level = level;
+            window = threads * FILES_AHEAD;
+            pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "Zip compressor");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+
+        /**
+         * Makes sure the files following the given index are being
+         * compressed.
+         */
+        void prefetch(File base, Resource[] resources, int index) {
+            if (current != resources) {
+                current = resources;
+                next = index;
+            }
+            for (; next < resources.length && next <= index + window; next++) {
+                if (!resources[next].isDirectory()) {
+                    final File f =
+                        FILE_UTILS.resolveFile(base, resources[next].getName());
+                    if (!pending.containsKey(f)) {
+                        pending.put(f, pool.submit(new Callable<Precompressed>() {
+                                public Precompressed call() throws IOException {
+                                    return Precompressed.deflate(f, level);
+                                }
+                            }));
+                    }
+                }
+            }
+        }
+
+        /**
+         * The compressed data of the given file if it has been
+         * prefetched.
+         */
+        Future<Precompressed> take(File f) {
+            return pending.remove(f);
+        }
+
+        void shutdown() {
+            pool.shutdown();
+            for (Future<Precompressed> f : pending.values()) {
+                Precompressed.dispose(f);
+            }
+            pending.clear();
+        }
+    }
+
+    /**
+     * Deflated content of a file.
+     *
+     * @since Ant 1.9.1
+     */
+    private static class Precompressed {
+        /** Bigger results are spooled to a temporary file. */
+        private static final int MAX_IN_MEMORY = 1024 * 1024;
+
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private File spool;
+        private long size;
+        private long crc;
+
+        /**
+         * Deflates the file the same way ZipOutputStream does.
+         */
+        static Precompressed deflate(File f, int level) throws IOException {
+            Precompressed p = new Precompressed();
+            CRC32 cal = new CRC32();
+            Deflater def = new Deflater(level, true);
+            InputStream in = null;
+            OutputStream sink = p.new Sink();
+            try {
+                in = new FileInputStream(f);
+                DeflaterOutputStream out =
+                    new DeflaterOutputStream(sink, def, BUFFER_SIZE);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int count = 0;
+                while ((count = in.read(buffer, 0, buffer.length)) != -1) {
+                    out.write(buffer, 0, count);
+                    cal.update(buffer, 0, count);
+                    p.size += count;
+                }
+                out.close();
+            } catch (IOException ex) {
+                FileUtils.close(sink);
+                p.delete();
+                throw ex;
+            } finally {
+                def.end();
+                FileUtils.close(in);
+            }
+            p.crc = cal.getValue();
+            return p;
+        }
+
+        InputStream getRawStream() throws IOException {
+            return spool != null ? new FileInputStream(spool)
+                : new ByteArrayInputStream(bytes.toByteArray());
+        }
+
+        void delete() {
+            bytes = null;
+            if (spool != null) {
+                FILE_UTILS.tryHardToDelete(spool);
+                spool = null;
+            }
+        }
+
+        /**
+         * Waits for the given result and frees it.
+         */
+        static void dispose(Future<Precompressed> f) {
+            try {
+                f.get().delete();
+            } catch (InterruptedException ex) {
+                // nothing to dispose of
+            } catch (ExecutionException ex) {
+                // nothing to dispose of
+            }
+        }
+
+        /**
+         * Memory first, then the spool file.
+         */
+        private class Sink extends OutputStream {
+            private OutputStream out = bytes;
+
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (spool == null && bytes.size() + len > MAX_IN_MEMORY) {
+                    spool = FILE_UTILS.createTempFile("zip", ".deflated",
+                                                      null, true, true);
+                    out = new FileOutputStream(spool);
+                    bytes.writeTo(out);
+                    bytes = null;
+                }
+                out.write(b, off, len);
+            }
+
+            public void close() throws IOException {
+                if (spool != null) {
+                    out.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stream of a file whose compressed content may be used instead
+     * of the stream itself.
+     *
+     * <p>Subclasses that read the stream get the content of the
+     * file.  If nobody asks for the compressed data the stream frees
+     * it when being closed.</p>
+     *
+     * @since Ant 1.9.1
+     */
+    private static class PrecompressedInputStream extends InputStream {
+        private final File file;
+        private Future<Precompressed> data;
+        private InputStream in;
+
+        PrecompressedInputStream(File file, Future<Precompressed> data) {
+            this.file = file;
+            this.data = data;
+        }
+
+        /**
+         * The compressed content, null if the stream has already
+         * been read from.
+         */
+        Precompressed getData() throws IOException {
+            if (in != null || data == null) {
+                return null;
+            }
+            Future<Precompressed> f = data;
+            data = null;
+            try {
+                return f.get();
+            } catch (InterruptedException ex) {
+                throw new BuildException("Interrupted while compressing "
+                                         + file, ex);
+            } catch (ExecutionException ex) {
+                Throwable t = ex.getCause();
+                if (t instanceof IOException) {
+                    throw (IOException) t;
+                }
+                if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                }
+                throw new BuildException(t);
+            }
+        }
+
+        private InputStream getIn() throws IOException {
+            if (in == null) {
+                in = new FileInputStream(file);
+            }
+            return in;
+        }
+
+        public int read() throws IOException {
+            return getIn().read();
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            return getIn().read(b, off, len);
+        }
+
+        public void close() throws IOException {
+            if (data != null) {
+                Precompressed.dispose(data);
+                data = null;
+            }
+            FileUtils.close(in);
+        }
+    }
+
+    /**
+     * Stream for a deflated entry of an archive that allows the
+     * compressed data to be copied to the new archive unchanged.
+     *
+     * <p>The entry is only decompressed if somebody reads from this
+     * stream, the raw data is only available as long as nobody
+     * has.</p>
+     *
+     * @since Ant 1.9.1
+     */
+    private static class ArchiveEntryInputStream extends InputStream {
+        private final ZipFile zf;
+        private final ZipEntry ze;
+        private InputStream in;
+
+        ArchiveEntryInputStream(ZipFile zf, ZipEntry ze) {
+            this.zf = zf;
+            this.ze = ze;
+        }
+
+        ZipEntry getEntry() {
+            return ze;
+        }
+
+        /**
+         * The compressed data, null if the stream has already been
+         * read from.
+         */
+        InputStream getRawStream() throws IOException {
+            return in != null ? null : zf.getRawInputStream(ze);
+        }
+
+        private InputStream getIn() throws IOException {
+            if (in == null) {
+                in = zf.getInputStream(ze);
+            }
+            return in;
+        }
+
+        public int read() throws IOException {
+            return getIn().read();
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            return getIn().read(b, off, len);
+        }
+
+        public void close() throws IOException {
+            FileUtils.close(in);
+        }
+    }
+}
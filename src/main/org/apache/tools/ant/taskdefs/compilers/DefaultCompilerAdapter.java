@@ -392,6 +392,12 @@ public abstract class DefaultCompilerAdapter
      * @param cmd the command line
      */
     protected void logAndAddFilesToCompile(Commandline cmd) {
+        if (!attributes.isLoggable(Project.MSG_VERBOSE)) {
+            for (int i = 0; i < compileList.length; i++) {
+                cmd.createArgument().setValue(compileList[i].getAbsolutePath());
+            }
+            return;
+        }
         attributes.log("Compilation " + cmd.describeArguments(),
                        Project.MSG_VERBOSE);
 
@@ -66,6 +66,13 @@ public class AggregateTransformer {
      */
     public static final String NOFRAMES = "noframes";
 
+    /** param of the frames stylesheet selecting the pages to create */
+    private static final String REPORT_PART_PARAM = "report.part";
+    /** report.part value for the pages at the root of the report */
+    private static final String OVERVIEW_PART = "overview";
+    /** report.part value for the pages of the packages */
+    private static final String PACKAGES_PART = "packages";
+
     /**
      * defines acceptable formats.
      */
@@ -114,6 +121,13 @@ public class AggregateTransformer {
     /** the format to use for the report. Must be <tt>FRAMES</tt> or <tt>NOFRAMES</tt> */
     protected String format = FRAMES;
 
+    /**
+     * Whether to transform the frames report one package at a time.
+     *
+     * @since Ant 1.9.1
+     */
+    private boolean incremental = false;
+
     /** XML Parser factory */
     private static DocumentBuilderFactory privateDBFactory;
 
@@ -152,6 +166,33 @@ public class AggregateTransformer {
         this.format = format.getValue();
     }
 
+    /**
+     * Whether to create the frames report one package at a time.
+     *
+     * <p>The stylesheet is applied to a summary of all testsuites
+     * that lacks their properties and output for the pages at the
+     * root of the report and then to the testsuites of each package
+     * separately, so only one package needs to be kept in memory at
+     * a time.  The stylesheet must support the
+     * <code>report.part</code> parameter of the default one.  Has no
+     * effect on the noframes format.</p>
+     *
+     * @param b boolean
+     * @since Ant 1.9.1
+     */
+    public void setIncremental(boolean b) {
+        incremental = b;
+    }
+
+    /**
+     * Whether the report is created one package at a time.
+     * @return true if incremental has been set for the frames format.
+     * @since Ant 1.9.1
+     */
+    boolean isIncremental() {
+        return incremental && FRAMES.equals(format);
+    }
+
     /**
      * sets the input document.
      * @param doc input dom tree
@@ -225,13 +266,15 @@ public class AggregateTransformer {
         checkOptions();
         Project project = task.getProject();
 
+        if (isIncremental()) {
+            transformIncrementally();
+            return;
+        }
+
         TempFile tempFileTask = new TempFile();
         tempFileTask.bindToOwner(task);
 
-        XSLTProcess xsltTask = new XSLTProcess();
-        xsltTask.bindToOwner(task);
-
-        xsltTask.setXslResource(getStylesheet());
+        XSLTProcess xsltTask = createXsltTask(null);
 
         // acrobatic cast.
         xsltTask.setIn(((XMLResultAggregator) task).getDestinationFile());
@@ -248,6 +291,55 @@ public class AggregateTransformer {
             outputFile = new File(toDir, "junit-noframes.html");
         }
         xsltTask.setOut(outputFile);
+        final long t0 = System.currentTimeMillis();
+        execute(xsltTask);
+        final long dt = System.currentTimeMillis() - t0;
+        task.log("Transform time: " + dt + "ms");
+        if (format.equals(FRAMES)) {
+            Delete delete = new Delete();
+            delete.bindToOwner(task);
+            delete.setFile(outputFile);
+            delete.execute();
+        }
+    }
+
+    /**
+     * Creates the pages at the root of the frames report from the
+     * summary and then the pages of each package from the package's
+     * document, all of them written by the streaming mode of the
+     * junitreport task.
+     */
+    private void transformIncrementally() {
+        // acrobatic cast.
+        XMLResultAggregator aggregator = (XMLResultAggregator) task;
+        File packagesDir = aggregator.getPackagesDir();
+        final long t0 = System.currentTimeMillis();
+
+        XSLTProcess overview = createXsltTask(OVERVIEW_PART);
+        overview.setIn(aggregator.getSummaryFile());
+        // the frames stylesheet writes its pages by itself
+        overview.setOut(new File(packagesDir, "overview.html"));
+        execute(overview);
+
+        XSLTProcess packages = createXsltTask(PACKAGES_PART);
+        packages.setBasedir(packagesDir);
+        packages.setIncludes("*.xml");
+        packages.setDestdir(packagesDir);
+        execute(packages);
+
+        final long dt = System.currentTimeMillis() - t0;
+        task.log("Transform time: " + dt + "ms");
+    }
+
+    /**
+     * Creates an XSLT task using the stylesheet and the params.
+     * @param part the value of the report.part param or null.
+     */
+    private XSLTProcess createXsltTask(String part) {
+        XSLTProcess xsltTask = new XSLTProcess();
+        xsltTask.bindToOwner(task);
+
+        xsltTask.setXslResource(getStylesheet());
         for (Iterator i = params.iterator(); i.hasNext();) {
             XSLTProcess.Param param = (XSLTProcess.Param) i.next();
             XSLTProcess.Param newParam = xsltTask.createParam();
@@ -259,20 +351,21 @@ public class AggregateTransformer {
         paramx.setProject(task.getProject());
         paramx.setName("output.dir");
         paramx.setExpression(toDir.getAbsolutePath());
-        final long t0 = System.currentTimeMillis();
+        if (part != null) {
+            XSLTProcess.Param partParam = xsltTask.createParam();
+            partParam.setProject(task.getProject());
+            partParam.setName(REPORT_PART_PARAM);
+            partParam.setExpression(part);
+        }
+        return xsltTask;
+    }
+
+    private static void execute(XSLTProcess xsltTask) {
         try {
             xsltTask.execute();
         } catch (Exception e) {
             throw new BuildException("Errors while applying transformations: " + e.getMessage(), e);
         }
-        final long dt = System.currentTimeMillis() - t0;
-        task.log("Transform time: " + dt + "ms");
-        if (format.equals(FRAMES)) {
-            Delete delete = new Delete();
-            delete.bindToOwner(task);
-            delete.setFile(outputFile);
-            delete.execute();
-        }
     }
 
     /**
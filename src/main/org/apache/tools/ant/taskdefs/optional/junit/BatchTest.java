@@ -23,6 +23,7 @@ import java.io.File;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.Vector;
+import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.types.FileSet;
 import org.apache.tools.ant.types.Resource;
@@ -48,6 +49,9 @@ public final class BatchTest extends BaseTest {
     /** the list of filesets containing the testcase filename rules */
     private Resources resources = new Resources();
 
+    private int shards = 1;
+    private int shard = 0;
+
     /**
      * create a new batchtest instance
      * @param project     the project it depends on.
@@ -93,6 +97,62 @@ public final class BatchTest extends BaseTest {
         resources.add(rc);
     }
 
+    /**
+     * Splits the tests into the given number of shards of about the
+     * same duration.
+     *
+     * <p>The durations are taken from the timings file of the
+     * <code>junit</code> task or the reports of the XML formatter of
+     * an earlier run.  With <code>forkmode="perBatch"</code> each
+     * shard is run in a Java VM of its own.</p>
+     *
+     * @param shards the number of shards, defaults to 1.
+     * @since Ant 1.9.1
+     */
+    public void setShards(int shards) {
+        if (shards < 1) {
+            throw new BuildException("shards must be a positive number");
+        }
+        this.shards = shards;
+    }
+
+    /**
+     * The number of shards.
+     * @return the number of shards.
+     * @since Ant 1.9.1
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Only runs the tests of the given shard, this allows the tests
+     * to be distributed across several machines that have the same
+     * timings file.
+     * @param shard the number of the shard, starting at 1.
+     * @since Ant 1.9.1
+     */
+    public void setShard(int shard) {
+        if (shard < 1) {
+            throw new BuildException("shard must be a positive number");
+        }
+        this.shard = shard;
+    }
+
+    /**
+     * The shard to run.
+     * @return the number of the shard, starting at 1, or 0 to run all
+     * shards.
+     * @since Ant 1.9.1
+     */
+    public int getShard() {
+        if (shard > shards) {
+            throw new BuildException("shard " + shard + " doesn't exist, there"
+                                     + " are only " + shards + " shards");
+        }
+        return shard;
+    }
+
     /**
      * Return all <tt>JUnitTest</tt> instances obtain by applying the fileset rules.
      * @return  an enumeration of all elements of this batchtest that are
@@ -35,6 +35,7 @@ public class Constants {
     static final String FORMATTER = "formatter=";
     static final String LOGTESTLISTENEREVENTS = "logtestlistenerevents=";
     static final String TESTSFILE = "testsfile=";
+    static final String POOL_PORT = "poolport=";
     static final String TERMINATED_SUCCESSFULLY = "terminated successfully";
     static final String LOG_FAILED_TESTS="logfailedtests=";
 }
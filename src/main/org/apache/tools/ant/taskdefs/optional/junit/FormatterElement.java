@@ -75,6 +75,9 @@ public class FormatterElement {
     /** xml formatter class */
     public static final String XML_FORMATTER_CLASS_NAME =
         "org.apache.tools.ant.taskdefs.optional.junit.XMLJUnitResultFormatter";
+    /** streaming xml formatter class */
+    public static final String STREAMING_XML_FORMATTER_CLASS_NAME =
+        "org.apache.tools.ant.taskdefs.optional.junit.StreamingXMLJUnitResultFormatter";
     /** brief formatter class */
     public static final String BRIEF_FORMATTER_CLASS_NAME =
         "org.apache.tools.ant.taskdefs.optional.junit.BriefJUnitResultFormatter";
@@ -91,6 +94,7 @@ public class FormatterElement {
      * <p> At the moment, there are three supported standard formatters.
      * <ul>
      * <li> The <code>xml</code> type uses a <code>XMLJUnitResultFormatter</code>.
+     * <li> The <code>streamingxml</code> type uses a <code>StreamingXMLJUnitResultFormatter</code>.
      * <li> The <code>brief</code> type uses a <code>BriefJUnitResultFormatter</code>.
      * <li> The <code>plain</code> type (the default) uses a <code>PlainJUnitResultFormatter</code>.
      * <li> The <code>failure</code> type uses a <code>FailureRecorder</code>.
@@ -103,6 +107,8 @@ public class FormatterElement {
     public void setType(TypeAttribute type) {
         if ("xml".equals(type.getValue())) {
             setClassname(XML_FORMATTER_CLASS_NAME);
+        } else if ("streamingxml".equals(type.getValue())) {
+            setClassname(STREAMING_XML_FORMATTER_CLASS_NAME);
         } else {
             if ("brief".equals(type.getValue())) {
                 setClassname(BRIEF_FORMATTER_CLASS_NAME);
@@ -124,7 +130,8 @@ public class FormatterElement {
      */
     public void setClassname(String classname) {
         this.classname = classname;
-        if (XML_FORMATTER_CLASS_NAME.equals(classname)) {
+        if (XML_FORMATTER_CLASS_NAME.equals(classname)
+            || STREAMING_XML_FORMATTER_CLASS_NAME.equals(classname)) {
            setExtension(".xml");
         } else if (PLAIN_FORMATTER_CLASS_NAME.equals(classname)) {
            setExtension(".txt");
@@ -351,14 +358,16 @@ public class FormatterElement {
     }
 
     /**
-     * <p> Enumerated attribute with the values "plain", "xml", "brief" and "failure".
+     * <p> Enumerated attribute with the values "plain", "xml",
+     * "streamingxml", "brief" and "failure".
      *
      * <p> Use to enumerate options for <code>type</code> attribute.
      */
     public static class TypeAttribute extends EnumeratedAttribute {
         /** {@inheritDoc}. */
         public String[] getValues() {
-            return new String[] {"plain", "xml", "brief", "failure"};
+            return new String[] {"plain", "xml", "streamingxml", "brief",
+                                 "failure"};
         }
     }
 }
@@ -21,18 +21,28 @@ package org.apache.tools.ant.taskdefs.optional.junit;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
 import java.lang.reflect.Constructor;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
@@ -40,13 +50,25 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.tools.ant.AntClassLoader;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.taskdefs.Execute;
+import org.apache.tools.ant.taskdefs.ExecuteStreamHandler;
 import org.apache.tools.ant.taskdefs.ExecuteWatchdog;
 import org.apache.tools.ant.taskdefs.LogOutputStream;
 import org.apache.tools.ant.taskdefs.PumpStreamHandler;
@@ -122,6 +144,9 @@ import org.apache.tools.ant.util.SplitClassLoader;
  * number of attributes and elements allow you to set up how this JVM
  * runs.
  *
+ * <p> Forked Java VMs can run concurrently if the <code>threads</code>
+ * attribute is set.
+ *
  *
  * @since Ant 1.2
  *
@@ -163,6 +188,14 @@ public class JUnitTask extends Task {
     private AntClassLoader classLoader = null;
     private Permissions perm = null;
     private ForkMode forkMode = new ForkMode("perTest");
+    private int threads = 1;
+    private int maxTestsPerFork = 0;
+    private File timingsFile;
+    private TestDurations durations = new TestDurations();
+    /** durations of the timings file only, used to select a shard */
+    private TestDurations recordedDurations = new TestDurations();
+    /** tests run since execute was called, if timingsFile is set */
+    private final List executedTests = Collections.synchronizedList(new ArrayList());
 
     private boolean splitJUnit = false;
     private boolean enableTestListenerEvents = false;
@@ -181,6 +214,8 @@ public class JUnitTask extends Task {
     private String  errorProperty;
 
     private static final int STRING_BUFFER_SIZE = 128;
+    /** how often to check whether a pooled VM has died before connecting */
+    private static final int POOLED_VM_ACCEPT_POLL = 500;
     /**
      * @since Ant 1.7
      */
@@ -299,11 +334,15 @@ public class JUnitTask extends Task {
     /**
      * Set the behavior when {@link #setFork fork} fork has been enabled.
      *
-     * <p>Possible values are "once", "perTest" and "perBatch".  If
-     * set to "once", only a single Java VM will be forked for all
-     * tests, with "perTest" (the default) each test will run in a
-     * fresh Java VM and "perBatch" will run all tests from the same
-     * &lt;batchtest&gt; in the same Java VM.</p>
+     * <p>Possible values are "once", "perTest", "perBatch" and
+     * "pooled".  If set to "once", only a single Java VM will be
+     * forked for all tests, with "perTest" (the default) each test
+     * will run in a fresh Java VM and "perBatch" will run all tests
+     * from the same &lt;batchtest&gt; in the same Java VM.  "pooled"
+     * reuses Java VMs for several tests like "once" but reports
+     * crashes and timeouts for the test that caused them and replaces
+     * the VM afterwards, see {@link #setMaxTestsPerFork
+     * maxtestsperfork}.</p>
      *
      * <p>This attribute will be ignored if tests run in the same VM
      * as Ant.</p>
@@ -319,6 +358,64 @@ public class JUnitTask extends Task {
         this.forkMode = mode;
     }
 
+    /**
+     * The maximum number of forked Java VMs that run at the same time.
+     *
+     * <p>Forked tests are distributed across the VMs based on the
+     * durations recorded in the reports of the XML formatter of
+     * earlier runs, the longest tests are started first.  With
+     * <code>forkmode="once"</code> each thread runs a VM of its own
+     * while <code>forkmode="perBatch"</code> runs each batch in a
+     * single VM as before.  Each VM gets a separate temporary
+     * directory as <code>java.io.tmpdir</code> and its output is
+     * logged as a whole once it has finished.</p>
+     *
+     * <p>Defaults to 1, which runs all VMs one after the other.</p>
+     *
+     * @param threads the number of concurrent VMs.
+     * @since Ant 1.9.1
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new BuildException("threads must be a positive number");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * The number of tests a forked Java VM runs before it is replaced
+     * by a new one if forkmode is "pooled".
+     *
+     * <p>Defaults to 0, which reuses a VM until all tests have run
+     * or a test has crashed the VM or timed out.  Lower numbers
+     * isolate the tests better from each other at the cost of
+     * starting more VMs.</p>
+     *
+     * @param max the maximum number of tests per VM.
+     * @since Ant 1.9.1
+     */
+    public void setMaxTestsPerFork(int max) {
+        if (max < 0) {
+            throw new BuildException("maxtestsperfork must not be negative");
+        }
+        this.maxTestsPerFork = max;
+    }
+
+    /**
+     * A file holding the durations of earlier test runs.
+     *
+     * <p>If set, the durations are used to run the longest tests of
+     * batchtests first and to split batchtests into shards, and the
+     * file is updated with the times found in the reports of the XML
+     * formatter once the tests have been run.</p>
+     *
+     * @param timingsFile the file, it is created if it doesn't exist.
+     * @since Ant 1.9.1
+     */
+    public void setTimingsFile(File timingsFile) {
+        this.timingsFile = timingsFile;
+    }
+
     /**
      * If true, print one-line statistics for each test, or "withOutAndErr"
      * to also show standard output and error.
@@ -770,6 +867,8 @@ public class JUnitTask extends Task {
                                          "JUnitVersionHelper",
                                          "OutErrSummaryJUnitResultFormatter",
                                          "PlainJUnitResultFormatter",
+                                         "StreamingJUnitResultFormatter",
+                                         "StreamingXMLJUnitResultFormatter",
                                          "SummaryJUnitResultFormatter",
                                          "TearDownOnVmCrash",
                                          "XMLJUnitResultFormatter",
@@ -797,36 +896,285 @@ public class JUnitTask extends Task {
 
         setupJUnitDelegate();
 
+        durations = new TestDurations();
+        executedTests.clear();
+        long start = System.currentTimeMillis();
+        if (timingsFile != null) {
+            try {
+                durations.load(timingsFile);
+            } catch (IOException e) {
+                log("Unable to read test durations from " + timingsFile
+                    + ": " + e, Project.MSG_WARN);
+            }
+        }
+        recordedDurations = durations.copy(TestDurations.SHARD_DEFAULT);
+
         List testLists = new ArrayList();
 
-        boolean forkPerTest = forkMode.getValue().equals(ForkMode.PER_TEST);
-        if (forkPerTest || forkMode.getValue().equals(ForkMode.ONCE)) {
-            testLists.addAll(executeOrQueue(getIndividualTests(),
-                                            forkPerTest));
-        } else { /* forkMode.getValue().equals(ForkMode.PER_BATCH) */
-            final int count = batchTests.size();
-            for (int i = 0; i < count; i++) {
-                BatchTest batchtest = (BatchTest) batchTests.elementAt(i);
-                testLists.addAll(executeOrQueue(batchtest.elements(), false));
+        try {
+            boolean forkPerTest = forkMode.getValue().equals(ForkMode.PER_TEST);
+            boolean pooled = forkMode.getValue().equals(ForkMode.POOLED);
+            if (forkPerTest || pooled
+                || forkMode.getValue().equals(ForkMode.ONCE)) {
+                testLists.addAll(executeOrQueue(getIndividualTests(),
+                                                forkPerTest));
+            } else { /* forkMode.getValue().equals(ForkMode.PER_BATCH) */
+                final int count = batchTests.size();
+                for (int i = 0; i < count; i++) {
+                    BatchTest batchtest = (BatchTest) batchTests.elementAt(i);
+                    Iterator shards = getBatchTests(batchtest, true).iterator();
+                    while (shards.hasNext()) {
+                        List shard = (List) shards.next();
+                        testLists.addAll(executeOrQueue(Collections.enumeration(shard),
+                                                        false));
+                    }
+                }
+                testLists.addAll(executeOrQueue(tests.elements(), forkPerTest));
+            }
+
+            if (pooled) {
+                Iterator iter = testLists.iterator();
+                while (iter.hasNext()) {
+                    executePooled((List) iter.next());
+                }
+            } else if (threads > 1) {
+                executeConcurrently(testLists);
+            } else {
+                Iterator iter = testLists.iterator();
+                while (iter.hasNext()) {
+                    List l = (List) iter.next();
+                    if (l.size() == 1) {
+                        execute((JUnitTest) l.get(0));
+                    } else {
+                        execute(l);
+                    }
+                }
+            }
+        } finally {
+            try {
+                storeDurations(start);
+            } finally {
+                cleanup();
             }
-            testLists.addAll(executeOrQueue(tests.elements(), forkPerTest));
         }
+    }
 
-        try {
-            Iterator iter = testLists.iterator();
+    /**
+     * The tests of a batchtest that shall be run, ordered by their
+     * durations if a timings file has been set or the batchtest is
+     * split into shards.
+     * @param batchtest the batchtest.
+     * @param split whether to return each shard as a list of its own
+     * rather than all tests in a single list when no shard has been
+     * selected.
+     * @return lists of JUnitTests.
+     */
+    private List<List> getBatchTests(BatchTest batchtest, boolean split) {
+        List batch = Collections.list(batchtest.elements());
+        int shards = batchtest.getShards();
+        int shard = batchtest.getShard();
+        if (shards <= 1 && timingsFile == null) {
+            return Collections.singletonList(batch);
+        }
+        if (shard == 0) {
+            addReportDurations(batch);
+            return durations.split(batch, split ? shards : 1);
+        }
+        // all machines running a shard must come up with the same
+        // split, so don't use the local reports or the average of
+        // the durations
+        List<List> all = recordedDurations.split(batch, shards);
+        List selected = shard <= all.size() ? all.get(shard - 1) : new ArrayList();
+        log("Running shard " + shard + " of " + shards + " with "
+            + selected.size() + " of " + batch.size() + " tests",
+            Project.MSG_VERBOSE);
+        return Collections.singletonList(selected);
+    }
+
+    /**
+     * Adds the durations found in reports of the XML formatter for
+     * tests whose durations are not known.
+     * @param testList list of JUnitTests.
+     */
+    private void addReportDurations(List testList) {
+        Iterator iter = testList.iterator();
+        while (iter.hasNext()) {
+            JUnitTest test = (JUnitTest) iter.next();
+            if (!durations.isKnown(test)) {
+                durations.add(test,
+                              TestDurations.readDuration(getXmlReport(test)));
+            }
+        }
+    }
+
+    /**
+     * Updates the timings file with the durations of the reports the
+     * XML formatter has written since the given time.
+     * @param start the time the tests have been started at.
+     */
+    private void storeDurations(long start) {
+        if (timingsFile == null) {
+            return;
+        }
+        long since = start - FILE_UTILS.getFileTimestampGranularity();
+        int found = 0;
+        synchronized (executedTests) {
+            Iterator iter = executedTests.iterator();
             while (iter.hasNext()) {
-                List l = (List) iter.next();
-                if (l.size() == 1) {
-                    execute((JUnitTest) l.get(0));
-                } else {
-                    execute(l);
+                JUnitTest test = (JUnitTest) iter.next();
+                File report = getXmlReport(test);
+                if (report != null && report.lastModified() >= since) {
+                    long millis = TestDurations.readDuration(report);
+                    if (millis != TestDurations.UNKNOWN) {
+                        durations.add(test, millis);
+                        found++;
+                    }
+                }
+            }
+        }
+        log("Found durations of " + found + " tests in XML reports",
+            Project.MSG_VERBOSE);
+        try {
+            durations.store(timingsFile);
+        } catch (IOException e) {
+            log("Unable to write test durations to " + timingsFile + ": " + e,
+                Project.MSG_WARN);
+        }
+    }
+
+    /**
+     * Remembers a test for the timings file.
+     * @param test the test that is about to be run.
+     */
+    private void addExecutedTest(JUnitTest test) {
+        if (timingsFile != null) {
+            executedTests.add(test);
+        }
+    }
+
+    /**
+     * Runs lists of forked tests in up to <code>threads</code> VMs at
+     * the same time.
+     *
+     * <p>No new VM is started once a test has failed with
+     * haltonerror or haltonfailure, the exception is thrown after the
+     * running VMs have finished.</p>
+     *
+     * @param testLists lists of tests, each list is run in a single VM.
+     * @throws BuildException in case of test failures or errors
+     */
+    private void executeConcurrently(Collection testLists)
+        throws BuildException {
+        // initialize lazily created state before it is shared
+        getCommandline();
+
+        boolean splitLists = forkMode.getValue().equals(ForkMode.ONCE);
+        List<List> units = new ArrayList<List>();
+        Iterator iter = testLists.iterator();
+        while (iter.hasNext()) {
+            List l = (List) iter.next();
+            addReportDurations(l);
+            if (splitLists && l.size() > 1) {
+                units.addAll(durations.split(l, threads));
+            } else {
+                units.add(l);
+            }
+        }
+        durations.sortLongestFirst(units);
+
+        int poolSize = Math.min(threads, units.size());
+        if (poolSize == 0) {
+            return;
+        }
+        log("Running " + units.size() + " forked VMs using " + poolSize
+            + " threads", Project.MSG_VERBOSE);
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize);
+        CompletionService<Object> completion =
+            new ExecutorCompletionService<Object>(pool);
+        Throwable failure = null;
+        int running = 0;
+        try {
+            Iterator<List> next = units.iterator();
+            while (true) {
+                while (failure == null && running < poolSize
+                       && next.hasNext()) {
+                    final List l = next.next();
+                    completion.submit(new Callable<Object>() {
+                            public Object call() {
+                                if (l.size() == 1) {
+                                    execute((JUnitTest) l.get(0));
+                                } else {
+                                    execute(l);
+                                }
+                                return null;
+                            }
+                        });
+                    running++;
+                }
+                if (running == 0) {
+                    break;
+                }
+                Future<Object> done = completion.take();
+                running--;
+                try {
+                    done.get();
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause();
+                    }
                 }
             }
+        } catch (InterruptedException ex) {
+            throw new BuildException("Interrupted while running tests", ex,
+                                     getLocation());
         } finally {
-            cleanup();
+            pool.shutdownNow();
+        }
+        rethrow(failure);
+    }
+
+    /**
+     * Throws the failure of a test that has been run by a thread of
+     * its own.
+     * @param failure the failure, may be null.
+     */
+    private void rethrow(Throwable failure) {
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new BuildException(failure, getLocation());
         }
     }
 
+    /**
+     * The file the XML formatter writes the results of a test to.
+     * @param test the test.
+     * @return the file or null if the test doesn't use the XML
+     * formatter.
+     */
+    private File getXmlReport(JUnitTest test) {
+        test = withDefaults(test);
+        FormatterElement[] feArray = mergeFormatters(test);
+        for (int i = 0; i < feArray.length; i++) {
+            FormatterElement fe = feArray[i];
+            if ((FormatterElement.XML_FORMATTER_CLASS_NAME
+                 .equals(fe.getClassname())
+                 || FormatterElement.STREAMING_XML_FORMATTER_CLASS_NAME
+                 .equals(fe.getClassname()))
+                && fe.shouldUse(this)) {
+                File f = getOutput(fe, test);
+                if (f != null) {
+                    return f;
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * Run the tests.
      * @param arg one JUnitTest
@@ -834,17 +1182,9 @@ public class JUnitTask extends Task {
      */
     protected void execute(JUnitTest arg) throws BuildException {
         validateTestName(arg.getName());
+        addExecutedTest(arg);
 
-        JUnitTest test = (JUnitTest) arg.clone();
-        // set the default values if not specified
-        //@todo should be moved to the test class instead.
-        if (test.getTodir() == null) {
-            test.setTodir(getProject().resolveFile("."));
-        }
-
-        if (test.getOutfile() == null) {
-            test.setOutfile("TEST-" + test.getName());
-        }
+        JUnitTest test = withDefaults(arg);
 
         // execute the test and get the return code
         TestResultHolder result = null;
@@ -858,6 +1198,25 @@ public class JUnitTask extends Task {
         actOnTestResult(result, test, "Test " + test.getName());
     }
 
+    /**
+     * A copy of the test with the default values of todir and
+     * outfile set if they have not been specified.
+     * @param arg the test.
+     * @return the copy.
+     */
+    private JUnitTest withDefaults(JUnitTest arg) {
+        JUnitTest test = (JUnitTest) arg.clone();
+        //@todo should be moved to the test class instead.
+        if (test.getTodir() == null) {
+            test.setTodir(getProject().resolveFile("."));
+        }
+
+        if (test.getOutfile() == null) {
+            test.setOutfile("TEST-" + test.getName());
+        }
+        return test;
+    }
+
     /**
      * Throws a <code>BuildException</code> if the given test name is invalid.
      * Validity is defined as not <code>null</code>, not empty, and not the
@@ -894,23 +1253,8 @@ public class JUnitTask extends Task {
             Iterator iter = testList.iterator();
             while (iter.hasNext()) {
                 test = (JUnitTest) iter.next();
-                printDual(writer, logWriter, test.getName());
-                if (test.getMethods() != null) {
-                    printDual(writer, logWriter, ":" + test.getMethodsString().replace(',', '+'));
-                }
-                if (test.getTodir() == null) {
-                    printDual(writer, logWriter,
-                              "," + getProject().resolveFile("."));
-                } else {
-                    printDual(writer, logWriter, "," + test.getTodir());
-                }
-
-                if (test.getOutfile() == null) {
-                    printlnDual(writer, logWriter,
-                                "," + "TEST-" + test.getName());
-                } else {
-                    printlnDual(writer, logWriter, "," + test.getOutfile());
-                }
+                addExecutedTest(test);
+                printlnDual(writer, logWriter, getCasesFileLine(test));
             }
             writer.flush();
             writer.close();
@@ -935,6 +1279,23 @@ public class JUnitTask extends Task {
         }
     }
 
+    /**
+     * The line describing a test in the casesfile read by a forked
+     * VM that runs multiple tests.
+     * @param test the test.
+     * @return the line without a line terminator.
+     */
+    private String getCasesFileLine(JUnitTest test) {
+        test = withDefaults(test);
+        StringBuffer line = new StringBuffer(test.getName());
+        if (test.getMethods() != null) {
+            line.append(':').append(test.getMethodsString().replace(',', '+'));
+        }
+        line.append(',').append(test.getTodir());
+        line.append(',').append(test.getOutfile());
+        return line.toString();
+    }
+
     /**
      * Execute a testcase by forking a new JVM. The command will block
      * until it finishes. To know if the process was destroyed or not
@@ -960,12 +1321,7 @@ public class JUnitTask extends Task {
                 Project.MSG_WARN);
         }
 
-        CommandlineJava cmd;
-        try {
-            cmd = (CommandlineJava) (getCommandline().clone());
-        } catch (CloneNotSupportedException e) {
-            throw new BuildException("This shouldn't happen", e, getLocation());
-        }
+        CommandlineJava cmd = cloneCommandline();
         if (casesFile == null) {
             cmd.createArgument().setValue(test.getName());
             if (test.getMethods() != null) {
@@ -976,6 +1332,332 @@ public class JUnitTask extends Task {
             cmd.createArgument().setValue(Constants.TESTSFILE + casesFile);
         }
 
+        final FormatterElement[] feArray = mergeFormatters(test);
+        addForkedArguments(cmd, test, feArray);
+
+        File vmWatcher = createTempPropertiesFile("junitvmwatcher");
+        cmd.createArgument().setValue(Constants.CRASHFILE
+                                      + vmWatcher.getAbsolutePath());
+        File propsFile = createForkedPropertiesFile();
+        cmd.createArgument().setValue(Constants.PROPSFILE
+                                      + propsFile.getAbsolutePath());
+
+        ForkOutput output = new ForkOutput();
+        Execute execute;
+        try {
+            execute = createForkedExecute(cmd, output.createHandler(cmd),
+                                          watchdog);
+        } catch (BuildException e) {
+            FILE_UTILS.tryHardToDelete(propsFile);
+            throw e;
+        }
+
+        TestResultHolder result = new TestResultHolder();
+        try {
+            result.exitCode = execute.execute();
+        } catch (IOException e) {
+            throw new BuildException("Process fork failed.", e, getLocation());
+        } finally {
+            output.finish();
+
+            String vmCrashString = readCrashFile(vmWatcher);
+            boolean crash = (watchdog != null && watchdog.killedProcess())
+                || !Constants.TERMINATED_SUCCESSFULLY.equals(vmCrashString);
+
+            if (casesFile != null && crash) {
+                test = createDummyTestForBatchTest(test);
+            }
+
+            if (watchdog != null && watchdog.killedProcess()) {
+                result.timedOut = true;
+                logTimeout(feArray, test, vmCrashString);
+            } else if (crash) {
+                result.crashed = true;
+                logVmCrash(feArray, test, vmCrashString);
+            }
+
+            deleteForkedPropertiesFile(propsFile);
+        }
+
+        return result;
+    }
+
+    /**
+     * Runs tests in forked Java VMs that are reused for several
+     * tests.
+     *
+     * <p>The tests are taken from a single queue by up to
+     * <code>threads</code> VMs at the same time.  A VM is replaced
+     * by a new one once it has run <code>maxtestsperfork</code> tests
+     * or after a test has crashed it or timed out.  No new test is
+     * started once a test has failed with haltonerror or
+     * haltonfailure.</p>
+     *
+     * @param testList tests that can share a VM.
+     * @throws BuildException in case of test failures or errors
+     */
+    private void executePooled(List testList) throws BuildException {
+        // initialize lazily created state before it is shared
+        getCommandline();
+
+        final Queue<JUnitTest> queue = new ConcurrentLinkedQueue<JUnitTest>(testList);
+        final AtomicBoolean halted = new AtomicBoolean();
+        int poolSize = Math.min(threads, testList.size());
+        if (poolSize <= 1) {
+            runPooledVMs(queue, halted);
+            return;
+        }
+        log("Running " + testList.size() + " tests in up to " + poolSize
+            + " forked VMs at a time", Project.MSG_VERBOSE);
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize);
+        List<Future<Object>> vms = new ArrayList<Future<Object>>();
+        Throwable failure = null;
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                vms.add(pool.submit(new Callable<Object>() {
+                        public Object call() {
+                            runPooledVMs(queue, halted);
+                            return null;
+                        }
+                    }));
+            }
+            for (Future<Object> vm : vms) {
+                try {
+                    vm.get();
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause();
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            halted.set(true);
+            throw new BuildException("Interrupted while running tests", ex,
+                                     getLocation());
+        } finally {
+            pool.shutdownNow();
+        }
+        rethrow(failure);
+    }
+
+    /**
+     * Starts forked VMs one after the other until the queue is empty.
+     * @param queue the tests to run.
+     * @param halted set once a test has failed with haltonerror or
+     * haltonfailure.
+     */
+    private void runPooledVMs(Queue<JUnitTest> queue, AtomicBoolean halted) {
+        try {
+            while (!halted.get()) {
+                JUnitTest first = queue.poll();
+                if (first == null) {
+                    break;
+                }
+                runPooledVM(first, queue, halted);
+            }
+        } catch (RuntimeException e) {
+            halted.set(true);
+            throw e;
+        } catch (Error e) {
+            halted.set(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs tests in a single forked VM.
+     *
+     * <p>The VM connects to a socket on the local host, reads the
+     * tests from it one at a time in the format of the casesfile and
+     * sends back the result code of each test.  As the task knows
+     * which test a VM has been running when it crashed or timed out,
+     * the error is reported for this test rather than for a dummy
+     * test like when a list of tests is run in a single VM.</p>
+     *
+     * @param first the first test to run, it determines the
+     * formatters and the flags of the VM.
+     * @param queue tests to run after the first one.
+     * @param halted set once a test has failed with haltonerror or
+     * haltonfailure.
+     */
+    private void runPooledVM(JUnitTest first, Queue<JUnitTest> queue,
+                             AtomicBoolean halted) {
+        if (perm != null) {
+            log("Permissions ignored when running in forked mode!",
+                Project.MSG_WARN);
+        }
+
+        ServerSocket server;
+        try {
+            server = new ServerSocket(0, 1, InetAddress.getByName(null));
+        } catch (IOException e) {
+            throw new BuildException("Unable to listen for forked VM.", e,
+                                     getLocation());
+        }
+
+        CommandlineJava cmd = cloneCommandline();
+        cmd.createArgument().setValue(Constants.POOL_PORT
+                                      + server.getLocalPort());
+        final FormatterElement[] feArray = mergeFormatters(first);
+        addForkedArguments(cmd, first, feArray);
+        File vmWatcher = createTempPropertiesFile("junitvmwatcher");
+        cmd.createArgument().setValue(Constants.CRASHFILE
+                                      + vmWatcher.getAbsolutePath());
+        File propsFile = null;
+        ForkOutput output = new ForkOutput();
+        Socket socket = null;
+        FutureTask<Integer> vm = null;
+        PooledVMWatchdog watchdog = new PooledVMWatchdog();
+        try {
+            propsFile = createForkedPropertiesFile();
+            cmd.createArgument().setValue(Constants.PROPSFILE
+                                          + propsFile.getAbsolutePath());
+            final Execute execute =
+                createForkedExecute(cmd, output.createHandler(cmd), watchdog);
+
+            // Execute blocks until the VM has exited
+            vm = new FutureTask<Integer>(new Callable<Integer>() {
+                    public Integer call() throws IOException {
+                        return Integer.valueOf(execute.execute());
+                    }
+                });
+            Thread t = new Thread(vm, "junit forked VM");
+            t.setDaemon(true);
+            t.start();
+
+            socket = accept(server, vm);
+            BufferedReader results = null;
+            Writer tests = null;
+            if (socket != null) {
+                if (timeout != null) {
+                    socket.setSoTimeout(timeout.intValue());
+                }
+                results = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                                   "UTF-8"));
+                tests = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+            }
+
+            int count = 0;
+            JUnitTest next = first;
+            while (next != null) {
+                addExecutedTest(next);
+                JUnitTest test = withDefaults(next);
+                TestResultHolder result = new TestResultHolder();
+                String code = null;
+                if (socket != null) {
+                    try {
+                        tests.write(getCasesFileLine(test) + "\n");
+                        tests.flush();
+                        code = results.readLine();
+                    } catch (SocketTimeoutException e) {
+                        watchdog.kill();
+                        result.timedOut = true;
+                    } catch (IOException e) {
+                        // the VM has exited
+                    }
+                }
+                if (code != null) {
+                    result.exitCode = Integer.parseInt(code);
+                } else {
+                    waitFor(vm);
+                    String vmCrashString = readCrashFile(vmWatcher);
+                    if (result.timedOut) {
+                        logTimeout(feArray, test, vmCrashString);
+                    } else {
+                        result.crashed = true;
+                        logVmCrash(feArray, test, vmCrashString);
+                    }
+                }
+                actOnTestResult(result, test, "Test " + test.getName());
+                if (code == null) {
+                    break;
+                }
+                count++;
+                next = halted.get()
+                    || (maxTestsPerFork > 0 && count >= maxTestsPerFork)
+                    ? null : queue.poll();
+            }
+        } catch (IOException e) {
+            throw new BuildException("Unable to talk to forked VM.", e,
+                                     getLocation());
+        } finally {
+            // the VM exits once the connection has been closed
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+                server.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            if (vm != null) {
+                waitFor(vm);
+            }
+            output.finish();
+            FILE_UTILS.tryHardToDelete(vmWatcher);
+            if (propsFile != null) {
+                deleteForkedPropertiesFile(propsFile);
+            }
+        }
+    }
+
+    /**
+     * Waits for a pooled VM to connect.
+     * @return the connection or null if the VM has exited without
+     * connecting.
+     */
+    private Socket accept(ServerSocket server, FutureTask<Integer> vm)
+        throws IOException {
+        server.setSoTimeout(POOLED_VM_ACCEPT_POLL);
+        while (true) {
+            try {
+                return server.accept();
+            } catch (SocketTimeoutException e) {
+                if (vm.isDone()) {
+                    waitFor(vm);
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for a pooled VM to exit.
+     * @throws BuildException if the VM couldn't be started.
+     */
+    private void waitFor(FutureTask<Integer> vm) {
+        try {
+            vm.get();
+        } catch (InterruptedException e) {
+            throw new BuildException("Interrupted while waiting for forked VM",
+                                     e, getLocation());
+        } catch (ExecutionException e) {
+            throw new BuildException("Process fork failed.", e.getCause(),
+                                     getLocation());
+        }
+    }
+
+    /**
+     * A copy of the task's command line for a forked VM.
+     */
+    private CommandlineJava cloneCommandline() {
+        try {
+            return (CommandlineJava) (getCommandline().clone());
+        } catch (CloneNotSupportedException e) {
+            throw new BuildException("This shouldn't happen", e, getLocation());
+        }
+    }
+
+    /**
+     * Adds the arguments that follow the test(s) to the command line
+     * of a forked VM.
+     * @param cmd command to run
+     * @param test the test, its formatters are used for all tests
+     * run by the VM.
+     * @param feArray the formatters of the test.
+     */
+    private void addForkedArguments(CommandlineJava cmd, JUnitTest test,
+                                    FormatterElement[] feArray) {
         cmd.createArgument().setValue(Constants.FILTERTRACE + test.getFiltertrace());
         cmd.createArgument().setValue(Constants.HALT_ON_ERROR + test.getHaltonerror());
         cmd.createArgument().setValue(Constants.HALT_ON_FAILURE
@@ -996,7 +1678,6 @@ public class JUnitTask extends Task {
                                       + String.valueOf(getEnableTestListenerEvents()));
 
         StringBuffer formatterArg = new StringBuffer(STRING_BUFFER_SIZE);
-        final FormatterElement[] feArray = mergeFormatters(test);
         for (int i = 0; i < feArray.length; i++) {
             FormatterElement fe = feArray[i];
             if (fe.shouldUse(this)) {
@@ -1011,13 +1692,15 @@ public class JUnitTask extends Task {
                 formatterArg = new StringBuffer();
             }
         }
+    }
 
-        File vmWatcher = createTempPropertiesFile("junitvmwatcher");
-        cmd.createArgument().setValue(Constants.CRASHFILE
-                                      + vmWatcher.getAbsolutePath());
+    /**
+     * Writes the properties of the project to a temporary file the
+     * forked VM reads them from.
+     * @return the file.
+     */
+    private File createForkedPropertiesFile() {
         File propsFile = createTempPropertiesFile("junit");
-        cmd.createArgument().setValue(Constants.PROPSFILE
-                                      + propsFile.getAbsolutePath());
         Hashtable p = getProject().getProperties();
         Properties props = new Properties();
         for (Enumeration e = p.keys(); e.hasMoreElements();) {
@@ -1033,13 +1716,28 @@ public class JUnitTask extends Task {
             throw new BuildException("Error creating temporary properties "
                                      + "file.", e, getLocation());
         }
+        return propsFile;
+    }
 
-        Execute execute = new Execute(
-            new JUnitLogStreamHandler(
-                this,
-                Project.MSG_INFO,
-                Project.MSG_WARN),
-            watchdog);
+    private void deleteForkedPropertiesFile(File propsFile) {
+        if (!FILE_UTILS.tryHardToDelete(propsFile)) {
+            throw new BuildException("Could not delete temporary "
+                                     + "properties file '"
+                                     + propsFile.getAbsolutePath() + "'.");
+        }
+    }
+
+    /**
+     * Sets up the execution of a forked VM.
+     * @param cmd command to run
+     * @param handler handler for the output of the VM.
+     * @param watchdog the watchdog of the VM, may be null.
+     * @return the Execute instance.
+     */
+    private Execute createForkedExecute(CommandlineJava cmd,
+                                        ExecuteStreamHandler handler,
+                                        ExecuteWatchdog watchdog) {
+        Execute execute = new Execute(handler, watchdog);
         execute.setCommandline(cmd.getCommandline());
         execute.setAntRun(getProject());
         if (dir != null) {
@@ -1059,58 +1757,164 @@ public class JUnitTask extends Task {
         log(cmd.describeCommand(), Project.MSG_VERBOSE);
 
         checkForkedPath(cmd);
+        return execute;
+    }
 
-        TestResultHolder result = new TestResultHolder();
+    /**
+     * Reads and deletes the file a forked VM writes the name of the
+     * running testcase to.
+     * @param vmWatcher the file.
+     * @return the name of the testcase or
+     * Constants.TERMINATED_SUCCESSFULLY if the VM hasn't crashed.
+     */
+    private String readCrashFile(File vmWatcher) {
+        String vmCrashString = "unknown";
+        BufferedReader br = null;
         try {
-            result.exitCode = execute.execute();
-        } catch (IOException e) {
-            throw new BuildException("Process fork failed.", e, getLocation());
+            if (vmWatcher.exists()) {
+                br = new BufferedReader(new FileReader(vmWatcher));
+                vmCrashString = br.readLine();
+            } else {
+                vmCrashString = "Monitor file ("
+                        + vmWatcher.getAbsolutePath()
+                        + ") missing, location not writable,"
+                        + " testcase not started or mixing ant versions?";
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            // ignored.
         } finally {
-            String vmCrashString = "unknown";
-            BufferedReader br = null;
-            try {
-                if (vmWatcher.exists()) {
-                    br = new BufferedReader(new FileReader(vmWatcher));
-                    vmCrashString = br.readLine();
-                } else {
-                    vmCrashString = "Monitor file ("
-                            + vmWatcher.getAbsolutePath()
-                            + ") missing, location not writable,"
-                            + " testcase not started or mixing ant versions?";
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                // ignored.
-            } finally {
-                FileUtils.close(br);
-                if (vmWatcher.exists()) {
-                    FILE_UTILS.tryHardToDelete(vmWatcher);
-                }
+            FileUtils.close(br);
+            if (vmWatcher.exists()) {
+                FILE_UTILS.tryHardToDelete(vmWatcher);
             }
+        }
+        return vmCrashString;
+    }
 
-            boolean crash = (watchdog != null && watchdog.killedProcess())
-                || !Constants.TERMINATED_SUCCESSFULLY.equals(vmCrashString);
+    /**
+     * Where the output of a forked VM goes.
+     *
+     * <p>Concurrent VMs get a temporary directory of their own and
+     * their output is collected in files that are logged once the VM
+     * has finished, otherwise the output is logged right away.</p>
+     */
+    private class ForkOutput {
+        private File forkTmpDir = null;
+        private File forkOut = null;
+        private File forkErr = null;
+        private OutputStream forkOutStream = null;
+        private OutputStream forkErrStream = null;
 
-            if (casesFile != null && crash) {
-                test = createDummyTestForBatchTest(test);
+        ExecuteStreamHandler createHandler(CommandlineJava cmd) {
+            if (threads <= 1) {
+                return new JUnitLogStreamHandler(JUnitTask.this,
+                                                 Project.MSG_INFO,
+                                                 Project.MSG_WARN);
             }
+            try {
+                forkTmpDir = createForkTempDir(cmd);
+                forkOut = createTempFile("junitout", ".txt");
+                forkErr = createTempFile("junitout", ".txt");
+                forkOutStream = new FileOutputStream(forkOut);
+                forkErrStream = new FileOutputStream(forkErr);
+            } catch (IOException e) {
+                finish();
+                throw new BuildException("Error creating temporary output "
+                                         + "file.", e, getLocation());
+            }
+            return new PumpStreamHandler(forkOutStream, forkErrStream);
+        }
 
-            if (watchdog != null && watchdog.killedProcess()) {
-                result.timedOut = true;
-                logTimeout(feArray, test, vmCrashString);
-            } else if (crash) {
-                result.crashed = true;
-                logVmCrash(feArray, test, vmCrashString);
+        void finish() {
+            FileUtils.close(forkOutStream);
+            FileUtils.close(forkErrStream);
+            if (forkOut != null) {
+                logForkOutput(forkOut, forkErr);
             }
+            deleteForkFiles(forkTmpDir, forkOut, forkErr);
+            forkTmpDir = forkOut = forkErr = null;
+            forkOutStream = forkErrStream = null;
+        }
+    }
 
-            if (!FILE_UTILS.tryHardToDelete(propsFile)) {
-                throw new BuildException("Could not delete temporary "
-                                         + "properties file '"
-                                         + propsFile.getAbsolutePath() + "'.");
+    /**
+     * Watchdog of a pooled VM, timeouts apply to the individual tests
+     * so it only kills the VM when asked to.
+     */
+    private static class PooledVMWatchdog extends ExecuteWatchdog {
+        PooledVMWatchdog() {
+            // Watchdog adds the timeout to the current time
+            super(Long.MAX_VALUE / 2);
+        }
+
+        void kill() {
+            timeoutOccured(null);
+        }
+    }
+
+    /**
+     * Creates an empty directory and makes it the
+     * <code>java.io.tmpdir</code> of the forked VM unless the
+     * property has been set explicitly.
+     * @param cmd command to run
+     * @return the directory or null if the property has been set.
+     */
+    private File createForkTempDir(CommandlineJava cmd) throws IOException {
+        String[] props = cmd.getSystemProperties().getVariables();
+        for (int i = 0; props != null && i < props.length; i++) {
+            if (props[i].startsWith("-Djava.io.tmpdir=")) {
+                return null;
             }
         }
+        File forkTmpDir = createTempFile("junitfork", "");
+        if (!forkTmpDir.delete() || !forkTmpDir.mkdir()) {
+            throw new IOException("Cannot create directory " + forkTmpDir);
+        }
+        Environment.Variable v = new Environment.Variable();
+        v.setKey("java.io.tmpdir");
+        v.setFile(forkTmpDir);
+        cmd.addSysproperty(v);
+        return forkTmpDir;
+    }
 
-        return result;
+    /**
+     * Logs the output of a VM that has run concurrently to others.
+     */
+    private synchronized void logForkOutput(File forkOut, File forkErr) {
+        copyToLog(forkOut, new JUnitLogOutputStream(this, Project.MSG_INFO));
+        copyToLog(forkErr, new LogOutputStream(this, Project.MSG_WARN));
+    }
+
+    private void copyToLog(File f, OutputStream log) {
+        InputStream in = null;
+        try {
+            if (f != null && f.length() > 0) {
+                in = new FileInputStream(f);
+                byte[] buffer = new byte[STRING_BUFFER_SIZE * STRING_BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    log.write(buffer, 0, read);
+                }
+            }
+        } catch (IOException e) {
+            log("Unable to read output of forked VM: " + e, Project.MSG_WARN);
+        } finally {
+            FileUtils.close(in);
+            FileUtils.close(log);
+        }
+    }
+
+    private void deleteForkFiles(File forkTmpDir, File forkOut, File forkErr) {
+        if (forkTmpDir != null) {
+            FILE_UTILS.tryHardToDeleteTree(forkTmpDir);
+        }
+        if (forkOut != null) {
+            FILE_UTILS.tryHardToDelete(forkOut);
+        }
+        if (forkErr != null) {
+            FILE_UTILS.tryHardToDelete(forkErr);
+        }
     }
 
     /**
@@ -1160,7 +1964,7 @@ public class JUnitTask extends Task {
      * ant.
      * @param cmd command to execute
      */
-    private void checkForkedPath(CommandlineJava cmd) {
+    private synchronized void checkForkedPath(CommandlineJava cmd) {
         if (forkedPathChecked) {
             return;
         }
@@ -1234,10 +2038,18 @@ public class JUnitTask extends Task {
      * @return created file
      */
     private File createTempPropertiesFile(String prefix) {
-        File propsFile =
-            FILE_UTILS.createTempFile(prefix, ".properties",
-                tmpDir != null ? tmpDir : getProject().getBaseDir(), true, true);
-        return propsFile;
+        return createTempFile(prefix, ".properties");
+    }
+
+    /**
+     * Create a temporary file that will auto-delete on (graceful)
+     * exit.
+     * The file will be in the project basedir unless tmpDir declares
+     * something else.
+     */
+    private File createTempFile(String prefix, String suffix) {
+        return FILE_UTILS.createTempFile(prefix, suffix,
+            tmpDir != null ? tmpDir : getProject().getBaseDir(), true, true);
     }
 
 
@@ -1471,7 +2283,9 @@ public class JUnitTask extends Task {
         final Enumeration[] enums = new Enumeration[ count + 1];
         for (int i = 0; i < count; i++) {
             BatchTest batchtest = (BatchTest) batchTests.elementAt(i);
-            enums[i] = batchtest.elements();
+            List<List> l = getBatchTests(batchtest, false);
+            enums[i] = l.isEmpty() ? Collections.enumeration(l)
+                : Collections.enumeration(l.get(0));
         }
         enums[enums.length - 1] = tests.elements();
         return Enumerations.fromCompound(enums);
@@ -1631,8 +2445,9 @@ public class JUnitTask extends Task {
      *
      * @since Ant 1.7
      */
-    private void logVmExit(FormatterElement[] feArray, JUnitTest test,
-                           String message, String testCase) {
+    private synchronized void logVmExit(FormatterElement[] feArray,
+                                        JUnitTest test, String message,
+                                        String testCase) {
         if (delegate == null) {
             setupJUnitDelegate();
         }
@@ -1862,6 +2677,11 @@ public class JUnitTask extends Task {
          * fork once per batch of tests
          */
         public static final String PER_BATCH = "perBatch";
+        /**
+         * reuse forked VMs for several tests
+         * @since Ant 1.9.1
+         */
+        public static final String POOLED = "pooled";
 
         /** No arg constructor. */
         public ForkMode() {
@@ -1870,7 +2690,7 @@ public class JUnitTask extends Task {
 
         /**
          * Constructor using a value.
-         * @param value the value to use - once, perTest or perBatch.
+         * @param value the value to use - once, perTest, perBatch or pooled.
          */
         public ForkMode(String value) {
             super();
@@ -1879,7 +2699,7 @@ public class JUnitTask extends Task {
 
         /** {@inheritDoc}. */
         public String[] getValues() {
-            return new String[] {ONCE, PER_TEST, PER_BATCH};
+            return new String[] {ONCE, PER_TEST, PER_BATCH, POOLED};
         }
     }
 
@@ -1896,10 +2716,16 @@ public class JUnitTask extends Task {
     protected Collection executeOrQueue(Enumeration testList,
                                         boolean runIndividual) {
         Map testConfigurations = new HashMap();
+        List individualForks = new ArrayList();
         while (testList.hasMoreElements()) {
             JUnitTest test = (JUnitTest) testList.nextElement();
             if (test.shouldRun(getProject())) {
-                if (runIndividual || !test.getFork()) {
+                if (runIndividual && test.getFork() && threads > 1) {
+                    // run later, concurrently to other forks
+                    List l = new ArrayList(1);
+                    l.add(test);
+                    individualForks.add(l);
+                } else if (runIndividual || !test.getFork()) {
                     execute(test);
                 } else {
                     ForkedTestConfiguration c =
@@ -1913,6 +2739,10 @@ public class JUnitTask extends Task {
                 }
             }
         }
+        if (!individualForks.isEmpty()) {
+            individualForks.addAll(testConfigurations.values());
+            return individualForks;
+        }
         return testConfigurations.values();
     }
 
@@ -25,11 +25,16 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Properties;
@@ -315,8 +320,7 @@ public class JUnitTestRunner implements TestListener, JUnitTaskMirror.JUnitTestR
         return new PrintStream(new TeeOutputStream(ps1, ps2));
     }
 
-    private void setupIOStreams(ByteArrayOutputStream o,
-                                ByteArrayOutputStream e) {
+    private void setupIOStreams(OutputStream o, OutputStream e) {
         systemOut = new PrintStream(o);
         systemError = new PrintStream(e);
 
@@ -358,10 +362,29 @@ public class JUnitTestRunner implements TestListener, JUnitTaskMirror.JUnitTestR
             res.addListener(wrapListener((TestListener) formatters.elementAt(i)));
         }
 
-        ByteArrayOutputStream errStrm = new ByteArrayOutputStream();
-        ByteArrayOutputStream outStrm = new ByteArrayOutputStream();
+        // only keep the output in memory if a formatter needs it as
+        // a String, streaming formatters receive it as it happens
+        ByteArrayOutputStream errStrm = null;
+        ByteArrayOutputStream outStrm = null;
+        OutputStream out = null;
+        OutputStream err = null;
+        for (int i = 0; i < size; i++) {
+            Object f = formatters.elementAt(i);
+            if (f instanceof StreamingJUnitResultFormatter) {
+                StreamingJUnitResultFormatter s =
+                    (StreamingJUnitResultFormatter) f;
+                out = tee(out, s.getSystemOutputStream());
+                err = tee(err, s.getSystemErrorStream());
+            } else if (outStrm == null) {
+                errStrm = new ByteArrayOutputStream();
+                outStrm = new ByteArrayOutputStream();
+                out = tee(out, outStrm);
+                err = tee(err, errStrm);
+            }
+        }
 
-        setupIOStreams(outStrm, errStrm);
+        setupIOStreams(out != null ? out : createEmptyStream(),
+                       err != null ? err : createEmptyStream());
 
         Test suite = null;
         Throwable exception = null;
@@ -548,7 +571,7 @@ public class JUnitTestRunner implements TestListener, JUnitTaskMirror.JUnitTestR
             systemError = null;
             systemOut.close();
             systemOut = null;
-            if (startTestSuiteSuccess) {
+            if (startTestSuiteSuccess && outStrm != null) {
                 sendOutAndErr(new String(outStrm.toByteArray()),
                               new String(errStrm.toByteArray()));
             }
@@ -709,9 +732,19 @@ public class JUnitTestRunner implements TestListener, JUnitTaskMirror.JUnitTestR
         }
     }
 
+    private static OutputStream tee(OutputStream o1, OutputStream o2) {
+        if (o1 == null) {
+            return o2;
+        }
+        return o2 == null ? o1 : new TeeOutputStream(o1, o2);
+    }
+
     private void sendOutAndErr(String out, String err) {
         final int size = formatters.size();
         for (int i = 0; i < size; i++) {
+            if (formatters.elementAt(i) instanceof StreamingJUnitResultFormatter) {
+                continue;
+            }
             JUnitResultFormatter formatter =
                 ((JUnitResultFormatter) formatters.elementAt(i));
 
@@ -755,6 +788,13 @@ public class JUnitTestRunner implements TestListener, JUnitTaskMirror.JUnitTestR
      * Parameters: testcaseclassname plus parameters in the format
      * key=value, none of which is required.
      *
+     * <p>Instead of the testcaseclassname the first argument may be
+     * testsfile=<i>file</i> to run the tests listed in a file or
+     * poolport=<i>port</i> to run the tests the task sends over a
+     * connection to the given port of the local host.  In the latter
+     * case the result code of each test is sent back and the VM
+     * exits once the task closes the connection.</p>
+     *
      * <table cols="4" border="1">
      * <tr><th>key</th><th>description</th><th>default value</th></tr>
      *
@@ -799,9 +839,14 @@ public class JUnitTestRunner implements TestListener, JUnitTaskMirror.JUnitTestR
             System.exit(ERRORS);
         }
 
+        int poolPort = -1;
         if (args[0].startsWith(Constants.TESTSFILE)) {
             multipleTests = true;
             args[0] = args[0].substring(Constants.TESTSFILE.length());
+        } else if (args[0].startsWith(Constants.POOL_PORT)) {
+            multipleTests = true;
+            poolPort = Integer.parseInt(args[0]
+                                        .substring(Constants.POOL_PORT.length()));
         }
 
         for (int i = 1; i < args.length; i++) {
@@ -856,35 +901,40 @@ public class JUnitTestRunner implements TestListener, JUnitTaskMirror.JUnitTestR
         }
 
         int returnCode = SUCCESS;
-        if (multipleTests) {
+        if (poolPort != -1) {
+            Socket socket = new Socket(InetAddress.getByName(null), poolPort);
+            try {
+                BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                             "UTF-8"));
+                Writer results =
+                    new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+                String line = null;
+                // the task decides whether a failed test halts the
+                // build and when this VM has run enough tests
+                while ((line = reader.readLine()) != null) {
+                    registerTestCase(Constants.BEFORE_FIRST_TEST);
+                    JUnitTest t = createTest(line, props);
+                    int code = launch(t, t.getMethods(), haltError, stackfilter,
+                                      haltFail, showOut, outputToFormat,
+                                      logTestListenerEvents);
+                    results.write(code + "\n");
+                    results.flush();
+                }
+            } finally {
+                socket.close();
+            }
+        } else if (multipleTests) {
             try {
                 java.io.BufferedReader reader =
                     new java.io.BufferedReader(new java.io.FileReader(args[0]));
-                String testCaseName;
-                String[] testMethodNames;
                 int code = 0;
                 boolean errorOccurred = false;
                 boolean failureOccurred = false;
                 String line = null;
                 while ((line = reader.readLine()) != null) {
-                    StringTokenizer st = new StringTokenizer(line, ",");
-                    String testListSpec = st.nextToken();
-                    int colonIndex = testListSpec.indexOf(':');
-                    if (colonIndex == -1) {
-                        testCaseName = testListSpec;
-                        testMethodNames = null;
-                    } else {
-                        testCaseName = testListSpec.substring(0, colonIndex);
-                        testMethodNames = JUnitTest.parseTestMethodNamesList(
-                                                    testListSpec
-                                                    .substring(colonIndex + 1)
-                                                    .replace('+', ','));
-                    }
-                    JUnitTest t = new JUnitTest(testCaseName);
-                    t.setTodir(new File(st.nextToken()));
-                    t.setOutfile(st.nextToken());
-                    t.setProperties(props);
-                    code = launch(t, testMethodNames, haltError, stackfilter, haltFail,
+                    JUnitTest t = createTest(line, props);
+                    code = launch(t, t.getMethods(), haltError, stackfilter, haltFail,
                                   showOut, outputToFormat,
                                   logTestListenerEvents);
                     errorOccurred = (code == ERRORS);
@@ -920,11 +970,36 @@ public class JUnitTestRunner implements TestListener, JUnitTaskMirror.JUnitTestR
         System.exit(returnCode);
     }
 
+    /**
+     * Creates a test from a line of the testsfile.
+     *
+     * <p>Line format is:
+     * classname(:method(+method)*)?,todir,outfile</p>
+     */
+    private static JUnitTest createTest(String line, Properties props) {
+        StringTokenizer st = new StringTokenizer(line, ",");
+        String testListSpec = st.nextToken();
+        int colonIndex = testListSpec.indexOf(':');
+        JUnitTest t;
+        if (colonIndex == -1) {
+            t = new JUnitTest(testListSpec);
+        } else {
+            t = new JUnitTest(testListSpec.substring(0, colonIndex));
+            t.setMethods(JUnitTest.parseTestMethodNamesList(testListSpec
+                                                            .substring(colonIndex + 1)
+                                                            .replace('+', ',')));
+        }
+        t.setTodir(new File(st.nextToken()));
+        t.setOutfile(st.nextToken());
+        t.setProperties(props);
+        return t;
+    }
+
     private static Vector fromCmdLine = new Vector();
 
     private static void transferFormatters(JUnitTestRunner runner,
                                            JUnitTest test) {
-        runner.addFormatter(new JUnitResultFormatter() {
+        runner.addFormatter(new StreamingJUnitResultFormatter() {
 
             public void startTestSuite(JUnitTest suite) throws BuildException {
             }
@@ -941,6 +1016,14 @@ public class JUnitTestRunner implements TestListener, JUnitTaskMirror.JUnitTestR
             public void setSystemError(String err) {
             }
 
+            public OutputStream getSystemOutputStream() {
+                return null;
+            }
+
+            public OutputStream getSystemErrorStream() {
+                return null;
+            }
+
             public void addError(Test arg0, Throwable arg1) {
             }
 
@@ -0,0 +1,60 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.taskdefs.optional.junit;
+
+import java.io.OutputStream;
+
+/**
+ * A formatter that receives the output of the tests while they are
+ * running rather than as a single String once the testsuite has
+ * finished.
+ *
+ * <p>{@link JUnitTestRunner JUnitTestRunner} only keeps the output
+ * of a testsuite in memory if at least one of its formatters doesn't
+ * implement this interface, it never invokes {@link
+ * JUnitResultFormatter#setSystemOutput setSystemOutput} or {@link
+ * JUnitResultFormatter#setSystemError setSystemError} on formatters
+ * that do.</p>
+ *
+ * @since Ant 1.9.1
+ */
+public interface StreamingJUnitResultFormatter extends JUnitResultFormatter {
+
+    /**
+     * The stream that receives what the tests write to System.out.
+     *
+     * <p>Invoked once before the testsuite starts, the stream is
+     * closed by the runner before the testsuite ends.</p>
+     *
+     * @return the stream or null if the formatter doesn't need the
+     * output.
+     */
+    OutputStream getSystemOutputStream();
+
+    /**
+     * The stream that receives what the tests write to System.err.
+     *
+     * <p>Invoked once before the testsuite starts, the stream is
+     * closed by the runner before the testsuite ends.</p>
+     *
+     * @return the stream or null if the formatter doesn't need the
+     * output.
+     */
+    OutputStream getSystemErrorStream();
+}
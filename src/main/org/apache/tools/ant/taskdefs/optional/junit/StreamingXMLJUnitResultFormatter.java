@@ -0,0 +1,536 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.taskdefs.optional.junit;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.util.DOMElementWriter;
+import org.apache.tools.ant.util.DateUtils;
+import org.apache.tools.ant.util.FileUtils;
+import org.apache.tools.ant.util.StringUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Prints XML output of the test to a specified Writer without
+ * keeping the results of the whole testsuite in memory.
+ *
+ * <p>Creates the same format as {@link XMLJUnitResultFormatter
+ * XMLJUnitResultFormatter}.  Each <code>testcase</code> element is
+ * written to a temporary file as soon as the test has finished and
+ * the output of the tests is streamed into temporary files while
+ * the tests are running.  Once the testsuite ends and the counts
+ * needed for the attributes of the <code>testsuite</code> element
+ * are known the temporary files are copied to the report.</p>
+ *
+ * <p>Unlike the XML formatter <code>testcase</code> elements appear
+ * in the order the tests have finished.</p>
+ *
+ * @see FormatterElement
+ * @since Ant 1.9.1
+ */
+public class StreamingXMLJUnitResultFormatter
+    implements StreamingJUnitResultFormatter, XMLConstants, IgnoredTestListener {
+
+    private static final double ONE_SECOND = 1000.0;
+
+    /** constant for unnnamed testsuites/cases */
+    private static final String UNKNOWN = "unknown";
+
+    private static final String UTF8 = "UTF8";
+
+    private static final String INDENT = "  ";
+
+    /** number of characters of test output copied at a time */
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    private final DOMElementWriter domWriter = new DOMElementWriter();
+
+    /**
+     * Creates the elements of the tests that are currently running.
+     */
+    private Document doc;
+    /**
+     * The wrapper for the whole testsuite, only its attributes are
+     * used.
+     */
+    private Element rootElement;
+    /**
+     * Elements of tests that have not finished yet, keyed by
+     * caseName(className) like in XMLJUnitResultFormatter.
+     */
+    private final Map<String, Element> testElements =
+        new LinkedHashMap<String, Element>();
+    /**
+     * Timing helper.
+     */
+    private final Map<String, Long> testStarts = new HashMap<String, Long>();
+    /**
+     * Ignored tests, their elements have been written already.
+     */
+    private final Set<String> ignoredTests = new HashSet<String>();
+    /**
+     * Holds the properties and the testcase elements.
+     */
+    private File testcases;
+    private Writer testcasesWriter;
+    private File systemOut;
+    private OutputStream systemOutStream;
+    private File systemErr;
+    private OutputStream systemErrStream;
+    /**
+     * Where to write the log to.
+     */
+    private OutputStream out;
+
+    /** No arg constructor. */
+    public StreamingXMLJUnitResultFormatter() {
+    }
+
+    /** {@inheritDoc}. */
+    public void setOutput(OutputStream out) {
+        this.out = out;
+    }
+
+    /** {@inheritDoc}. */
+    public synchronized OutputStream getSystemOutputStream() {
+        if (systemOutStream == null) {
+            systemOut = createTempFile(SYSTEM_OUT);
+            systemOutStream = openSpool(systemOut);
+        }
+        return systemOutStream;
+    }
+
+    /** {@inheritDoc}. */
+    public synchronized OutputStream getSystemErrorStream() {
+        if (systemErrStream == null) {
+            systemErr = createTempFile(SYSTEM_ERR);
+            systemErrStream = openSpool(systemErr);
+        }
+        return systemErrStream;
+    }
+
+    /**
+     * Only used by runners that don't support {@link
+     * StreamingJUnitResultFormatter StreamingJUnitResultFormatter}.
+     * @param out the output of the tests.
+     */
+    public synchronized void setSystemOutput(String out) {
+        spool(getSystemOutputStream(), out);
+    }
+
+    /**
+     * Only used by runners that don't support {@link
+     * StreamingJUnitResultFormatter StreamingJUnitResultFormatter}.
+     * @param out the error output of the tests.
+     */
+    public synchronized void setSystemError(String out) {
+        spool(getSystemErrorStream(), out);
+    }
+
+    /**
+     * The whole testsuite started.
+     * @param suite the testsuite.
+     */
+    public synchronized void startTestSuite(JUnitTest suite) {
+        try {
+            doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .newDocument();
+        } catch (Exception exc) {
+            throw new BuildException("Unable to create XML document", exc);
+        }
+        rootElement = doc.createElement(TESTSUITE);
+        String n = suite.getName();
+        rootElement.setAttribute(ATTR_NAME, n == null ? UNKNOWN : n);
+
+        //add the timestamp
+        final String timestamp = DateUtils.format(new Date(),
+                DateUtils.ISO8601_DATETIME_PATTERN);
+        rootElement.setAttribute(TIMESTAMP, timestamp);
+        //and the hostname.
+        rootElement.setAttribute(HOSTNAME, getHostname());
+
+        testcases = createTempFile(TESTCASE);
+        try {
+            testcasesWriter =
+                new BufferedWriter(new OutputStreamWriter(new FileOutputStream(testcases),
+                                                          UTF8));
+        } catch (IOException exc) {
+            throw new BuildException("Unable to write log file", exc);
+        }
+
+        // Output properties
+        Element propsElement = doc.createElement(PROPERTIES);
+        Properties props = suite.getProperties();
+        if (props != null) {
+            Enumeration e = props.propertyNames();
+            while (e.hasMoreElements()) {
+                String name = (String) e.nextElement();
+                Element propElement = doc.createElement(PROPERTY);
+                propElement.setAttribute(ATTR_NAME, name);
+                propElement.setAttribute(ATTR_VALUE, props.getProperty(name));
+                propsElement.appendChild(propElement);
+            }
+        }
+        writeElement(propsElement);
+    }
+
+    /**
+     * get the local hostname
+     * @return the name of the local host, or "localhost" if we cannot work it out
+     */
+    private String getHostname()  {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    /**
+     * The whole testsuite ended.
+     * @param suite the testsuite.
+     * @throws BuildException on error.
+     */
+    public synchronized void endTestSuite(JUnitTest suite) throws BuildException {
+        Writer wri = null;
+        try {
+            // tests that never received an endTest event
+            for (Iterator<Element> i = testElements.values().iterator();
+                 i.hasNext(); ) {
+                writeElement(i.next());
+            }
+            testElements.clear();
+            testStarts.clear();
+            ignoredTests.clear();
+            FileUtils.close(testcasesWriter);
+            FileUtils.close(systemOutStream);
+            FileUtils.close(systemErrStream);
+
+            rootElement.setAttribute(ATTR_TESTS, "" + suite.runCount());
+            rootElement.setAttribute(ATTR_FAILURES, "" + suite.failureCount());
+            rootElement.setAttribute(ATTR_ERRORS, "" + suite.errorCount());
+            rootElement.setAttribute(ATTR_SKIPPED, "" + suite.skipCount());
+            rootElement.setAttribute(
+                ATTR_TIME, "" + (suite.getRunTime() / ONE_SECOND));
+            if (out != null) {
+                wri = new BufferedWriter(new OutputStreamWriter(out, UTF8));
+                wri.write("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
+                domWriter.openElement(rootElement, wri, 0, INDENT, true);
+                wri.write(StringUtils.LINE_SEP);
+                copyTestcases(wri);
+                copyOutput(SYSTEM_OUT, systemOut, wri);
+                copyOutput(SYSTEM_ERR, systemErr, wri);
+                domWriter.closeElement(rootElement, wri, 0, INDENT, true);
+            }
+        } catch (IOException exc) {
+            throw new BuildException("Unable to write log file", exc);
+        } finally {
+            if (wri != null) {
+                try {
+                    wri.flush();
+                } catch (IOException ex) {
+                    // ignore
+                }
+            }
+            if (out != System.out && out != System.err) {
+                FileUtils.close(wri);
+            }
+            deleteSpools();
+        }
+    }
+
+    /**
+     * Interface TestListener.
+     *
+     * <p>A new Test is started.
+     * @param t the test.
+     */
+    public synchronized void startTest(Test t) {
+        testStarts.put(createDescription(t), System.currentTimeMillis());
+    }
+
+    private static String createDescription(Test test) throws BuildException {
+        return JUnitVersionHelper.getTestCaseName(test) + "(" + JUnitVersionHelper.getTestCaseClassName(test) + ")";
+    }
+
+    /**
+     * Interface TestListener.
+     *
+     * <p>A Test is finished, its element is written.
+     * @param test the test.
+     */
+    public synchronized void endTest(Test test) {
+        String testDescription = createDescription(test);
+        if (ignoredTests.remove(testDescription)) {
+            return;
+        }
+        writeElement(getTestElement(test));
+        testElements.remove(testDescription);
+        testStarts.remove(testDescription);
+    }
+
+    /**
+     * The element of a running test, created and timed like the
+     * XML formatter does if it doesn't exist yet.
+     */
+    private Element getTestElement(Test test) {
+        String testDescription = createDescription(test);
+
+        // Fix for bug #5637 - if a junit.extensions.TestSetup is
+        // used and throws an exception during setUp then startTest
+        // would never have been called
+        if (!testStarts.containsKey(testDescription)) {
+            startTest(test);
+        }
+        Element currentTest = testElements.get(testDescription);
+        if (currentTest == null) {
+            currentTest = doc.createElement(TESTCASE);
+            String n = JUnitVersionHelper.getTestCaseName(test);
+            currentTest.setAttribute(ATTR_NAME,
+                                     n == null ? UNKNOWN : n);
+            // a TestSuite can contain Tests from multiple classes,
+            // even tests with the same name - disambiguate them.
+            currentTest.setAttribute(ATTR_CLASSNAME,
+                    JUnitVersionHelper.getTestCaseClassName(test));
+            testElements.put(testDescription, currentTest);
+        }
+
+        Long l = testStarts.get(testDescription);
+        currentTest.setAttribute(ATTR_TIME,
+            "" + ((System.currentTimeMillis() - l) / ONE_SECOND));
+        return currentTest;
+    }
+
+    /**
+     * Interface TestListener for JUnit &lt;= 3.4.
+     *
+     * <p>A Test failed.
+     * @param test the test.
+     * @param t the exception.
+     */
+    public void addFailure(Test test, Throwable t) {
+        formatError(FAILURE, test, t);
+    }
+
+    /**
+     * Interface TestListener for JUnit &gt; 3.4.
+     *
+     * <p>A Test failed.
+     * @param test the test.
+     * @param t the assertion.
+     */
+    public void addFailure(Test test, AssertionFailedError t) {
+        addFailure(test, (Throwable) t);
+    }
+
+    /**
+     * Interface TestListener.
+     *
+     * <p>An error occurred while running the test.
+     * @param test the test.
+     * @param t the error.
+     */
+    public void addError(Test test, Throwable t) {
+        formatError(ERROR, test, t);
+    }
+
+    private synchronized void formatError(String type, Test test, Throwable t) {
+        Element nested = doc.createElement(type);
+        String message = t.getMessage();
+        if (message != null && message.length() > 0) {
+            nested.setAttribute(ATTR_MESSAGE, t.getMessage());
+        }
+        nested.setAttribute(ATTR_TYPE, t.getClass().getName());
+
+        String strace = JUnitTestRunner.getFilteredTrace(t);
+        nested.appendChild(doc.createTextNode(strace));
+
+        if (test != null) {
+            getTestElement(test).appendChild(nested);
+        } else {
+            writeElement(nested);
+        }
+    }
+
+    /** {@inheritDoc}. */
+    public synchronized void testIgnored(Test test) {
+        formatSkip(test, JUnitVersionHelper.getIgnoreMessage(test));
+        if (test != null) {
+            // JUnit 4 doesn't send an endTest event for ignored tests
+            String testDescription = createDescription(test);
+            writeElement(testElements.remove(testDescription));
+            testStarts.remove(testDescription);
+            ignoredTests.add(testDescription);
+        }
+    }
+
+    /**
+     * Adds a skipped element to the test or the testsuite.
+     * @param test the test, may be null.
+     * @param message the reason, may be null.
+     */
+    public synchronized void formatSkip(Test test, String message) {
+        Element nested = doc.createElement("skipped");
+
+        if (message != null) {
+            nested.setAttribute("message", message);
+        }
+
+        if (test != null) {
+            getTestElement(test).appendChild(nested);
+        } else {
+            writeElement(nested);
+        }
+    }
+
+    /** {@inheritDoc}. */
+    public synchronized void testAssumptionFailure(Test test, Throwable failure) {
+        formatSkip(test, failure.getMessage());
+    }
+
+    /**
+     * Writes an element below the testsuite to the temporary file.
+     */
+    private void writeElement(Element element) {
+        try {
+            domWriter.write(element, testcasesWriter, 1, INDENT);
+        } catch (IOException exc) {
+            throw new BuildException("Unable to write log file", exc);
+        }
+    }
+
+    private void copyTestcases(Writer wri) throws IOException {
+        Reader in = null;
+        try {
+            in = new InputStreamReader(new FileInputStream(testcases), UTF8);
+            char[] buffer = new char[CHUNK_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                wri.write(buffer, 0, n);
+            }
+        } finally {
+            FileUtils.close(in);
+        }
+    }
+
+    /**
+     * Copies the output of the tests into a CDATA section the same
+     * way DOMElementWriter does, a chunk at a time.
+     */
+    private void copyOutput(String type, File spool, Writer wri)
+        throws IOException {
+        if (spool == null) {
+            return;
+        }
+        Element nested = doc.createElement(type);
+        domWriter.openElement(nested, wri, 1, INDENT, true);
+        wri.write("<![CDATA[");
+        Reader in = null;
+        try {
+            // the runner uses the platform's default encoding as well
+            in = new InputStreamReader(new FileInputStream(spool));
+            char[] buffer = new char[CHUNK_SIZE];
+            StringBuffer legal = new StringBuffer();
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    if (domWriter.isLegalCharacter(buffer[i])) {
+                        legal.append(buffer[i]);
+                    }
+                }
+                // keep up to two trailing ']' for the next chunk so
+                // a "]]>" spanning two chunks is still split up
+                int keep = legal.length();
+                while (keep > 0 && legal.length() - keep < 2
+                       && legal.charAt(keep - 1) == ']') {
+                    keep--;
+                }
+                wri.write(domWriter.encodedata(legal.substring(0, keep)));
+                legal.delete(0, keep);
+            }
+            wri.write(domWriter.encodedata(legal.toString()));
+        } finally {
+            FileUtils.close(in);
+        }
+        wri.write("]]>");
+        domWriter.closeElement(nested, wri, 1, INDENT, false);
+    }
+
+    private static File createTempFile(String prefix) {
+        return FILE_UTILS.createTempFile(prefix, ".tmp", null, true, true);
+    }
+
+    private static OutputStream openSpool(File f) {
+        try {
+            return new BufferedOutputStream(new FileOutputStream(f));
+        } catch (IOException exc) {
+            throw new BuildException("Unable to write log file", exc);
+        }
+    }
+
+    private static void spool(OutputStream spool, String output) {
+        try {
+            spool.write(output.getBytes());
+        } catch (IOException exc) {
+            throw new BuildException("Unable to write log file", exc);
+        }
+    }
+
+    private void deleteSpools() {
+        File[] spools = new File[] {testcases, systemOut, systemErr};
+        for (int i = 0; i < spools.length; i++) {
+            if (spools[i] != null) {
+                FILE_UTILS.tryHardToDelete(spools[i]);
+            }
+        }
+        testcases = systemOut = systemErr = null;
+        testcasesWriter = null;
+        systemOutStream = systemErrStream = null;
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.taskdefs.optional.junit;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.tools.ant.util.FileUtils;
+import org.apache.tools.ant.util.JAXPUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Durations of earlier runs of tests, used to distribute tests across
+ * concurrently forked VMs or shards so that all of them finish at
+ * about the same time.
+ *
+ * <p>Tests that have no known duration are assumed to take as long
+ * as the average known test unless a fixed default duration has been
+ * given.  Durations are kept by test name and
+ * can be stored in a file with one <code>name=milliseconds</code>
+ * line per test.</p>
+ *
+ * @since Ant 1.9.1
+ */
+final class TestDurations {
+
+    /** duration returned for tests that have never been run */
+    static final long UNKNOWN = -1;
+
+    /**
+     * Default duration in milliseconds for tests that are not in the
+     * timings file when selecting a shard.
+     */
+    static final long SHARD_DEFAULT = 1000;
+
+    private static final String ENCODING = "UTF-8";
+
+    private final Map<String, Long> durations = new HashMap<String, Long>();
+    private long knownTotal;
+    /** duration of unknown tests, UNKNOWN to use the average */
+    private final long defaultDuration;
+
+    /**
+     * Durations that assume unknown tests take as long as the
+     * average known test.
+     */
+    TestDurations() {
+        this(UNKNOWN);
+    }
+
+    /**
+     * @param defaultDuration duration in milliseconds assumed for
+     * unknown tests or UNKNOWN to use the average of the known tests.
+     */
+    TestDurations(long defaultDuration) {
+        this.defaultDuration = defaultDuration;
+    }
+
+    /**
+     * A copy of the known durations using a different default.
+     * @param defaultDuration duration in milliseconds assumed for
+     * unknown tests or UNKNOWN to use the average of the known tests.
+     * @return the copy.
+     */
+    synchronized TestDurations copy(long defaultDuration) {
+        TestDurations c = new TestDurations(defaultDuration);
+        c.durations.putAll(durations);
+        c.knownTotal = knownTotal;
+        return c;
+    }
+
+    /**
+     * Records the duration of a test, replacing an earlier one.
+     * @param test the test.
+     * @param millis its duration in milliseconds or UNKNOWN.
+     */
+    synchronized void add(JUnitTest test, long millis) {
+        add(test.getName(), millis);
+    }
+
+    private void add(String name, long millis) {
+        if (millis >= 0) {
+            Long old = durations.put(name, Long.valueOf(millis));
+            knownTotal += millis - (old == null ? 0 : old.longValue());
+        }
+    }
+
+    /**
+     * Whether the duration of a test is known.
+     * @param test the test.
+     * @return true if a duration has been added for the test's name.
+     */
+    synchronized boolean isKnown(JUnitTest test) {
+        return durations.containsKey(test.getName());
+    }
+
+    /**
+     * The expected duration of a test.
+     * @param test the test.
+     * @return the duration in milliseconds.
+     */
+    synchronized long get(JUnitTest test) {
+        Long d = durations.get(test.getName());
+        if (d != null) {
+            return d.longValue();
+        }
+        if (defaultDuration != UNKNOWN) {
+            return Math.max(1, defaultDuration);
+        }
+        // one millisecond if nothing is known, so tests are still
+        // distributed evenly
+        return durations.isEmpty()
+            ? 1 : Math.max(1, knownTotal / durations.size());
+    }
+
+    /**
+     * The expected duration of tests run in a single VM.
+     * @param tests list of JUnitTests.
+     * @return the duration in milliseconds.
+     */
+    long get(List tests) {
+        long sum = 0;
+        for (Object t : tests) {
+            sum += get((JUnitTest) t);
+        }
+        return sum;
+    }
+
+    /**
+     * Splits a list of tests into lists of about the same duration.
+     *
+     * <p>Assigns the longest test that is left to the list that has
+     * the shortest duration so far, each list ends up sorted by
+     * duration with the longest test first.  Tests of the same
+     * duration are sorted by name, so the result doesn't depend on
+     * the order of the given tests.</p>
+     *
+     * @param tests list of JUnitTests.
+     * @param count the maximum number of lists to create.
+     * @return non-empty lists of JUnitTests.
+     */
+    List<List> split(List tests, int count) {
+        List sorted = new ArrayList(tests);
+        Collections.sort(sorted, new Comparator() {
+                public int compare(Object o1, Object o2) {
+                    JUnitTest t1 = (JUnitTest) o1;
+                    JUnitTest t2 = (JUnitTest) o2;
+                    int c = compareDurations(get(t2), get(t1));
+                    return c != 0 ? c : t1.getName().compareTo(t2.getName());
+                }
+            });
+        int n = Math.min(count, sorted.size());
+        List<List> result = new ArrayList<List>(n);
+        long[] totals = new long[n];
+        for (int i = 0; i < n; i++) {
+            result.add(new ArrayList());
+        }
+        for (Object t : sorted) {
+            int shortest = 0;
+            for (int i = 1; i < n; i++) {
+                if (totals[i] < totals[shortest]) {
+                    shortest = i;
+                }
+            }
+            result.get(shortest).add(t);
+            totals[shortest] += get((JUnitTest) t);
+        }
+        return result;
+    }
+
+    /**
+     * Sorts lists of tests by their duration, longest first.
+     * @param testLists lists of JUnitTests.
+     */
+    void sortLongestFirst(List<List> testLists) {
+        Collections.sort(testLists, new Comparator<List>() {
+                public int compare(List l1, List l2) {
+                    return compareDurations(get(l2), get(l1));
+                }
+            });
+    }
+
+    /**
+     * Adds the durations of a file written by {@link #store store}.
+     * @param f the file, it is ignored if it doesn't exist.
+     * @throws IOException on error.
+     */
+    synchronized void load(File f) throws IOException {
+        if (!f.isFile()) {
+            return;
+        }
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(f),
+                                                          ENCODING));
+            String line;
+            while ((line = in.readLine()) != null) {
+                int eq = line.lastIndexOf('=');
+                if (line.startsWith("#") || eq <= 0) {
+                    continue;
+                }
+                try {
+                    add(line.substring(0, eq).trim(),
+                        Long.parseLong(line.substring(eq + 1).trim()));
+                } catch (NumberFormatException ex) {
+                    // skip broken lines
+                }
+            }
+        } finally {
+            FileUtils.close(in);
+        }
+    }
+
+    /**
+     * Writes all known durations sorted by test name.
+     * @param f the file to write.
+     * @throws IOException on error.
+     */
+    synchronized void store(File f) throws IOException {
+        BufferedWriter out = null;
+        try {
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f),
+                                                            ENCODING));
+            out.write("# test durations in milliseconds, written by <junit>");
+            out.newLine();
+            for (Map.Entry<String, Long> e
+                     : new TreeMap<String, Long>(durations).entrySet()) {
+                out.write(e.getKey() + "=" + e.getValue());
+                out.newLine();
+            }
+        } finally {
+            FileUtils.close(out);
+        }
+    }
+
+    private static int compareDurations(long d1, long d2) {
+        return d1 < d2 ? -1 : (d1 == d2 ? 0 : 1);
+    }
+
+    /**
+     * Reads the time attribute of the root element of a report
+     * created by the XML formatter.
+     * @param report the report file.
+     * @return the time in milliseconds or UNKNOWN if the report
+     * doesn't exist or cannot be read.
+     */
+    static long readDuration(File report) {
+        if (report == null || !report.isFile()) {
+            return UNKNOWN;
+        }
+        try {
+            XMLReader reader = JAXPUtils.getXMLReader();
+            reader.setContentHandler(new RootHandler());
+            reader.parse(JAXPUtils.getSystemId(report));
+        } catch (RootFound found) {
+            return found.millis;
+        } catch (Exception ex) {
+            // treat broken reports like missing ones
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Stops parsing at the root element.
+     */
+    private static final class RootHandler extends DefaultHandler {
+        public void startElement(String uri, String localName, String qName,
+                                 Attributes attributes) throws SAXException {
+            String time = attributes.getValue(XMLConstants.ATTR_TIME);
+            long millis = UNKNOWN;
+            if (time != null) {
+                try {
+                    millis = (long) (Double.parseDouble(time) * 1000);
+                } catch (NumberFormatException ex) {
+                    // unknown
+                }
+            }
+            throw new RootFound(millis);
+        }
+    }
+
+    private static final class RootFound extends SAXException {
+        private static final long serialVersionUID = 1L;
+        private final long millis;
+
+        private RootFound(long millis) {
+            super("root element found");
+            this.millis = millis;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.taskdefs.optional.junit;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.tools.ant.util.DOMElementWriter;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * A testsuite read from a report of the XML formatter by the
+ * streaming mode of {@link XMLResultAggregator XMLResultAggregator}.
+ *
+ * <p>The content of the <code>testsuite</code> element is copied
+ * with StAX into a temporary file, so a report that turns out to be
+ * broken can be dropped without having written anything to the
+ * aggregated document and reports can be read in parallel.  The
+ * attributes of the <code>testsuite</code> element are kept in
+ * memory as the id can only be assigned once the fragment is added
+ * to the aggregated document.</p>
+ *
+ * <p>The summary omits the properties and the output of the
+ * testsuite, which is all the pages at the root of the frames
+ * report need.</p>
+ *
+ * @since Ant 1.9.1
+ */
+final class TestSuiteFragment implements XMLConstants {
+
+    /** the report has been read */
+    static final int OK = 0;
+    /** the report is empty */
+    static final int EMPTY = 1;
+    /** the root element of the report is not a testsuite */
+    static final int INVALID_ROOT = 2;
+    /** the report is not well-formed */
+    static final int CORRUPTED = 3;
+    /** the report couldn't be read or the fragment written */
+    static final int IO_ERROR = 4;
+
+    private static final String UTF8 = "UTF8";
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final XMLInputFactory INPUT_FACTORY =
+        XMLInputFactory.newInstance();
+
+    private static final XMLOutputFactory OUTPUT_FACTORY =
+        XMLOutputFactory.newInstance();
+
+    private static final DOMElementWriter WRITER = new DOMElementWriter();
+
+    private final File report;
+    private final Map<String, String> attributes =
+        new LinkedHashMap<String, String>();
+    private String packageName;
+    private File content;
+    private File summary;
+    private int status = OK;
+    private Exception exception;
+
+    private TestSuiteFragment(File report) {
+        this.report = report;
+    }
+
+    /**
+     * Reads a report.
+     * @param report the report of the XML formatter.
+     * @param tmpDir where to create the temporary files.
+     * @param withSummary whether to create the summary as well.
+     * @return the fragment, check its status before using it.
+     */
+    static TestSuiteFragment read(File report, File tmpDir,
+                                  boolean withSummary) {
+        TestSuiteFragment f = new TestSuiteFragment(report);
+        if (report.length() == 0) {
+            f.status = EMPTY;
+            return f;
+        }
+        try {
+            f.copy(tmpDir, withSummary);
+        } catch (XMLStreamException ex) {
+            f.fail(CORRUPTED, ex);
+        } catch (IOException ex) {
+            f.fail(IO_ERROR, ex);
+        }
+        return f;
+    }
+
+    /**
+     * The report this fragment has been read from.
+     * @return the file.
+     */
+    File getReport() {
+        return report;
+    }
+
+    /**
+     * Whether the report could be read.
+     * @return one of the status constants.
+     */
+    int getStatus() {
+        return status;
+    }
+
+    /**
+     * Why the report couldn't be read.
+     * @return the exception or null.
+     */
+    Exception getException() {
+        return exception;
+    }
+
+    /**
+     * The package of the testsuite.
+     * @return the package, "" for the default package.
+     */
+    String getPackage() {
+        return packageName;
+    }
+
+    /**
+     * Appends the testsuite to an aggregated document.
+     * @param out where to write to.
+     * @param id the id of the testsuite.
+     * @param asSummary whether to append the summary rather than the
+     * whole testsuite.
+     * @throws IOException on error.
+     */
+    void writeTo(Writer out, int id, boolean asSummary) throws IOException {
+        out.write("  <");
+        out.write(TESTSUITE);
+        for (Map.Entry<String, String> a : attributes.entrySet()) {
+            writeAttribute(out, a.getKey(), a.getValue());
+        }
+        writeAttribute(out, ATTR_ID, Integer.toString(id));
+        out.write(">");
+        Reader in = null;
+        try {
+            in = new InputStreamReader(new FileInputStream(asSummary
+                                                           ? summary
+                                                           : content),
+                                       UTF8);
+            char[] buffer = new char[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            FileUtils.close(in);
+        }
+        out.write("</");
+        out.write(TESTSUITE);
+        out.write(">\n");
+    }
+
+    /**
+     * Removes the temporary files.
+     */
+    void delete() {
+        if (content != null) {
+            content.delete();
+        }
+        if (summary != null) {
+            summary.delete();
+        }
+    }
+
+    private void fail(int why, Exception ex) {
+        status = why;
+        exception = ex;
+        delete();
+    }
+
+    private static void writeAttribute(Writer out, String name, String value)
+        throws IOException {
+        out.write(" ");
+        out.write(name);
+        out.write("=\"");
+        out.write(WRITER.encodeAttributeValue(value));
+        out.write("\"");
+    }
+
+    private void copy(File tmpDir, boolean withSummary)
+        throws IOException, XMLStreamException {
+        InputStream in = null;
+        XMLStreamReader reader = null;
+        Writer contentOut = null;
+        Writer summaryOut = null;
+        try {
+            in = new FileInputStream(report);
+            synchronized (INPUT_FACTORY) {
+                reader = INPUT_FACTORY
+                    .createXMLStreamReader(report.toURI().toString(), in);
+            }
+            while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                // skip prolog
+            }
+            // like XMLResultAggregator the name must match literally
+            if (!TESTSUITE.equals(qName(reader.getPrefix(),
+                                        reader.getLocalName()))) {
+                status = INVALID_ROOT;
+                return;
+            }
+            readAttributes(reader);
+
+            content = FileUtils.getFileUtils()
+                .createTempFile("testsuite", ".xml", tmpDir, false, true);
+            contentOut = open(content);
+            XMLStreamWriter contentXml = createWriter(contentOut);
+            XMLStreamWriter summaryXml = null;
+            if (withSummary) {
+                summary = FileUtils.getFileUtils()
+                    .createTempFile("summary", ".xml", tmpDir, false, true);
+                summaryOut = open(summary);
+                summaryXml = createWriter(summaryOut);
+            }
+
+            int depth = 0;
+            // depth of the element the summary skips, 0 if none
+            int skipping = 0;
+            while (depth >= 0) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = qName(reader.getPrefix(),
+                                        reader.getLocalName());
+                    if (depth == 1 && (PROPERTIES.equals(name)
+                                       || SYSTEM_OUT.equals(name)
+                                       || SYSTEM_ERR.equals(name))) {
+                        skipping = depth;
+                    }
+                    copyStartElement(reader, contentXml);
+                    if (summaryXml != null && skipping == 0) {
+                        copyStartElement(reader, summaryXml);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth > 0) {
+                        contentXml.writeEndElement();
+                        if (summaryXml != null && skipping == 0) {
+                            summaryXml.writeEndElement();
+                        }
+                    }
+                    if (depth == skipping) {
+                        skipping = 0;
+                    }
+                    depth--;
+                } else if (event == XMLStreamConstants.CHARACTERS
+                           || event == XMLStreamConstants.CDATA
+                           || event == XMLStreamConstants.SPACE) {
+                    contentXml.writeCharacters(reader.getTextCharacters(),
+                                               reader.getTextStart(),
+                                               reader.getTextLength());
+                    if (summaryXml != null && skipping == 0) {
+                        summaryXml.writeCharacters(reader.getTextCharacters(),
+                                                   reader.getTextStart(),
+                                                   reader.getTextLength());
+                    }
+                } else if (event == XMLStreamConstants.COMMENT) {
+                    contentXml.writeComment(reader.getText());
+                }
+            }
+            contentXml.flush();
+            if (summaryXml != null) {
+                summaryXml.flush();
+            }
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ex) {
+                    // ignore
+                }
+            }
+            FileUtils.close(in);
+            FileUtils.close(contentOut);
+            FileUtils.close(summaryOut);
+        }
+    }
+
+    /**
+     * Keeps the attributes of the testsuite, splitting the name
+     * into package and class name like XMLResultAggregator does.
+     */
+    private void readAttributes(XMLStreamReader reader) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            attributes.put(qName(reader.getAttributePrefix(i),
+                                 reader.getAttributeLocalName(i)),
+                           reader.getAttributeValue(i));
+        }
+        String fullclassname = attributes.get(ATTR_NAME);
+        if (fullclassname == null) {
+            fullclassname = "";
+        }
+        int pos = fullclassname.lastIndexOf('.');
+
+        // a missing . might imply no package at all. Don't get fooled.
+        packageName = (pos == -1) ? "" : fullclassname.substring(0, pos);
+        attributes.put(ATTR_NAME, (pos == -1)
+                       ? fullclassname : fullclassname.substring(pos + 1));
+        attributes.put(ATTR_PACKAGE, packageName);
+        attributes.remove(ATTR_ID);
+    }
+
+    private static void copyStartElement(XMLStreamReader reader,
+                                         XMLStreamWriter writer)
+        throws XMLStreamException {
+        writer.writeStartElement(qName(reader.getPrefix(),
+                                       reader.getLocalName()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            writer.writeAttribute(prefix == null || prefix.length() == 0
+                                  ? "xmlns" : "xmlns:" + prefix,
+                                  reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            writer.writeAttribute(qName(reader.getAttributePrefix(i),
+                                        reader.getAttributeLocalName(i)),
+                                  reader.getAttributeValue(i));
+        }
+    }
+
+    /**
+     * The name of an element or attribute as written in the report.
+     */
+    private static String qName(String prefix, String localName) {
+        return prefix == null || prefix.length() == 0
+            ? localName : prefix + ":" + localName;
+    }
+
+    private static Writer open(File f) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f),
+                                                         UTF8));
+    }
+
+    private static XMLStreamWriter createWriter(Writer w)
+        throws XMLStreamException {
+        synchronized (OUTPUT_FACTORY) {
+            return OUTPUT_FACTORY.createXMLStreamWriter(w);
+        }
+    }
+}
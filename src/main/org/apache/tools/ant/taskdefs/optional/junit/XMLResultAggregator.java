@@ -18,14 +18,25 @@
 package org.apache.tools.ant.taskdefs.optional.junit;
 
 import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import org.apache.tools.ant.BuildException;
@@ -95,6 +106,24 @@ public class XMLResultAggregator extends Task implements XMLConstants {
         = " is empty.\nThis can be caused by the test JVM exiting unexpectedly";
     // CheckStyle:VisibilityModifier ON
 
+    /** reports read ahead per thread in streaming mode */
+    private static final int READ_AHEAD = 2;
+
+    private static final String HEADER =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<" + TESTSUITES + ">\n";
+
+    private static final String FOOTER = "</" + TESTSUITES + ">\n";
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    private boolean streaming = false;
+    private int threads = 1;
+
+    /** summary of all testsuites, used by incremental reports */
+    private File summaryFile;
+    /** one document per package, used by incremental reports */
+    private File packagesDir;
+
     /**
      * Generate a report based on the document created by the merge.
      * @return the report
@@ -126,6 +155,30 @@ public class XMLResultAggregator extends Task implements XMLConstants {
         toDir = value;
     }
 
+    /**
+     * Whether to merge the testsuites without reading them into
+     * memory.
+     *
+     * <p>Reports are copied to the aggregated document one at a
+     * time rather than merged into a single DOM tree first.
+     * Incremental reports always use this mode.</p>
+     *
+     * @param b boolean
+     * @since Ant 1.9.1
+     */
+    public void setStreaming(boolean b) {
+        streaming = b;
+    }
+
+    /**
+     * How many reports to read at the same time in streaming mode.
+     * @param threads the number of threads, defaults to 1.
+     * @since Ant 1.9.1
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     /**
      * Add a new fileset containing the XML results to aggregate
      * @param    fs      the new fileset of xml results.
@@ -141,21 +194,46 @@ public class XMLResultAggregator extends Task implements XMLConstants {
      *          the document.
      */
     public void execute() throws BuildException {
-        Element rootElement = createDocument();
+        if (threads < 1) {
+            throw new BuildException("threads must be a positive number",
+                                     getLocation());
+        }
         File destFile = getDestinationFile();
-        // write the document
+        Document doc = null;
+        File tmpDir = null;
         try {
-            writeDOMTree(rootElement.getOwnerDocument(), destFile);
-        } catch (IOException e) {
-            throw new BuildException("Unable to write test aggregate to '" + destFile + "'", e);
-        }
-        // apply transformation
-        Enumeration e = transformers.elements();
-        while (e.hasMoreElements()) {
-            AggregateTransformer transformer =
-                (AggregateTransformer) e.nextElement();
-            transformer.setXmlDocument(rootElement.getOwnerDocument());
-            transformer.transform();
+            if (streaming || needsIncrementalReport()) {
+                tmpDir = FILE_UTILS.createTempFile("junitreport", "", null,
+                                                   false, false);
+                if (!tmpDir.mkdirs()) {
+                    throw new BuildException("Cannot create directory "
+                                             + tmpDir, getLocation());
+                }
+                streamDocument(destFile, tmpDir);
+            } else {
+                Element rootElement = createDocument();
+                doc = rootElement.getOwnerDocument();
+                // write the document
+                try {
+                    writeDOMTree(doc, destFile);
+                } catch (IOException e) {
+                    throw new BuildException("Unable to write test aggregate to '" + destFile + "'", e);
+                }
+            }
+            // apply transformation
+            Enumeration e = transformers.elements();
+            while (e.hasMoreElements()) {
+                AggregateTransformer transformer =
+                    (AggregateTransformer) e.nextElement();
+                transformer.setXmlDocument(doc);
+                transformer.transform();
+            }
+        } finally {
+            if (tmpDir != null) {
+                FILE_UTILS.tryHardToDeleteTree(tmpDir);
+            }
+            summaryFile = null;
+            packagesDir = null;
         }
     }
 
@@ -202,6 +280,191 @@ public class XMLResultAggregator extends Task implements XMLConstants {
         return files;
     }
 
+    /**
+     * The summary of all testsuites written in streaming mode for
+     * incremental reports.
+     * @return the file or null.
+     */
+    File getSummaryFile() {
+        return summaryFile;
+    }
+
+    /**
+     * The directory holding one document per package written in
+     * streaming mode for incremental reports.
+     * @return the directory or null.
+     */
+    File getPackagesDir() {
+        return packagesDir;
+    }
+
+    private boolean needsIncrementalReport() {
+        Enumeration e = transformers.elements();
+        while (e.hasMoreElements()) {
+            if (((AggregateTransformer) e.nextElement()).isIncremental()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies all testsuites to the destination file one at a time,
+     * reading up to {@link #setThreads threads} reports in parallel.
+     *
+     * <p>For incremental reports the summary and the documents per
+     * package are written at the same time.</p>
+     */
+    private void streamDocument(File destFile, final File tmpDir) {
+        final boolean incremental = needsIncrementalReport();
+        Map<String, File> packages = new LinkedHashMap<String, File>();
+        ExecutorService pool =
+            threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        LinkedList<Future<TestSuiteFragment>> pending =
+            new LinkedList<Future<TestSuiteFragment>>();
+        Writer out = null;
+        Writer summary = null;
+        generatedId = 0;
+        try {
+            out = open(destFile, false);
+            out.write(HEADER);
+            if (incremental) {
+                summaryFile = new File(tmpDir, "summary.xml");
+                summary = open(summaryFile, false);
+                summary.write(HEADER);
+                packagesDir = new File(tmpDir, "packages");
+                packagesDir.mkdir();
+            }
+
+            File[] files = getFiles();
+            int next = 0;
+            while (next < files.length || !pending.isEmpty()) {
+                while (next < files.length
+                       && pending.size() < READ_AHEAD * threads) {
+                    final File file = files[next++];
+                    Callable<TestSuiteFragment> read =
+                        new Callable<TestSuiteFragment>() {
+                            public TestSuiteFragment call() {
+                                return TestSuiteFragment.read(file, tmpDir,
+                                                              incremental);
+                            }
+                        };
+                    if (pool != null) {
+                        pending.add(pool.submit(read));
+                    } else {
+                        FutureTask<TestSuiteFragment> task =
+                            new FutureTask<TestSuiteFragment>(read);
+                        task.run();
+                        pending.add(task);
+                    }
+                }
+                TestSuiteFragment fragment = pending.removeFirst().get();
+                try {
+                    if (addFragment(fragment, out)) {
+                        if (incremental) {
+                            fragment.writeTo(summary, generatedId, true);
+                            addToPackage(fragment, packages);
+                        }
+                        generatedId++;
+                    }
+                } finally {
+                    fragment.delete();
+                }
+            }
+
+            out.write(FOOTER);
+            out.close();
+            if (incremental) {
+                summary.write(FOOTER);
+                summary.close();
+                for (File f : packages.values()) {
+                    Writer w = open(f, true);
+                    try {
+                        w.write(FOOTER);
+                        w.close();
+                    } finally {
+                        FileUtils.close(w);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new BuildException("Unable to write test aggregate to '" + destFile + "'", e);
+        } catch (InterruptedException e) {
+            throw new BuildException("Interrupted while reading test results",
+                                     e, getLocation());
+        } catch (ExecutionException e) {
+            throw new BuildException(e.getCause(), getLocation());
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+            FileUtils.close(out);
+            FileUtils.close(summary);
+        }
+    }
+
+    /**
+     * Logs the problems of a report or appends its testsuite.
+     * @return whether the testsuite has been appended.
+     */
+    private boolean addFragment(TestSuiteFragment fragment, Writer out)
+        throws IOException {
+        File file = fragment.getReport();
+        log("Parsing file: '" + file + "'", Project.MSG_VERBOSE);
+        switch (fragment.getStatus()) {
+        case TestSuiteFragment.OK:
+            fragment.writeTo(out, generatedId, false);
+            return true;
+        case TestSuiteFragment.EMPTY:
+            log("the file " + file
+                + WARNING_EMPTY_FILE,
+                Project.MSG_WARN);
+            break;
+        case TestSuiteFragment.INVALID_ROOT:
+            log("the file " + file
+                + WARNING_INVALID_ROOT_ELEMENT,
+                Project.MSG_WARN);
+            break;
+        case TestSuiteFragment.CORRUPTED:
+            log("The file " + file + WARNING_IS_POSSIBLY_CORRUPTED, Project.MSG_WARN);
+            log(StringUtils.getStackTrace(fragment.getException()), Project.MSG_DEBUG);
+            break;
+        default:
+            Exception e = fragment.getException();
+            log("Error while accessing file " + file + ": "
+                + e.getMessage(), Project.MSG_ERR);
+            log("Error while accessing file " + file + ": "
+                + e.getMessage(), e, Project.MSG_VERBOSE);
+            break;
+        }
+        return false;
+    }
+
+    private void addToPackage(TestSuiteFragment fragment,
+                              Map<String, File> packages) throws IOException {
+        File f = packages.get(fragment.getPackage());
+        boolean created = f == null;
+        if (created) {
+            f = new File(packagesDir, "package" + packages.size() + ".xml");
+            packages.put(fragment.getPackage(), f);
+        }
+        Writer w = open(f, !created);
+        try {
+            if (created) {
+                w.write(HEADER);
+            }
+            fragment.writeTo(w, generatedId, false);
+            w.close();
+        } finally {
+            FileUtils.close(w);
+        }
+    }
+
+    private static Writer open(File f, boolean append) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f, append),
+                                                         "UTF8"));
+    }
+
     //----- from now, the methods are all related to DOM tree manipulation
 
     /**
@@ -28,6 +28,9 @@ import org.apache.tools.ant.Project;
 import org.apache.tools.ant.FileScanner;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.MagicNames;
+import org.apache.tools.ant.util.DirectoryIndex;
+import org.apache.tools.ant.util.DirectoryScannerCache;
 import org.apache.tools.ant.types.selectors.OrSelector;
 import org.apache.tools.ant.types.selectors.AndSelector;
 import org.apache.tools.ant.types.selectors.NotSelector;
@@ -72,6 +75,7 @@ public abstract class AbstractFileSet extends DataType
     private boolean followSymlinks = true;
     private boolean errorOnMissingDir = true;
     private int maxLevelsOfSymlinks = DirectoryScanner.MAX_LEVELS_OF_SYMLINKS;
+    private int scanThreads = 0;
 
     /* cached DirectoryScanner instance for our own Project only */
     private DirectoryScanner directoryScanner = null;
@@ -98,6 +102,7 @@ public abstract class AbstractFileSet extends DataType
         this.followSymlinks = fileset.followSymlinks;
         this.errorOnMissingDir = fileset.errorOnMissingDir;
         this.maxLevelsOfSymlinks = fileset.maxLevelsOfSymlinks;
+        this.scanThreads = fileset.scanThreads;
         setProject(fileset.getProject());
     }
 
@@ -434,6 +439,47 @@ public abstract class AbstractFileSet extends DataType
         return maxLevelsOfSymlinks;
     }
 
+    /**
+     * The number of threads used to list directories while scanning.
+     *
+     * <p>Defaults to the value of the <code>ant.scanner.threads</code>
+     * property or 1 if it has not been set.</p>
+     *
+     * @param threads the number of threads.
+     * @since Ant 1.9.1
+     */
+    public void setScanThreads(int threads) {
+        checkAttributesAllowed();
+        scanThreads = threads;
+    }
+
+    /**
+     * The number of threads used to list directories while scanning.
+     *
+     * @param p the project to read the default from.
+     * @return the number of threads.
+     * @since Ant 1.9.1
+     */
+    public int getScanThreads(Project p) {
+        if (isReference()) {
+            return getRef(p).getScanThreads(p);
+        }
+        if (scanThreads > 0) {
+            return scanThreads;
+        }
+        String threads = p.getProperty(MagicNames.SCANNER_THREADS);
+        if (threads == null) {
+            return 1;
+        }
+        try {
+            return Integer.parseInt(threads.trim());
+        } catch (NumberFormatException ex) {
+            throw new BuildException("Invalid value for "
+                                     + MagicNames.SCANNER_THREADS + ": "
+                                     + threads);
+        }
+    }
+
     /**
      * Sets whether an error is thrown if a directory does not exist.
      *
@@ -471,6 +517,8 @@ public abstract class AbstractFileSet extends DataType
             return getRef(p).getDirectoryScanner(p);
         }
         dieOnCircularReference();
+        DirectoryScannerCache cache = DirectoryScannerCache.getCache(p);
+        String key = cache == null ? null : getScanKey(p);
         DirectoryScanner ds = null;
         synchronized (this) {
             if (directoryScanner != null && p == getProject()) {
@@ -494,13 +542,49 @@ public abstract class AbstractFileSet extends DataType
                 ds.setFollowSymlinks(followSymlinks);
                 ds.setErrorOnMissingDir(errorOnMissingDir);
                 ds.setMaxLevelsOfSymlinks(maxLevelsOfSymlinks);
+                ds.setIndex(DirectoryIndex.getIndex(p));
+                ds.setThreads(getScanThreads(p));
                 directoryScanner = (p == getProject()) ? ds : directoryScanner;
             }
         }
-        ds.scan();
+        if (key != null) {
+            // callers may modify and rescan the scanner they get, so
+            // the cache only hands out copies of its results
+            DirectoryScanner cached = cache.get(key);
+            if (cached != null) {
+                ds.copyResultsFrom(cached);
+            } else {
+                ds.setRecordDependencyDirectories(true);
+                long scanStarted = System.currentTimeMillis();
+                ds.scan();
+                cache.put(key, ds, scanStarted);
+                ds.setRecordDependencyDirectories(false);
+            }
+        } else {
+            ds.scan();
+        }
         return ds;
     }
 
+    /**
+     * Creates the key of this fileset's scan in the build wide scanner
+     * cache.
+     * @param p the project.
+     * @return the key or null if the scan can't be cached.
+     */
+    private synchronized String getScanKey(Project p) {
+        if (dir == null || hasSelectors()) {
+            return null;
+        }
+        PatternSet ps = mergePatterns(p);
+        return DirectoryScannerCache.getKey(dir, ps.getIncludePatterns(p),
+                                            ps.getExcludePatterns(p),
+                                            useDefaultExcludes, caseSensitive,
+                                            followSymlinks,
+                                            maxLevelsOfSymlinks,
+                                            errorOnMissingDir);
+    }
+
     /**
      * Set up the specified directory scanner against this
      * AbstractFileSet's Project.
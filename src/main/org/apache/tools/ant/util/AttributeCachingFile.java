@@ -0,0 +1,199 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.util;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * A File that reads its basic attributes with a single system call
+ * the first time any of them is requested and answers all later
+ * requests for them from memory.
+ *
+ * <p>The attributes cached are the ones of {@link #exists},
+ * {@link #isDirectory}, {@link #isFile}, {@link #lastModified} and
+ * {@link #length}.  Instances are meant to be short lived - they are
+ * handed to selectors and up-to-date checks that query several
+ * attributes of the same file in a row - as they never notice
+ * modifications made after the attributes have been read.</p>
+ *
+ * <p>Reading all attributes at once requires the
+ * <code>java.nio.file</code> API of Java 7, which is accessed via
+ * reflection.  On older VMs the methods are not cached and simply
+ * delegate to <code>java.io.File</code>.</p>
+ *
+ * @since Ant 1.9.1
+ */
+public class AttributeCachingFile extends File {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Method TO_PATH;
+    private static final Method READ_ATTRIBUTES;
+    private static final Class<?> BASIC_ATTRIBUTES;
+    private static final Object NO_LINK_OPTIONS;
+    private static final Method IS_DIRECTORY;
+    private static final Method IS_REGULAR_FILE;
+    private static final Method SIZE;
+    private static final Method LAST_MODIFIED_TIME;
+    private static final Method TO_MILLIS;
+    private static final Class<?> NO_SUCH_FILE;
+
+    static {
+        Method toPath = null;
+        Method readAttributes = null;
+        Class<?> basicAttributes = null;
+        Object noLinkOptions = null;
+        Method isDirectory = null;
+        Method isRegularFile = null;
+        Method size = null;
+        Method lastModifiedTime = null;
+        Method toMillis = null;
+        Class<?> noSuchFile = null;
+        try {
+            Class<?> path = Class.forName("java.nio.file.Path");
+            Class<?> linkOption = Class.forName("java.nio.file.LinkOption");
+            basicAttributes =
+                Class.forName("java.nio.file.attribute.BasicFileAttributes");
+            noLinkOptions = java.lang.reflect.Array.newInstance(linkOption, 0);
+            toPath = File.class.getMethod("toPath");
+            readAttributes = Class.forName("java.nio.file.Files")
+                .getMethod("readAttributes", path, Class.class,
+                           noLinkOptions.getClass());
+            isDirectory = basicAttributes.getMethod("isDirectory");
+            isRegularFile = basicAttributes.getMethod("isRegularFile");
+            size = basicAttributes.getMethod("size");
+            lastModifiedTime = basicAttributes.getMethod("lastModifiedTime");
+            toMillis = lastModifiedTime.getReturnType().getMethod("toMillis");
+            noSuchFile = Class.forName("java.nio.file.NoSuchFileException");
+        } catch (Exception ex) {
+            // pre Java 7, don't cache anything
+            readAttributes = null;
+        }
+        TO_PATH = toPath;
+        READ_ATTRIBUTES = readAttributes;
+        BASIC_ATTRIBUTES = basicAttributes;
+        NO_LINK_OPTIONS = noLinkOptions;
+        IS_DIRECTORY = isDirectory;
+        IS_REGULAR_FILE = isRegularFile;
+        SIZE = size;
+        LAST_MODIFIED_TIME = lastModifiedTime;
+        TO_MILLIS = toMillis;
+        NO_SUCH_FILE = noSuchFile;
+    }
+
+    private transient boolean read;
+    private transient boolean cached;
+    private transient boolean exists;
+    private transient boolean directory;
+    private transient boolean regularFile;
+    private transient long lastModified;
+    private transient long length;
+
+    /**
+     * Creates an instance for the given file.
+     * @param f the file.
+     */
+    public AttributeCachingFile(File f) {
+        super(f.getPath());
+    }
+
+    /**
+     * Creates an instance for the given child of a directory.
+     * @param parent the parent directory.
+     * @param child the name of the child.
+     */
+    public AttributeCachingFile(File parent, String child) {
+        super(parent, child);
+    }
+
+    /**
+     * Whether the attributes of this file can be cached on the
+     * current VM.
+     * @return true if the java.nio.file API is available.
+     */
+    public static boolean isSupported() {
+        return READ_ATTRIBUTES != null;
+    }
+
+    /** {@inheritDoc} */
+    public boolean exists() {
+        return readAttributes() ? exists : super.exists();
+    }
+
+    /** {@inheritDoc} */
+    public boolean isDirectory() {
+        return readAttributes() ? directory : super.isDirectory();
+    }
+
+    /** {@inheritDoc} */
+    public boolean isFile() {
+        return readAttributes() ? regularFile : super.isFile();
+    }
+
+    /** {@inheritDoc} */
+    public long lastModified() {
+        return readAttributes() ? lastModified : super.lastModified();
+    }
+
+    /** {@inheritDoc} */
+    public long length() {
+        return readAttributes() ? length : super.length();
+    }
+
+    /**
+     * Reads the attributes unless they have been read before.
+     * @return whether the cached attributes can be used.
+     */
+    private synchronized boolean readAttributes() {
+        if (!read) {
+            read = true;
+            cached = READ_ATTRIBUTES != null && doReadAttributes();
+        }
+        return cached;
+    }
+
+    private boolean doReadAttributes() {
+        try {
+            Object attrs = READ_ATTRIBUTES.invoke(null, TO_PATH.invoke(this),
+                                                  BASIC_ATTRIBUTES,
+                                                  NO_LINK_OPTIONS);
+            exists = true;
+            directory = ((Boolean) IS_DIRECTORY.invoke(attrs)).booleanValue();
+            regularFile =
+                ((Boolean) IS_REGULAR_FILE.invoke(attrs)).booleanValue();
+            length = ((Long) SIZE.invoke(attrs)).longValue();
+            lastModified = ((Long) TO_MILLIS
+                            .invoke(LAST_MODIFIED_TIME.invoke(attrs)))
+                .longValue();
+            return true;
+        } catch (InvocationTargetException ex) {
+            Throwable t = ex.getTargetException();
+            if (NO_SUCH_FILE.isInstance(t)) {
+                exists = false;
+                return true;
+            }
+            // any other problem (permissions, invalid path) is left
+            // to java.io.File's own error handling
+            return false;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+}
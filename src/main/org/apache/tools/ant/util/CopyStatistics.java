@@ -0,0 +1,77 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes {@link ResourceUtils#copyResource copyResource}
+ * has moved by channel transfers - which let the operating system
+ * copy the data without passing it through the VM - and the bytes
+ * it had to pass through a buffer.
+ *
+ * <p>Instances may be shared by several threads.</p>
+ *
+ * @since Ant 1.9.1
+ */
+public class CopyStatistics {
+
+    private final AtomicLong transferred = new AtomicLong();
+    private final AtomicLong buffered = new AtomicLong();
+
+    /**
+     * Adds bytes moved by a channel transfer.
+     * @param bytes number of bytes.
+     */
+    public void addTransferred(long bytes) {
+        transferred.addAndGet(bytes);
+    }
+
+    /**
+     * Adds bytes that have been passed through a buffer.
+     * @param bytes number of bytes.
+     */
+    public void addBuffered(long bytes) {
+        buffered.addAndGet(bytes);
+    }
+
+    /**
+     * Bytes moved by channel transfers.
+     * @return number of bytes.
+     */
+    public long getTransferred() {
+        return transferred.get();
+    }
+
+    /**
+     * Bytes passed through a buffer.
+     * @return number of bytes.
+     */
+    public long getBuffered() {
+        return buffered.get();
+    }
+
+    /**
+     * Human readable summary.
+     * @return a summary of both counters.
+     */
+    public String toString() {
+        return getTransferred() + " bytes by channel transfer, "
+            + getBuffered() + " bytes buffered";
+    }
+}
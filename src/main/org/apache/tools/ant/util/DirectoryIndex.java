@@ -0,0 +1,422 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.MagicNames;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.SubBuildListener;
+
+/**
+ * Remembers the contents of directories so an unchanged tree can be
+ * rescanned without listing every directory again.
+ *
+ * <p>For each directory the index keeps its modification time, the
+ * names it contained and which of them were directories.  A listing
+ * is reused as long as the directory's modification time is the same
+ * as when the listing was taken - adding, removing or renaming an
+ * entry changes it.  Listings taken within the file system's
+ * timestamp granularity of the last modification are never trusted
+ * as a later change might not have moved the timestamp.</p>
+ *
+ * <p>Only raw file system data is recorded, patterns, selectors and
+ * the followsymlinks setting are applied by the scanner each time, so
+ * the same index can be shared by all filesets of a build.</p>
+ *
+ * <p>If the <code>ant.scanner.index</code> property points to a file,
+ * the index is loaded from it when first used and written back when
+ * the build finishes.</p>
+ *
+ * @since Ant 1.9.1
+ */
+public class DirectoryIndex {
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    /** Identifies the persisted format. */
+    private static final int MAGIC = 0x416e7449;
+    private static final int FORMAT_VERSION = 1;
+
+    /** Indices by absolute file name, shared by all projects in this VM. */
+    private static final Map<String, DirectoryIndex> INDICES =
+        new HashMap<String, DirectoryIndex>();
+
+    private final File file;
+    private final long granularity;
+    private final Map<String, Listing> listings =
+        new ConcurrentHashMap<String, Listing>();
+    private volatile boolean dirty = false;
+    /**
+     * whether a project will save the index when it finishes,
+     * guarded by INDICES
+     */
+    private boolean saveScheduled = false;
+
+    /**
+     * Creates an in-memory index that is never persisted.
+     */
+    public DirectoryIndex() {
+        this(null);
+    }
+
+    /**
+     * Creates an index persisted to the given file.
+     * @param file the file to load the index from and save it to,
+     * may be null.
+     */
+    public DirectoryIndex(File file) {
+        this.file = file;
+        granularity = FILE_UTILS.getFileTimestampGranularity();
+    }
+
+    /**
+     * Returns the index configured for the given project via the
+     * <code>ant.scanner.index</code> property.
+     *
+     * <p>The index is loaded on first access and saved once the
+     * project that loaded it finishes its build - or its sub-build if
+     * the project has been created by &lt;ant&gt; or &lt;subant&gt;.
+     * Other projects using the same index don't save it, unless the
+     * project that loaded it has already finished.</p>
+     *
+     * @param project the project.
+     * @return the index or null if the property has not been set.
+     */
+    public static DirectoryIndex getIndex(Project project) {
+        String name = project.getProperty(MagicNames.SCANNER_INDEX);
+        if (name == null) {
+            return null;
+        }
+        Object ref = project.getReference(MagicNames.SCANNER_INDEX);
+        if (ref instanceof DirectoryIndex) {
+            return (DirectoryIndex) ref;
+        }
+        File f = project.resolveFile(name);
+        String key = f.getAbsolutePath();
+        DirectoryIndex index;
+        boolean owner;
+        synchronized (INDICES) {
+            index = INDICES.get(key);
+            if (index == null) {
+                index = new DirectoryIndex(f);
+                index.load();
+                INDICES.put(key, index);
+            }
+            owner = !index.saveScheduled;
+            index.saveScheduled = true;
+        }
+        project.addReference(MagicNames.SCANNER_INDEX, index);
+        if (owner) {
+            project.addBuildListener(new SaveOnFinish(index, project));
+        }
+        return index;
+    }
+
+    /**
+     * Lists the contents of a directory.
+     *
+     * @param dir the directory to list.
+     * @return the listing or null if the directory could not be
+     * listed (it doesn't exist, it isn't a directory or an I/O error
+     * occurred).
+     */
+    public Listing list(File dir) {
+        String key = dir.getAbsolutePath();
+        Listing l = listings.get(key);
+        long mtime = dir.lastModified();
+        if (l != null && l.lastModified == mtime && isTrusted(l)) {
+            return l;
+        }
+        l = read(dir, mtime);
+        if (l == null) {
+            if (listings.remove(key) != null) {
+                dirty = true;
+            }
+            return null;
+        }
+        listings.put(key, l);
+        dirty = true;
+        return l;
+    }
+
+    /**
+     * Lists the contents of a directory without consulting or
+     * updating any index.
+     *
+     * @param dir the directory to list.
+     * @return the listing or null if the directory could not be
+     * listed.
+     */
+    public static Listing read(File dir) {
+        return read(dir, dir.lastModified());
+    }
+
+    private static Listing read(File dir, long mtime) {
+        long now = System.currentTimeMillis();
+        String[] names = dir.list();
+        if (names == null) {
+            return null;
+        }
+        boolean[] dirs = new boolean[names.length];
+        for (int i = 0; i < names.length; i++) {
+            dirs[i] = new File(dir, names[i]).isDirectory();
+        }
+        return new Listing(mtime, now, names, dirs);
+    }
+
+    /**
+     * Returns the listing already known for the given directory
+     * without touching the file system.
+     *
+     * @param dir the directory.
+     * @return the listing, may be null.
+     */
+    public Listing getKnownListing(File dir) {
+        return listings.get(dir.getAbsolutePath());
+    }
+
+    /**
+     * Forgets everything known about the given directory.
+     * @param dir the directory.
+     */
+    public void invalidate(File dir) {
+        if (listings.remove(dir.getAbsolutePath()) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Number of directories in the index.
+     * @return the number of directories.
+     */
+    public int size() {
+        return listings.size();
+    }
+
+    private boolean isTrusted(Listing l) {
+        return l.listedAt - l.lastModified > granularity;
+    }
+
+    /**
+     * Reads the index file if it exists.  A corrupt or outdated file
+     * is ignored.
+     */
+    public synchronized void load() {
+        if (file == null || !file.isFile()) {
+            return;
+        }
+        DataInputStream in = null;
+        Map<String, Listing> read = new HashMap<String, Listing>();
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long mtime = in.readLong();
+                long listedAt = in.readLong();
+                int n = in.readInt();
+                String[] names = new String[n];
+                boolean[] dirs = new boolean[n];
+                for (int j = 0; j < n; j++) {
+                    names[j] = in.readUTF();
+                    dirs[j] = in.readBoolean();
+                }
+                Listing l = new Listing(mtime, listedAt, names, dirs);
+                if (in.readInt() != l.hash()) {
+                    return;
+                }
+                read.put(path, l);
+            }
+            listings.putAll(read);
+        } catch (IOException ex) {
+            // start with an empty index
+        } finally {
+            FileUtils.close(in);
+        }
+    }
+
+    /**
+     * Writes the index to its file if anything has changed.
+     * @throws IOException on error.
+     */
+    public synchronized void save() throws IOException {
+        if (file == null || !dirty) {
+            return;
+        }
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        File tmp = FILE_UTILS.createTempFile("index", ".tmp", parent,
+                                             false, true);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            Map<String, Listing> snapshot =
+                new HashMap<String, Listing>(listings);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Listing> e : snapshot.entrySet()) {
+                Listing l = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(l.lastModified);
+                out.writeLong(l.listedAt);
+                out.writeInt(l.names.length);
+                for (int j = 0; j < l.names.length; j++) {
+                    out.writeUTF(l.names[j]);
+                    out.writeBoolean(l.dirs[j]);
+                }
+                out.writeInt(l.hash());
+            }
+            out.close();
+            out = null;
+            FILE_UTILS.rename(tmp, file);
+            dirty = false;
+        } finally {
+            FileUtils.close(out);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * The contents of a directory at a given time.
+     */
+    public static final class Listing {
+        private final long lastModified;
+        private final long listedAt;
+        private final String[] names;
+        private final boolean[] dirs;
+
+        private Listing(long lastModified, long listedAt, String[] names,
+                        boolean[] dirs) {
+            this.lastModified = lastModified;
+            this.listedAt = listedAt;
+            this.names = names;
+            this.dirs = dirs;
+        }
+
+        /**
+         * The names of the directory's children in the order
+         * <code>File.list()</code> returned them.  The array must not
+         * be modified.
+         * @return the names.
+         */
+        public String[] getNames() {
+            return names;
+        }
+
+        /**
+         * Whether the child at the given position was a directory.
+         * @param i index into {@link #getNames getNames}.
+         * @return true for directories.
+         */
+        public boolean isDirectory(int i) {
+            return dirs[i];
+        }
+
+        private int hash() {
+            int h = (int) (lastModified ^ (lastModified >>> 32));
+            for (int i = 0; i < names.length; i++) {
+                h = 31 * h + names[i].hashCode() + (dirs[i] ? 1 : 0);
+            }
+            return h;
+        }
+    }
+
+    /**
+     * Saves the index when the build or sub-build of the project
+     * that owns it finishes.
+     *
+     * <p>Sub-projects inherit the listener, events of other projects
+     * are ignored so the index is written once rather than at the end
+     * of each sub-build.</p>
+     */
+    private static class SaveOnFinish implements SubBuildListener {
+        private final DirectoryIndex index;
+        private final Project owner;
+
+        SaveOnFinish(DirectoryIndex index, Project owner) {
+            this.index = index;
+            this.owner = owner;
+        }
+
+        public void buildFinished(BuildEvent event) {
+            save(event);
+        }
+
+        public void subBuildFinished(BuildEvent event) {
+            save(event);
+        }
+
+        private void save(BuildEvent event) {
+            if (event.getProject() != owner) {
+                return;
+            }
+            owner.removeBuildListener(this);
+            synchronized (INDICES) {
+                // the next project using the index takes over
+                index.saveScheduled = false;
+            }
+            try {
+                index.save();
+            } catch (IOException ex) {
+                owner.log("Failed to save directory index: "
+                          + ex.getMessage(), Project.MSG_WARN);
+            }
+        }
+
+        public void subBuildStarted(BuildEvent event) {
+        }
+
+        public void buildStarted(BuildEvent event) {
+        }
+
+        public void targetStarted(BuildEvent event) {
+        }
+
+        public void targetFinished(BuildEvent event) {
+        }
+
+        public void taskStarted(BuildEvent event) {
+        }
+
+        public void taskFinished(BuildEvent event) {
+        }
+
+        public void messageLogged(BuildEvent event) {
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.util;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.MagicNames;
+import org.apache.tools.ant.Project;
+
+/**
+ * Build wide cache of scanned directory scanners, so filesets with
+ * identical settings don't walk the same tree again.
+ *
+ * <p>Entries are keyed by the normalized scan parameters and
+ * remember the modification times of all directories the scan has
+ * consulted.  An entry is only reused if none of those directories
+ * has changed, scans that ran within the file system's timestamp
+ * granularity of a modification are never cached.  Tasks that write
+ * into a tree may additionally call {@link #invalidate(Project, File)}
+ * to drop affected entries right away.</p>
+ *
+ * <p>Scans using selectors are never cached as selectors may depend
+ * on file contents or other state outside of the directory listing.</p>
+ *
+ * <p>Enabled by setting the <code>ant.scanner.cache</code> property
+ * to true, subprojects share the cache of their parent.</p>
+ *
+ * @since Ant 1.9.1
+ */
+public class DirectoryScannerCache {
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    private final long granularity = FILE_UTILS.getFileTimestampGranularity();
+    private final Map<String, Entry> entries =
+        new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Returns the cache of the given project.
+     *
+     * @param project the project.
+     * @return the cache or null if caching has not been enabled.
+     */
+    public static DirectoryScannerCache getCache(Project project) {
+        Object ref = project.getReference(MagicNames.SCANNER_CACHE);
+        if (ref instanceof DirectoryScannerCache) {
+            return (DirectoryScannerCache) ref;
+        }
+        if (!Project.toBoolean(project.getProperty(MagicNames.SCANNER_CACHE))) {
+            return null;
+        }
+        synchronized (project) {
+            ref = project.getReference(MagicNames.SCANNER_CACHE);
+            if (!(ref instanceof DirectoryScannerCache)) {
+                ref = new DirectoryScannerCache();
+                project.addReference(MagicNames.SCANNER_CACHE, ref);
+            }
+        }
+        return (DirectoryScannerCache) ref;
+    }
+
+    /**
+     * Drops the entries of the given project's cache that could be
+     * affected by a modification of the given file or directory.
+     *
+     * @param project the project, may be null.
+     * @param file the file or directory that has been written to.
+     */
+    public static void invalidate(Project project, File file) {
+        if (project == null) {
+            return;
+        }
+        Object ref = project.getReference(MagicNames.SCANNER_CACHE);
+        if (ref instanceof DirectoryScannerCache && file != null) {
+            ((DirectoryScannerCache) ref).invalidate(file);
+        }
+    }
+
+    /**
+     * Creates the key for a scan.
+     *
+     * @param basedir the base directory.
+     * @param includes include patterns, may be null.
+     * @param excludes exclude patterns, may be null.
+     * @param defaultExcludes whether default excludes are added.
+     * @param caseSensitive whether the scan is case sensitive.
+     * @param followSymlinks whether symbolic links are followed.
+     * @param maxLevelsOfSymlinks how often a link may be followed.
+     * @param errorOnMissingDir whether a missing basedir is an error.
+     * @return the key.
+     */
+    public static String getKey(File basedir, String[] includes,
+                                String[] excludes, boolean defaultExcludes,
+                                boolean caseSensitive, boolean followSymlinks,
+                                int maxLevelsOfSymlinks,
+                                boolean errorOnMissingDir) {
+        StringBuffer sb = new StringBuffer(basedir.getAbsolutePath());
+        sb.append('\u0000');
+        append(sb, includes);
+        append(sb, excludes);
+        if (defaultExcludes) {
+            append(sb, DirectoryScanner.getDefaultExcludes());
+        }
+        sb.append(caseSensitive).append(',').append(followSymlinks)
+            .append(',').append(maxLevelsOfSymlinks).append(',')
+            .append(errorOnMissingDir);
+        return sb.toString();
+    }
+
+    private static void append(StringBuffer sb, String[] patterns) {
+        if (patterns != null) {
+            for (int i = 0; i < patterns.length; i++) {
+                sb.append(patterns[i]).append('\u0000');
+            }
+        }
+        sb.append('\u0001');
+    }
+
+    /**
+     * Looks up a scanner that has already scanned a tree with the
+     * given key and is still up to date.
+     *
+     * <p>The scanner is shared by everybody using the cache, use
+     * {@link DirectoryScanner#copyResultsFrom
+     * DirectoryScanner.copyResultsFrom} rather than the scanner
+     * itself.</p>
+     *
+     * @param key the key.
+     * @return the scanner or null.
+     */
+    public DirectoryScanner get(String key) {
+        Entry e = entries.get(key);
+        if (e == null) {
+            return null;
+        }
+        for (int i = 0; i < e.dirs.length; i++) {
+            if (e.dirs[i].lastModified() != e.lastModified[i]) {
+                entries.remove(key);
+                return null;
+            }
+        }
+        return e.scanner;
+    }
+
+    /**
+     * Adds a scanner that has recorded its dependency directories.
+     *
+     * @param key the key.
+     * @param ds the scanner.
+     * @param scanStarted the time just before the scan was started.
+     */
+    public void put(String key, DirectoryScanner ds, long scanStarted) {
+        File[] dirs = ds.getDependencyDirectories();
+        if (dirs == null || ds.getBasedir() == null) {
+            return;
+        }
+        long[] times = new long[dirs.length];
+        for (int i = 0; i < dirs.length; i++) {
+            times[i] = dirs[i].lastModified();
+            if (scanStarted - times[i] <= granularity) {
+                // changes while scanning might go unnoticed
+                return;
+            }
+        }
+        // keep a copy so later changes to ds don't affect the cache
+        DirectoryScanner copy = new DirectoryScanner();
+        copy.setBasedir(ds.getBasedir());
+        copy.copyResultsFrom(ds);
+        entries.put(key, new Entry(copy, dirs, times));
+    }
+
+    /**
+     * Drops all entries whose base directory contains the given file
+     * or is contained in the given directory.
+     *
+     * @param file the file or directory that has been written to.
+     */
+    public void invalidate(File file) {
+        String path = file.getAbsolutePath();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+            String base = it.next().scanner.getBasedir().getAbsolutePath();
+            if (isAncestorOrSelf(base, path) || isAncestorOrSelf(path, base)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Number of cached scanners.
+     * @return the number of entries.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private static boolean isAncestorOrSelf(String ancestor, String path) {
+        return path.equals(ancestor)
+            || (path.startsWith(ancestor)
+                && (ancestor.endsWith(File.separator)
+                    || path.charAt(ancestor.length()) == File.separatorChar));
+    }
+
+    private static class Entry {
+        private final DirectoryScanner scanner;
+        private final File[] dirs;
+        private final long[] lastModified;
+
+        Entry(DirectoryScanner scanner, File[] dirs, long[] lastModified) {
+            this.scanner = scanner;
+            this.dirs = dirs;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -188,6 +188,8 @@ public class ResourceUtils {
             return Resources.NONE;
         }
         source = Union.getInstance(source);
+        // most of the messages below are only created if needed
+        boolean verbose = logTo.isLoggable(Project.MSG_VERBOSE);
 
         Union result = new Union();
         for (Resource sr : source) {
@@ -223,17 +225,21 @@ public class ResourceUtils {
             r.add(targetColl);
             if (r.size() > 0) {
                 result.add(sr);
-                Resource t = r.iterator().next();
-                logTo.log(sr.getName() + " added as " + t.getName()
-                    + (t.isExists() ? " is outdated." : " doesn\'t exist."),
-                    Project.MSG_VERBOSE);
+                if (verbose) {
+                    Resource t = r.iterator().next();
+                    logTo.log(sr.getName() + " added as " + t.getName()
+                        + (t.isExists() ? " is outdated." : " doesn\'t exist."),
+                        Project.MSG_VERBOSE);
+                }
                 continue;
             }
             //log uptodateness of all targets:
-            logTo.log(sr.getName()
-                  + " omitted as " + targetColl.toString()
-                  + (targetColl.size() == 1 ? " is" : " are ")
-                  + " up to date.", Project.MSG_VERBOSE);
+            if (verbose) {
+                logTo.log(sr.getName()
+                      + " omitted as " + targetColl.toString()
+                      + (targetColl.size() == 1 ? " is" : " are ")
+                      + " up to date.", Project.MSG_VERBOSE);
+            }
         }
         return result;
     }
@@ -386,6 +392,54 @@ public class ResourceUtils {
                                     String inputEncoding, String outputEncoding,
                                     Project project, boolean force)
         throws IOException {
+        copyResource(source, dest, filters, filterChains, overwrite,
+                     preserveLastModified, append, inputEncoding,
+                     outputEncoding, project, force, null);
+    }
+
+    /**
+     * Convenience method to copy content from one Resource to another
+     * specifying whether token filtering must be used, whether filter chains
+     * must be used, whether newer destination files may be overwritten and
+     * whether the last modified time of <code>dest</code> file should be made
+     * equal to the last modified time of <code>source</code>.
+     *
+     * <p>If neither filters nor an encoding conversion are involved
+     * and both resources are files the content is moved by a channel
+     * transfer, which allows the operating system to copy it without
+     * passing it through the VM.</p>
+     *
+     * @param source the Resource to copy from.
+     *                   Must not be <code>null</code>.
+     * @param dest   the Resource to copy to.
+     *                 Must not be <code>null</code>.
+     * @param filters the collection of filters to apply to this copy.
+     * @param filterChains filterChains to apply during the copy.
+     * @param overwrite Whether or not the destination Resource should be
+     *                  overwritten if it already exists.
+     * @param preserveLastModified Whether or not the last modified time of
+     *                             the destination Resource should be set to that
+     *                             of the source.
+     * @param append Whether to append to an Appendable Resource.
+     * @param inputEncoding the encoding used to read the files.
+     * @param outputEncoding the encoding used to write the files.
+     * @param project the project instance.
+     * @param force whether read-only target files will be overwritten
+     * @param stats receives the number of bytes copied by unfiltered
+     *              copies, may be null.
+     *
+     * @throws IOException if the copying fails.
+     *
+     * @since Ant 1.9.1
+     */
+    public static void copyResource(Resource source, Resource dest,
+                            FilterSetCollection filters, Vector filterChains,
+                            boolean overwrite, boolean preserveLastModified,
+                                    boolean append,
+                                    String inputEncoding, String outputEncoding,
+                                    Project project, boolean force,
+                                    CopyStatistics stats)
+        throws IOException {
         if (!(overwrite || SelectorUtils.isOutOfDate(source, dest, FileUtils.getFileUtils()
                 .getFileTimestampGranularity()))) {
             return;
@@ -525,17 +579,27 @@ public class ResourceUtils {
 
             try {
                 in = new FileInputStream(sourceFile);
-                out = new FileOutputStream(destFile);
-                    
+                out = new FileOutputStream(destFile, append);
+
                 srcChannel = in.getChannel();
                 destChannel = out.getChannel();
-                
+
+                // transferTo rather than transferFrom as it is the
+                // direction VMs map to sendfile or copy_file_range
                 long position = 0;
                 long count = srcChannel.size();
                 while (position < count) {
                     long chunk = Math.min(MAX_IO_CHUNK_SIZE, count - position);
-                    position +=
-                        destChannel.transferFrom(srcChannel, position, chunk);
+                    long transferred =
+                        srcChannel.transferTo(position, chunk, destChannel);
+                    if (transferred <= 0) {
+                        // source has been truncated while we copy it
+                        break;
+                    }
+                    position += transferred;
+                }
+                if (stats != null) {
+                    stats.addTransferred(position);
                 }
             } finally {
                 FileUtils.close(srcChannel);
@@ -551,11 +615,16 @@ public class ResourceUtils {
                 out = getOutputStream(dest, append, project);
 
                 byte[] buffer = new byte[FileUtils.BUF_SIZE];
+                long total = 0;
                 int count = 0;
                 do {
                     out.write(buffer, 0, count);
+                    total += count;
                     count = in.read(buffer, 0, buffer.length);
                 } while (count != -1);
+                if (stats != null) {
+                    stats.addBuffered(total);
+                }
             } finally {
                 FileUtils.close(out);
                 FileUtils.close(in);
@@ -85,27 +85,33 @@ public class SourceFileScanner implements ResourceFactory {
      *
      * @since Ant 1.6.2
      */
-    public String[] restrict(String[] files, File srcDir, File destDir,
+    public String[] restrict(String[] files, File srcDir, final File destDir,
                              FileNameMapper mapper, long granularity) {
         // record destdir for later use in getResource
         this.destDir = destDir;
         Vector v = new Vector();
         for (int i = 0; i < files.length; i++) {
             final String name = files[i];
-            v.addElement(new FileResource(srcDir, name) {
+            v.addElement(attributeCaching(new FileResource(srcDir, name) {
                 public String getName() {
                     return name;
                 }
-            });
+            }));
         }
         Resource[] sourceresources = new Resource[v.size()];
         v.copyInto(sourceresources);
 
         // build the list of sources which are out of date with
-        // respect to the target
+        // respect to the target, the resources only live during the
+        // check so they may cache file attributes
+        ResourceFactory targets = new ResourceFactory() {
+                public Resource getResource(String name) {
+                    return attributeCaching(new FileResource(destDir, name));
+                }
+            };
         Resource[] outofdate =
             ResourceUtils.selectOutOfDateSources(task, sourceresources,
-                                                 mapper, this, granularity);
+                                                 mapper, targets, granularity);
         String[] result = new String[outofdate.length];
         for (int counter = 0; counter < outofdate.length; counter++) {
             result[counter] = outofdate[counter].getName();
@@ -168,5 +174,15 @@ public class SourceFileScanner implements ResourceFactory {
         return new FileResource(destDir, name);
     }
 
+    /**
+     * Makes the resource read all attributes of its file at once.
+     */
+    private static FileResource attributeCaching(FileResource r) {
+        if (AttributeCachingFile.isSupported()) {
+            r.setFile(new AttributeCachingFile(r.getFile()));
+        }
+        return r;
+    }
+
 }
 
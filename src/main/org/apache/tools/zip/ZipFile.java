@@ -350,6 +350,31 @@ public class ZipFile {
         }
     }
 
+    /**
+     * Returns an InputStream for reading the data of the given entry
+     * as it is stored in the archive, i.e. without decompressing it.
+     *
+     * <p>Together with {@link ZipEntry#getSize getSize} and {@link
+     * ZipEntry#getCrc getCrc} this is what {@link
+     * ZipOutputStream#putRawEntry ZipOutputStream.putRawEntry}
+     * needs to copy the entry to another archive.</p>
+     *
+     * @param ze the entry to get the stream for.
+     * @return a stream to read the compressed data from, null if the
+     * entry doesn't belong to this archive.
+     * @throws ZipException if the zipentry uses an unsupported feature
+     * @since Ant 1.9.1
+     */
+    public InputStream getRawInputStream(ZipEntry ze) throws ZipException {
+        OffsetEntry offsetEntry = entries.get(ze);
+        if (offsetEntry == null) {
+            return null;
+        }
+        ZipUtil.checkRequestedFeatures(ze);
+        return new BoundedInputStream(offsetEntry.dataOffset,
+                                      ze.getCompressedSize());
+    }
+
     /**
      * Ensures that the close method of this zipfile is called when
      * there are no more references to it.
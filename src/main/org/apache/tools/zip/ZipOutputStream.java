@@ -22,11 +22,15 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -287,6 +291,28 @@ public class ZipOutputStream extends FilterOutputStream {
 
     private Zip64Mode zip64Mode = Zip64Mode.AsNeeded;
 
+    /**
+     * Central directory records of the entries of the archive this
+     * stream appends to, null if the stream doesn't append.
+     */
+    private final List<RetainedEntry> retainedEntries;
+
+    /**
+     * Retained entries by name, created lazily as decoding the names
+     * requires the encoding.
+     */
+    private Map<String, RetainedEntry> retainedByName;
+
+    /**
+     * Length of the archive before this stream started appending.
+     */
+    private final long originalLength;
+
+    /**
+     * Bytes of the archive not used by any retained entry.
+     */
+    private long wasted;
+
     /**
      * Creates a new ZIP OutputStream filtering the underlying stream.
      * @param out the outputstream to zip
@@ -295,6 +321,8 @@ public class ZipOutputStream extends FilterOutputStream {
     public ZipOutputStream(OutputStream out) {
         super(out);
         this.raf = null;
+        retainedEntries = null;
+        originalLength = 0;
     }
 
     /**
@@ -305,23 +333,128 @@ public class ZipOutputStream extends FilterOutputStream {
      * @throws IOException on error
      */
     public ZipOutputStream(File file) throws IOException {
+        this(file, false);
+    }
+
+    /**
+     * Creates a new ZIP OutputStream writing to a File, possibly
+     * appending to an existing archive.
+     *
+     * <p>When appending, the entries of the existing archive are
+     * kept unless an entry of the same name is added.  New entries
+     * are written behind the existing archive and a new central
+     * directory listing the kept and the new entries is written by
+     * {@link #finish finish}, the data of the kept entries is never
+     * read or moved.  The space occupied by replaced entries and the
+     * old central directory is wasted, see {@link
+     * #getWastedBytes}.</p>
+     *
+     * <p>Archives using Zip64 features or spanning several disks
+     * can't be appended to.</p>
+     *
+     * @param file the file to zip to
+     * @param append whether to append to the archive contained in
+     * file
+     * @throws ZipException if the file doesn't contain an archive
+     * this stream can append to
+     * @throws IOException on error
+     * @since Ant 1.9.1
+     */
+    public ZipOutputStream(File file, boolean append) throws IOException {
         super(null);
-        RandomAccessFile _raf = null;
-        try {
-            _raf = new RandomAccessFile(file, "rw");
-            _raf.setLength(0);
-        } catch (IOException e) {
-            if (_raf != null) {
-                try {
-                    _raf.close();
-                } catch (IOException inner) { // NOPMD
-                    // ignore
+        if (!append) {
+            RandomAccessFile _raf = null;
+            try {
+                _raf = new RandomAccessFile(file, "rw");
+                _raf.setLength(0);
+            } catch (IOException e) {
+                if (_raf != null) {
+                    try {
+                        _raf.close();
+                    } catch (IOException inner) { // NOPMD
+                        // ignore
+                    }
+                    _raf = null;
                 }
-                _raf = null;
+                out = new FileOutputStream(file);
             }
-            out = new FileOutputStream(file);
+            raf = _raf;
+            retainedEntries = null;
+            originalLength = 0;
+            return;
+        }
+        raf = new RandomAccessFile(file, "rw");
+        try {
+            originalLength = raf.length();
+            retainedEntries = readCentralDirectory();
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        long used = 0;
+        for (RetainedEntry r : retainedEntries) {
+            used += r.span;
         }
-        raf = _raf;
+        wasted = originalLength - used;
+        raf.seek(originalLength);
+        written = originalLength;
+    }
+
+    /**
+     * Whether this stream appends to an existing archive.
+     * @return true if appending.
+     * @since Ant 1.9.1
+     */
+    public boolean isAppending() {
+        return retainedEntries != null;
+    }
+
+    /**
+     * Number of bytes of the archive that won't be used by any entry
+     * once this stream has been finished - so far.
+     *
+     * <p>Includes the old central directory and the replaced
+     * entries, the figure is an estimate as the length of the local
+     * extra fields of retained entries isn't read.</p>
+     *
+     * @return the number of wasted bytes, 0 if this stream doesn't
+     * append.
+     * @since Ant 1.9.1
+     */
+    public long getWastedBytes() {
+        return wasted;
+    }
+
+    /**
+     * The names of the entries of the archive this stream appends to
+     * that have not been replaced.
+     * @return the names, empty if the stream doesn't append.
+     * @throws IOException if the names cannot be decoded.
+     * @since Ant 1.9.1
+     */
+    public Collection<String> getRetainedEntryNames() throws IOException {
+        if (retainedEntries == null) {
+            return new ArrayList<String>();
+        }
+        return new ArrayList<String>(getRetainedByName().keySet());
+    }
+
+    /**
+     * Closes the stream without finishing the archive.
+     *
+     * <p>If the stream appends to an existing archive, everything
+     * written so far is removed again and the archive is left as it
+     * has been before.</p>
+     *
+     * @throws IOException on error
+     * @since Ant 1.9.1
+     */
+    public void discard() throws IOException {
+        finished = true;
+        if (retainedEntries != null) {
+            raf.setLength(originalLength);
+        }
+        destroy();
     }
 
     /**
@@ -459,6 +592,14 @@ public class ZipOutputStream extends FilterOutputStream {
         }
 
         cdOffset = written;
+        if (retainedEntries != null) {
+            for (RetainedEntry r : retainedEntries) {
+                if (!r.replaced) {
+                    writeOut(r.record);
+                    written += r.record.length;
+                }
+            }
+        }
         for (ZipEntry ze : entries) {
             writeCentralFileHeader(ze);
         }
@@ -493,11 +634,13 @@ public class ZipOutputStream extends FilterOutputStream {
             write(EMPTY, 0, 0);
         }
 
-        flushDeflater();
+        if (!entry.raw) {
+            flushDeflater();
+        }
 
         final Zip64Mode effectiveMode = getEffectiveZip64Mode(entry.entry);
         long bytesWritten = written - entry.dataStart;
-        long realCrc = crc.getValue();
+        long realCrc = entry.raw ? entry.rawCrc : crc.getValue();
         crc.reset();
 
         final boolean actuallyNeedsZip64 =
@@ -639,6 +782,14 @@ public class ZipOutputStream extends FilterOutputStream {
             closeEntry();
         }
 
+        if (retainedEntries != null) {
+            RetainedEntry r = getRetainedByName().remove(archiveEntry.getName());
+            if (r != null) {
+                r.replaced = true;
+                wasted += r.span;
+            }
+        }
+
         entry = new CurrentEntry(archiveEntry);
         entries.add(entry.entry);
 
@@ -671,6 +822,45 @@ public class ZipOutputStream extends FilterOutputStream {
         writeLocalFileHeader(entry.entry);
     }
 
+    /**
+     * Adds an entry whose data has already been compressed with the
+     * entry's method.
+     *
+     * <p>The compressed data is copied to the archive unchanged, the
+     * local file header, data descriptor and central directory are
+     * written exactly as if the uncompressed data had been passed to
+     * {@link #write write}.  If the compressed data has been created
+     * with the compression level set for this stream and the entry
+     * is otherwise the same, the archive is byte for byte identical to
+     * one where the data has been written uncompressed.</p>
+     *
+     * <p>Just like for {@link #putNextEntry putNextEntry} a STORED
+     * entry must know its size and CRC unless this stream is
+     * seekable.</p>
+     *
+     * @param archiveEntry the entry to add.
+     * @param rawData the compressed data, the caller is responsible
+     * for closing the stream.
+     * @param size the uncompressed size of the data.
+     * @param crc the CRC-32 of the uncompressed data.
+     * @throws IOException on error
+     * @since Ant 1.9.1
+     */
+    public void putRawEntry(ZipEntry archiveEntry, InputStream rawData,
+                            long size, long crc) throws IOException {
+        putNextEntry(archiveEntry);
+        entry.raw = true;
+        entry.hasWritten = true;
+        entry.bytesRead = size;
+        entry.rawCrc = crc;
+        int count = 0;
+        while ((count = rawData.read(buf, 0, buf.length)) != -1) {
+            writeOut(buf, 0, count);
+            written += count;
+        }
+        closeEntry();
+    }
+
     /**
      * Provides default values for compression method and last
      * modification time.
@@ -897,6 +1087,21 @@ public class ZipOutputStream extends FilterOutputStream {
      */
     static final byte[] ZIP64_EOCD_LOC_SIG = ZipLong.getBytes(0X07064B50L);
 
+    // CheckStyle:MagicNumber OFF
+    /** Length of the fixed part of a local file header. */
+    private static final int LFH_LEN = 30;
+    /** Length of the fixed part of a central file header. */
+    private static final int CFH_LEN = 46;
+    /** Offset of the general purpose bits in a central file header. */
+    private static final int CFH_GPB_OFFSET = 8;
+    /** Offset of the file name length in a central file header. */
+    private static final int CFH_FILENAME_LENGTH_OFFSET = 28;
+    /** Length of the end of central directory record without comment. */
+    private static final int EOCD_LEN = 22;
+    /** Length of the Zip64 end of central directory locator. */
+    private static final int ZIP64_EOCD_LOC_LEN = 20;
+    // CheckStyle:MagicNumber ON
+
     /**
      * Writes next block of compressed data to the output stream.
      * @throws IOException on error
@@ -1217,7 +1422,7 @@ public class ZipOutputStream extends FilterOutputStream {
         writeOut(ZERO);
 
         // number of entries
-        int numberOfEntries = entries.size();
+        int numberOfEntries = getNumberOfEntries();
         if (numberOfEntries > ZIP64_MAGIC_SHORT
             && zip64Mode == Zip64Mode.Never) {
             throw new Zip64RequiredException(Zip64RequiredException
@@ -1304,7 +1509,7 @@ public class ZipOutputStream extends FilterOutputStream {
 
         if (!hasUsedZip64
             && (cdOffset >= ZIP64_MAGIC || cdLength >= ZIP64_MAGIC
-                || entries.size() >= ZIP64_MAGIC_SHORT)) {
+                || getNumberOfEntries() >= ZIP64_MAGIC_SHORT)) {
             // actually "will use"
             hasUsedZip64 = true;
         }
@@ -1338,7 +1543,7 @@ public class ZipOutputStream extends FilterOutputStream {
         writeOut(LZERO);
 
         // number of entries
-        byte[] num = ZipEightByteInteger.getBytes(entries.size());
+        byte[] num = ZipEightByteInteger.getBytes(getNumberOfEntries());
         writeOut(num);
         writeOut(num);
 
@@ -1499,6 +1704,120 @@ public class ZipOutputStream extends FilterOutputStream {
         return getEntryEncoding(ze).encode(ze.getName());
     }
 
+    /**
+     * Number of entries the central directory is going to list.
+     */
+    private int getNumberOfEntries() {
+        int n = entries.size();
+        if (retainedEntries != null) {
+            for (RetainedEntry r : retainedEntries) {
+                if (!r.replaced) {
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Maps the names of the retained entries that have not been
+     * replaced to the entries.
+     */
+    private Map<String, RetainedEntry> getRetainedByName()
+        throws IOException {
+        if (retainedByName == null) {
+            retainedByName = new LinkedHashMap<String, RetainedEntry>();
+            for (RetainedEntry r : retainedEntries) {
+                int nameLength =
+                    ZipShort.getValue(r.record, CFH_FILENAME_LENGTH_OFFSET);
+                byte[] name = new byte[nameLength];
+                System.arraycopy(r.record, CFH_LEN, name, 0, nameLength);
+                GeneralPurposeBit gpb =
+                    GeneralPurposeBit.parse(r.record, CFH_GPB_OFFSET);
+                ZipEncoding enc = gpb.usesUTF8ForNames()
+                    ? ZipEncodingHelper.UTF8_ZIP_ENCODING : zipEncoding;
+                retainedByName.put(enc.decode(name), r);
+            }
+        }
+        return retainedByName;
+    }
+
+    /**
+     * Reads the central directory of the archive this stream is
+     * going to append to.
+     */
+    private List<RetainedEntry> readCentralDirectory() throws IOException {
+        // CheckStyle:MagicNumber OFF
+        int tailLength = (int) Math.min(originalLength,
+                                        EOCD_LEN + ZIP64_MAGIC_SHORT);
+        byte[] tail = new byte[tailLength];
+        raf.seek(originalLength - tailLength);
+        raf.readFully(tail);
+        int eocd = -1;
+        for (int i = tailLength - EOCD_LEN; i >= 0; i--) {
+            if (tail[i] == EOCD_SIG[0] && tail[i + 1] == EOCD_SIG[1]
+                && tail[i + 2] == EOCD_SIG[2] && tail[i + 3] == EOCD_SIG[3]) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new ZipException("archive is not a ZIP archive");
+        }
+        if (ZipShort.getValue(tail, eocd + 4) != 0
+            || ZipShort.getValue(tail, eocd + 6) != 0) {
+            throw new ZipException("can't append to split archives");
+        }
+        int numberOfEntries = ZipShort.getValue(tail, eocd + 10);
+        long cdSize = ZipLong.getValue(tail, eocd + 12);
+        long cdStart = ZipLong.getValue(tail, eocd + 16);
+        if (numberOfEntries == ZIP64_MAGIC_SHORT || cdSize == ZIP64_MAGIC
+            || cdStart == ZIP64_MAGIC
+            || (eocd >= ZIP64_EOCD_LOC_LEN
+                && ZipLong.getValue(tail, eocd - ZIP64_EOCD_LOC_LEN)
+                == ZipLong.getValue(ZIP64_EOCD_LOC_SIG))) {
+            throw new ZipException("can't append to Zip64 archives");
+        }
+        if (cdStart + cdSize > originalLength - tailLength + eocd) {
+            throw new ZipException("central directory is outside of"
+                                   + " the archive");
+        }
+
+        byte[] cd = new byte[(int) cdSize];
+        raf.seek(cdStart);
+        raf.readFully(cd);
+        List<RetainedEntry> result = new ArrayList<RetainedEntry>();
+        int pos = 0;
+        while (pos + CFH_LEN <= cd.length
+               && ZipLong.getValue(cd, pos) == ZipLong.CFH_SIG.getValue()) {
+            int nameLength = ZipShort.getValue(cd, pos + CFH_FILENAME_LENGTH_OFFSET);
+            int extraLength = ZipShort.getValue(cd, pos + CFH_FILENAME_LENGTH_OFFSET + 2);
+            int commentLength = ZipShort.getValue(cd, pos + CFH_FILENAME_LENGTH_OFFSET + 4);
+            int length = CFH_LEN + nameLength + extraLength + commentLength;
+            long compressedSize = ZipLong.getValue(cd, pos + 20);
+            if (compressedSize == ZIP64_MAGIC
+                || ZipLong.getValue(cd, pos + 24) == ZIP64_MAGIC
+                || ZipLong.getValue(cd, pos + 42) == ZIP64_MAGIC) {
+                throw new ZipException("can't append to Zip64 archives");
+            }
+            RetainedEntry r = new RetainedEntry();
+            r.record = new byte[length];
+            System.arraycopy(cd, pos, r.record, 0, length);
+            GeneralPurposeBit gpb = GeneralPurposeBit.parse(cd, pos + CFH_GPB_OFFSET);
+            // local header, assuming the local extra is the same as
+            // the central one, data and data descriptor
+            r.span = LFH_LEN + nameLength + extraLength + compressedSize
+                + (gpb.usesDataDescriptor() ? 4 * WORD : 0);
+            result.add(r);
+            pos += length;
+        }
+        if (result.size() != numberOfEntries) {
+            throw new ZipException("central directory is corrupt");
+        }
+        return result;
+        // CheckStyle:MagicNumber ON
+    }
+
     /**
      * Closes the underlying stream/file without finishing the
      * archive, the result will likely be a corrupt archive.
@@ -1586,6 +1905,34 @@ public class ZipOutputStream extends FilterOutputStream {
          * the stream at all.</p>
          */
         private boolean hasWritten;
+        /**
+         * Whether the data of the current entry is written without
+         * being compressed by this stream.
+         */
+        private boolean raw;
+        /**
+         * CRC of the uncompressed data of a raw entry.
+         */
+        private long rawCrc;
+    }
+
+    /**
+     * An entry of the archive a stream appends to.
+     */
+    private static final class RetainedEntry {
+        /**
+         * The entry's central directory record.
+         */
+        private byte[] record;
+        /**
+         * Estimated number of bytes the local file header, data and
+         * data descriptor of the entry occupy.
+         */
+        private long span;
+        /**
+         * Whether an entry of the same name has been added.
+         */
+        private boolean replaced;
     }
 
 }
@@ -0,0 +1,103 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant;
+
+import junit.framework.TestCase;
+import org.apache.tools.ant.taskdefs.Echo;
+import org.apache.tools.ant.taskdefs.condition.And;
+import org.apache.tools.ant.types.Path;
+
+public class ComponentHelperTest extends TestCase {
+
+    private static final String CONDITIONS =
+        "antlib:org.apache.tools.ant.types.conditions";
+
+    public void testDefaultDefinitions() {
+        Project p = new Project();
+        p.init();
+        ComponentHelper helper = ComponentHelper.getComponentHelper(p);
+        assertEquals(Echo.class, helper.getComponentClass("echo"));
+        assertEquals("The <echo> type", helper.getElementName(new Echo()));
+        assertEquals("path", helper.getElementName(p, new Path(p), true));
+        assertNull(helper.getDefinition("no-such-task"));
+        assertEquals(Echo.class, p.getTaskDefinitions().get("echo"));
+        assertEquals(Path.class, p.getDataTypeDefinitions().get("path"));
+        assertTrue(helper.getAntTypeTable().containsKey("copy"));
+    }
+
+    public void testOverrideDefaultDefinition() {
+        Project p = new Project();
+        p.init();
+        p.addTaskDefinition("echo", DummyTaskOk.class);
+        assertEquals(DummyTaskOk.class, p.getTaskDefinitions().get("echo"));
+        Project sub = p.createSubProject();
+        p.initSubProject(sub);
+        ComponentHelper helper = ComponentHelper.getComponentHelper(sub);
+        assertEquals(DummyTaskOk.class, helper.getComponentClass("echo"));
+        assertNotNull(helper.getDefinition("copy"));
+    }
+
+    public void testSharedDefinitionsDontLeak() {
+        Project p = new Project();
+        p.init();
+        p.addTaskDefinition("parentonly", DummyTaskOk.class);
+        Project sub = p.createSubProject();
+        p.initSubProject(sub);
+        sub.addTaskDefinition("childonly", DummyTaskOk.class);
+        p.addTaskDefinition("parentlater", DummyTaskOk.class);
+        ComponentHelper parent = ComponentHelper.getComponentHelper(p);
+        ComponentHelper child = ComponentHelper.getComponentHelper(sub);
+        assertNotNull(child.getDefinition("parentonly"));
+        assertNull(parent.getDefinition("childonly"));
+        assertNull(child.getDefinition("parentlater"));
+
+        Project other = p.createSubProject();
+        p.initSubProject(other);
+        ComponentHelper.getComponentHelper(other).getAntTypeTable()
+            .remove("parentonly");
+        assertNotNull(parent.getDefinition("parentonly"));
+    }
+
+    public void testAntlibIndex() {
+        Project first = new Project();
+        first.init();
+        assertTrue(first.createDataType(CONDITIONS + ":and") instanceof And);
+
+        Project second = new Project();
+        second.init();
+        final StringBuffer log = new StringBuffer();
+        second.addBuildListener(new BuildListener() {
+                public void buildStarted(BuildEvent event) { }
+                public void buildFinished(BuildEvent event) { }
+                public void targetStarted(BuildEvent event) { }
+                public void targetFinished(BuildEvent event) { }
+                public void taskStarted(BuildEvent event) { }
+                public void taskFinished(BuildEvent event) { }
+                public void messageLogged(BuildEvent event) {
+                    log.append(event.getMessage()).append('\n');
+                }
+            });
+        Object and = second.createDataType(CONDITIONS + ":and");
+        assertNotNull(and);
+        assertEquals(And.class.getName(), and.getClass().getName());
+        assertTrue(log.toString(),
+                   log.indexOf("from the antlib index") >= 0);
+        assertNotNull(second.createDataType(CONDITIONS + ":or"));
+    }
+}
@@ -19,7 +19,10 @@
 package org.apache.tools.ant;
 
 import org.apache.tools.ant.taskdefs.condition.Os;
+import org.apache.tools.ant.types.FileSet;
 import org.apache.tools.ant.types.selectors.TokenizedPath;
+import org.apache.tools.ant.util.DirectoryIndex;
+import org.apache.tools.ant.util.DirectoryScannerCache;
 import org.apache.tools.ant.util.SymbolicLinkUtils;
 
 import java.io.File;
@@ -565,4 +568,154 @@ public class DirectoryScannerTest extends BuildFileTest {
         TokenizedPath p = new TokenizedPath(f.getAbsolutePath());
         assertTrue(ds.contentsExcluded(p));
     }
+
+    public void testIndex() throws IOException {
+        DirectoryIndex index = new DirectoryIndex();
+        File tmp = new File(getProject().getBaseDir(), "tmp");
+        for (int i = 0; i < 2; i++) {
+            DirectoryScanner ds = new DirectoryScanner();
+            ds.setBasedir(tmp);
+            ds.setIndex(index);
+            ds.scan();
+            compareFiles(ds, new String[] {"alpha/beta/beta.xml",
+                                           "alpha/beta/gamma/gamma.xml"},
+                         new String[] {"", "alpha", "alpha/beta",
+                                       "alpha/beta/gamma"});
+        }
+        assertEquals(4, index.size());
+
+        new File(tmp, "alpha/alpha.xml").createNewFile();
+        DirectoryScanner ds = new DirectoryScanner();
+        ds.setBasedir(tmp);
+        ds.setIndex(index);
+        ds.scan();
+        compareFiles(ds, new String[] {"alpha/alpha.xml",
+                                       "alpha/beta/beta.xml",
+                                       "alpha/beta/gamma/gamma.xml"},
+                     new String[] {"", "alpha", "alpha/beta",
+                                   "alpha/beta/gamma"});
+    }
+
+    public void testIndexIsPersisted() throws IOException {
+        File tmp = new File(getProject().getBaseDir(), "tmp");
+        File indexFile = new File(tmp, "index.bin");
+        DirectoryIndex index = new DirectoryIndex(indexFile);
+        DirectoryScanner ds = new DirectoryScanner();
+        ds.setBasedir(new File(tmp, "alpha"));
+        ds.setIndex(index);
+        ds.scan();
+        index.save();
+        assertTrue(indexFile.isFile());
+
+        DirectoryIndex loaded = new DirectoryIndex(indexFile);
+        loaded.load();
+        assertEquals(index.size(), loaded.size());
+    }
+
+    public void testIndexIsSavedWhenSubBuildFinishes() {
+        File tmp = new File(getProject().getBaseDir(), "tmp");
+        File indexFile = new File(tmp, "subbuild-index.bin");
+        Project sub = getProject().createSubProject();
+        sub.setProperty(MagicNames.SCANNER_INDEX, indexFile.getAbsolutePath());
+        DirectoryIndex index = DirectoryIndex.getIndex(sub);
+        assertNotNull(index.list(new File(tmp, "alpha")));
+        assertFalse(indexFile.exists());
+        sub.fireSubBuildFinished(null);
+        assertTrue(indexFile.isFile());
+    }
+
+    public void testIndexIsSavedOnceForSeveralSubBuilds() {
+        File tmp = new File(getProject().getBaseDir(), "tmp");
+        File indexFile = new File(tmp, "parent-index.bin");
+        Project parent = new Project();
+        parent.init();
+        parent.setProperty(MagicNames.SCANNER_INDEX, indexFile.getAbsolutePath());
+        DirectoryIndex index = DirectoryIndex.getIndex(parent);
+        String[] dirs = {"alpha", "alpha/beta", "alpha/beta/gamma"};
+        for (int i = 0; i < dirs.length; i++) {
+            // what <ant> and <subant> do with the parent's listeners
+            Project sub = parent.createSubProject();
+            for (Iterator it = parent.getBuildListeners().iterator();
+                 it.hasNext(); ) {
+                sub.addBuildListener((BuildListener) it.next());
+            }
+            sub.setProperty(MagicNames.SCANNER_INDEX,
+                            indexFile.getAbsolutePath());
+            assertSame(index, DirectoryIndex.getIndex(sub));
+            assertNotNull(index.list(new File(tmp, dirs[i])));
+            sub.fireSubBuildFinished(null);
+            assertFalse(indexFile.exists());
+        }
+        parent.fireBuildFinished(null);
+        assertTrue(indexFile.isFile());
+    }
+
+    public void testScannerCache() throws IOException {
+        getProject().setProperty("ant.scanner.cache", "true");
+        File tmp = new File(getProject().getBaseDir(), "tmp");
+        makeOld(tmp);
+        DirectoryScanner ds1 = newXmlFileSet(tmp).getDirectoryScanner();
+        DirectoryScannerCache cache =
+            DirectoryScannerCache.getCache(getProject());
+        assertEquals(1, cache.size());
+        DirectoryScanner ds2 = newXmlFileSet(tmp).getDirectoryScanner();
+        assertNotSame(ds1, ds2);
+        assertEquals(2, ds2.getIncludedFilesCount());
+
+        // changing the scanner a caller got must not affect the cache
+        ds2.addExcludes(new String[] {"**/beta.xml"});
+        ds2.scan();
+        assertEquals(1, ds2.getIncludedFilesCount());
+        assertEquals(2, newXmlFileSet(tmp).getDirectoryScanner()
+                     .getIncludedFilesCount());
+
+        new File(tmp, "alpha/beta/delta.xml").createNewFile();
+        DirectoryScanner ds3 = newXmlFileSet(tmp).getDirectoryScanner();
+        assertEquals(3, ds3.getIncludedFilesCount());
+
+        makeOld(tmp);
+        newXmlFileSet(tmp).getDirectoryScanner();
+        assertEquals(1, cache.size());
+        DirectoryScannerCache.invalidate(getProject(),
+                                         new File(tmp, "alpha/beta"));
+        assertEquals(0, cache.size());
+    }
+
+    private FileSet newXmlFileSet(File dir) {
+        FileSet fs = new FileSet();
+        fs.setProject(getProject());
+        fs.setDir(dir);
+        fs.setIncludes("**/*.xml");
+        return fs;
+    }
+
+    private static void makeOld(File dir) {
+        dir.setLastModified(System.currentTimeMillis() - 60000);
+        File[] children = dir.listFiles();
+        for (int i = 0; i < children.length; i++) {
+            if (children[i].isDirectory()) {
+                makeOld(children[i]);
+            }
+        }
+    }
+
+    public void testParallelScan() {
+        File tmp = new File(getProject().getBaseDir(), "tmp");
+        DirectoryScanner ds = new DirectoryScanner();
+        ds.setBasedir(tmp);
+        ds.setThreads(4);
+        ds.scan();
+        compareFiles(ds, new String[] {"alpha/beta/beta.xml",
+                                       "alpha/beta/gamma/gamma.xml"},
+                     new String[] {"", "alpha", "alpha/beta",
+                                   "alpha/beta/gamma"});
+
+        ds = new DirectoryScanner();
+        ds.setBasedir(tmp);
+        ds.setThreads(4);
+        ds.setIncludes(new String[] {"alpha/beta/gamma/"});
+        ds.scan();
+        compareFiles(ds, new String[] {"alpha/beta/gamma/gamma.xml"},
+                     new String[] {"alpha/beta/gamma"});
+    }
 }
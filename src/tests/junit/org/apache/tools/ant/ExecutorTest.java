@@ -28,6 +28,8 @@ public class ExecutorTest extends BuildFileTest implements BuildListener {
         = "org.apache.tools.ant.helper.SingleCheckExecutor";
     private static final String IGNORE_DEPS
         = "org.apache.tools.ant.helper.IgnoreDependenciesExecutor";
+    private static final String PARALLEL
+        = "org.apache.tools.ant.helper.ParallelExecutor";
     private static final Vector TARGET_NAMES;
     static {
         TARGET_NAMES = new Vector();
@@ -38,7 +40,7 @@ public class ExecutorTest extends BuildFileTest implements BuildListener {
     private int targetCount;
 
     /* BuildListener stuff */
-    public void targetStarted(BuildEvent event) {
+    public synchronized void targetStarted(BuildEvent event) {
         targetCount++;
     }
     public void buildStarted(BuildEvent event) {}
@@ -91,6 +93,13 @@ public class ExecutorTest extends BuildFileTest implements BuildListener {
         assertEquals(2, targetCount);
     }
 
+    public void testParallelExecutor() {
+        Project p = getProject(PARALLEL);
+        p.setNewProperty("ant.executor.threads", "2");
+        p.executeTargets(TARGET_NAMES);
+        assertEquals(3, targetCount);
+    }
+
     public void testDefaultFailure() {
         try {
             getProject(null, true).executeTargets(TARGET_NAMES);
@@ -111,6 +120,18 @@ public class ExecutorTest extends BuildFileTest implements BuildListener {
         }
     }
 
+    public void testParallelFailure() {
+        try {
+            Project p = getProject(PARALLEL, true);
+            p.setNewProperty("ant.executor.threads", "2");
+            p.executeTargets(TARGET_NAMES);
+            fail("should fail");
+        } catch (BuildException e) {
+            assertTrue(e.getMessage().equals("failfoo"));
+            assertEquals(1, targetCount);
+        }
+    }
+
     public void testIgnoreDependenciesFailure() {
         //no foo failure; foo is never executed as dependencies are ignored!
         getProject(IGNORE_DEPS, true).executeTargets(TARGET_NAMES);
@@ -149,5 +170,16 @@ public class ExecutorTest extends BuildFileTest implements BuildListener {
         }
     }
 
-}
+    public void testKeepGoingParallel() {
+        try {
+            Project p = getProject(PARALLEL, true, true);
+            p.setNewProperty("ant.executor.threads", "2");
+            p.executeTargets(TARGET_NAMES);
+            fail("should fail");
+        } catch (BuildException e) {
+            assertTrue(e.getMessage().equals("failfoo"));
+            assertEquals(1, targetCount);
+        }
+    }
 
+}
@@ -416,6 +416,43 @@ public class IntrospectionHelperTest extends TestCase {
         }
     }
 
+    public void testNonNumericValue() {
+        try {
+            ih.setAttribute(p, this, "eight", "x");
+            fail("x is not an int");
+        } catch (BuildException be) {
+            assertEquals("Can't assign value 'x' to attribute eight, reason: "
+                         + NumberFormatException.class + " with message"
+                         + " 'For input string: \"x\"'", be.getMessage());
+        }
+    }
+
+    public void testSetterRejectingNumber() {
+        IntrospectionHelper rih =
+            IntrospectionHelper.getHelper(RejectingNumbers.class);
+        RejectingNumbers r = new RejectingNumbers();
+        rih.setAttribute(p, r, "count", "1");
+        assertEquals(Integer.valueOf(1), r.count);
+        try {
+            rih.setAttribute(p, r, "count", "-1");
+            fail("negative counts are rejected");
+        } catch (BuildException be) {
+            assertEquals("Can't assign value '-1' to attribute count, reason: "
+                         + IllegalArgumentException.class + " with message"
+                         + " 'negative'", be.getMessage());
+        }
+    }
+
+    public static class RejectingNumbers {
+        private Integer count;
+        public void setCount(Integer count) {
+            if (count.intValue() < 0) {
+                throw new IllegalArgumentException("negative");
+            }
+            this.count = count;
+        }
+    }
+
     private Map getExpectedAttributes() {
         Map attrMap = new Hashtable();
         attrMap.put("seven", String.class);
@@ -284,6 +284,104 @@ public class ProjectTest extends TestCase {
         // be content if no exception has been thrown
     }
 
+    public void testAsyncListeners() {
+        final StringBuffer events = new StringBuffer();
+        final Thread[] deliveredOn = new Thread[1];
+        p.setUserProperty(MagicNames.ASYNC_LISTENERS, "true");
+        p.addBuildListener(new BuildListener() {
+                public void buildStarted(BuildEvent event) {
+                    deliveredOn[0] = Thread.currentThread();
+                    events.append("started;");
+                }
+                public void buildFinished(BuildEvent event) {
+                    events.append("finished;");
+                }
+                public void targetStarted(BuildEvent event) { }
+                public void targetFinished(BuildEvent event) { }
+                public void taskStarted(BuildEvent event) { }
+                public void taskFinished(BuildEvent event) { }
+                public void messageLogged(BuildEvent event) {
+                    if (event.getPriority() == Project.MSG_INFO) {
+                        events.append(event.getMessage()).append(';');
+                    }
+                }
+            });
+        p.fireBuildStarted();
+        StringBuffer expected = new StringBuffer("started;");
+        for (int i = 0; i < 2 * AsyncEventDispatcher.QUEUE_SIZE; i++) {
+            p.log(String.valueOf(i));
+            expected.append(i).append(';');
+        }
+        p.fireBuildFinished(null);
+        expected.append("finished;");
+        assertEquals(expected.toString(), events.toString());
+        assertNotSame(Thread.currentThread(), deliveredOn[0]);
+    }
+
+    public void testSynchronousListenersWithAsyncListeners() {
+        final Thread current = Thread.currentThread();
+        final StringBuffer events = new StringBuffer();
+        p.setUserProperty(MagicNames.ASYNC_LISTENERS, "true");
+        p.addBuildListener(new SynchronousBuildListener() {
+                public void buildStarted(BuildEvent event) {
+                    record("started");
+                }
+                public void buildFinished(BuildEvent event) {
+                    record("finished");
+                }
+                public void targetStarted(BuildEvent event) { }
+                public void targetFinished(BuildEvent event) { }
+                public void taskStarted(BuildEvent event) { }
+                public void taskFinished(BuildEvent event) { }
+                public void messageLogged(BuildEvent event) {
+                    if (event.getPriority() == Project.MSG_INFO) {
+                        record(event.getMessage());
+                    }
+                }
+                private void record(String event) {
+                    events.append(event).append(Thread.currentThread() == current
+                                                ? ";" : " on wrong thread;");
+                }
+            });
+        p.fireBuildStarted();
+        p.log("message");
+        assertEquals("started;message;", events.toString());
+        p.fireBuildFinished(null);
+        assertEquals("started;message;finished;", events.toString());
+    }
+
+    public void testIsLoggable() {
+        Project project = new Project();
+        DefaultLogger logger = new DefaultLogger();
+        logger.setMessageOutputLevel(Project.MSG_INFO);
+        project.addBuildListener(logger);
+        assertTrue(project.isLoggable(Project.MSG_INFO));
+        assertFalse(project.isLoggable(Project.MSG_VERBOSE));
+
+        final int[] supplied = new int[1];
+        Task t = new Task() {};
+        t.setProject(project);
+        t.log(new MessageSupplier() {
+                public String getMessage() {
+                    supplied[0]++;
+                    return "verbose";
+                }
+            }, Project.MSG_VERBOSE);
+        assertEquals(0, supplied[0]);
+
+        DefaultLogger counting = new DefaultLogger() {
+                public void messageLogged(BuildEvent event) {
+                    supplied[0]++;
+                }
+            };
+        project.addBuildListener(counting);
+        assertTrue(project.isLoggable(Project.MSG_DEBUG));
+        project.removeBuildListener(counting);
+        assertFalse(project.isLoggable(Project.MSG_VERBOSE));
+        logger.setMessageOutputLevel(Project.MSG_VERBOSE);
+        assertTrue(project.isLoggable(Project.MSG_VERBOSE));
+    }
+
     private class DummyTaskPrivate extends Task {
         public DummyTaskPrivate() {}
         public void execute() {}
@@ -68,6 +68,32 @@ public class PropertyExpansionTest extends BuildFileTest {
     }
 
 
+    public void testRepeatedExpansionSeesNewValues() {
+        assertExpandsTo("<${later}>", "<${later}>");
+        project.setProperty("later", "now");
+        assertExpandsTo("<${later}>", "<now>");
+    }
+
+    public void testSingleReferenceKeepsObject() {
+        Object o = new Object();
+        PropertyHelper ph = PropertyHelper.getPropertyHelper(project);
+        ph.setNewProperty("object", o);
+        assertSame(o, ph.parseProperties("${object}"));
+        assertEquals("x" + o, ph.parseProperties("x${object}"));
+        assertTrue(ph.containsProperties("x${object}"));
+        assertFalse(ph.containsProperties("x$${object}"));
+    }
+
+    public void testSyntaxError() {
+        try {
+            project.replaceProperties("${unclosed");
+            fail("expected a BuildException");
+        } catch (BuildException ex) {
+            assertTrue(ex.getMessage(),
+                       ex.getMessage().startsWith("Syntax error in property"));
+        }
+    }
+
     /**
      * old things we dont want; not a test no more
      */
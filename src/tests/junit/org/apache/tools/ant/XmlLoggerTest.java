@@ -0,0 +1,123 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+public class XmlLoggerTest extends TestCase {
+
+    public void testStreamingCreatesSameDocument() throws Exception {
+        assertEquals(describe(runBuild(false, 10)),
+                     describe(runBuild(true, 10)));
+    }
+
+    public void testStreamingWithLargeContent() throws Exception {
+        int count = 4 * StreamingXmlElement.BUFFER_SIZE / 10;
+        Element build = runBuild(true, count);
+        assertEquals(describe(runBuild(false, count)), describe(build));
+        assertEquals(2 * count + 2,
+                     build.getElementsByTagName("message").getLength());
+    }
+
+    public void testStreamingRemovesIllegalCharacters() throws Exception {
+        Project p = new Project();
+        p.init();
+        p.setUserProperty("ant.XmlLogger.streaming", "true");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XmlLogger logger = new XmlLogger();
+        logger.setOutputPrintStream(new PrintStream(out));
+        p.addBuildListener(logger);
+        p.fireBuildStarted();
+        p.log("a\u001bb ]]> c");
+        p.fireBuildFinished(null);
+        Element build = parse(out);
+        assertEquals("ab ]]> c", build.getElementsByTagName("message")
+                     .item(0).getTextContent());
+    }
+
+    private static Element runBuild(boolean streaming, int messages)
+        throws Exception {
+        Project p = new Project();
+        p.init();
+        p.setUserProperty("ant.XmlLogger.streaming", String.valueOf(streaming));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XmlLogger logger = new XmlLogger();
+        logger.setOutputPrintStream(new PrintStream(out));
+        p.addBuildListener(logger);
+        p.fireBuildStarted();
+        p.log("before targets <&>");
+        Target target = new Target();
+        target.setName("t");
+        target.setProject(p);
+        p.fireTargetStarted(target);
+        Task task = new Task() { };
+        task.setProject(p);
+        task.setTaskName("echo");
+        task.setOwningTarget(target);
+        p.fireTaskStarted(task);
+        for (int i = 0; i < messages; i++) {
+            p.fireMessageLogged(task, "task message " + i, Project.MSG_INFO);
+            p.fireMessageLogged(target, "target message " + i,
+                                Project.MSG_WARN);
+        }
+        p.fireTaskFinished(task, null);
+        p.fireTargetFinished(target, null);
+        p.log("after targets", Project.MSG_ERR);
+        p.fireBuildFinished(new BuildException("failed"));
+        return parse(out);
+    }
+
+    private static Element parse(ByteArrayOutputStream out) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+            .parse(new ByteArrayInputStream(out.toByteArray()))
+            .getDocumentElement();
+    }
+
+    /**
+     * Element names, attributes except for times and message texts.
+     */
+    private static String describe(Element e) {
+        StringBuffer sb = new StringBuffer("<").append(e.getTagName());
+        String[] attrs = {"name", "location", "priority", "error"};
+        for (int i = 0; i < attrs.length; i++) {
+            if (e.hasAttribute(attrs[i])) {
+                sb.append(' ').append(attrs[i]).append('=')
+                    .append(e.getAttribute(attrs[i]));
+            }
+        }
+        sb.append(e.hasAttribute("time") ? " time>" : ">");
+        if (!e.getTagName().equals("stacktrace")) {
+            for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+                if (n instanceof Element) {
+                    sb.append(describe((Element) n));
+                } else if (e.getTagName().equals("message")) {
+                    sb.append(n.getNodeValue());
+                }
+            }
+        }
+        return sb.append("</").append(e.getTagName()).append('>').toString();
+    }
+}
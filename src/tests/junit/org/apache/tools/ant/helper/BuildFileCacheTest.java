@@ -0,0 +1,126 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.helper;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.MagicNames;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.ProjectHelper;
+import org.apache.tools.ant.Target;
+import org.apache.tools.ant.util.FileUtils;
+
+public class BuildFileCacheTest extends TestCase {
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    private File buildFile;
+    private File cacheDir;
+
+    public void setUp() {
+        buildFile = FILE_UTILS.createTempFile("build", ".xml", null,
+                                              true, true);
+        cacheDir = FILE_UTILS.createTempFile("cache", "", null, true, false);
+        cacheDir.mkdirs();
+    }
+
+    public void tearDown() {
+        buildFile.delete();
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        cacheDir.delete();
+    }
+
+    public void testReplaysUnchangedFile() throws IOException {
+        write("<project name=\"cached\">\n"
+              + "  <target name=\"a\">\n"
+              + "    <echo id=\"e\" message=\"${x}\"/>\n"
+              + "  </target>\n"
+              + "</project>\n");
+        StringBuffer log = new StringBuffer();
+        Project first = parse(log);
+        assertTrue(log.toString(), log.indexOf("parsing buildfile") > -1);
+        assertEquals(1, cacheDir.list().length);
+
+        log.setLength(0);
+        Project second = parse(log);
+        assertTrue(log.toString(),
+                   log.indexOf("replaying cached buildfile") > -1);
+        assertEquals("cached", second.getName());
+        Target a1 = (Target) first.getTargets().get("a");
+        Target a2 = (Target) second.getTargets().get("a");
+        assertNotNull(a2);
+        assertEquals(a1.getLocation().getLineNumber(),
+                     a2.getLocation().getLineNumber());
+        assertEquals(a1.getTasks()[0].getLocation().toString(),
+                     a2.getTasks()[0].getLocation().toString());
+        assertEquals("${x}", a2.getTasks()[0].getRuntimeConfigurableWrapper()
+                     .getAttributeMap().get("message"));
+    }
+
+    public void testParsesChangedFile() throws IOException {
+        write("<project name=\"before\"/>\n");
+        StringBuffer log = new StringBuffer();
+        parse(log);
+        write("<project name=\"after\"/>\n");
+        log.setLength(0);
+        Project p = parse(log);
+        assertTrue(log.toString(), log.indexOf("parsing buildfile") > -1);
+        assertEquals("after", p.getName());
+    }
+
+    private void write(String content) throws IOException {
+        FileWriter w = new FileWriter(buildFile);
+        try {
+            w.write(content);
+        } finally {
+            w.close();
+        }
+    }
+
+    private Project parse(final StringBuffer log) {
+        Project p = new Project();
+        p.setUserProperty(MagicNames.PARSER_CACHE_DIR,
+                          cacheDir.getAbsolutePath());
+        p.init();
+        p.addBuildListener(new BuildListener() {
+                public void buildStarted(BuildEvent event) { }
+                public void buildFinished(BuildEvent event) { }
+                public void targetStarted(BuildEvent event) { }
+                public void targetFinished(BuildEvent event) { }
+                public void taskStarted(BuildEvent event) { }
+                public void taskFinished(BuildEvent event) { }
+                public void messageLogged(BuildEvent event) {
+                    log.append(event.getMessage()).append('\n');
+                }
+            });
+        ProjectHelper.configureProject(p, buildFile);
+        return p;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.listener;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import org.apache.tools.ant.Location;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Target;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.util.FileUtils;
+
+public class ProfilingListenerTest extends TestCase {
+
+    private File report;
+    private File trace;
+
+    public void setUp() {
+        FileUtils fu = FileUtils.getFileUtils();
+        report = fu.createTempFile("profile", ".txt", null, true, false);
+        trace = fu.createTempFile("trace", ".json", null, true, false);
+    }
+
+    public void tearDown() {
+        report.delete();
+        trace.delete();
+    }
+
+    public void testReportAndTrace() throws IOException {
+        Project p = new Project();
+        p.init();
+        p.setName("demo");
+        p.setUserProperty(ProfilingListener.REPORT_PROPERTY,
+                          report.getAbsolutePath());
+        p.setUserProperty(ProfilingListener.TRACE_PROPERTY,
+                          trace.getAbsolutePath());
+        p.setUserProperty(ProfilingListener.SORT_PROPERTY, "count");
+        p.addBuildListener(new ProfilingListener());
+        p.fireBuildStarted();
+        Target t = new Target();
+        t.setName("compile");
+        t.setProject(p);
+        t.addTask(createTask(p, t, "outer", 1));
+        t.addTask(createTask(p, t, "inner", 2));
+        t.addTask(createTask(p, t, "inner", 3));
+        p.addTarget(t);
+        p.executeTarget("compile");
+        p.fireBuildFinished(null);
+
+        String r = FileUtils.readFully(new FileReader(report));
+        assertTrue(r, r.indexOf("demo.compile") > 0);
+        assertTrue(r, r.indexOf("build.xml:2 (inner)") > 0);
+        // sorted by count
+        assertTrue(r, r.indexOf("  inner") < r.indexOf("  outer"));
+        String j = FileUtils.readFully(new FileReader(trace));
+        assertTrue(j, j.startsWith("{\"traceEvents\":["));
+        assertTrue(j, j.indexOf("\"name\":\"compile\"") < 0);
+        assertTrue(j, j.indexOf("\"name\":\"demo.compile\",\"cat\":\"target\"") > 0);
+        assertTrue(j, j.indexOf("\"location\":\"build.xml:3\"") > 0);
+    }
+
+    public void testFilesAreRelativeToBasedir() {
+        Project p = new Project();
+        p.init();
+        p.setBasedir(report.getParent());
+        p.setUserProperty(ProfilingListener.REPORT_PROPERTY, report.getName());
+        p.setUserProperty(ProfilingListener.TRACE_PROPERTY, trace.getName());
+        p.addBuildListener(new ProfilingListener());
+        p.fireBuildStarted();
+        Target t = new Target();
+        t.setName("empty");
+        t.setProject(p);
+        p.addTarget(t);
+        p.executeTarget("empty");
+        p.fireBuildFinished(null);
+        assertTrue(report.length() > 0);
+        assertTrue(trace.length() > 0);
+    }
+
+    private static Task createTask(Project p, Target t, String name, int line) {
+        Task task = new Task() { };
+        task.setProject(p);
+        task.setTaskName(name);
+        task.setOwningTarget(t);
+        task.setLocation(new Location("build.xml", line, 1));
+        return task;
+    }
+}
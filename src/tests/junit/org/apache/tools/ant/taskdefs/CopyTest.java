@@ -188,6 +188,29 @@ public class CopyTest extends BuildFileTest {
         }
     }
     
+    public void testThreads() throws IOException {
+        executeTarget("testThreads");
+        File f1 = new File(getProjectDir(), "copy.xml");
+        File f2 = new File(getProjectDir(), getProject().getProperty("to.dir")
+                           + "/threads/copy.xml");
+        assertTrue(FILE_UTILS.contentEquals(f1, f2));
+    }
+
+    public void testThreadsResources() {
+        executeTarget("testThreadsResources");
+        File f = new File(getProjectDir(), getProject().getProperty("to.dir")
+                          + "/threadres/a/c/copy.xml");
+        assertTrue(f.exists());
+    }
+
+    public void testThreadsFiltering() throws IOException {
+        executeTarget("testThreadsFiltering");
+        File tmp = new File(getProjectDir(), getProject().getProperty("to.dir")
+                            + "/threadfilter/copy.filterset");
+        File check = new File(getProjectDir(), "expected/copy.filterset.filtered");
+        assertTrue(FILE_UTILS.contentEquals(tmp, check));
+    }
+
     public void testPathAsResource() {
         executeTarget("testPathAsResource");
         File file1 = new File(getProjectDir(), getProject().getProperty("to.dir")+"/file1.txt");
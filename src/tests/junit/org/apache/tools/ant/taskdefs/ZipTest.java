@@ -20,11 +20,15 @@ package org.apache.tools.ant.taskdefs;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Enumeration;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
 import org.apache.tools.ant.BuildFileTest;
+import org.apache.tools.ant.util.FileUtils;
 import org.apache.tools.zip.UnixStat;
 
 /**
@@ -234,4 +238,72 @@ public class ZipTest extends BuildFileTest {
         }
     }
 
+    public void testThreads() throws IOException {
+        executeTarget("testThreads");
+        assertTrue(FileUtils.getFileUtils()
+                   .contentEquals(getProject().resolveFile("test3.zip"),
+                                  getProject().resolveFile("test4.zip")));
+    }
+
+    public void testRawCopy() throws IOException {
+        executeTarget("testRawCopy");
+        ZipFile source = null;
+        ZipFile copy = null;
+        try {
+            source = new ZipFile(getProject().resolveFile("test3.zip"));
+            copy = new ZipFile(getProject().resolveFile("test4.zip"));
+            assertEquals(source.size(), copy.size());
+            for (Enumeration<? extends ZipEntry> e = source.entries();
+                 e.hasMoreElements(); ) {
+                ZipEntry ze = e.nextElement();
+                ZipEntry copied = copy.getEntry(ze.getName());
+                assertNotNull(ze.getName(), copied);
+                // compressed with level 1 rather than the default
+                assertEquals(ze.getName(), ze.getCompressedSize(),
+                             copied.getCompressedSize());
+                assertEquals(ze.getName(), ze.getCrc(), copied.getCrc());
+                InputStream expected = source.getInputStream(ze);
+                InputStream actual = copy.getInputStream(copied);
+                try {
+                    assertEquals(ze.getName(),
+                                 FileUtils.readFully(new InputStreamReader(expected)),
+                                 FileUtils.readFully(new InputStreamReader(actual)));
+                } finally {
+                    FileUtils.close(expected);
+                    FileUtils.close(actual);
+                }
+            }
+        } finally {
+            if (source != null) {
+                source.close();
+            }
+            if (copy != null) {
+                copy.close();
+            }
+        }
+    }
+
+    public void testIncrementalUpdate() throws IOException {
+        executeTarget("testIncrementalUpdate");
+        ZipFile zf = null;
+        try {
+            zf = new ZipFile(getProject().resolveFile("test3.zip"));
+            assertEquals(5, zf.size());
+            assertNotNull(zf.getEntry("a.txt"));
+            assertNotNull(zf.getEntry("sub/"));
+            assertNotNull(zf.getEntry("d.txt"));
+            InputStream is = zf.getInputStream(zf.getEntry("b.txt"));
+            try {
+                assertEquals("new b",
+                             FileUtils.readFully(new InputStreamReader(is)));
+            } finally {
+                FileUtils.close(is);
+            }
+        } finally {
+            if (zf != null) {
+                zf.close();
+            }
+        }
+    }
+
 }
@@ -22,8 +22,12 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.InputStream;
 import java.net.URL;
+import javax.xml.parsers.DocumentBuilderFactory;
 import org.apache.tools.ant.BuildFileTest;
 import org.apache.tools.ant.util.FileUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 /**
  * Small testcase for the junitreporttask.
@@ -206,4 +210,39 @@ public class JUnitReportTest extends BuildFileTest {
         InputStream reportStream = reportUrl.openStream();
         assertTrue("This shouldnt be an empty stream.", reportStream.available() > 0);
     }
+
+    public void testStreaming() throws Exception {
+        expectReportWithText("testStreaming",
+                XMLResultAggregator.WARNING_EMPTY_FILE);
+        assertLogContaining(XMLResultAggregator.WARNING_IS_POSSIBLY_CORRUPTED);
+        assertLogContaining(XMLResultAggregator.WARNING_INVALID_ROOT_ELEMENT);
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+            .parse(new File(System.getProperty("root"),
+                            "src/etc/testcases/taskdefs/optional/junitreport/test/TESTS-TestSuites.xml"));
+        NodeList suites = doc.getElementsByTagName("testsuite");
+        assertEquals(2, suites.getLength());
+        Element coins = (Element) suites.item(0);
+        assertEquals("CoinTest", coins.getAttribute("name"));
+        assertEquals("sampleproject.coins", coins.getAttribute("package"));
+        assertEquals("0", coins.getAttribute("id"));
+        assertEquals(1, coins.getElementsByTagName("properties").getLength());
+        assertEquals(11, coins.getElementsByTagName("testcase").getLength());
+        assertEquals("1", ((Element) suites.item(1)).getAttribute("id"));
+    }
+
+    public void testIncremental() throws Exception {
+        expectReportWithText("testIncremental", null);
+        String[] pages = {"overview-summary.html", "allclasses-frame.html",
+                          "alltests-fails.html",
+                          "sampleproject/coins/package-summary.html",
+                          "sampleproject/coins/0_CoinTest.html",
+                          "sampleproject/util/package-frame.html",
+                          "sampleproject/util/1_UniqueStringTest.html"};
+        for (int i = 0; i < pages.length; i++) {
+            File page = new File(System.getProperty("root"),
+                                 "src/etc/testcases/taskdefs/optional/junitreport/test/html/"
+                                 + pages[i]);
+            assertTrue(pages[i], page.isFile());
+        }
+    }
 }
@@ -21,9 +21,11 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.BuildFileTest;
+import org.apache.tools.ant.util.FileUtils;
 import org.apache.tools.ant.util.JavaEnvUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
@@ -228,6 +230,79 @@ public class JUnitTaskTest extends BuildFileTest {
         assertResultFilesExist("testBatchTestForkOnceCustomFormatter", "foo");
     }
 
+    public void testThreadsPerTest() {
+        assertResultFilesExist("testThreadsPerTest", ".xml");
+    }
+
+    public void testThreadsForkOnce() {
+        assertResultFilesExist("testThreadsForkOnce", ".xml");
+    }
+
+    public void testThreadsHaltOnError() {
+        expectBuildExceptionContaining("testThreadsHaltOnError", "crash",
+                                       "(crashed)");
+    }
+
+    public void testPooled() {
+        assertResultFilesExist("testPooled", ".xml");
+    }
+
+    public void testPooledCrash() throws IOException {
+        expectPropertySet("testPooledCrash", "crashed");
+        assertTrue(readResultFile("VmCrash")
+                   .indexOf("Forked Java VM exited abnormally") > -1);
+        // the next test runs in a new VM
+        assertTrue(readResultFile("NoVmCrash")
+                   .indexOf("errors=\"0\"") > -1);
+    }
+
+    public void testPooledTimeout() throws IOException {
+        expectPropertySet("testPooledTimeout", "timeout");
+        assertTrue(readResultFile("Sleeper")
+                   .indexOf(JUnitTask.TIMEOUT_MESSAGE) > -1);
+        assertTrue(getResultFile("NoVmCrash").exists());
+        assertTrue(getResultFile("Printer").exists());
+    }
+
+    private String readResultFile(String className) throws IOException {
+        FileReader r = new FileReader(getResultFile(className));
+        try {
+            return FileUtils.readFully(r);
+        } finally {
+            FileUtils.close(r);
+        }
+    }
+
+    private File getResultFile(String className) {
+        return getProject().resolveFile("out/TEST-org.apache.tools.ant."
+                                        + "taskdefs.optional.junit."
+                                        + className + ".xml");
+    }
+
+    public void testTimingsFile() throws IOException {
+        executeTarget("testTimingsFile");
+        TestDurations d = new TestDurations();
+        d.load(getProject().resolveFile("out/timings.txt"));
+        assertTrue(d.isKnown(new JUnitTest(BatchTestTest.class.getName())));
+        assertTrue(d.isKnown(new JUnitTest(DOMUtilTest.class.getName())));
+    }
+
+    public void testShards() {
+        executeTarget("testTimingsFile");
+        getProject().setProperty("shard", "1");
+        executeTarget("testShard");
+        String[] first = getProject().resolveFile("out/shard1").list();
+        getProject().setProperty("shard", "2");
+        executeTarget("testShard");
+        String[] second = getProject().resolveFile("out/shard2").list();
+        assertEquals(4, first.length + second.length);
+        assertTrue(first.length > 0);
+        assertTrue(second.length > 0);
+        for (int i = 0; i < first.length; i++) {
+            assertFalse(Arrays.asList(second).contains(first[i]));
+        }
+    }
+
     // Bugzilla Issue 45411
     public void testMultilineAssertsNoFork() {
         expectLogNotContaining("testMultilineAssertsNoFork", "messed up)");
@@ -306,7 +381,16 @@ public class JUnitTaskTest extends BuildFileTest {
 
     public void testJUnit4Skip() throws Exception {
         executeTarget("testSkippableTests");
+        assertSkippableReport();
+    }
 
+    public void testJUnit4SkipStreamingXmlFormatter() throws Exception {
+        getProject().setProperty("formatter", "streamingxml");
+        executeTarget("testSkippableTests");
+        assertSkippableReport();
+    }
+
+    private void assertSkippableReport() throws Exception {
         DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
         DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
         Document doc = dBuilder.parse(getProject().getResource("out/TEST-org.example.junit.JUnit4Skippable.xml").getInputStream());
@@ -329,6 +413,31 @@ public class JUnitTaskTest extends BuildFileTest {
 
     }
 
+    public void testStreamingXmlFormatter() throws Exception {
+        executeTarget("testStreamingXmlFormatter");
+
+        DocumentBuilder dBuilder =
+            DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        Document doc =
+            dBuilder.parse(getProject().resolveFile("out/TESTS-TestSuites.xml"));
+        XPath xpath = XPathFactory.newInstance().newXPath();
+
+        assertEquals("2", xpath.compile("count(//testsuite)").evaluate(doc));
+        assertEquals("2", xpath.compile("count(//testsuite[@tests='1']"
+                                         + "/testcase[@name='testNoCrash'])")
+                     .evaluate(doc));
+        // output of the test that didn't fork depends on how System.out
+        // has been set up for the test that runs this test
+        assertEquals("true", xpath.compile("count(//testsuite[contains(system-out,"
+                                            + " 'method print to System.out')])"
+                                            + " > 0")
+                     .evaluate(doc));
+        assertEquals("true", xpath.compile("count(//testsuite[contains(system-err,"
+                                            + " 'method print to System.err')])"
+                                            + " > 0")
+                     .evaluate(doc));
+    }
+
     public void testTestMethods() throws Exception {
         executeTarget("testTestMethods");
     }
@@ -0,0 +1,111 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.taskdefs.optional.junit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class StreamingXMLJUnitResultFormatterTest extends TestCase {
+
+    public StreamingXMLJUnitResultFormatterTest(String name) {
+        super(name);
+    }
+
+    public void testSameReportAsXMLFormatter() throws Exception {
+        String output = "before ]]> after\u0000";
+        String streaming = run(new StreamingXMLJUnitResultFormatter(), output);
+        String dom = run(new XMLJUnitResultFormatter(), output);
+        assertEquals(normalize(dom), normalize(streaming));
+    }
+
+    public void testLargeOutput() throws Exception {
+        StringBuffer sb = new StringBuffer();
+        // puts a "]]>" across the boundary of the chunks that are copied
+        for (int i = 0; i < 8 * 1024 - 1; i++) {
+            sb.append('x');
+        }
+        sb.append("]]>");
+        for (int i = 0; i < 100000; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        String output = sb.toString();
+        String report = run(new StreamingXMLJUnitResultFormatter(), output);
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+            .parse(new ByteArrayInputStream(report.getBytes("UTF-8")));
+        Element out = (Element) doc.getElementsByTagName("system-out").item(0);
+        assertEquals(output, out.getTextContent());
+    }
+
+    /**
+     * Sends the events of a passing test, a failing test and a test
+     * with an error.
+     */
+    private String run(JUnitResultFormatter formatter, String output)
+        throws IOException {
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        formatter.setOutput(report);
+        JUnitTest suite = new JUnitTest(getClass().getName());
+        Properties props = new Properties();
+        props.put("foo", "bar");
+        suite.setProperties(props);
+        if (formatter instanceof StreamingJUnitResultFormatter) {
+            OutputStream out = ((StreamingJUnitResultFormatter) formatter)
+                .getSystemOutputStream();
+            out.write(output.getBytes());
+            out.close();
+            ((StreamingJUnitResultFormatter) formatter)
+                .getSystemErrorStream().close();
+        }
+        formatter.startTestSuite(suite);
+        TestCase pass = new StreamingXMLJUnitResultFormatterTest("pass");
+        formatter.startTest(pass);
+        formatter.endTest(pass);
+        TestCase fail = new StreamingXMLJUnitResultFormatterTest("fail");
+        formatter.startTest(fail);
+        formatter.addFailure(fail, new AssertionFailedError("expected <1>"));
+        formatter.endTest(fail);
+        TestCase error = new StreamingXMLJUnitResultFormatterTest("error");
+        formatter.startTest(error);
+        formatter.addError(error, new RuntimeException("oops"));
+        formatter.endTest(error);
+        if (!(formatter instanceof StreamingJUnitResultFormatter)) {
+            formatter.setSystemOutput(output);
+            formatter.setSystemError("");
+        }
+        suite.setCounts(3, 1, 1);
+        formatter.endTestSuite(suite);
+        return report.toString("UTF-8");
+    }
+
+    private static String normalize(String report) {
+        return report.replaceAll(" (time|timestamp)=\"[^\"]*\"", "")
+            .replaceAll("\\s+at .*", "");
+    }
+}
@@ -35,4 +35,9 @@ public class TearDownOnVmCrashTest extends BuildFileTest {
         expectPropertySet("testTeardown", "error");
         assertOutputContaining("tearDown called on Timeout");
     }
+
+    public void testPooledTeardown() {
+        expectPropertySet("testPooledTeardown", "error");
+        assertOutputContaining("tearDown called on Timeout");
+    }
 }
\ No newline at end of file
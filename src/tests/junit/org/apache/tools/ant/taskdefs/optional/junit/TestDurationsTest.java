@@ -0,0 +1,112 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.taskdefs.optional.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestDurationsTest extends TestCase {
+
+    public void testSplitBalancesDurations() {
+        TestDurations d = new TestDurations();
+        List tests = new ArrayList();
+        long[] millis = {10, 70, 30, 40, 20, 50};
+        for (int i = 0; i < millis.length; i++) {
+            JUnitTest t = new JUnitTest("T" + millis[i]);
+            d.add(t, millis[i]);
+            tests.add(t);
+        }
+        List<List> split = d.split(tests, 2);
+        assertEquals(2, split.size());
+        assertEquals(110, d.get(split.get(0)));
+        assertEquals(110, d.get(split.get(1)));
+        assertEquals("T70", ((JUnitTest) split.get(0).get(0)).getName());
+        assertEquals(3, d.split(tests.subList(0, 3), 5).size());
+    }
+
+    public void testUnknownTestsTakeAverage() {
+        TestDurations d = new TestDurations();
+        JUnitTest unknown = new JUnitTest("unknown");
+        assertEquals(1, d.get(unknown));
+        d.add(new JUnitTest("a"), 100);
+        d.add(new JUnitTest("b"), 300);
+        d.add(unknown, TestDurations.UNKNOWN);
+        assertEquals(200, d.get(unknown));
+    }
+
+    public void testCopyWithFixedDefault() {
+        TestDurations d = new TestDurations();
+        d.add(new JUnitTest("a"), 100);
+        d.add(new JUnitTest("b"), 300);
+        TestDurations c = d.copy(TestDurations.SHARD_DEFAULT);
+        JUnitTest unknown = new JUnitTest("unknown");
+        assertEquals(TestDurations.SHARD_DEFAULT, c.get(unknown));
+        assertEquals(300, c.get(new JUnitTest("b")));
+        d.add(new JUnitTest("c"), 5000);
+        assertFalse(c.isKnown(new JUnitTest("c")));
+        assertEquals(TestDurations.SHARD_DEFAULT, c.get(unknown));
+    }
+
+    public void testSortLongestFirst() {
+        TestDurations d = new TestDurations();
+        List<List> lists = new ArrayList<List>();
+        for (int i = 1; i <= 3; i++) {
+            JUnitTest t = new JUnitTest("T" + i);
+            d.add(t, i);
+            List l = new ArrayList();
+            l.add(t);
+            lists.add(l);
+        }
+        d.sortLongestFirst(lists);
+        assertEquals("T3", ((JUnitTest) lists.get(0).get(0)).getName());
+        assertEquals("T1", ((JUnitTest) lists.get(2).get(0)).getName());
+    }
+
+    public void testStoreAndLoad() throws IOException {
+        TestDurations d = new TestDurations();
+        d.add(new JUnitTest("b"), 20);
+        d.add(new JUnitTest("a"), 10);
+        d.add(new JUnitTest("a"), 30);
+        File f = File.createTempFile("timings", ".txt");
+        try {
+            d.store(f);
+            TestDurations loaded = new TestDurations();
+            loaded.load(f);
+            assertEquals(30, loaded.get(new JUnitTest("a")));
+            assertEquals(20, loaded.get(new JUnitTest("b")));
+            assertEquals(25, loaded.get(new JUnitTest("c")));
+        } finally {
+            f.delete();
+        }
+    }
+
+    public void testReadDuration() {
+        File report = new File(System.getProperty("root"),
+                               "src/etc/testcases/taskdefs/optional/junitreport/"
+                               + "TEST-sampleproject.coins.CoinTest.xml");
+        assertEquals(171, TestDurations.readDuration(report));
+        assertEquals(TestDurations.UNKNOWN,
+                     TestDurations.readDuration(new File(report.getParentFile(),
+                                                         "missing.xml")));
+    }
+}
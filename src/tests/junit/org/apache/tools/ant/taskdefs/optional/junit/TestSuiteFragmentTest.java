@@ -0,0 +1,82 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.taskdefs.optional.junit;
+
+import java.io.File;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+public class TestSuiteFragmentTest extends TestCase {
+
+    private File dir;
+
+    public void setUp() {
+        dir = new File(System.getProperty("root"),
+                       "src/etc/testcases/taskdefs/optional/junitreport");
+    }
+
+    public void testSummaryOmitsPropertiesAndOutput() throws Exception {
+        TestSuiteFragment f =
+            read("TEST-sampleproject.coins.CoinTest.xml", true);
+        try {
+            assertEquals(TestSuiteFragment.OK, f.getStatus());
+            assertEquals("sampleproject.coins", f.getPackage());
+
+            StringWriter all = new StringWriter();
+            f.writeTo(all, 3, false);
+            String content = all.toString();
+            assertTrue(content.startsWith("  <testsuite"));
+            assertTrue(content.indexOf(" name=\"CoinTest\"") > 0);
+            assertTrue(content.indexOf(" package=\"sampleproject.coins\"") > 0);
+            assertTrue(content.indexOf(" id=\"3\"") > 0);
+            assertTrue(content.indexOf("<properties>") > 0);
+            assertTrue(content.endsWith("</testsuite>\n"));
+
+            StringWriter summary = new StringWriter();
+            f.writeTo(summary, 3, true);
+            assertTrue(summary.toString().indexOf("<testcase") > 0);
+            assertEquals(-1, summary.toString().indexOf("<properties"));
+            assertEquals(-1, summary.toString().indexOf("<system-out"));
+        } finally {
+            f.delete();
+        }
+    }
+
+    public void testBrokenReports() {
+        assertEquals(TestSuiteFragment.EMPTY,
+                     read("ZEROBYTES-sampleproject.package.xml", false)
+                     .getStatus());
+        assertEquals(TestSuiteFragment.INVALID_ROOT,
+                     read("WRONGELEMENT-sampleproject.wrongelement.xml", false)
+                     .getStatus());
+        assertEquals(TestSuiteFragment.INVALID_ROOT,
+                     read("NAMESPACE-sampleproject.namespace.xml", false)
+                     .getStatus());
+        TestSuiteFragment f = read("INCOMPLETE-sampleproject.incomplete.xml", false);
+        assertEquals(TestSuiteFragment.CORRUPTED, f.getStatus());
+        assertNotNull(f.getException());
+    }
+
+    private TestSuiteFragment read(String report, boolean withSummary) {
+        return TestSuiteFragment.read(new File(dir, report),
+                                      new File(System.getProperty("java.io.tmpdir")),
+                                      withSummary);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.util;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for AttributeCachingFile
+ */
+public class AttributeCachingFileTest extends TestCase {
+
+    public AttributeCachingFileTest(String name) {
+        super(name);
+    }
+
+    public void testFile() {
+        assertSameAttributes(new File("build.xml"));
+    }
+
+    public void testDirectory() {
+        assertSameAttributes(new File("src"));
+    }
+
+    public void testMissingFile() {
+        assertSameAttributes(new File("does-not-exist.xml"));
+    }
+
+    public void testAttributesAreCached() throws Exception {
+        File f = File.createTempFile("acf", ".tmp");
+        try {
+            AttributeCachingFile a = new AttributeCachingFile(f);
+            assertTrue(a.exists());
+            f.delete();
+            if (AttributeCachingFile.isSupported()) {
+                assertTrue(a.exists());
+                assertFalse(new AttributeCachingFile(f).exists());
+            } else {
+                assertFalse(a.exists());
+            }
+        } finally {
+            f.delete();
+        }
+    }
+
+    private static void assertSameAttributes(File f) {
+        AttributeCachingFile a = new AttributeCachingFile(f);
+        assertEquals(f.exists(), a.exists());
+        assertEquals(f.isDirectory(), a.isDirectory());
+        assertEquals(f.isFile(), a.isFile());
+        assertEquals(f.lastModified(), a.lastModified());
+        if (f.isFile()) {
+            assertEquals(f.length(), a.length());
+        }
+    }
+}
@@ -586,6 +586,18 @@ public class FileUtilsTest extends TestCase {
         FILE_UTILS.getDefaultEncoding();
     }
 
+    public void testTryHardToDeleteTree() throws IOException {
+        removeThis = new File("dummyTree");
+        File sub = new File(removeThis, "sub");
+        assertTrue(sub.mkdirs());
+        FileOutputStream fos = new FileOutputStream(new File(sub, "file"));
+        fos.close();
+        fos = new FileOutputStream(new File(removeThis, "file"));
+        fos.close();
+        assertTrue(FILE_UTILS.tryHardToDeleteTree(removeThis));
+        assertFalse(removeThis.exists());
+    }
+
     /**
      * adapt file separators to local conventions
      */
@@ -18,12 +18,18 @@
 
 package org.apache.tools.ant.util;
 
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
 import junit.framework.TestCase;
 
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.Echo;
 import org.apache.tools.ant.types.Resource;
 import org.apache.tools.ant.types.ResourceFactory;
+import org.apache.tools.ant.types.resources.FileResource;
+import org.apache.tools.ant.types.resources.StringResource;
 
 /**
  * Tests for org.apache.tools.ant.util.ResourceUtils.
@@ -47,6 +53,57 @@ public class ResourceUtilsTest extends TestCase
         assertEquals(1, toNew.length);
     }
 
+    public void testCopyStatistics() throws IOException {
+        File src = File.createTempFile("resourceutils", ".src");
+        File dest = File.createTempFile("resourceutils", ".dest");
+        try {
+            CopyStatistics stats = new CopyStatistics();
+            StringResource foo = new StringResource("foo");
+            // no encoding means no reader, only bytes
+            foo.setEncoding(null);
+            ResourceUtils.copyResource(foo,
+                                       new FileResource(src), null, null,
+                                       true, false, false, null, null,
+                                       null, false, stats);
+            assertEquals(0, stats.getTransferred());
+            assertEquals(3, stats.getBuffered());
+
+            ResourceUtils.copyResource(new FileResource(src),
+                                       new FileResource(dest), null, null,
+                                       true, false, false, null, null,
+                                       null, false, stats);
+            assertEquals(3, stats.getTransferred());
+            assertEquals(3, stats.getBuffered());
+        } finally {
+            src.delete();
+            dest.delete();
+        }
+    }
+
+    public void testChannelTransferAppends() throws IOException {
+        File src = File.createTempFile("resourceutils", ".src");
+        File dest = File.createTempFile("resourceutils", ".dest");
+        try {
+            ResourceUtils.copyResource(new StringResource("foo"),
+                                       new FileResource(src));
+            ResourceUtils.copyResource(new StringResource("bar"),
+                                       new FileResource(dest));
+            ResourceUtils.copyResource(new FileResource(src),
+                                       new FileResource(dest), null, null,
+                                       true, false, true, null, null,
+                                       null, false);
+            FileReader r = new FileReader(dest);
+            try {
+                assertEquals("barfoo", FileUtils.readFully(r));
+            } finally {
+                r.close();
+            }
+        } finally {
+            src.delete();
+            dest.delete();
+        }
+    }
+
     /* ============ ResourceFactory interface ====================== */
     public Resource getResource(String name) {
         return new Resource(name); // implies lastModified == 0